@@ -1,8 +1,10 @@
 package com.checkmarx.jenkins;
 
+import java.io.File;
 import java.io.InputStream;
 import java.util.Properties;
 
+import com.checkmarx.jenkins.filesystem.zip.CompressionPolicy;
 import jenkins.model.Jenkins;
 
 /**
@@ -17,6 +19,25 @@ public class CxConfig {
 	private static final String CONFIGURATION_MAX_ZIP_SIZE_KEY = "MaxZipSizeBytes";
 	private static final String CONFIGURATION_MAX_OSA_ZIP_SIZE_KEY = "MaxOSAZipSizeBytes";
 	private static final String CONFIGURATION_DEFAULT_FILTER_PATTERN_KEY = "DefaultFilterPattern";
+	private static final String CONFIGURATION_ZIP_THREADS_KEY = "ZipThreads";
+	private static final String CONFIGURATION_ZIP_SIZE_PREFLIGHT_KEY = "ZipSizePreflight";
+	private static final String CONFIGURATION_ZIPPED_FILES_LIST_KEY = "ZippedFilesList";
+	private static final String CONFIGURATION_GIT_INDEX_FILE_LIST_KEY = "GitIndexFileList";
+	private static final String CONFIGURATION_DEFLATE_LEVEL_SMALL_FILES_KEY = "DeflateLevelSmallFiles";
+	private static final String CONFIGURATION_DEFLATE_LEVEL_KEY = "DeflateLevel";
+	private static final String CONFIGURATION_DEFLATE_LEVEL_LARGE_FILES_KEY = "DeflateLevelLargeFiles";
+	private static final String CONFIGURATION_ZIP_MAX_CONCURRENT_JOBS_KEY = "ZipMaxConcurrentJobs";
+	private static final String CONFIGURATION_ZIP_MAX_READ_MB_PER_SECOND_KEY = "ZipMaxReadMBPerSecond";
+	private static final String CONFIGURATION_ZIP_MAX_THREADS_KEY = "ZipMaxThreads";
+	private static final String CONFIGURATION_ZIP_TEMP_DIR_KEY = "ZipTempDir";
+	private static final String CONFIGURATION_ZIP_CACHE_DIR_KEY = "ZipCacheDir";
+	private static final String CONFIGURATION_ZIP_CACHE_MAX_MB_KEY = "ZipCacheMaxMB";
+	private static final String CONFIGURATION_WORKSPACE_CHANGE_TRACKING_KEY = "WorkspaceChangeTracking";
+	private static final String CONFIGURATION_SOAP_CLIENT_TTL_SEC_KEY = "SoapClientTimeToLiveSec";
+	private static final String CONFIGURATION_MAX_SESSIONS_PER_SERVER_KEY = "MaxSessionsPerServer";
+	private static final String CONFIGURATION_SESSION_WAIT_SEC_KEY = "SessionWaitSec";
+	private static final String CONFIGURATION_SESSION_RENEWAL_SEC_KEY = "SessionRenewalSec";
+	private static final String ZIP_CACHE_DIR_NAME = "checkmarx-zip-cache";
 
 	static {
 		configuration = new Properties();
@@ -42,6 +63,155 @@ public class CxConfig {
 		return Integer.parseInt(configuration.getProperty(CONFIGURATION_MAX_OSA_ZIP_SIZE_KEY));
 	}
 
+	/**
+	 * @return number of threads used to compress the sources, zero means one
+	 *         thread per available processor
+	 */
+	public static int zipThreads() {
+		return Integer.parseInt(configuration.getProperty(CONFIGURATION_ZIP_THREADS_KEY, "0"));
+	}
+
+	/**
+	 * @return true if the size of the zip is predicted before zipping, to
+	 *         fail fast when it clearly exceeds the maximum zip size. The
+	 *         prediction walks the workspace once more, it is off by default.
+	 */
+	public static boolean zipSizePreflight() {
+		return Boolean.parseBoolean(configuration.getProperty(CONFIGURATION_ZIP_SIZE_PREFLIGHT_KEY, "false"));
+	}
+
+	/**
+	 * @return true if the list of all the zipped files is written next to
+	 *         the workspace, the job console only gets a summary
+	 */
+	public static boolean zippedFilesList() {
+		return Boolean.parseBoolean(configuration.getProperty(CONFIGURATION_ZIPPED_FILES_LIST_KEY, "false"));
+	}
+
+	/**
+	 * @return true if the sources of a git work tree are taken from its
+	 *         index, untracked files are then not zipped
+	 */
+	public static boolean gitIndexFileList() {
+		return Boolean.parseBoolean(configuration.getProperty(CONFIGURATION_GIT_INDEX_FILE_LIST_KEY, "false"));
+	}
+
+	/**
+	 * @return compression policy of the zipped sources, with the deflate
+	 *         levels of the small, the other and the large or generated files
+	 */
+	public static CompressionPolicy compressionPolicy() {
+		return new CompressionPolicy(
+				Integer.parseInt(configuration.getProperty(CONFIGURATION_DEFLATE_LEVEL_SMALL_FILES_KEY, String.valueOf(CompressionPolicy.DEFAULT_SMALL_FILE_LEVEL))),
+				Integer.parseInt(configuration.getProperty(CONFIGURATION_DEFLATE_LEVEL_KEY, String.valueOf(CompressionPolicy.DEFAULT_LEVEL))),
+				Integer.parseInt(configuration.getProperty(CONFIGURATION_DEFLATE_LEVEL_LARGE_FILES_KEY, String.valueOf(CompressionPolicy.DEFAULT_LARGE_FILE_LEVEL))));
+	}
+
+	/**
+	 * @return number of zips running at the same time on a node, the others
+	 *         wait in the order they arrived; zero means no limit
+	 */
+	public static int zipMaxConcurrentJobs() {
+		return Integer.parseInt(configuration.getProperty(CONFIGURATION_ZIP_MAX_CONCURRENT_JOBS_KEY, "0"));
+	}
+
+	/**
+	 * @return maximum rate, in bytes per second, at which the zips of a node
+	 *         read the files together; zero means no limit
+	 */
+	public static long zipMaxReadBytesPerSecond() {
+		return Long.parseLong(configuration.getProperty(CONFIGURATION_ZIP_MAX_READ_MB_PER_SECOND_KEY, "0")) * 1024 * 1024;
+	}
+
+	/**
+	 * @return maximum number of threads compressing a zip, whatever
+	 *         {@link #zipThreads()} is; zero means no limit
+	 */
+	public static int zipMaxThreads() {
+		return Integer.parseInt(configuration.getProperty(CONFIGURATION_ZIP_MAX_THREADS_KEY, "0"));
+	}
+
+	/**
+	 * @return directory of the temporary zip files on the nodes, null for the
+	 *         default temporary directory of the JVM
+	 */
+	public static File zipTempDir() {
+		String zipTempDir = configuration.getProperty(CONFIGURATION_ZIP_TEMP_DIR_KEY, "").trim();
+		return zipTempDir.isEmpty() ? null : new File(zipTempDir);
+	}
+
+	/**
+	 * @return directory of the zip cache on the nodes, by default in the
+	 *         directory of the temporary zip files
+	 */
+	public static File zipCacheDir() {
+		String zipCacheDir = configuration.getProperty(CONFIGURATION_ZIP_CACHE_DIR_KEY, "").trim();
+		if (!zipCacheDir.isEmpty()) {
+			return new File(zipCacheDir);
+		}
+		File zipTempDir = zipTempDir();
+		return new File(zipTempDir != null ? zipTempDir : new File(System.getProperty("java.io.tmpdir")), ZIP_CACHE_DIR_NAME);
+	}
+
+	/**
+	 * @return disk quota, in bytes, of the archives kept in the zip cache of a
+	 *         node; zero disables the cache
+	 */
+	public static long zipCacheMaxBytes() {
+		return Long.parseLong(configuration.getProperty(CONFIGURATION_ZIP_CACHE_MAX_MB_KEY, "0")) * 1024 * 1024;
+	}
+
+	/**
+	 * @return true if the nodes watch the workspaces packaged with a manifest
+	 *         for changes, so they are zipped without listing all their
+	 *         directories
+	 */
+	public static boolean workspaceChangeTracking() {
+		return Boolean.parseBoolean(configuration.getProperty(CONFIGURATION_WORKSPACE_CHANGE_TRACKING_KEY, "false"));
+	}
+
+	/**
+	 * @return time the resolved web service url and port of a server are
+	 *         reused before being connected again; zero connects for every
+	 *         build and form validation
+	 */
+	public static long soapClientTimeToLiveMillis() {
+		return Long.parseLong(configuration.getProperty(CONFIGURATION_SOAP_CLIENT_TTL_SEC_KEY, "300")) * 1000;
+	}
+
+	/**
+	 * @return number of sessions kept per server for the different
+	 *         credentials, zero for no limit
+	 */
+	public static int maxSessionsPerServer() {
+		return Integer.parseInt(configuration.getProperty(CONFIGURATION_MAX_SESSIONS_PER_SERVER_KEY, "0"));
+	}
+
+	/**
+	 * @return time a build or form validation waits for a session of a server
+	 *         whose sessions are all in use before failing
+	 */
+	public static long sessionWaitMillis() {
+		return Long.parseLong(configuration.getProperty(CONFIGURATION_SESSION_WAIT_SEC_KEY, "60")) * 1000;
+	}
+
+	/**
+	 * @return age after which a shared session is renewed before the server
+	 *         expires it; zero only renews it once rejected
+	 */
+	public static long sessionRenewalMillis() {
+		return Long.parseLong(configuration.getProperty(CONFIGURATION_SESSION_RENEWAL_SEC_KEY, "3600")) * 1000;
+	}
+
+	/**
+	 * @param key        minimum or maximum polling interval of a phase, see
+	 *                   {@link com.checkmarx.jenkins.web.client.PollingSchedule.Phase}
+	 * @param defaultSec interval when the key is not configured
+	 */
+	public static long pollingIntervalMillis(String key, long defaultSec) {
+		return Long.parseLong(configuration.getProperty(key, String.valueOf(defaultSec))) * 1000;
+	}
+
 	public static String defaultFilterPattern() {
 		return configuration.getProperty(CONFIGURATION_DEFAULT_FILTER_PATTERN_KEY);
 	}
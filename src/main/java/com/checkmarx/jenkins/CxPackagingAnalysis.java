@@ -0,0 +1,96 @@
+package com.checkmarx.jenkins;
+
+import com.checkmarx.jenkins.filesystem.zip.dto.PackagingAnalysis;
+import hudson.PluginWrapper;
+import hudson.model.AbstractProject;
+import hudson.model.Action;
+import hudson.model.Hudson;
+import hudson.model.Run;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Result of a packaging dry run, shown on the build: what the zip of the
+ * workspace would hold with the filter of the job and which exclusions would
+ * cut it the most.
+ */
+public class CxPackagingAnalysis implements Action {
+
+    public static final String URL_NAME = "checkmarxPackaging";
+
+    public final Run<?, ?> owner;
+    private final PackagingAnalysis analysis;
+
+    public CxPackagingAnalysis(Run<?, ?> owner, PackagingAnalysis analysis) {
+        this.owner = owner;
+        this.analysis = analysis;
+    }
+
+    public PackagingAnalysis getAnalysis() {
+        return analysis;
+    }
+
+    @Override
+    public String getIconFileName() {
+        return getIconPath() + "CxIcon24x24.png";
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Checkmarx Packaging Analysis";
+    }
+
+    @Override
+    public String getUrlName() {
+        return URL_NAME;
+    }
+
+    @NotNull
+    private static String getIconPath() {
+        PluginWrapper wrapper = Hudson.getInstance().getPluginManager().getPlugin(CxPlugin.class);
+        return "/plugin/" + wrapper.getShortName() + "/";
+    }
+
+    /**
+     * Link on the job to the analysis of its last dry run.
+     */
+    public static class LastAnalysis implements Action {
+
+        // Dry runs are occasional, older builds are not loaded to find one
+        private static final int MAX_BUILDS_SEARCHED = 10;
+
+        private final AbstractProject<?, ?> owner;
+
+        public LastAnalysis(AbstractProject<?, ?> owner) {
+            this.owner = owner;
+        }
+
+        @Nullable
+        public CxPackagingAnalysis getLastBuildAction() {
+            Run<?, ?> r = owner.getLastBuild();
+            for (int i = 0; r != null && i < MAX_BUILDS_SEARCHED; i++) {
+                CxPackagingAnalysis a = r.getAction(CxPackagingAnalysis.class);
+                if (a != null) {
+                    return a;
+                }
+                r = r.getPreviousBuild();
+            }
+            return null;
+        }
+
+        @Override
+        public String getIconFileName() {
+            return getLastBuildAction() != null ? getIconPath() + "CxIcon24x24.png" : null;
+        }
+
+        @Override
+        public String getDisplayName() {
+            return getLastBuildAction() != null ? "Checkmarx Last Packaging Analysis" : null;
+        }
+
+        @Override
+        public String getUrlName() {
+            return getLastBuildAction() != null ? URL_NAME : null;
+        }
+    }
+}
@@ -266,6 +266,7 @@ public class CxProjectResult implements Action {
                 if (((Project) project).getBuildersList().get(CxScanBuilder.class) != null) {
                     LinkedList<Action> list = new LinkedList<Action>();
                     list.add(new CxProjectResult(project));
+                    list.add(new CxPackagingAnalysis.LastAnalysis(project));
                     return list;
                 }
             }
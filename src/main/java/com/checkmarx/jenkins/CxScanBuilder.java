@@ -2,7 +2,11 @@ package com.checkmarx.jenkins;
 
 import com.checkmarx.jenkins.filesystem.FolderPattern;
 import com.checkmarx.jenkins.filesystem.zip.CxZip;
+import com.checkmarx.jenkins.filesystem.zip.ScanSources;
 import com.checkmarx.jenkins.filesystem.zip.Zipper;
+import com.checkmarx.jenkins.filesystem.zip.dto.PackagingAnalysis;
+import com.checkmarx.jenkins.filesystem.zip.dto.SastAndOsaZipResult;
+import com.checkmarx.jenkins.filesystem.zip.dto.WorkspaceShard;
 import com.checkmarx.jenkins.logger.CxPluginLogger;
 import com.checkmarx.jenkins.opensourceanalysis.DependencyFolder;
 import com.checkmarx.jenkins.opensourceanalysis.ScanService;
@@ -24,6 +28,7 @@ import hudson.util.Secret;
 import jenkins.model.Jenkins;
 import jenkins.tasks.SimpleBuildStep;
 import net.sf.json.JSONObject;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -41,9 +46,13 @@ import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
 import java.net.URLDecoder;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
 
@@ -143,6 +152,16 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
 
     private boolean avoidDuplicateProjectScans;
 
+    private boolean deltaIncrementalPackaging;
+
+    private boolean skipUnchangedScans;
+
+    private boolean excludeBuildOutputs;
+
+    private boolean packagingDryRun;
+
+    private boolean shardedScan;
+
     public static final String PROJECT_STATE_URL_TEMPLATE = "/CxWebClient/portal#/projectState/{0}/Summary";
     public static final String ASYNC_MESSAGE = "CxSAST scan was run in asynchronous mode.\nRefer to the {0} for the scan results\n";
 
@@ -190,7 +209,12 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
             Result vulnerabilityThresholdResult,
             @Nullable String includeOpenSourceFolders,
             @Nullable String excludeOpenSourceFolders,
-            boolean avoidDuplicateProjectScans) {
+            boolean avoidDuplicateProjectScans,
+            boolean deltaIncrementalPackaging,
+            boolean skipUnchangedScans,
+            boolean excludeBuildOutputs,
+            boolean packagingDryRun,
+            boolean shardedScan) {
         this.useOwnServerCredentials = useOwnServerCredentials;
         this.serverUrl = serverUrl;
         this.username = username;
@@ -225,6 +249,11 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
         this.thresholdSettings = thresholdSettings;
         this.vulnerabilityThresholdResult = vulnerabilityThresholdResult;
         this.avoidDuplicateProjectScans = avoidDuplicateProjectScans;
+        this.deltaIncrementalPackaging = deltaIncrementalPackaging;
+        this.skipUnchangedScans = skipUnchangedScans;
+        this.excludeBuildOutputs = excludeBuildOutputs;
+        this.packagingDryRun = packagingDryRun;
+        this.shardedScan = shardedScan;
         init();
     }
 
@@ -406,6 +435,26 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
         return avoidDuplicateProjectScans;
     }
 
+    public boolean isDeltaIncrementalPackaging() {
+        return deltaIncrementalPackaging;
+    }
+
+    public boolean isSkipUnchangedScans() {
+        return skipUnchangedScans;
+    }
+
+    public boolean isExcludeBuildOutputs() {
+        return excludeBuildOutputs;
+    }
+
+    public boolean isPackagingDryRun() {
+        return packagingDryRun;
+    }
+
+    public boolean isShardedScan() {
+        return shardedScan;
+    }
+
     public void setThresholdSettings(String thresholdSettings) {
         this.thresholdSettings = thresholdSettings;
     }
@@ -435,8 +484,12 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
         final DescriptorImpl descriptor = getDescriptor();
 
         CxWSResponseRunID cxWSResponseRunID = null;
+        // Scans of the shards by shard name, in sharded scan mode
+        Map<String, CxWSResponseRunID> shardRunIds = null;
         CxWebService cxWebService = null;
         CxWSCreateReportResponse reportResponse = null;
+        // OSA sources zipped together with the SAST sources, handed over to the OSA scan
+        AtomicReference<FilePath> osaSourcesZip = new AtomicReference<>();
 
         try {
             File checkmarxBuildDir = new File(build.getRootDir(), "checkmarx");
@@ -451,13 +504,21 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
                         "Visit plugin configuration page to disable this skip.");
                 return;
             }
+            // The build layout of the workspace is detected once per build
+            String combinedFilterPattern = generateCombinedFilterPattern(build, workspace, listener);
+            if (isPackagingDryRun()) {
+                PackagingAnalysis analysis = new CxZip(build, workspace, listener).analyzeWorkspaceFolder(combinedFilterPattern);
+                build.addAction(new CxPackagingAnalysis(build, analysis));
+                jobConsoleLogger.info("Packaging dry run, no scan was submitted. The analysis is available on the build page.");
+                return;
+            }
             final String serverUrlToUse = isUseOwnServerCredentials() ? getServerUrl() : descriptor.getServerUrl();
             final String usernameToUse = isUseOwnServerCredentials() ? getUsername() : descriptor.getUsername();
             final String passwordToUse = isUseOwnServerCredentials() ? getPasswordPlainText() : descriptor.getPasswordPlainText();
 
             String serverUrlToUseNotNull = serverUrlToUse != null ? serverUrlToUse : "";
 
-            cxWebService = new CxWebService(serverUrlToUseNotNull, jobConsoleLogger);
+            cxWebService = new CxWebService(serverUrlToUseNotNull, listener);
             cxWebService.login(usernameToUse, passwordToUse);
 
             jobConsoleLogger.info("Checkmarx server login successful");
@@ -468,46 +529,97 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
                 return;
             }
 
-            if (descriptor.isProhibitProjectCreation() && projectId == 0) {
+            // In sharded scan mode every shard has its own project, checked when it is submitted
+            if (descriptor.isProhibitProjectCreation() && projectId == 0 && !isShardedScan()) {
                 jobConsoleLogger.info("\nCreation of the new project " + projectName + " is not authorized. Please use an existing project.");
                 jobConsoleLogger.info("You can enable the creation of new projects by disabling the \"Deny new Checkmarx projects creation\" checkbox in the Jenkins plugin global settings.\n");
                 build.setResult(Result.FAILURE);
                 return;
             }
 
-            //If there no project under the project name a new project will be created
-            cxWSResponseRunID = submitScan(build, workspace, cxWebService, listener);
-            projectId = cxWSResponseRunID.getProjectID();
-
             boolean shouldRunAsynchronous = scanShouldRunAsynchronous(descriptor);
-            if (shouldRunAsynchronous) {
-                logAsyncMessage(serverUrlToUse);
-                addScanResultAction(build, serverUrlToUse, shouldRunAsynchronous, null);
+
+            // Results can only be reused when they were retrieved, that is in synchronous mode
+            String workspaceFingerprint = null;
+            String osaWorkspaceFingerprint = null;
+            String scanSettingsFingerprint = null;
+            CxScanResult reusedScanResult = null;
+            if (isSkipUnchangedScans() && !shouldRunAsynchronous && isShardedScan()) {
+                // The results of a sharded build belong to the projects of the shards, not to the project of the job
+                jobConsoleLogger.info("Unchanged scans are not skipped in sharded scan mode");
+            } else if (isSkipUnchangedScans() && !shouldRunAsynchronous) {
+                scanSettingsFingerprint = scanSettingsFingerprint(build, listener, serverUrlToUseNotNull, combinedFilterPattern);
+                CxZip cxZip = new CxZip(build, workspace, listener);
+                workspaceFingerprint = cxZip.fingerprintWorkspaceFolder(combinedFilterPattern);
+                // The OSA sources are mostly excluded from the SAST ones, a dependency update alone changes the OSA results
                 if (osaEnabled) {
-                    analyzeOpenSources(build, serverUrlToUseNotNull, usernameToUse, passwordToUse, cxWebService, listener, shouldRunAsynchronous);
+                    osaWorkspaceFingerprint = cxZip.fingerprintOsaWorkspaceFolder(
+                            new FolderPattern(build, listener).generatePattern(includeOpenSourceFolders, excludeOpenSourceFolders));
+                }
+                if (projectId != 0) {
+                    reusedScanResult = findReusableScanResult(build, workspaceFingerprint, osaWorkspaceFingerprint, scanSettingsFingerprint);
                 }
-                return;
             }
 
-            long scanId = cxWebService.trackScanProgress(cxWSResponseRunID, usernameToUse, passwordToUse, descriptor.getScanTimeOutEnabled(), descriptor.getScanTimeoutDuration());
+            File xmlReportFile = new File(checkmarxBuildDir, "ScanReport.xml");
+            if (reusedScanResult != null) {
+                reuseScanReports(reusedScanResult, checkmarxBuildDir);
 
-            if (scanId == 0) {
-                build.setResult(Result.UNSTABLE);
-                return;
-            }
+            } else {
+                if (isShardedScan()) {
+                    shardRunIds = new LinkedHashMap<>();
+                    submitShardScans(build, workspace, cxWebService, listener, combinedFilterPattern, shardRunIds);
+                    // The results link to the project of the first shard
+                    projectId = shardRunIds.values().iterator().next().getProjectID();
+                } else {
+                    //If there no project under the project name a new project will be created
+                    cxWSResponseRunID = submitScan(build, workspace, cxWebService, listener, combinedFilterPattern, osaSourcesZip);
+                    projectId = cxWSResponseRunID.getProjectID();
+                }
 
-            reportResponse = cxWebService.generateScanReport(scanId, CxWSReportType.XML);
-            File xmlReportFile = new File(checkmarxBuildDir, "ScanReport.xml");
-            cxWebService.retrieveScanReport(reportResponse.getID(), xmlReportFile, CxWSReportType.XML);
+                if (shouldRunAsynchronous) {
+                    logAsyncMessage(serverUrlToUse);
+                    addScanResultAction(build, serverUrlToUse, shouldRunAsynchronous, null);
+                    if (osaEnabled) {
+                        analyzeOpenSources(build, workspace, serverUrlToUseNotNull, usernameToUse, passwordToUse, cxWebService, listener, shouldRunAsynchronous,
+                                osaSourcesZip.getAndSet(null));
+                    }
+                    return;
+                }
 
-            if (generatePdfReport) {
-                reportResponse = cxWebService.generateScanReport(scanId, CxWSReportType.PDF);
-                File pdfReportFile = new File(checkmarxBuildDir, CxScanResult.PDF_REPORT_NAME);
-                cxWebService.retrieveScanReport(reportResponse.getID(), pdfReportFile, CxWSReportType.PDF);
+                if (shardRunIds != null) {
+                    Map<String, Long> scanIds = cxWebService.trackScansProgress(shardRunIds, descriptor.getScanTimeOutEnabled(),
+                            descriptor.getScanTimeoutDuration());
+                    if (scanIds == null) {
+                        build.setResult(Result.UNSTABLE);
+                        return;
+                    }
+                    retrieveShardScanReports(cxWebService, scanIds, checkmarxBuildDir, xmlReportFile);
+                } else {
+                    long scanId = cxWebService.trackScanProgress(cxWSResponseRunID, descriptor.getScanTimeOutEnabled(), descriptor.getScanTimeoutDuration());
+
+                    if (scanId == 0) {
+                        build.setResult(Result.UNSTABLE);
+                        return;
+                    }
+                    reportResponse = cxWebService.generateScanReport(scanId, CxWSReportType.XML);
+                    cxWebService.retrieveScanReport(reportResponse.getID(), xmlReportFile, CxWSReportType.XML);
+
+                    if (generatePdfReport) {
+                        reportResponse = cxWebService.generateScanReport(scanId, CxWSReportType.PDF);
+                        File pdfReportFile = new File(checkmarxBuildDir, CxScanResult.PDF_REPORT_NAME);
+                        cxWebService.retrieveScanReport(reportResponse.getID(), pdfReportFile, CxWSReportType.PDF);
+                    }
+                }
             }
 
 
             CxScanResult cxScanResult = addScanResultAction(build, serverUrlToUse, shouldRunAsynchronous, xmlReportFile);
+            cxScanResult.setFingerprints(workspaceFingerprint, scanSettingsFingerprint);
+            cxScanResult.setOsaWorkspaceFingerprint(osaWorkspaceFingerprint);
+            if (reusedScanResult != null) {
+                cxScanResult.setReusedFromBuildNumber(reusedScanResult.owner.getNumber());
+            }
 
             // Set scan results to environment
             EnvVarAction envVarAction = new EnvVarAction();
@@ -531,7 +643,9 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
             //OSA scan
             boolean isOSAThresholdFailedTheBuild = false;
             if (osaEnabled) {
-                OsaScanResult osaScanResult = analyzeOpenSources(build, serverUrlToUseNotNull, usernameToUse, passwordToUse, cxWebService, listener, shouldRunAsynchronous);
+                OsaScanResult osaScanResult = reusedScanResult != null ? reusedScanResult.getOsaScanResult()
+                        : analyzeOpenSources(build, workspace, serverUrlToUseNotNull, usernameToUse, passwordToUse, cxWebService, listener, shouldRunAsynchronous,
+                                osaSourcesZip.getAndSet(null));
                 cxScanResult.setOsaScanResult(osaScanResult);
                 ThresholdConfig osaThresholdConfig = createOsaThresholdConfig();
 
@@ -539,8 +653,10 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
                 if (isOsaThresholdEnabled()) {
                     cxScanResult.setOsaThresholds(osaThresholdConfig);
                 }
-                //retrieve osa scan results pdf + html
-                getOSAReports(cxScanResult.getOsaScanResult().getScanId(), serverUrlToUseNotNull, usernameToUse, passwordToUse, checkmarxBuildDir);
+                //retrieve osa scan results pdf + html, already copied with the reused reports
+                if (reusedScanResult == null) {
+                    getOSAReports(cxScanResult.getOsaScanResult().getScanId(), serverUrlToUseNotNull, usernameToUse, passwordToUse, checkmarxBuildDir);
+                }
 
                 //OSA Threshold
                 isOSAThresholdFailedTheBuild = cxScanResult.getOsaScanResult().isOsaReturnedResult() && ((descriptor.isForcingVulnerabilityThresholdEnabled() && descriptor.isLockVulnerabilitySettings()) || isVulnerabilityThresholdEnabled())
@@ -581,8 +697,16 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
             } else if (cxWSResponseRunID != null) {
                 jobConsoleLogger.error("Cancelling scan on the Checkmarx server...");
                 cxWebService.cancelScan(cxWSResponseRunID.getRunId());
+            } else if (shardRunIds != null) {
+                cancelShardScans(cxWebService, shardRunIds);
             }
             throw e;
+        } finally {
+            if (cxWebService != null) {
+                cxWebService.logout();
+            }
+            // Left over when the OSA scan was not reached
+            deleteOsaSourcesZip(osaSourcesZip.get());
         }
     }
 
@@ -732,6 +856,10 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
         sb.append("folderExclusions: ").append(getExcludeFolders()).append("\n");
         sb.append("isSynchronous: ").append(isWaitForResultsEnabled()).append("\n"); //TODO GLOBAL
         sb.append("generatePDFReport: ").append(isGeneratePdfReport()).append("\n");
+        sb.append("skipUnchangedScans: ").append(isSkipUnchangedScans()).append("\n");
+        sb.append("excludeBuildOutputs: ").append(isExcludeBuildOutputs()).append("\n");
+        sb.append("packagingDryRun: ").append(isPackagingDryRun()).append("\n");
+        sb.append("shardedScan: ").append(isShardedScan()).append("\n");
         if (useGlobalThreshold) {
             sb.append("highSeveritiesThreshold: ").append(descriptor.getHighThresholdEnforcement()).append("\n");
             sb.append("mediumSeveritiesThreshold: ").append(descriptor.getMediumThresholdEnforcement()).append("\n");
@@ -823,10 +951,13 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
         return !isWaitForResultsEnabled() && !(descriptor.isForcingVulnerabilityThresholdEnabled() && descriptor.isLockVulnerabilitySettings());
     }
 
-    private OsaScanResult analyzeOpenSources(Run<?, ?> build, String baseUri, String user, String password, CxWebService webServiceClient, TaskListener listener, boolean shouldRunAsynchronous) throws IOException, InterruptedException {
+    private OsaScanResult analyzeOpenSources(Run<?, ?> build, FilePath workspace, String baseUri, String user, String password, CxWebService webServiceClient, TaskListener listener, boolean shouldRunAsynchronous,
+                                             @Nullable FilePath osaSourcesZip) throws IOException, InterruptedException {
         AuthenticationRequest authReq = new AuthenticationRequest(user, password);
         try (OsaScanClient scanClient = new OsaScanClient(baseUri, authReq)) {
-            ScanServiceTools scanServiceTools = initScanServiceTools(scanClient, build, new FilePath(new File(baseUri)), webServiceClient, listener);
+            ScanServiceTools scanServiceTools = initScanServiceTools(scanClient, build, workspace, webServiceClient, listener);
+            // From here on the scan service deletes it
+            scanServiceTools.setOsaSourcesZip(osaSourcesZip);
             ScanService scanService = new ScanService(scanServiceTools);
             return scanService.scan(shouldRunAsynchronous);
         } catch (Exception e) {
@@ -921,7 +1052,12 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
     }
 
 
-    private CxWSResponseRunID submitScan(final Run<?, ?> build, FilePath workspace, final CxWebService cxWebService, final TaskListener listener) throws IOException {
+    /**
+     * @param osaSourcesZip receives the OSA sources when they are zipped by
+     *                      the same walk of the workspace as the SAST ones
+     */
+    private CxWSResponseRunID submitScan(final Run<?, ?> build, FilePath workspace, final CxWebService cxWebService, final TaskListener listener,
+                                         String combinedFilterPattern, AtomicReference<FilePath> osaSourcesZip) throws IOException {
 
         FilePath zipFile = null;
 
@@ -929,12 +1065,24 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
             EnvVars env = build.getEnvironment(listener);
             final CliScanArgs cliScanArgs = createCliScanArgs(new byte[]{}, env);
             checkIncrementalScan(build);
-            zipFile = zipWorkspaceFolder(build, workspace, listener);
+            CxZip cxZip = new CxZip(build, workspace, listener);
             SastScan sastScan = new SastScan(cxWebService, cliScanArgs, new ProjectContract(cxWebService));
-            CxWSResponseRunID cxWSResponseRunId = sastScan.scan(getGroupId(), zipFile, isThisBuildIncremental);
-            zipFile.delete();
-            jobConsoleLogger.info("Temporary file deleted");
+            CxWSResponseRunID cxWSResponseRunId = null;
+            if (cxWebService.isStreamingUploadEnabled()) {
+                cxWSResponseRunId = streamScan(cxZip, sastScan, combinedFilterPattern);
+            }
+            if (cxWSResponseRunId == null) {
+                // The OSA sources are zipped by the same walk, unless the SAST zip keeps a manifest
+                zipFile = osaEnabled && !isDeltaIncrementalPackaging() ? zipWorkspaceFolderWithOsa(build, cxZip, listener, combinedFilterPattern, osaSourcesZip)
+                        : zipWorkspaceFolder(cxZip, combinedFilterPattern);
+                cxWSResponseRunId = sastScan.scan(getGroupId(), ScanSources.zippedFile(zipFile), isThisBuildIncremental);
+                zipFile.delete();
+                jobConsoleLogger.info("Temporary file deleted");
+            }
             jobConsoleLogger.info("\nScan job submitted successfully\n");
+            if (isDeltaIncrementalPackaging()) {
+                commitWorkspaceManifest(build, workspace, cxZip);
+            }
             return cxWSResponseRunId;
 
         } catch (Zipper.MaxZipSizeReached e) {
@@ -970,11 +1118,116 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
         }
     }
 
+    /**
+     * Splits the workspace into shards that each fit under the maximum zip
+     * size and submits a scan of every shard to its own project, named after
+     * the project of the job and the shard. The scans are submitted one after
+     * the other and run in parallel on the server.
+     *
+     * The scans already submitted are cancelled when a shard fails to be
+     * zipped or submitted, the results of only some shards are not reported.
+     *
+     * @param shardRunIds receives the scan of every shard by shard name as
+     *                    soon as it is submitted, to be cancelled on abort
+     */
+    private void submitShardScans(final Run<?, ?> build, FilePath workspace, final CxWebService cxWebService, final TaskListener listener,
+                                  String combinedFilterPattern, Map<String, CxWSResponseRunID> shardRunIds) throws IOException, InterruptedException {
+        boolean submitted = false;
+        try {
+            EnvVars env = build.getEnvironment(listener);
+            checkIncrementalScan(build);
+            CxZip cxZip = new CxZip(build, workspace, listener);
+            List<WorkspaceShard> shards = cxZip.planWorkspaceShards(combinedFilterPattern);
+            if (shards.isEmpty()) {
+                throw new AbortException("Checkmarx Scan Failed: No files to scan");
+            }
+            jobConsoleLogger.info("The workspace is scanned in " + shards.size() + " shards");
+
+            String baseProjectName = env.expand(projectName);
+            for (WorkspaceShard shard : shards) {
+                String shardProjectName = shards.size() == 1 ? baseProjectName : baseProjectName + "-" + shard.getName();
+                long shardProjectId = cxWebService.resolveProjectId(shardProjectName, groupId);
+                if (getDescriptor().isProhibitProjectCreation() && shardProjectId == 0) {
+                    throw new AbortException("Creation of the new project " + shardProjectName + " is not authorized. Please use an existing project.");
+                }
+                // A new project of a shard starts with a full scan
+                boolean incrementalShardScan = isThisBuildIncremental && shardProjectId != 0;
+                CliScanArgs cliScanArgs = new CliScanArgsFactory(getPreset(), shardProjectName, getGroupId(), getSourceEncoding(), getComment(),
+                        incrementalShardScan, new byte[]{}, env, shardProjectId, jobConsoleLogger).create();
+                SastScan sastScan = new SastScan(cxWebService, cliScanArgs, new ProjectContract(cxWebService));
+
+                FilePath zipFile = cxZip.zipWorkspaceShard(combinedFilterPattern, shard);
+                try {
+                    shardRunIds.put(shard.getName(), sastScan.scan(getGroupId(), ScanSources.zippedFile(zipFile), incrementalShardScan));
+                } finally {
+                    zipFile.delete();
+                    jobConsoleLogger.info("Temporary file deleted");
+                }
+                jobConsoleLogger.info("Scan of shard " + shard.getName() + " submitted to project " + shardProjectName);
+            }
+            jobConsoleLogger.info("\nScan jobs submitted successfully\n");
+            submitted = true;
+
+        } catch (Zipper.ZipperException e) {
+            exposeZippingLogToJobConsole(e);
+            throw new AbortException("Checkmarx Scan Failed: " + e.getMessage());
+
+        } finally {
+            if (!submitted) {
+                cancelShardScans(cxWebService, shardRunIds);
+            }
+        }
+    }
+
+    private void cancelShardScans(CxWebService cxWebService, Map<String, CxWSResponseRunID> shardRunIds) {
+        if (shardRunIds.isEmpty()) {
+            return;
+        }
+        jobConsoleLogger.error("Cancelling the scans of the shards on the Checkmarx server...");
+        for (Map.Entry<String, CxWSResponseRunID> shardRunId : shardRunIds.entrySet()) {
+            try {
+                cxWebService.cancelScan(shardRunId.getValue().getRunId());
+            } catch (RuntimeException e) {
+                jobConsoleLogger.error("Failed to cancel the scan of shard " + shardRunId.getKey() + ": " + e.getMessage());
+            }
+        }
+        shardRunIds.clear();
+    }
+
+    /**
+     * Retrieves the XML reports of the scans of the shards and merges them
+     * into the report of the build. The report generations are all requested
+     * before waiting for the first one.
+     */
+    private void retrieveShardScanReports(CxWebService cxWebService, Map<String, Long> scanIds, File checkmarxBuildDir, File xmlReportFile)
+            throws IOException, InterruptedException {
+        Map<String, CxWSCreateReportResponse> reportResponses = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> scanId : scanIds.entrySet()) {
+            reportResponses.put(scanId.getKey(), cxWebService.generateScanReport(scanId.getValue(), CxWSReportType.XML));
+        }
+        List<File> shardReportFiles = new ArrayList<>();
+        for (Map.Entry<String, CxWSCreateReportResponse> reportResponse : reportResponses.entrySet()) {
+            File shardReportFile = new File(checkmarxBuildDir, "ScanReport-" + reportResponse.getKey() + ".xml");
+            cxWebService.retrieveScanReport(reportResponse.getValue().getID(), shardReportFile, CxWSReportType.XML);
+            shardReportFiles.add(shardReportFile);
+        }
+        ScanReportMerger.merge(shardReportFiles, xmlReportFile);
+        jobConsoleLogger.info("Scan reports of the " + shardReportFiles.size() + " shards merged into " + xmlReportFile.getName());
+        if (generatePdfReport) {
+            jobConsoleLogger.info("PDF reports are not generated for sharded scans, they are available in the project of each shard");
+        }
+    }
+
     private void exposeZippingLogToJobConsole(Zipper.ZipperException zipperException){
         jobConsoleLogger.info(zipperException.getZippingDetails().getZippingLog());
     }
 
     private boolean needToAvoidDuplicateProjectScans(CxWebService cxWebService) throws AbortException {
+        if (avoidDuplicateProjectScans && isShardedScan()) {
+            // The scans are submitted to the projects of the shards, the project of the job has none of them
+            jobConsoleLogger.info("Duplicate project scans are not avoided in sharded scan mode");
+            return false;
+        }
         return avoidDuplicateProjectScans && projectHasQueuedScans(cxWebService);
     }
 
@@ -988,16 +1241,151 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
         }
     }
 
-    private FilePath zipWorkspaceFolder(Run<?, ?> build, FilePath workspace, TaskListener listener) throws IOException, InterruptedException {
+    private void commitWorkspaceManifest(Run<?, ?> build, FilePath workspace, CxZip cxZip) {
+        try {
+            cxZip.commitWorkspaceManifest();
+            Computer computer = workspace.toComputer();
+            if (computer != null && build.getAction(WorkspaceManifestAction.class) == null) {
+                build.addAction(new WorkspaceManifestAction(computer.getName(), workspace.getRemote()));
+            }
+        } catch (Exception e) {
+            jobConsoleLogger.error("Failed to save the workspace manifest, the next scan will hash the whole workspace again", e);
+        }
+    }
+
+    private FilePath zipWorkspaceFolder(CxZip cxZip, String combinedFilterPattern) throws IOException, InterruptedException {
+        if (isDeltaIncrementalPackaging()) {
+            return cxZip.zipWorkspaceFolderWithManifest(combinedFilterPattern);
+        }
+        return cxZip.ZipWorkspaceFolder(combinedFilterPattern);
+    }
+
+    /**
+     * Zips the SAST and the OSA sources with a single walk of the workspace,
+     * the OSA zip is kept in {@code osaSourcesZip} for {@link #analyzeOpenSources}.
+     */
+    private FilePath zipWorkspaceFolderWithOsa(Run<?, ?> build, CxZip cxZip, TaskListener listener, String combinedFilterPattern,
+                                               AtomicReference<FilePath> osaSourcesZip) throws IOException, InterruptedException {
+        String osaFilterPattern = new FolderPattern(build, listener).generatePattern(includeOpenSourceFolders, excludeOpenSourceFolders);
+
+        SastAndOsaZipResult zipResult = cxZip.zipWorkspaceFolderWithOsa(combinedFilterPattern, osaFilterPattern);
+        if (zipResult.getOsaZipResult() != null) {
+            osaSourcesZip.set(zipResult.getOsaZipResult().getTempFile());
+        }
+        return zipResult.getSastZipResult().getTempFile();
+    }
+
+    private void deleteOsaSourcesZip(@Nullable FilePath osaSourcesZip) {
+        if (osaSourcesZip != null) {
+            try {
+                osaSourcesZip.delete();
+            } catch (Exception e) {
+                jobConsoleLogger.error("Fail to delete temporary file", e);
+            }
+        }
+    }
+
+    /**
+     * Submits the scan with the workspace zipped while it is uploaded.
+     *
+     * @return null if the upload failed, the sources then have to be sent
+     *         again from a temporary file
+     * @throws Zipper.ZipperException if the workspace could not be zipped, a
+     *                                temporary file would fail the same way
+     */
+    @Nullable
+    private CxWSResponseRunID streamScan(CxZip cxZip, SastScan sastScan, String combinedFilterPattern)
+            throws IOException, InterruptedException {
+        ScanSources sources = cxZip.streamWorkspaceFolder(combinedFilterPattern, isDeltaIncrementalPackaging());
+        try {
+            return sastScan.scan(getGroupId(), sources, isThisBuildIncremental);
+        } catch (CxWebService.ScanRequestRejectedException e) {
+            throw e;
+        } catch (AbortException e) {
+            jobConsoleLogger.info("Failed to upload the sources while zipping them: " + e.getMessage() + "\nRetrying with a temporary file");
+            return null;
+        }
+    }
+
+    private String generateCombinedFilterPattern(Run<?, ?> build, FilePath workspace, TaskListener listener) throws IOException, InterruptedException {
         FolderPattern folderPattern = new FolderPattern(build, listener);
         DescriptorImpl descriptor = getDescriptor();
         String excludeFolders = StringUtils.isNotEmpty(getExcludeFolders()) ? getExcludeFolders() : descriptor.getExcludeFolders();
         String filterPattern = StringUtils.isNotEmpty(getFilterPattern()) ? getFilterPattern() : descriptor.getFilterPattern();
 
-        String combinedFilterPattern = folderPattern.generatePattern(filterPattern, excludeFolders);
+        if (isExcludeBuildOutputs()) {
+            return folderPattern.generatePattern(filterPattern, excludeFolders, workspace);
+        }
+        return folderPattern.generatePattern(filterPattern, excludeFolders);
+    }
 
-        CxZip cxZip = new CxZip(build, workspace, listener);
-        return cxZip.ZipWorkspaceFolder(combinedFilterPattern);
+    /**
+     * Fingerprint of every setting that changes the results of a scan of the
+     * same sources. Thresholds are not part of it, they are evaluated again
+     * on reused results.
+     */
+    private String scanSettingsFingerprint(Run<?, ?> build, TaskListener listener, String serverUrlToUse, String combinedFilterPattern) throws IOException, InterruptedException {
+        StringBuilder sb = new StringBuilder();
+        sb.append(CxConfig.version()).append('\n');
+        sb.append(serverUrlToUse).append('\n');
+        sb.append(build.getEnvironment(listener).expand(projectName)).append('\n');
+        sb.append(getGroupId()).append('\n');
+        sb.append(getPreset()).append('\n');
+        sb.append(getSourceEncoding()).append('\n');
+        sb.append(combinedFilterPattern).append('\n');
+        sb.append(isGeneratePdfReport()).append('\n');
+        sb.append(isOsaEnabled()).append('\n');
+        if (isOsaEnabled()) {
+            sb.append(getIncludeOpenSourceFolders()).append('\n');
+            sb.append(getExcludeOpenSourceFolders()).append('\n');
+        }
+        return DigestUtils.sha1Hex(sb.toString());
+    }
+
+    /**
+     * Returns the results of the last scan of the project if they were taken
+     * from a workspace and with settings identical to the current ones.
+     *
+     * @param osaWorkspaceFingerprint fingerprint of the OSA sources, null
+     *                                when OSA is not enabled
+     */
+    @Nullable
+    private CxScanResult findReusableScanResult(Run<?, ?> build, String workspaceFingerprint, @Nullable String osaWorkspaceFingerprint,
+                                                String scanSettingsFingerprint) {
+        for (Run<?, ?> previousBuild = build.getPreviousBuild(); previousBuild != null; previousBuild = previousBuild.getPreviousBuild()) {
+            CxScanResult previousResult = previousBuild.getAction(CxScanResult.class);
+            if (previousResult == null || previousResult.isScanRanAsynchronous() || !previousResult.isResultIsValid()
+                    || previousResult.getProjectId() != projectId) {
+                continue;
+            }
+            if (!workspaceFingerprint.equals(previousResult.getWorkspaceFingerprint())) {
+                jobConsoleLogger.info("The workspace changed since build #" + previousBuild.getNumber() + ", submitting a new scan");
+                return null;
+            }
+            // Also not reused when the previous build did not fingerprint its OSA sources
+            if (osaWorkspaceFingerprint != null && !osaWorkspaceFingerprint.equals(previousResult.getOsaWorkspaceFingerprint())) {
+                jobConsoleLogger.info("The open source dependencies changed since build #" + previousBuild.getNumber() + ", submitting a new scan");
+                return null;
+            }
+            if (!scanSettingsFingerprint.equals(previousResult.getScanSettingsFingerprint())) {
+                jobConsoleLogger.info("The scan settings changed since build #" + previousBuild.getNumber() + ", submitting a new scan");
+                return null;
+            }
+            if (osaEnabled && previousResult.getOsaScanResult() == null
+                    || !new File(new File(previousBuild.getRootDir(), "checkmarx"), "ScanReport.xml").isFile()) {
+                jobConsoleLogger.info("The scan reports of build #" + previousBuild.getNumber() + " are not available, submitting a new scan");
+                return null;
+            }
+            return previousResult;
+        }
+        return null;
+    }
+
+    private void reuseScanReports(CxScanResult reusedScanResult, File checkmarxBuildDir) throws IOException {
+        int buildNumber = reusedScanResult.owner.getNumber();
+        jobConsoleLogger.info("\nThe workspace and the scan settings did not change since build #" + buildNumber
+                + ", reusing its scan results. No scan was submitted.\n");
+        FileUtils.copyDirectory(new File(reusedScanResult.owner.getRootDir(), "checkmarx"), checkmarxBuildDir);
     }
 
     private boolean projectHasQueuedScans(final CxWebService cxWebService) throws AbortException {
@@ -1089,6 +1477,8 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
         private boolean prohibitProjectCreation;
         private boolean hideResults;
         private boolean enableCertificateValidation;
+        private boolean uploadFromAgent;
+        private boolean streamSources;
         @Nullable
         private String excludeFolders;
         @Nullable
@@ -1193,6 +1583,22 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
             this.enableCertificateValidation = enableCertificateValidation;
         }
 
+        public boolean isUploadFromAgent() {
+            return uploadFromAgent;
+        }
+
+        public void setUploadFromAgent(boolean uploadFromAgent) {
+            this.uploadFromAgent = uploadFromAgent;
+        }
+
+        public boolean isStreamSources() {
+            return streamSources;
+        }
+
+        public void setStreamSources(boolean streamSources) {
+            this.streamSources = streamSources;
+        }
+
         @Nullable
         public String getExcludeFolders() {
             return excludeFolders;
@@ -1355,6 +1761,8 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
 
             } catch (Exception e) {
                 return FormValidation.error(e.getMessage());
+            } finally {
+                cxWebService.logout();
             }
         }
 
@@ -1389,6 +1797,8 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
 
             } catch (Exception e) {
                 return FormValidation.error(e.getMessage());
+            } finally {
+                cxWebService.logout();
             }
         }
 
@@ -1401,7 +1811,7 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
                                                        String serverUrl,
                                                        String username,
                                                        String password)
-                throws AbortException, MalformedURLException {
+                throws AbortException, MalformedURLException, InterruptedException {
             String serverUrlToUse = !useOwnServerCredentials ? serverUrl : getServerUrl();
             String usernameToUse = !useOwnServerCredentials ? username : getUsername();
             String passwordToUse = !useOwnServerCredentials ? getPasswordPlainText(password) : getPasswordPlainText();
@@ -1422,8 +1832,9 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
             // timestamp is not used in code, it is one of the arguments to invalidate Internet Explorer cache
             ComboBoxModel projectNames = new ComboBoxModel();
 
+            CxWebService cxWebService = null;
             try {
-                final CxWebService cxWebService = prepareLoggedInWebservice(useOwnServerCredentials, serverUrl, username, getPasswordPlainText(password));
+                cxWebService = prepareLoggedInWebservice(useOwnServerCredentials, serverUrl, username, getPasswordPlainText(password));
 
                 List<ProjectDisplayData> projectsDisplayData = cxWebService.getProjectsDisplayData();
                 for (ProjectDisplayData pd : projectsDisplayData) {
@@ -1436,6 +1847,10 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
             } catch (Exception e) {
                 STATIC_LOGGER.info("Projects list: empty");
                 return projectNames; // Return empty list of project names
+            } finally {
+                if (cxWebService != null) {
+                    cxWebService.logout();
+                }
             }
         }
 
@@ -1449,8 +1864,9 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
                                                  @QueryParameter final String groupId, @QueryParameter final String timestamp) {
             // timestamp is not used in code, it is one of the arguments to invalidate Internet Explorer cache
 
+            CxWebService cxWebService = null;
             try {
-                final CxWebService cxWebService = prepareLoggedInWebservice(useOwnServerCredentials, serverUrl, username, getPasswordPlainText(password));
+                cxWebService = prepareLoggedInWebservice(useOwnServerCredentials, serverUrl, username, getPasswordPlainText(password));
 
                 if (msGuid.matcher(groupId).matches()) {
                     String resolvedProjectName = projectName;
@@ -1487,6 +1903,10 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
             } catch (Exception e) {
                 STATIC_LOGGER.error("Couldn't validate project name with Checkmarx sever:\n" + e.getLocalizedMessage(), e);
                 return FormValidation.warning("Can't reach server to validate project name");
+            } finally {
+                if (cxWebService != null) {
+                    cxWebService.logout();
+                }
             }
         }
 
@@ -1509,8 +1929,9 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
                                               @QueryParameter final String username, @QueryParameter final String password, @QueryParameter final String timestamp) {
             // timestamp is not used in code, it is one of the arguments to invalidate Internet Explorer cache
             ListBoxModel listBoxModel = new ListBoxModel();
+            CxWebService cxWebService = null;
             try {
-                final CxWebService cxWebService = prepareLoggedInWebservice(useOwnServerCredentials, serverUrl, username, getPasswordPlainText(password));
+                cxWebService = prepareLoggedInWebservice(useOwnServerCredentials, serverUrl, username, getPasswordPlainText(password));
 
                 final List<Preset> presets = cxWebService.getPresets();
                 for (Preset p : presets) {
@@ -1525,6 +1946,10 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
                 String message = "Provide Checkmarx server credentials to see presets list";
                 listBoxModel.add(new ListBoxModel.Option(message, message));
                 return listBoxModel; // Return empty list of project names
+            } finally {
+                if (cxWebService != null) {
+                    cxWebService.logout();
+                }
             }
         }
 
@@ -1550,8 +1975,9 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
                                                       @QueryParameter final String username, @QueryParameter final String password, @QueryParameter final String timestamp) {
             // timestamp is not used in code, it is one of the arguments to invalidate Internet Explorer cache
             ListBoxModel listBoxModel = new ListBoxModel();
+            CxWebService cxWebService = null;
             try {
-                final CxWebService cxWebService = prepareLoggedInWebservice(useOwnServerCredentials, serverUrl, username, getPasswordPlainText(password));
+                cxWebService = prepareLoggedInWebservice(useOwnServerCredentials, serverUrl, username, getPasswordPlainText(password));
 
                 final List<ConfigurationSet> sourceEncodings = cxWebService.getSourceEncodings();
                 for (ConfigurationSet cs : sourceEncodings) {
@@ -1563,6 +1989,10 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
                 STATIC_LOGGER.info("Source encodings list: empty");
                 String message = "Provide Checkmarx server credentials to see source encodings list";
                 listBoxModel.add(new ListBoxModel.Option(message, message));
+            } finally {
+                if (cxWebService != null) {
+                    cxWebService.logout();
+                }
             }
 
             return listBoxModel;
@@ -1579,8 +2009,9 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
                                                @QueryParameter final String username, @QueryParameter final String password, @QueryParameter final String timestamp) {
             // timestamp is not used in code, it is one of the arguments to invalidate Internet Explorer cache
             ListBoxModel listBoxModel = new ListBoxModel();
+            CxWebService cxWebService = null;
             try {
-                final CxWebService cxWebService = prepareLoggedInWebservice(useOwnServerCredentials, serverUrl, username, getPasswordPlainText(password));
+                cxWebService = prepareLoggedInWebservice(useOwnServerCredentials, serverUrl, username, getPasswordPlainText(password));
                 final List<Group> groups = cxWebService.getAssociatedGroups();
                 for (Group group : groups) {
                     listBoxModel.add(new ListBoxModel.Option(group.getGroupName(), group.getID()));
@@ -1594,6 +2025,10 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
                 String message = "Provide Checkmarx server credentials to see teams list";
                 listBoxModel.add(new ListBoxModel.Option(message, message));
                 return listBoxModel; // Return empty list of project names
+            } finally {
+                if (cxWebService != null) {
+                    cxWebService.logout();
+                }
             }
 
         }
@@ -88,6 +88,15 @@ public class CxScanResult implements Action {
     @Nullable
     private Integer osaLowThreshold;
 
+    //Skip unchanged scans
+    @Nullable
+    private String workspaceFingerprint;
+    @Nullable
+    private String osaWorkspaceFingerprint;
+    @Nullable
+    private String scanSettingsFingerprint;
+    private int reusedFromBuildNumber;
+
 
     public CxScanResult(final Run owner, String serverUrl, long projectId, boolean scanRanAsynchronous) {
         this.projectId = projectId;
@@ -408,6 +417,51 @@ public class CxScanResult implements Action {
         this.osaScanResult = osaScanResult;
     }
 
+    public void setFingerprints(@Nullable String workspaceFingerprint, @Nullable String scanSettingsFingerprint) {
+        this.workspaceFingerprint = workspaceFingerprint;
+        this.scanSettingsFingerprint = scanSettingsFingerprint;
+    }
+
+    @Nullable
+    public String getWorkspaceFingerprint() {
+        return workspaceFingerprint;
+    }
+
+    public void setOsaWorkspaceFingerprint(@Nullable String osaWorkspaceFingerprint) {
+        this.osaWorkspaceFingerprint = osaWorkspaceFingerprint;
+    }
+
+    /**
+     * @return fingerprint of the workspace files matching the OSA filter
+     *         pattern, null when OSA was not enabled
+     */
+    @Nullable
+    public String getOsaWorkspaceFingerprint() {
+        return osaWorkspaceFingerprint;
+    }
+
+    @Nullable
+    public String getScanSettingsFingerprint() {
+        return scanSettingsFingerprint;
+    }
+
+    /**
+     * @return true if no scan was submitted for this build because the
+     *         workspace and the scan settings did not change since the build
+     *         whose results were reused
+     */
+    public boolean isScanReused() {
+        return reusedFromBuildNumber > 0;
+    }
+
+    public int getReusedFromBuildNumber() {
+        return reusedFromBuildNumber;
+    }
+
+    public void setReusedFromBuildNumber(int reusedFromBuildNumber) {
+        this.reusedFromBuildNumber = reusedFromBuildNumber;
+    }
+
     private class ResultsParseHandler extends DefaultHandler {
 
         @Nullable
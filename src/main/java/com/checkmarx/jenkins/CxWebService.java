@@ -1,6 +1,17 @@
 package com.checkmarx.jenkins;
 
+import com.checkmarx.jenkins.filesystem.zip.ScanSources;
+import com.checkmarx.jenkins.filesystem.zip.Zipper;
 import com.checkmarx.jenkins.logger.CxPluginLogger;
+import com.checkmarx.jenkins.web.client.ChunkedUploadNotSupportedException;
+import com.checkmarx.jenkins.web.client.PollingSchedule;
+import com.checkmarx.jenkins.web.client.ScanStatusMultiplexer;
+import com.checkmarx.jenkins.web.client.ServerClientRegistry;
+import com.checkmarx.jenkins.web.client.SessionPool;
+import com.checkmarx.jenkins.web.client.SoapScanStreamingCallable;
+import com.checkmarx.jenkins.web.client.SoapScanUpload;
+import com.checkmarx.jenkins.web.client.SoapScanUploadCallable;
+import com.checkmarx.jenkins.web.client.UploadInterruptedException;
 import com.checkmarx.jenkins.xmlresponseparser.CreateAndRunProjectXmlResponseParser;
 import com.checkmarx.jenkins.xmlresponseparser.RunIncrementalScanXmlResponseParser;
 import com.checkmarx.jenkins.xmlresponseparser.RunScanAndAddToProjectXmlResponseParser;
@@ -12,6 +23,7 @@ import com.checkmarx.ws.CxWSResolver.CxWSResolverSoap;
 import com.checkmarx.ws.CxWSResolver.CxWSResponseDiscovery;
 import hudson.AbortException;
 import hudson.FilePath;
+import hudson.model.TaskListener;
 import jenkins.model.Jenkins;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.tuple.Pair;
@@ -30,8 +42,15 @@ import java.net.HttpRetryException;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static ch.lambdaj.Lambda.*;
 
@@ -44,65 +63,134 @@ import static ch.lambdaj.Lambda.*;
 public class CxWebService {
 
     private transient CxPluginLogger logger;
+    @Nullable
+    private transient TaskListener listener;
 
     private static final String CHECKMARX_SERVER_WAS_NOT_FOUND_ON_THE_SPECIFIED_ADRESS = "Checkmarx server was not found on the specified adress";
     private static final int WEBSERVICE_API_VERSION = 1;
     private static final String CXWSRESOLVER_PATH = "/cxwebinterface/cxwsresolver.asmx";
+    // WSDLs the clients were generated from, bundled with the plugin
+    private static final String CXWSRESOLVER_WSDL = "/com/checkmarx/jenkins/CxWebService/cxwsresolver.wsdl";
+    private static final String CX_JENKINS_WEB_SERVICE_WSDL = "/com/checkmarx/jenkins/CxWebService/CxJenkinsWebService.wsdl";
     private static final int LCID = 1033; // English
     private static final int MILISECONDS_IN_MINUTE = 1000 * 60;
 
     private static final int XML_WRITING_BUFFER_IN_BYTES = 52428800; // 50 MB
-    private String sessionId;
+
+    // Web service urls of the servers which refused a chunked upload
+    private static final Set<String> CHUNKED_UPLOAD_NOT_SUPPORTED = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    // Logs the connections to the servers, shared by all the builds
+    private static final CxPluginLogger CONNECTION_LOGGER = new CxPluginLogger();
+
+    private static final ServerClientRegistry<SoapClient> SOAP_CLIENTS = new ServerClientRegistry<>(
+            new ServerClientRegistry.Connector<SoapClient>() {
+                @Override
+                public SoapClient connect(String serverUrl) throws IOException {
+                    return new SoapClient(serverUrl);
+                }
+            }, CxConfig.soapClientTimeToLiveMillis());
+
+    // Sessions shared by the builds and form validations logged in with the same credentials
+    private static final SessionPool SESSIONS = new SessionPool(CxConfig.maxSessionsPerServer(), CxConfig.sessionWaitMillis(),
+            CxConfig.sessionRenewalMillis());
+
+    // Status of the scans of the builds waiting on a server with the same user, polled together
+    private static final Map<String, ScanStatusMultiplexer<CxWSResponseScanStatus>> SCAN_STATUSES = new HashMap<>();
+    private static final long SCAN_STATUS_INTERVAL_MILLIS = PollingSchedule.Phase.SCAN.minIntervalMillis();
+
+    // Services parsed from the bundled WSDLs, ports of any server are created from them
+    private static CxWSResolver bundledCxWSResolver;
+    private static CxJenkinsWebService bundledCxJenkinsWebService;
+
+    private SessionPool.Session session;
+    private String username;
     private CxJenkinsWebServiceSoap cxJenkinsWebServiceSoap;
     private final URL webServiceUrl;
+    private final String serverUrl;
+
+    /**
+     * @param listener console of the build, also passed to the uploads made
+     *                 from the node running the job
+     */
+    public CxWebService(@NotNull final String serverUrl, TaskListener listener) throws MalformedURLException, AbortException {
+        this(serverUrl, new CxPluginLogger(listener));
+        this.listener = listener;
+    }
 
     public CxWebService(@NotNull final String serverUrl, CxPluginLogger cxPluginLogger) throws MalformedURLException, AbortException {
         this.logger = cxPluginLogger;
+        this.serverUrl = serverUrl;
 
         disableCertificateValidation();
 
         validateServerUrl(serverUrl);
 
-        CxWSResolverSoap cxWSResolverSoap = getCxWSResolverSoap(serverUrl);
-        webServiceUrl = getWebServiceUrl(cxWSResolverSoap);
+        SoapClient soapClient;
+        try {
+            soapClient = SOAP_CLIENTS.get(serverUrl);
+        } catch (AbortException | MalformedURLException e) {
+            throw e;
+        } catch (IOException e) {
+            logger.error("Failed to connect to the Checkmarx server at: " + serverUrl, e);
+            throw new AbortException("Failed to connect to the Checkmarx server at: " + serverUrl);
+        }
+        webServiceUrl = soapClient.webServiceUrl;
+        cxJenkinsWebServiceSoap = soapClient.cxJenkinsWebServiceSoap;
+        logger.info("Webservice url: " + webServiceUrl);
+    }
+
+    /**
+     * Resolved web service url and port of a server, shared by the builds and
+     * form validations of the controller. The port is only configured once,
+     * when it is created, so it is safe to call from several threads.
+     */
+    private static class SoapClient {
+        private final URL webServiceUrl;
+        private final CxJenkinsWebServiceSoap cxJenkinsWebServiceSoap;
+
+        SoapClient(String serverUrl) throws MalformedURLException, AbortException {
+            CxWSResolverSoap cxWSResolverSoap = getCxWSResolverSoap(serverUrl);
+            webServiceUrl = getWebServiceUrl(cxWSResolverSoap);
 
-        CxJenkinsWebService cxJenkinsWebService = new CxJenkinsWebService(webServiceUrl);
-        cxJenkinsWebServiceSoap = getJenkinsWebServiceSoap(cxJenkinsWebService);
+            CxJenkinsWebService cxJenkinsWebService = getJenkinsWebService(webServiceUrl);
+            cxJenkinsWebServiceSoap = getJenkinsWebServiceSoap(cxJenkinsWebService, webServiceUrl);
+        }
     }
 
-    private CxJenkinsWebServiceSoap getJenkinsWebServiceSoap(CxJenkinsWebService cxJenkinsWebService) {
+    static CxJenkinsWebServiceSoap getJenkinsWebServiceSoap(CxJenkinsWebService cxJenkinsWebService, URL webServiceUrl) {
         CxJenkinsWebServiceSoap jenkinsWebServiceSoap = cxJenkinsWebService.getCxJenkinsWebServiceSoap();
+        setEndpointAddress((BindingProvider) jenkinsWebServiceSoap, webServiceUrl);
         setClientTimeout((BindingProvider) jenkinsWebServiceSoap, CxConfig.getRequestTimeOutDuration());
         return jenkinsWebServiceSoap;
     }
 
-    private URL getWebServiceUrl(CxWSResolverSoap cxWSResolverSoap) throws AbortException, MalformedURLException {
+    private static URL getWebServiceUrl(CxWSResolverSoap cxWSResolverSoap) throws AbortException, MalformedURLException {
         CxWSResponseDiscovery cxWSResponseDiscovery = cxWSResolverSoap.getWebServiceUrl(CxClientType.JENKINS,
                 WEBSERVICE_API_VERSION);
         if (!cxWSResponseDiscovery.isIsSuccesfull()) {
             String message = "Failed to resolve Checkmarx webservice url: " + cxWSResponseDiscovery.getErrorMessage();
-            logger.error(message);
+            CONNECTION_LOGGER.error(message);
             throw new AbortException(message);
         }
-        URL webServiceUrl = new URL(cxWSResponseDiscovery.getServiceURL());
-        logger.info("Webservice url: " + webServiceUrl);
-        return webServiceUrl;
+        return new URL(cxWSResponseDiscovery.getServiceURL());
     }
 
-    private CxWSResolverSoap getCxWSResolverSoap(@NotNull String serverUrl) throws MalformedURLException, AbortException {
+    private static CxWSResolverSoap getCxWSResolverSoap(@NotNull String serverUrl) throws MalformedURLException, AbortException {
         URL resolverUrl = new URL(serverUrl + CXWSRESOLVER_PATH);
 
         checkServerConnectivity(resolverUrl);
 
-       logger.info("Resolver url: " + resolverUrl);
+        CONNECTION_LOGGER.info("Resolver url: " + resolverUrl);
         CxWSResolver cxWSResolver;
         try {
-            cxWSResolver = new CxWSResolver(resolverUrl);
+            cxWSResolver = getCxWSResolver(resolverUrl);
         } catch (WebServiceException e) {
-            logger.error("Failed to resolve Checkmarx webservice url with resolver at: " + resolverUrl, e);
+            CONNECTION_LOGGER.error("Failed to resolve Checkmarx webservice url with resolver at: " + resolverUrl, e);
             throw new AbortException("Checkmarx server was not found on url: " + serverUrl);
         }
         CxWSResolverSoap resolverSoap = cxWSResolver.getCxWSResolverSoap();
+        setEndpointAddress((BindingProvider) resolverSoap, resolverUrl);
         setClientTimeout((BindingProvider) resolverSoap, CxConfig.getRequestTimeOutDuration());
         return resolverSoap;
     }
@@ -127,7 +215,7 @@ public class CxWebService {
         }
     }
 
-    private void checkServerConnectivity(URL url) throws AbortException {
+    private static void checkServerConnectivity(URL url) throws AbortException {
         int seconds = CxConfig.getRequestTimeOutDuration();
         int milliseconds = seconds * 1000;
 
@@ -141,13 +229,47 @@ public class CxWebService {
                 throw new AbortException(CHECKMARX_SERVER_WAS_NOT_FOUND_ON_THE_SPECIFIED_ADRESS);
             }
         } catch (IOException e) {
-            logger.error(CHECKMARX_SERVER_WAS_NOT_FOUND_ON_THE_SPECIFIED_ADRESS, e);
+            CONNECTION_LOGGER.error(CHECKMARX_SERVER_WAS_NOT_FOUND_ON_THE_SPECIFIED_ADRESS, e);
             throw new AbortException(CHECKMARX_SERVER_WAS_NOT_FOUND_ON_THE_SPECIFIED_ADRESS);
         }
     }
 
-    private void setClientTimeout(BindingProvider provider, int seconds) {
-        logger.info("Setting connection timeout to " + seconds + " seconds");
+    /**
+     * The services are parsed once from the bundled WSDLs, the WSDL of the
+     * server is only downloaded when they are missing from the plugin.
+     */
+    static synchronized CxWSResolver getCxWSResolver(URL resolverUrl) {
+        URL bundledWsdl = CxWebService.class.getResource(CXWSRESOLVER_WSDL);
+        if (bundledWsdl == null) {
+            return new CxWSResolver(resolverUrl);
+        }
+        if (bundledCxWSResolver == null) {
+            bundledCxWSResolver = new CxWSResolver(bundledWsdl);
+        }
+        return bundledCxWSResolver;
+    }
+
+    static synchronized CxJenkinsWebService getJenkinsWebService(URL webServiceUrl) {
+        URL bundledWsdl = CxWebService.class.getResource(CX_JENKINS_WEB_SERVICE_WSDL);
+        if (bundledWsdl == null) {
+            return new CxJenkinsWebService(webServiceUrl);
+        }
+        if (bundledCxJenkinsWebService == null) {
+            bundledCxJenkinsWebService = new CxJenkinsWebService(bundledWsdl);
+        }
+        return bundledCxJenkinsWebService;
+    }
+
+    /**
+     * The ports are built from the bundled WSDLs, without downloading the
+     * WSDL of the server; only their endpoint is the one of the server.
+     */
+    private static void setEndpointAddress(BindingProvider provider, URL endpoint) {
+        provider.getRequestContext().put(BindingProvider.ENDPOINT_ADDRESS_PROPERTY, endpoint.toString());
+    }
+
+    private static void setClientTimeout(BindingProvider provider, int seconds) {
+        CONNECTION_LOGGER.info("Setting connection timeout to " + seconds + " seconds");
         int milliseconds = seconds * 1000;
         Map<String, Object> requestContext = provider.getRequestContext();
         // see https://java.net/jira/browse/JAX_WS-1166
@@ -160,33 +282,89 @@ public class CxWebService {
         requestContext.put("timeout", milliseconds); // IBM
     }
 
-    public void login(@Nullable String username, @Nullable String password) throws AbortException {
-        sessionId = null;
+    public void login(@Nullable String username, @Nullable String password) throws AbortException, InterruptedException {
+        logout();
+        this.username = username;
         Credentials credentials = new Credentials();
         credentials.setUser(username);
         credentials.setPass(password);
-        CxWSResponseLoginData cxWSResponseLoginData = cxJenkinsWebServiceSoap.login(credentials, LCID);
-
-        if (!cxWSResponseLoginData.isIsSuccesfull()) {
+        try {
+            session = SESSIONS.acquire(serverUrl, username, password, new SoapLogin(serverUrl, cxJenkinsWebServiceSoap, credentials));
+        } catch (AbortException e) {
             logger.error("Login to Checkmarx server failed:");
-            logger.error(cxWSResponseLoginData.getErrorMessage());
-            throw new AbortException(cxWSResponseLoginData.getErrorMessage());
+            logger.error(e.getMessage());
+            throw e;
+        } catch (IOException e) {
+            logger.error("Login to Checkmarx server failed: " + e.getMessage(), e);
+            throw new AbortException(e.getMessage());
         }
+        logger.info("Login successful");
+    }
 
-        sessionId = cxWSResponseLoginData.getSessionId();
-        logger.info("Login successful, sessionId: " + sessionId);
+    /**
+     * Stops using the session, it is kept for the next builds and form
+     * validations logged in with the same credentials.
+     */
+    public void logout() {
+        if (session != null) {
+            session.release();
+            session = null;
+        }
     }
 
-    private CxWSResponseScanStatus getScanStatus(CxWSResponseRunID cxWSResponseRunID) throws AbortException {
-        assert sessionId != null : "Trying to get scan status before login";
-        CxWSResponseScanStatus cxWSResponseScanStatus = cxJenkinsWebServiceSoap.getStatusOfSingleScan(sessionId,
-                cxWSResponseRunID.getRunId());
-        if (!cxWSResponseScanStatus.isIsSuccesfull()) {
-            String message = "Error received from Checkmarx server: " + cxWSResponseScanStatus.getErrorMessage();
-            logger.error(message);
-            throw new AbortException(message);
+    /**
+     * Makes a call with the session, and once again with a new session when
+     * the server rejected it.
+     */
+    private <T> T callWithSession(SessionCall<T> call) {
+        return callWithSession(session, call, logger);
+    }
+
+    private static <T> T callWithSession(SessionPool.Session session, SessionCall<T> call, CxPluginLogger logger) {
+        String usedSessionId = session.getId();
+        try {
+            T response = call.call(usedSessionId);
+            if (!(response instanceof CxWSBasicRepsonse) || ((CxWSBasicRepsonse) response).isIsSuccesfull()
+                    || !SessionPool.isRejection(((CxWSBasicRepsonse) response).getErrorMessage())) {
+                return response;
+            }
+        } catch (WebServiceException e) {
+            if (!SessionPool.isRejection(e.getMessage())) {
+                throw e;
+            }
+        }
+        logger.info("Session was rejected by the Checkmarx server, trying to re-login");
+        try {
+            return call.call(session.renew(usedSessionId));
+        } catch (IOException e) {
+            throw new WebServiceException("Failed to login again to Checkmarx server: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Waits for the next status of the scans, polled with the scans of the
+     * other builds waiting on the server.
+     */
+    private Map<String, CxWSResponseScanStatus> nextScanStatuses(Collection<String> runIds) throws AbortException, InterruptedException {
+        assert session != null : "Trying to get scan status before login";
+        ScanStatusMultiplexer<CxWSResponseScanStatus> scanStatuses;
+        synchronized (SCAN_STATUSES) {
+            String key = serverUrl + "\n" + username;
+            scanStatuses = SCAN_STATUSES.get(key);
+            if (scanStatuses == null) {
+                scanStatuses = new ScanStatusMultiplexer<>(SCAN_STATUS_INTERVAL_MILLIS);
+                SCAN_STATUSES.put(key, scanStatuses);
+            }
+        }
+        try {
+            return scanStatuses.next(runIds, new SoapScanStatusSource(session, cxJenkinsWebServiceSoap));
+        } catch (AbortException e) {
+            logger.error(e.getMessage());
+            throw e;
+        } catch (IOException e) {
+            logger.error(e.getMessage(), e);
+            throw new AbortException(e.getMessage());
         }
-        return cxWSResponseScanStatus;
     }
 
     /**
@@ -209,28 +387,38 @@ public class CxWebService {
         return newMsg;
     }
 
-    public long trackScanProgress(final CxWSResponseRunID cxWSResponseRunID, final String username,
-                                  final String password, final boolean scanTimeOutEnabled, final long scanTimeoutDuration)
+    public long trackScanProgress(final CxWSResponseRunID cxWSResponseRunID, final boolean scanTimeOutEnabled,
+                                  final long scanTimeoutDuration)
             throws AbortException, InterruptedException {
-        assert sessionId != null : "Trying to track scan progress before login";
+        assert session != null : "Trying to track scan progress before login";
 
         final long jobStartTime = System.currentTimeMillis();
         int retryAttempts = CxConfig.getServerCallRetryNumber();
 
         boolean locReported = false;
         String previousMessage = "";
+        String previousProgress = "";
+        PollingSchedule schedule = new PollingSchedule(PollingSchedule.Phase.SCAN);
+        long delay = 0;
         while (true) {
             String newMessage = "";
             try {
-                Thread.sleep(10L * 1000);
-
                 if (scanTimeOutEnabled
                         && jobStartTime + scanTimeoutDuration * MILISECONDS_IN_MINUTE < System.currentTimeMillis()) {
                     logger.info("Scan duration exceeded timeout threshold");
+                    logger.info(schedule.summary());
                     return 0;
                 }
 
-                CxWSResponseScanStatus status = this.getScanStatus(cxWSResponseRunID);
+                // The next round of the scan statuses is at most one minimum interval away
+                Thread.sleep(Math.max(0, delay - schedule.getMinIntervalMillis()));
+                String runId = cxWSResponseRunID.getRunId();
+                CxWSResponseScanStatus status = nextScanStatuses(Collections.singleton(runId)).get(runId);
+                String progress = status.getCurrentStatus() + " " + status.getQueuePosition() + " " + status.getTotalPercent()
+                        + " " + status.getCurrentStagePercent();
+                delay = schedule.nextDelay(!progress.equals(previousProgress), status.getTotalPercent(),
+                        status.getCurrentStatus() == CurrentStatusEnum.QUEUED ? status.getQueuePosition() : 0);
+                previousProgress = progress;
 
                 switch (status.getCurrentStatus()) {
                     // In progress states
@@ -269,6 +457,7 @@ public class CxWebService {
                     case FINISHED:
                         logger.info("Scan Finished Successfully -  RunID: " + status.getRunId() + " ScanID:"
                                 + status.getScanId());
+                        logger.info(schedule.summary());
                         return status.getScanId();
 
                     case FAILED:
@@ -278,13 +467,12 @@ public class CxWebService {
                         String message = "Scan " + status.getStageName() + " -  RunID: " + status.getRunId() + " ScanID: "
                                 + status.getScanId() + " Server scan status: " + status.getStageMessage();
                         logger.info(message);
+                        logger.info(schedule.summary());
                         throw new AbortException(message);
                 }
 
             } catch (AbortException | WebServiceException e) {
-                if (e.getMessage().contains("Unauthorized") || e.getMessage().contains("ReConnect")) {
-                    RestoreSession(username, password);
-                } else if (retryAttempts > 0) {
+                if (retryAttempts > 0) {
                     retryAttempts--;
                 } else {
                     throw e;
@@ -293,15 +481,123 @@ public class CxWebService {
         }
     }
 
-    private void RestoreSession(String username, String password) throws AbortException {
-        logger.info("Session was rejected by the Checkmarx server, trying to re-login");
-        this.login(username, password);
+    /**
+     * Tracks several scans at once, like {@link #trackScanProgress} tracks a
+     * single one. The status of every scan still running is asked on each
+     * round, the progress messages are prefixed with the name of the scan.
+     *
+     * @param runIds scans by name
+     * @return ids of the finished scans by name, null if the timeout was
+     *         reached first
+     * @throws AbortException as soon as one of the scans failed
+     */
+    @Nullable
+    public Map<String, Long> trackScansProgress(final Map<String, CxWSResponseRunID> runIds, final boolean scanTimeOutEnabled,
+                                                final long scanTimeoutDuration)
+            throws AbortException, InterruptedException {
+        assert session != null : "Trying to track scans progress before login";
+
+        final long jobStartTime = System.currentTimeMillis();
+        int retryAttempts = CxConfig.getServerCallRetryNumber();
+
+        Map<String, Long> scanIds = new LinkedHashMap<>();
+        Map<String, String> previousMessages = new HashMap<>();
+        PollingSchedule schedule = new PollingSchedule(PollingSchedule.Phase.SCAN);
+        long delay = 0;
+        while (scanIds.size() < runIds.size()) {
+            if (scanTimeOutEnabled
+                    && jobStartTime + scanTimeoutDuration * MILISECONDS_IN_MINUTE < System.currentTimeMillis()) {
+                logger.info("Scans duration exceeded timeout threshold, " + scanIds.size() + " of " + runIds.size() + " scans finished");
+                logger.info(schedule.summary());
+                return null;
+            }
+
+            List<String> pendingRunIds = new ArrayList<>();
+            for (Map.Entry<String, CxWSResponseRunID> runId : runIds.entrySet()) {
+                if (!scanIds.containsKey(runId.getKey())) {
+                    pendingRunIds.add(runId.getValue().getRunId());
+                }
+            }
+            Map<String, CxWSResponseScanStatus> statuses;
+            try {
+                Thread.sleep(Math.max(0, delay - schedule.getMinIntervalMillis()));
+                statuses = nextScanStatuses(pendingRunIds);
+            } catch (AbortException | WebServiceException e) {
+                if (retryAttempts > 0) {
+                    retryAttempts--;
+                } else {
+                    throw e;
+                }
+                continue;
+            }
+
+            // Polled as often as the scan closest to completion needs
+            boolean progressed = false;
+            int totalPercent = 0;
+            int queuePosition = Integer.MAX_VALUE;
+            AbortException failure = null;
+            for (Map.Entry<String, CxWSResponseRunID> runId : runIds.entrySet()) {
+                String name = runId.getKey();
+                if (scanIds.containsKey(name)) {
+                    continue;
+                }
+                CxWSResponseScanStatus status = statuses.get(runId.getValue().getRunId());
+                totalPercent = Math.max(totalPercent, status.getTotalPercent());
+                queuePosition = Math.min(queuePosition, status.getCurrentStatus() == CurrentStatusEnum.QUEUED ? status.getQueuePosition() : 0);
+
+                String newMessage;
+                switch (status.getCurrentStatus()) {
+                    case FINISHED:
+                        logger.info("[" + name + "] Scan Finished Successfully -  RunID: " + status.getRunId() + " ScanID:"
+                                + status.getScanId());
+                        scanIds.put(name, status.getScanId());
+                        progressed = true;
+                        continue;
+
+                    case FAILED:
+                    case DELETED:
+                    case UNKNOWN:
+                    case CANCELED:
+                        String message = "[" + name + "] Scan " + status.getStageName() + " -  RunID: " + status.getRunId()
+                                + " ScanID: " + status.getScanId() + " Server scan status: " + status.getStageMessage();
+                        logger.info(message);
+                        if (failure == null) {
+                            failure = new AbortException(message);
+                        }
+                        continue;
+
+                    case QUEUED:
+                        newMessage = "Scan job queued at position: " + status.getQueuePosition();
+                        break;
+
+                    case WORKING:
+                        newMessage = "Scanning: " + status.getStageMessage() + " (Total progress: " + status.getTotalPercent() + "%)";
+                        break;
+
+                    default:
+                        newMessage = "Scan job " + status.getCurrentStatus().toString().toLowerCase().replace('_', ' ');
+                        break;
+                }
+                if (!newMessage.equals(previousMessages.get(name))) {
+                    logger.info("[" + name + "] " + newMessage);
+                    previousMessages.put(name, newMessage);
+                    progressed = true;
+                }
+            }
+            delay = schedule.nextDelay(progressed, totalPercent, queuePosition);
+            if (failure != null) {
+                logger.info(schedule.summary());
+                throw failure;
+            }
+        }
+        logger.info(schedule.summary());
+        return scanIds;
     }
 
     public CxWSCreateReportResponse generateScanReport(long scanId, CxWSReportType reportType) throws AbortException {
-        assert sessionId != null : "Trying to retrieve scan report before login";
+        assert session != null : "Trying to retrieve scan report before login";
 
-        CxWSReportRequest cxWSReportRequest = new CxWSReportRequest();
+        final CxWSReportRequest cxWSReportRequest = new CxWSReportRequest();
         cxWSReportRequest.setScanID(scanId);
         cxWSReportRequest.setType(reportType);
         logger.info("Requesting " + reportType.toString().toUpperCase() + " Scan Report Generation");
@@ -309,7 +605,12 @@ public class CxWebService {
         int retryAttempts = CxConfig.getServerCallRetryNumber();
         CxWSCreateReportResponse cxWSCreateReportResponse;
         do {
-            cxWSCreateReportResponse = cxJenkinsWebServiceSoap.createScanReport(sessionId, cxWSReportRequest);
+            cxWSCreateReportResponse = callWithSession(new SessionCall<CxWSCreateReportResponse>() {
+                @Override
+                CxWSCreateReportResponse call(String sessionId) {
+                    return cxJenkinsWebServiceSoap.createScanReport(sessionId, cxWSReportRequest);
+                }
+            });
             if (!cxWSCreateReportResponse.isIsSuccesfull()) {
                 retryAttempts--;
                 logger.error("Error requesting scan report generation: " + cxWSCreateReportResponse.getErrorMessage());
@@ -325,14 +626,21 @@ public class CxWebService {
         return cxWSCreateReportResponse;
     }
 
-    public void retrieveScanReport(long reportId, File reportFile, CxWSReportType reportType) throws AbortException,
+    public void retrieveScanReport(final long reportId, File reportFile, CxWSReportType reportType) throws AbortException,
             InterruptedException {
         // Wait for the report to become ready
 
         String previousMessage = "";
+        PollingSchedule schedule = new PollingSchedule(PollingSchedule.Phase.REPORT);
         while (true) {
-            CxWSReportStatusResponse cxWSReportStatusResponse = cxJenkinsWebServiceSoap.getScanReportStatus(sessionId,
-                    reportId);
+            CxWSReportStatusResponse cxWSReportStatusResponse = callWithSession(new SessionCall<CxWSReportStatusResponse>() {
+                @Override
+                CxWSReportStatusResponse call(String sessionId) {
+                    return cxJenkinsWebServiceSoap.getScanReportStatus(sessionId, reportId);
+                }
+            });
+            // The report status has no progress, the interval backs off until it is ready
+            long delay = schedule.nextDelay(false);
             if (!cxWSReportStatusResponse.isIsSuccesfull()) {
                 String message = "Error retrieving scan report status: " + cxWSReportStatusResponse.getErrorMessage();
                 logger.error(message);
@@ -352,10 +660,16 @@ public class CxWebService {
 
             previousMessage = cleanLogger(previousMessage, reportType.toString().toUpperCase() + " Report generation in progress");
 
-            Thread.sleep(5L * 1000);
+            Thread.sleep(delay);
         }
+        logger.info(schedule.summary());
 
-        CxWSResponseScanResults cxWSResponseScanResults = cxJenkinsWebServiceSoap.getScanReport(sessionId, reportId);
+        CxWSResponseScanResults cxWSResponseScanResults = callWithSession(new SessionCall<CxWSResponseScanResults>() {
+            @Override
+            CxWSResponseScanResults call(String sessionId) {
+                return cxJenkinsWebServiceSoap.getScanReport(sessionId, reportId);
+            }
+        });
         if (!cxWSResponseScanResults.isIsSuccesfull()) {
             String message = "Error retrieving scan report: " + cxWSResponseScanResults.getErrorMessage();
             logger.error(message);
@@ -380,10 +694,14 @@ public class CxWebService {
     }
 
     public List<ProjectDisplayData> getProjectsDisplayData() throws AbortException {
-        assert sessionId != null : "Trying to retrieve projects display data before login";
+        assert session != null : "Trying to retrieve projects display data before login";
 
-        CxWSResponseProjectsDisplayData cxWSResponseProjectsDisplayData = this.cxJenkinsWebServiceSoap
-                .getProjectsDisplayData(this.sessionId);
+        CxWSResponseProjectsDisplayData cxWSResponseProjectsDisplayData = callWithSession(new SessionCall<CxWSResponseProjectsDisplayData>() {
+            @Override
+            CxWSResponseProjectsDisplayData call(String sessionId) {
+                return cxJenkinsWebServiceSoap.getProjectsDisplayData(sessionId);
+            }
+        });
         if (!cxWSResponseProjectsDisplayData.isIsSuccesfull()) {
             String message = "Error retrieving projects display data from server: "
                     + cxWSResponseProjectsDisplayData.getErrorMessage();
@@ -395,8 +713,13 @@ public class CxWebService {
     }
 
     public List<Preset> getPresets() throws AbortException {
-        assert sessionId != null : "Trying to retrieve presetes before login";
-        CxWSResponsePresetList cxWSResponsePresetList = this.cxJenkinsWebServiceSoap.getPresetList(this.sessionId);
+        assert session != null : "Trying to retrieve presetes before login";
+        CxWSResponsePresetList cxWSResponsePresetList = callWithSession(new SessionCall<CxWSResponsePresetList>() {
+            @Override
+            CxWSResponsePresetList call(String sessionId) {
+                return cxJenkinsWebServiceSoap.getPresetList(sessionId);
+            }
+        });
         if (!cxWSResponsePresetList.isIsSuccesfull()) {
             String message = "Error retrieving presets from server: " + cxWSResponsePresetList.getErrorMessage();
             logger.error(message);
@@ -407,9 +730,13 @@ public class CxWebService {
 
     // Source encoding is called "configuration" in server terms
     public List<ConfigurationSet> getSourceEncodings() throws AbortException {
-        assert sessionId != null : "Trying to retrieve configurations before login";
-        CxWSResponseConfigSetList cxWSResponseConfigSetList = this.cxJenkinsWebServiceSoap
-                .getConfigurationSetList(sessionId);
+        assert session != null : "Trying to retrieve configurations before login";
+        CxWSResponseConfigSetList cxWSResponseConfigSetList = callWithSession(new SessionCall<CxWSResponseConfigSetList>() {
+            @Override
+            CxWSResponseConfigSetList call(String sessionId) {
+                return cxJenkinsWebServiceSoap.getConfigurationSetList(sessionId);
+            }
+        });
         if (!cxWSResponseConfigSetList.isIsSuccesfull()) {
             String message = "Error retrieving configurations from server: "
                     + cxWSResponseConfigSetList.getErrorMessage();
@@ -419,9 +746,14 @@ public class CxWebService {
         return cxWSResponseConfigSetList.getConfigSetList().getConfigurationSet();
     }
 
-    public CxWSBasicRepsonse validateProjectName(String cxProjectName, String groupId) {
-        assert sessionId != null : "Trying to validate project name before login";
-        return this.cxJenkinsWebServiceSoap.isValidProjectName(sessionId, cxProjectName, groupId);
+    public CxWSBasicRepsonse validateProjectName(final String cxProjectName, final String groupId) {
+        assert session != null : "Trying to validate project name before login";
+        return callWithSession(new SessionCall<CxWSBasicRepsonse>() {
+            @Override
+            CxWSBasicRepsonse call(String sessionId) {
+                return cxJenkinsWebServiceSoap.isValidProjectName(sessionId, cxProjectName, groupId);
+            }
+        });
     }
 
     private Pair<byte[], byte[]> createScanSoapMessage(Object request, Class inputType,
@@ -473,10 +805,14 @@ public class CxWebService {
     }
 
     public List<Group> getAssociatedGroups() throws AbortException {
-        assert sessionId != null : "Trying to retrieve teams before login";
+        assert session != null : "Trying to retrieve teams before login";
 
-        final CxWSResponseGroupList associatedGroupsList = this.cxJenkinsWebServiceSoap
-                .getAssociatedGroupsList(sessionId);
+        final CxWSResponseGroupList associatedGroupsList = callWithSession(new SessionCall<CxWSResponseGroupList>() {
+            @Override
+            CxWSResponseGroupList call(String sessionId) {
+                return cxJenkinsWebServiceSoap.getAssociatedGroupsList(sessionId);
+            }
+        });
         if (!associatedGroupsList.isIsSuccesfull()) {
             String message = "Error retrieving associated groups (teams) from server: "
                     + associatedGroupsList.getErrorMessage();
@@ -487,72 +823,97 @@ public class CxWebService {
         return associatedGroupsList.getGroupList().getGroup();
     }
 
-    public CxWSResponseRunID runScanAndAddToProject(ProjectSettings projectSettings,
-                                                    LocalCodeContainer localCodeContainer, boolean visibleToOtherUsers, boolean isPublicScan,
-                                                    final FilePath base64ZipFile, String comment) throws AbortException {
-        assert sessionId != null;
+    public CxWSResponseRunID runScanAndAddToProject(final ProjectSettings projectSettings,
+                                                    final LocalCodeContainer localCodeContainer, final boolean visibleToOtherUsers, final boolean isPublicScan,
+                                                    final ScanSources sources, String comment) throws IOException {
+        assert session != null;
 
-        RunScanAndAddToProject scan = new RunScanAndAddToProject();
+        final RunScanAndAddToProject scan = new RunScanAndAddToProject();
         scan.setLocalCodeContainer(localCodeContainer);
-        scan.setSessionId(sessionId);
         scan.setProjectSettings(projectSettings);
         scan.setVisibleToUtherUsers(visibleToOtherUsers);
         scan.setIsPublicScan(isPublicScan);
         scan.setComment(comment);
 
-        Pair<byte[], byte[]> soapMeassage = createScanSoapMessage(scan, RunScanAndAddToProject.class, projectSettings,
-                localCodeContainer, visibleToOtherUsers, isPublicScan);
+        ScanMessage soapMeassage = new ScanMessage() {
+            @Override
+            Pair<byte[], byte[]> create(String sessionId) {
+                scan.setSessionId(sessionId);
+                return createScanSoapMessage(scan, RunScanAndAddToProject.class, projectSettings,
+                        localCodeContainer, visibleToOtherUsers, isPublicScan);
+            }
+        };
 
-        return scan(localCodeContainer, visibleToOtherUsers, isPublicScan, base64ZipFile, "RunScanAndAddToProject",
+        return scan(localCodeContainer, visibleToOtherUsers, isPublicScan, sources, "RunScanAndAddToProject",
                 soapMeassage, new RunScanAndAddToProjectXmlResponseParser());
     }
 
-    public CxWSResponseRunID runIncrementalScan(ProjectSettings projectSettings, LocalCodeContainer localCodeContainer,
-                                                boolean visibleToOtherUsers, boolean isPublicScan, final FilePath base64ZipFile, String comment) throws AbortException {
-        assert sessionId != null;
+    public CxWSResponseRunID runIncrementalScan(final ProjectSettings projectSettings, final LocalCodeContainer localCodeContainer,
+                                                final boolean visibleToOtherUsers, final boolean isPublicScan, final ScanSources sources, String comment) throws IOException {
+        assert session != null;
 
-        RunIncrementalScan scan = new RunIncrementalScan();
+        final RunIncrementalScan scan = new RunIncrementalScan();
         scan.setLocalCodeContainer(localCodeContainer);
-        scan.setSessionId(sessionId);
         scan.setProjectSettings(projectSettings);
         scan.setVisibleToUtherUsers(visibleToOtherUsers);
         scan.setIsPublicScan(isPublicScan);
         scan.setComment(comment);
 
-        Pair<byte[], byte[]> soapMeassage = createScanSoapMessage(scan, RunIncrementalScan.class, projectSettings,
-                localCodeContainer, visibleToOtherUsers, isPublicScan);
+        ScanMessage soapMeassage = new ScanMessage() {
+            @Override
+            Pair<byte[], byte[]> create(String sessionId) {
+                scan.setSessionId(sessionId);
+                return createScanSoapMessage(scan, RunIncrementalScan.class, projectSettings,
+                        localCodeContainer, visibleToOtherUsers, isPublicScan);
+            }
+        };
 
-        return scan(localCodeContainer, visibleToOtherUsers, isPublicScan, base64ZipFile, "RunIncrementalScan",
+        return scan(localCodeContainer, visibleToOtherUsers, isPublicScan, sources, "RunIncrementalScan",
                 soapMeassage, new RunIncrementalScanXmlResponseParser());
     }
 
-    public CxWSResponseRunID createAndRunProject(ProjectSettings projectSettings,
-                                                 LocalCodeContainer localCodeContainer, boolean visibleToOtherUsers, boolean isPublicScan,
-                                                 final FilePath base64ZipFile, String comment) throws AbortException {
-        assert sessionId != null;
+    public CxWSResponseRunID createAndRunProject(final ProjectSettings projectSettings,
+                                                 final LocalCodeContainer localCodeContainer, final boolean visibleToOtherUsers, final boolean isPublicScan,
+                                                 final ScanSources sources, String comment) throws IOException {
+        assert session != null;
 
-        CreateAndRunProject scan = new CreateAndRunProject();
+        final CreateAndRunProject scan = new CreateAndRunProject();
         scan.setLocalCodeContainer(localCodeContainer);
-        scan.setSessionID(sessionId);
         scan.setProjectSettings(projectSettings);
         scan.setVisibleToOtherUsers(visibleToOtherUsers);
         scan.setIsPublicScan(isPublicScan);
         scan.setComment(comment);
 
-        Pair<byte[], byte[]> soapMessage = createScanSoapMessage(scan, CreateAndRunProject.class, projectSettings,
-                localCodeContainer, visibleToOtherUsers, isPublicScan);
+        ScanMessage soapMessage = new ScanMessage() {
+            @Override
+            Pair<byte[], byte[]> create(String sessionId) {
+                scan.setSessionID(sessionId);
+                return createScanSoapMessage(scan, CreateAndRunProject.class, projectSettings,
+                        localCodeContainer, visibleToOtherUsers, isPublicScan);
+            }
+        };
 
-        return scan(localCodeContainer, visibleToOtherUsers, isPublicScan, base64ZipFile, "CreateAndRunProject",
+        return scan(localCodeContainer, visibleToOtherUsers, isPublicScan, sources, "CreateAndRunProject",
                 soapMessage, new CreateAndRunProjectXmlResponseParser());
     }
 
     public Boolean isOsaLicenseValid() {
-        CxWSResponseServerLicenseData response = cxJenkinsWebServiceSoap.getServerLicenseData(sessionId);
+        CxWSResponseServerLicenseData response = callWithSession(new SessionCall<CxWSResponseServerLicenseData>() {
+            @Override
+            CxWSResponseServerLicenseData call(String sessionId) {
+                return cxJenkinsWebServiceSoap.getServerLicenseData(sessionId);
+            }
+        });
         return response.isIsOsaEnabled();
     }
 
     public long resolveProjectId(String projectName, String groupId) throws AbortException {
-        CxWSResponseProjectsDisplayData projects = cxJenkinsWebServiceSoap.getProjectsDisplayData(sessionId);
+        CxWSResponseProjectsDisplayData projects = callWithSession(new SessionCall<CxWSResponseProjectsDisplayData>() {
+            @Override
+            CxWSResponseProjectsDisplayData call(String sessionId) {
+                return cxJenkinsWebServiceSoap.getProjectsDisplayData(sessionId);
+            }
+        });
 
         final List<Group> groups = getAssociatedGroups();
         final List<Group> selected = filter(having(on(Group.class).getID(), Matchers.equalTo(groupId)), groups);
@@ -590,25 +951,56 @@ public class CxWebService {
      * LocalCodeContainer.zippedFile inside args is REPLACED by empty byte
      * array, and base64ZipFile temp file is used instead.
      *
-     * @param base64ZipFile - Temp file used instead of LocalCodeContainer.zippedFile
-     *                      attribute, should contain zipped sources encoded with base 64
-     *                      encoding
+     * @param sources - Temp file used instead of LocalCodeContainer.zippedFile
+     *                attribute, should contain zipped sources encoded with base 64
+     *                encoding, or the workspace zipped while it is uploaded. Streamed
+     *                sources are sent once, the caller falls back to a temp file.
+     * @param soapMessage - Message of the scan request, created again with a
+     *                    new session when the server rejected the session
      * @return object which is similar to the return value of scan web service
      * method
      * @throws AbortException
      */
     private CxWSResponseRunID scan(LocalCodeContainer localCodeContainer, boolean visibleToOtherUsers,
-                                   boolean isPublicScan, final FilePath base64ZipFile, String soapActionName,
-                                   Pair<byte[], byte[]> soapMessage, XmlResponseParser xmlResponseParser) throws AbortException {
-        assert sessionId != null;
+                                   boolean isPublicScan, final ScanSources sources, String soapActionName,
+                                   ScanMessage soapMessage, XmlResponseParser xmlResponseParser) throws IOException {
+        assert session != null;
+        String usedSessionId = session.getId();
+        try {
+            return scan(sources, soapActionName, soapMessage.create(usedSessionId), xmlResponseParser);
+        } catch (ScanRequestRejectedException rejected) {
+            if (!SessionPool.isRejection(rejected.getMessage())) {
+                throw rejected;
+            }
+        }
+        // Streamed sources are zipped again while they are sent with the new session
+        logger.info("Session was rejected by the Checkmarx server, trying to re-login");
+        String renewedSessionId;
+        try {
+            renewedSessionId = session.renew(usedSessionId);
+        } catch (IOException e) {
+            throw new AbortException("Failed to login again to Checkmarx server: " + e.getMessage());
+        }
+        return scan(sources, soapActionName, soapMessage.create(renewedSessionId), xmlResponseParser);
+    }
+
+    private CxWSResponseRunID scan(final ScanSources sources, String soapActionName,
+                                   Pair<byte[], byte[]> soapMessage, XmlResponseParser xmlResponseParser) throws IOException {
+        if (sources.isStreamed()) {
+            return streamScanRequest(sources, soapActionName, soapMessage, xmlResponseParser);
+        }
         int retryAttemptsLeft = CxConfig.getServerCallRetryNumber();
 
         while (true) {
             try {
-                return sendScanRequest(base64ZipFile, soapActionName, soapMessage, xmlResponseParser);
+                return sendScanRequest(sources.getBase64ZipFile(), soapActionName, soapMessage, xmlResponseParser);
+            } catch (ScanRequestRejectedException rejected) {
+                // The server received the sources and refused them, sending them again would not help
+                throw rejected;
             } catch (AbortException abort) {
                 if (retryAttemptsLeft > 0) {
                     retryAttemptsLeft--;
+                    logger.info("Retrying the upload of the sources, " + retryAttemptsLeft + " attempts left after this one");
                 } else {
                     throw abort;
                 }
@@ -620,58 +1012,120 @@ public class CxWebService {
     private CxWSResponseRunID sendScanRequest(final FilePath base64ZipFile, String soapActionName,
                                               Pair<byte[], byte[]> soapMessage, XmlResponseParser xmlResponseParser) throws AbortException {
         try {
-
-            // Create HTTP connection
-
-            final HttpURLConnection streamingUrlConnection = (HttpURLConnection) webServiceUrl.openConnection();
-            streamingUrlConnection.addRequestProperty("Content-Type", "text/xml; charset=utf-8");
-            streamingUrlConnection.addRequestProperty("SOAPAction",
-                    String.format("\"http://Checkmarx.com/v7/%s\"", soapActionName));
-            streamingUrlConnection.setDoOutput(true);
-            // Calculate the length of the soap message
-            final long length = soapMessage.getLeft().length + soapMessage.getRight().length + base64ZipFile.length();
-            streamingUrlConnection.setFixedLengthStreamingMode((int) length);
-            streamingUrlConnection.connect();
-            final OutputStream os = streamingUrlConnection.getOutputStream();
-
-            logger.info("Uploading sources to Checkmarx server");
-            os.write(soapMessage.getLeft());
-            final InputStream fis = base64ZipFile.read();
-            org.apache.commons.io.IOUtils.copyLarge(fis, os);
-
-            os.write(soapMessage.getRight());
-            os.close();
-            fis.close();
+            SoapScanUpload soapScanUpload = new SoapScanUpload(webServiceUrl, soapActionName, soapMessage.getLeft(),
+                    soapMessage.getRight(), xmlResponseParser);
+
+            CxWSResponseRunID cxWSResponseRunID;
+            if (isUploadFromAgent()) {
+                // The zipped sources are streamed by the node holding them instead of passing through the master
+                logger.info("Uploading sources to Checkmarx server from the node running the job");
+                cxWSResponseRunID = base64ZipFile.act(new SoapScanUploadCallable(soapScanUpload,
+                        !isEnableCertificateValidation(), listener)).toCxWSResponseRunID();
+            } else {
+                logger.info("Uploading sources to Checkmarx server");
+                final InputStream fis = base64ZipFile.read();
+                try {
+                    cxWSResponseRunID = soapScanUpload.send(fis, base64ZipFile.length());
+                } finally {
+                    fis.close();
+                }
+            }
             logger.info("Finished uploading sources to Checkmarx server");
 
-            CxWSResponseRunID cxWSResponseRunID = xmlResponseParser.parse(streamingUrlConnection.getInputStream());
-
             if (!cxWSResponseRunID.isIsSuccesfull()) {
                 String message = "Submission of sources for scan failed: \n" + cxWSResponseRunID.getErrorMessage();
-                throw new AbortException(message);
+                throw new ScanRequestRejectedException(message);
             }
 
             return cxWSResponseRunID;
 
+        } catch (ScanRequestRejectedException e) {
+            throw e;
         } catch (HttpRetryException e) {
             String consoleMessage = "\nCheckmarx plugin for Jenkins does not support Single sign-on authentication."
                     + "\nPlease, configure Checkmarx server to work in Anonymous authentication mode.\n";
             logger.error(consoleMessage);
             throw new AbortException(e.getMessage());
+        } catch (UploadInterruptedException e) {
+            logger.error(e.getMessage());
+            throw new AbortException(e.getMessage());
         } catch (IOException | JAXBException | XMLStreamException | InterruptedException e) {
             logger.error(e.getMessage(), e);
             throw new AbortException(e.getMessage());
         }
     }
 
+    private CxWSResponseRunID streamScanRequest(ScanSources sources, String soapActionName,
+                                                Pair<byte[], byte[]> soapMessage, XmlResponseParser xmlResponseParser) throws IOException {
+        try {
+            SoapScanUpload soapScanUpload = new SoapScanUpload(webServiceUrl, soapActionName, soapMessage.getLeft(),
+                    soapMessage.getRight(), xmlResponseParser);
+
+            logger.info("Zipping the workspace and uploading it to Checkmarx server from the node running the job");
+            CxWSResponseRunID cxWSResponseRunID = sources.getWorkspace().act(new SoapScanStreamingCallable(soapScanUpload,
+                    sources.getZipperCallable(), !isEnableCertificateValidation(), listener)).toCxWSResponseRunID();
+            logger.info("Finished uploading sources to Checkmarx server");
+
+            if (!cxWSResponseRunID.isIsSuccesfull()) {
+                String message = "Submission of sources for scan failed: \n" + cxWSResponseRunID.getErrorMessage();
+                throw new ScanRequestRejectedException(message);
+            }
+
+            return cxWSResponseRunID;
+
+        } catch (ScanRequestRejectedException e) {
+            throw e;
+        } catch (Zipper.ZipperException e) {
+            // The workspace could not be zipped, a temporary file would not help
+            throw e;
+        } catch (ChunkedUploadNotSupportedException e) {
+            CHUNKED_UPLOAD_NOT_SUPPORTED.add(webServiceUrl.toString());
+            throw new AbortException(e.getMessage());
+        } catch (IOException | InterruptedException e) {
+            throw new AbortException(e.getMessage());
+        }
+    }
+
+    /**
+     * @return true if sources can be zipped while they are uploaded, requires
+     *         the upload from the node running the job and a server accepting
+     *         chunked uploads
+     */
+    public boolean isStreamingUploadEnabled() {
+        @Nullable
+        CxScanBuilder.DescriptorImpl descriptor = (CxScanBuilder.DescriptorImpl) Jenkins.getInstance().getDescriptor(
+                CxScanBuilder.class);
+        return descriptor != null && descriptor.isUploadFromAgent() && descriptor.isStreamSources()
+                && !CHUNKED_UPLOAD_NOT_SUPPORTED.contains(webServiceUrl.toString());
+    }
+
+    private boolean isUploadFromAgent() {
+        @Nullable
+        CxScanBuilder.DescriptorImpl descriptor = (CxScanBuilder.DescriptorImpl) Jenkins.getInstance().getDescriptor(
+                CxScanBuilder.class);
+        return descriptor != null && descriptor.isUploadFromAgent();
+    }
+
+    private boolean isEnableCertificateValidation() {
+        @Nullable
+        CxScanBuilder.DescriptorImpl descriptor = (CxScanBuilder.DescriptorImpl) Jenkins.getInstance().getDescriptor(
+                CxScanBuilder.class);
+        return descriptor == null || descriptor.isEnableCertificateValidation();
+    }
+
     /**
      * Cancel scan on Checkmarx server
      *
      * @param runId run ID of the scan
      * @return server response
      */
-    public CxWSBasicRepsonse cancelScan(String runId) {
-        return cxJenkinsWebServiceSoap.cancelScan(sessionId, runId);
+    public CxWSBasicRepsonse cancelScan(final String runId) {
+        return callWithSession(new SessionCall<CxWSBasicRepsonse>() {
+            @Override
+            CxWSBasicRepsonse call(String sessionId) {
+                return cxJenkinsWebServiceSoap.cancelScan(sessionId, runId);
+            }
+        });
     }
 
     /**
@@ -680,11 +1134,133 @@ public class CxWebService {
      * @param reportId ID of the report
      * @return server response
      */
-    public CxWSBasicRepsonse cancelScanReport(long reportId) {
-        return cxJenkinsWebServiceSoap.cancelScanReport(sessionId, reportId);
+    public CxWSBasicRepsonse cancelScanReport(final long reportId) {
+        return callWithSession(new SessionCall<CxWSBasicRepsonse>() {
+            @Override
+            CxWSBasicRepsonse call(String sessionId) {
+                return cxJenkinsWebServiceSoap.cancelScanReport(sessionId, reportId);
+            }
+        });
     }
 
     public CxWSResponseScanStatusArray getQueuedScans() {
-        return cxJenkinsWebServiceSoap.getScansStatuses(sessionId);
+        return callWithSession(new SessionCall<CxWSResponseScanStatusArray>() {
+            @Override
+            CxWSResponseScanStatusArray call(String sessionId) {
+                return cxJenkinsWebServiceSoap.getScansStatuses(sessionId);
+            }
+        });
+    }
+
+    /**
+     * Status of the scans of a server, polled with the session of the last
+     * build waiting for them. Logs to the shared logger, the polls are made
+     * for all the builds.
+     */
+    private static class SoapScanStatusSource implements ScanStatusMultiplexer.StatusSource<CxWSResponseScanStatus> {
+        private final SessionPool.Session session;
+        private final CxJenkinsWebServiceSoap cxJenkinsWebServiceSoap;
+
+        SoapScanStatusSource(SessionPool.Session session, CxJenkinsWebServiceSoap cxJenkinsWebServiceSoap) {
+            this.session = session;
+            this.cxJenkinsWebServiceSoap = cxJenkinsWebServiceSoap;
+        }
+
+        @Override
+        public Map<String, CxWSResponseScanStatus> fetchAll() throws AbortException {
+            CxWSResponseScanStatusArray response = callWithSession(session, new SessionCall<CxWSResponseScanStatusArray>() {
+                @Override
+                CxWSResponseScanStatusArray call(String sessionId) {
+                    return cxJenkinsWebServiceSoap.getScansStatuses(sessionId);
+                }
+            }, CONNECTION_LOGGER);
+            if (!response.isIsSuccesfull()) {
+                throw new AbortException("Error received from Checkmarx server: " + response.getErrorMessage());
+            }
+            Map<String, CxWSResponseScanStatus> statuses = new HashMap<>();
+            if (response.getStatusArr() != null && response.getStatusArr().getCxWSResponseScanStatus() != null) {
+                for (CxWSResponseScanStatus status : response.getStatusArr().getCxWSResponseScanStatus()) {
+                    if (status != null && status.getRunId() != null) {
+                        statuses.put(status.getRunId(), status);
+                    }
+                }
+            }
+            return statuses;
+        }
+
+        @Override
+        public CxWSResponseScanStatus fetch(final String runId) throws AbortException {
+            CxWSResponseScanStatus response = callWithSession(session, new SessionCall<CxWSResponseScanStatus>() {
+                @Override
+                CxWSResponseScanStatus call(String sessionId) {
+                    return cxJenkinsWebServiceSoap.getStatusOfSingleScan(sessionId, runId);
+                }
+            }, CONNECTION_LOGGER);
+            if (!response.isIsSuccesfull()) {
+                throw new AbortException("Error received from Checkmarx server: " + response.getErrorMessage());
+            }
+            return response;
+        }
+    }
+
+    /**
+     * SOAP call made with the id of a session.
+     */
+    private abstract static class SessionCall<T> {
+        abstract T call(String sessionId);
+    }
+
+    /**
+     * SOAP message of a scan request, split around the zipped sources, with
+     * the id of a session.
+     */
+    private abstract static class ScanMessage {
+        abstract Pair<byte[], byte[]> create(String sessionId);
+    }
+
+    /**
+     * Login made by the session pool, for the first holder of a session and
+     * whenever it is renewed. Logs to the shared logger, renewals happen
+     * outside of any build.
+     */
+    private static class SoapLogin implements SessionPool.Authenticator {
+        private final String serverUrl;
+        private final CxJenkinsWebServiceSoap cxJenkinsWebServiceSoap;
+        private final Credentials credentials;
+
+        SoapLogin(String serverUrl, CxJenkinsWebServiceSoap cxJenkinsWebServiceSoap, Credentials credentials) {
+            this.serverUrl = serverUrl;
+            this.cxJenkinsWebServiceSoap = cxJenkinsWebServiceSoap;
+            this.credentials = credentials;
+        }
+
+        @Override
+        public String login() throws AbortException {
+            CxWSResponseLoginData cxWSResponseLoginData;
+            try {
+                cxWSResponseLoginData = cxJenkinsWebServiceSoap.login(credentials, LCID);
+            } catch (WebServiceException e) {
+                // The server may have moved, the next build resolves its web service url again
+                SOAP_CLIENTS.invalidate(serverUrl);
+                throw e;
+            }
+            if (!cxWSResponseLoginData.isIsSuccesfull()) {
+                throw new AbortException(cxWSResponseLoginData.getErrorMessage());
+            }
+            CONNECTION_LOGGER.info("Logged in to " + serverUrl + " as " + credentials.getUser());
+            return cxWSResponseLoginData.getSessionId();
+        }
+    }
+
+    /**
+     * The server received the sources and refused to scan them.
+     */
+    static class ScanRequestRejectedException extends AbortException {
+
+        private static final long serialVersionUID = 1L;
+
+        ScanRequestRejectedException(String message) {
+            super(message);
+        }
     }
 }
@@ -1,11 +1,12 @@
 package com.checkmarx.jenkins;
 
+import com.checkmarx.jenkins.filesystem.zip.ScanSources;
 import com.checkmarx.jenkins.web.contracts.ProjectContract;
 import com.checkmarx.ws.CxJenkinsWebService.CliScanArgs;
 import com.checkmarx.ws.CxJenkinsWebService.CxWSBasicRepsonse;
 import com.checkmarx.ws.CxJenkinsWebService.CxWSResponseRunID;
-import hudson.AbortException;
-import hudson.FilePath;
+
+import java.io.IOException;
 
 /**
  * Created by tsahib on 7/6/2016.
@@ -22,18 +23,18 @@ public class SastScan {
         this.projectContract = projectContract;
     }
 
-    public CxWSResponseRunID scan(String groupId, FilePath zipFile, boolean isThisBuildIncremental) throws AbortException {
+    public CxWSResponseRunID scan(String groupId, ScanSources sources, boolean isThisBuildIncremental) throws IOException {
         CxWSResponseRunID cxWSResponseRunId;
         boolean isNewProject = projectContract.newProject(cliScanArgs.getPrjSettings().getProjectName(), groupId);
         if (isNewProject){
             cxWSResponseRunId = cxWebService.createAndRunProject(cliScanArgs.getPrjSettings(),
-                    cliScanArgs.getSrcCodeSettings().getPackagedCode(), true, true, zipFile, cliScanArgs.getComment());
+                    cliScanArgs.getSrcCodeSettings().getPackagedCode(), true, true, sources, cliScanArgs.getComment());
         } else {
             if (isThisBuildIncremental) {
                 cxWSResponseRunId = cxWebService.runIncrementalScan(cliScanArgs.getPrjSettings(), cliScanArgs.getSrcCodeSettings()
-                        .getPackagedCode(), true, true, zipFile, cliScanArgs.getComment());
+                        .getPackagedCode(), true, true, sources, cliScanArgs.getComment());
             } else {
-                cxWSResponseRunId = cxWebService.runScanAndAddToProject(cliScanArgs.getPrjSettings(), cliScanArgs.getSrcCodeSettings().getPackagedCode(), true, true, zipFile, cliScanArgs.getComment());
+                cxWSResponseRunId = cxWebService.runScanAndAddToProject(cliScanArgs.getPrjSettings(), cliScanArgs.getSrcCodeSettings().getPackagedCode(), true, true, sources, cliScanArgs.getComment());
             }
         }
         return  cxWSResponseRunId;
@@ -0,0 +1,175 @@
+package com.checkmarx.jenkins;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Merges the XML reports of the scans of the shards of a workspace into a
+ * single report, read like the report of a single scan by
+ * {@link CxScanResult#readScanXMLReport(File)}.
+ * <p>
+ * The queries and results of every report are appended under the root
+ * element of the first one. The lines of code and files scanned are summed,
+ * the other attributes of the root element, the deep link among them, are
+ * the ones of the first report. The reports are streamed, none of them is
+ * held in memory.
+ */
+public class ScanReportMerger {
+
+    static final String ROOT_ELEMENT = "CxXMLResults";
+    private static final String[] SUMMED_ATTRIBUTES = {"LinesOfCodeScanned", "FilesScanned"};
+
+    private ScanReportMerger() {
+        // Hides default constructor
+    }
+
+    public static void merge(List<File> reports, File mergedReport) throws IOException {
+        if (reports.isEmpty()) {
+            throw new IOException("No scan report to merge");
+        }
+        XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        XMLEventFactory eventFactory = XMLEventFactory.newInstance();
+
+        long[] sums = new long[SUMMED_ATTRIBUTES.length];
+        for (File report : reports) {
+            StartElement root = readRoot(inputFactory, report);
+            for (int i = 0; i < SUMMED_ATTRIBUTES.length; i++) {
+                sums[i] += parseLong(root.getAttributeByName(new QName(SUMMED_ATTRIBUTES[i])));
+            }
+        }
+
+        OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(mergedReport));
+        try {
+            XMLEventWriter writer = XMLOutputFactory.newInstance().createXMLEventWriter(outputStream, "UTF-8");
+            writer.add(eventFactory.createStartDocument("UTF-8", "1.0"));
+            StartElement root = readRoot(inputFactory, reports.get(0));
+            writer.add(mergedRoot(eventFactory, root, sums));
+            for (File report : reports) {
+                copyChildren(inputFactory, report, writer);
+            }
+            writer.add(eventFactory.createEndElement(root.getName(), null));
+            writer.add(eventFactory.createEndDocument());
+            writer.close();
+        } catch (XMLStreamException e) {
+            throw new IOException("Failed to merge the scan reports into " + mergedReport + ": " + e.getMessage(), e);
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    private static StartElement readRoot(XMLInputFactory inputFactory, File report) throws IOException {
+        InputStream inputStream = new BufferedInputStream(new FileInputStream(report));
+        try {
+            XMLEventReader reader = inputFactory.createXMLEventReader(inputStream);
+            try {
+                while (reader.hasNext()) {
+                    XMLEvent event = reader.nextEvent();
+                    if (event.isStartElement()) {
+                        return checkRoot(event.asStartElement(), report);
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Invalid scan report " + report + ": " + e.getMessage(), e);
+        } finally {
+            inputStream.close();
+        }
+        throw new IOException("Empty scan report " + report);
+    }
+
+    /**
+     * Writes everything under the root element of the report.
+     */
+    private static void copyChildren(XMLInputFactory inputFactory, File report, XMLEventWriter writer) throws IOException, XMLStreamException {
+        InputStream inputStream = new BufferedInputStream(new FileInputStream(report));
+        try {
+            XMLEventReader reader = inputFactory.createXMLEventReader(inputStream);
+            try {
+                int depth = 0;
+                while (reader.hasNext()) {
+                    XMLEvent event = reader.nextEvent();
+                    if (event.isStartElement()) {
+                        depth++;
+                        if (depth == 1) {
+                            continue;
+                        }
+                    } else if (event.isEndElement()) {
+                        depth--;
+                        if (depth == 0) {
+                            break;
+                        }
+                    }
+                    if (depth > 0) {
+                        writer.add(event);
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    private static StartElement mergedRoot(XMLEventFactory eventFactory, StartElement root, long[] sums) {
+        List<Attribute> attributes = new ArrayList<>();
+        Iterator<?> iterator = root.getAttributes();
+        while (iterator.hasNext()) {
+            Attribute attribute = (Attribute) iterator.next();
+            int summed = indexOfSummed(attribute.getName().getLocalPart());
+            attributes.add(summed < 0 ? attribute
+                    : eventFactory.createAttribute(attribute.getName(), String.valueOf(sums[summed])));
+        }
+        return eventFactory.createStartElement(root.getName(), attributes.iterator(), root.getNamespaces());
+    }
+
+    private static StartElement checkRoot(StartElement root, File report) throws IOException {
+        if (!ROOT_ELEMENT.equals(root.getName().getLocalPart())) {
+            throw new IOException("Unexpected root element " + root.getName() + " in scan report " + report);
+        }
+        return root;
+    }
+
+    private static int indexOfSummed(String attribute) {
+        for (int i = 0; i < SUMMED_ATTRIBUTES.length; i++) {
+            if (SUMMED_ATTRIBUTES[i].equals(attribute)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static long parseLong(Attribute attribute) {
+        if (attribute == null) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(attribute.getValue().trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.checkmarx.jenkins;
+
+import com.checkmarx.jenkins.filesystem.zip.CxZip;
+import com.checkmarx.jenkins.filesystem.zip.callable.WatchWorkspaceCallable;
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.model.Computer;
+import hudson.model.Project;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.remoting.VirtualChannel;
+import hudson.slaves.ComputerListener;
+import jenkins.model.Jenkins;
+
+import java.io.IOException;
+import java.util.logging.Logger;
+
+/**
+ * Starts watching the workspaces of the jobs keeping a workspace manifest when
+ * their node comes online, so the first zip after a restart of the node is
+ * already taken from the changed paths, see
+ * {@link com.checkmarx.jenkins.filesystem.zip.WorkspaceChangeTracker}.
+ * <p>
+ * Only the jobs whose {@link CxScanBuilder} keeps a workspace manifest are looked
+ * at, and of those only the workspaces whose manifest was committed by the last
+ * completed build of the job on that node are watched, see
+ * {@link WorkspaceManifestAction}.
+ * They are looked up and registered in the background, the node is not kept
+ * from coming online meanwhile.
+ */
+@Extension
+public class WorkspaceChangeTrackingListener extends ComputerListener {
+
+    private static Logger LOGGER = Logger.getLogger(WorkspaceChangeTrackingListener.class.getName());
+
+    @Override
+    public void onOnline(final Computer computer, TaskListener listener) throws IOException, InterruptedException {
+        if (!CxConfig.workspaceChangeTracking() || CxConfig.gitIndexFileList()) {
+            return;
+        }
+        final VirtualChannel channel = computer.getChannel();
+        if (channel == null) {
+            return;
+        }
+        Computer.threadPoolForRemoting.submit(new Runnable() {
+            @Override
+            public void run() {
+                watchWorkspaces(computer, channel);
+            }
+        });
+    }
+
+    private static void watchWorkspaces(Computer computer, VirtualChannel channel) {
+        for (Project<?, ?> job : Jenkins.getInstance().getAllItems(Project.class)) {
+            CxScanBuilder builder = job.getBuildersList().get(CxScanBuilder.class);
+            if (builder == null || !builder.isDeltaIncrementalPackaging()) {
+                continue;
+            }
+            Run<?, ?> lastBuild = job.getLastCompletedBuild();
+            WorkspaceManifestAction manifest = lastBuild != null ? lastBuild.getAction(WorkspaceManifestAction.class) : null;
+            if (manifest == null || !manifest.getNodeName().equals(computer.getName())) {
+                continue;
+            }
+            FilePath workspace = new FilePath(channel, manifest.getWorkspace());
+            try {
+                if (workspace.act(new WatchWorkspaceCallable(CxZip.manifestDirOf(workspace).getRemote()))) {
+                    LOGGER.fine("Watching the workspace of " + job.getFullName() + " on " + computer.getName());
+                }
+            } catch (IOException e) {
+                LOGGER.warning("Failed to watch the workspace of " + job.getFullName() + " on " + computer.getName() + ": " + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.checkmarx.jenkins;
+
+import hudson.model.InvisibleAction;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Records on a build the workspace whose manifest it committed, so that
+ * {@link WorkspaceChangeTrackingListener} can find the workspaces to watch
+ * when their node comes online.
+ */
+public class WorkspaceManifestAction extends InvisibleAction {
+
+    @NotNull
+    private final String nodeName;
+
+    @NotNull
+    private final String workspace;
+
+    /**
+     * @param nodeName  name of the node of the workspace, empty for the master
+     * @param workspace path of the workspace on the node
+     */
+    public WorkspaceManifestAction(@NotNull String nodeName, @NotNull String workspace) {
+        this.nodeName = nodeName;
+        this.workspace = workspace;
+    }
+
+    @NotNull
+    public String getNodeName() {
+        return nodeName;
+    }
+
+    @NotNull
+    public String getWorkspace() {
+        return workspace;
+    }
+}
@@ -1,8 +1,12 @@
 package com.checkmarx.jenkins.filesystem;
 
+import com.checkmarx.jenkins.filesystem.layout.BuildLayout;
+import com.checkmarx.jenkins.filesystem.layout.BuildLayoutCallable;
 import com.checkmarx.jenkins.logger.CxPluginLogger;
 import hudson.EnvVars;
+import hudson.FilePath;
 import hudson.model.*;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.jetbrains.annotations.NotNull;
 
@@ -29,6 +33,37 @@ public class FolderPattern {
         return env.expand(filterPattern) + "," + processExcludeFolders(env.expand(excludeFolders));
     }
 
+    /**
+     * Same as {@link #generatePattern(String, String)}, also excluding the
+     * build output and dependency directories of the modules found in the
+     * workspace. The pattern is left as is when they can not be detected.
+     */
+    public String generatePattern(String filterPattern, String excludeFolders, FilePath workspace) throws IOException, InterruptedException {
+        String pattern = generatePattern(filterPattern, excludeFolders);
+        BuildLayout buildLayout;
+        try {
+            buildLayout = workspace.act(new BuildLayoutCallable());
+        } catch (IOException e) {
+            logger.error("Failed to detect the build outputs of the workspace, they are not excluded", e);
+            return pattern;
+        }
+        if (buildLayout.getExclusions().isEmpty()) {
+            logger.info("No build outputs or dependencies detected in the workspace");
+            return pattern;
+        }
+        logger.info("Excluding build outputs and dependencies:");
+        for (BuildLayout.Exclusion exclusion : buildLayout.getExclusions()) {
+            if (!exclusion.isExisting()) {
+                logger.info("  " + exclusion.getDirectory() + " (" + exclusion.getBuildTool() + ", not created yet)");
+                continue;
+            }
+            logger.info("  " + exclusion.getDirectory() + " (" + exclusion.getBuildTool() + ", " + exclusion.getFiles() + " files, "
+                    + FileUtils.byteCountToDisplaySize(exclusion.getBytes()) + ")");
+        }
+        logger.info("Build outputs and dependencies excluded from the scan: " + FileUtils.byteCountToDisplaySize(buildLayout.getExcludedBytes()));
+        return pattern + "," + buildLayout.toFilterPattern();
+    }
+
     @NotNull
     private String processExcludeFolders(String excludeFolders) {
         if (excludeFolders == null) {
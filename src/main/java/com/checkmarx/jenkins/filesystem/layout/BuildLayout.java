@@ -0,0 +1,241 @@
+package com.checkmarx.jenkins.filesystem.layout;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Build output and dependency directories of the modules found in a
+ * workspace, see {@link BuildLayoutDetector} for the supported build tools.
+ * <p>
+ * The workspace is searched for module descriptors up to {@link #MAX_DEPTH}
+ * directories deep, without entering hidden directories, symbolic links or
+ * directories that are already excluded. The directories of a detected module
+ * are excluded whether they exist yet or not, a build step running after the
+ * detection may still create them. Every existing excluded directory is sized,
+ * which tells how much the scan is spared.
+ */
+public class BuildLayout implements Serializable {
+
+    private static Logger LOGGER = Logger.getLogger(BuildLayout.class.getName());
+
+    private static final long serialVersionUID = 1L;
+
+    static final int MAX_DEPTH = 8;
+
+    private final List<Exclusion> exclusions;
+
+    private BuildLayout(List<Exclusion> exclusions) {
+        this.exclusions = exclusions;
+    }
+
+    /**
+     * @param workspace root directory of the sources
+     * @return the build output and dependency directories of the modules,
+     *         existing or not, each one once and none below another one
+     */
+    public static BuildLayout detect(File workspace) {
+        List<BuildLayoutDetector> detectors = BuildLayoutDetector.all();
+        Map<String, String> excludedDirectories = new LinkedHashMap<>();
+        Deque<File> directories = new ArrayDeque<>();
+        Deque<Integer> depths = new ArrayDeque<>();
+        directories.push(workspace);
+        depths.push(0);
+        while (!directories.isEmpty()) {
+            File directory = directories.pop();
+            int depth = depths.pop();
+            String relativeDirectory = relativePath(workspace, directory);
+            File[] children = directory.listFiles();
+            if (children == null) {
+                continue;
+            }
+            for (File child : children) {
+                if (!child.isFile()) {
+                    continue;
+                }
+                for (BuildLayoutDetector detector : detectors) {
+                    if (detector.isDescriptor(child.getName())) {
+                        addExcludedDirectories(excludedDirectories, detector, directory, relativeDirectory, child);
+                    }
+                }
+            }
+            if (depth >= MAX_DEPTH) {
+                continue;
+            }
+            for (File child : children) {
+                if (!child.getName().startsWith(".") && isDirectory(child)
+                        && !excludedDirectories.containsKey(relativePath(workspace, child))) {
+                    directories.push(child);
+                    depths.push(depth + 1);
+                }
+            }
+        }
+
+        List<Exclusion> exclusions = new ArrayList<>();
+        for (Map.Entry<String, String> excludedDirectory : excludedDirectories.entrySet()) {
+            if (!isBelowAnother(excludedDirectory.getKey(), excludedDirectories)) {
+                exclusions.add(sized(workspace, excludedDirectory.getKey(), excludedDirectory.getValue()));
+            }
+        }
+        Collections.sort(exclusions, new Comparator<Exclusion>() {
+            @Override
+            public int compare(Exclusion first, Exclusion second) {
+                return first.directory.compareTo(second.directory);
+            }
+        });
+        return new BuildLayout(exclusions);
+    }
+
+    public List<Exclusion> getExclusions() {
+        return exclusions;
+    }
+
+    /**
+     * @return total size of the files of the excluded directories
+     */
+    public long getExcludedBytes() {
+        long bytes = 0;
+        for (Exclusion exclusion : exclusions) {
+            bytes += exclusion.bytes;
+        }
+        return bytes;
+    }
+
+    /**
+     * @return exclusion patterns of the directories in the syntax of the
+     *         filter pattern, separated and terminated by a comma
+     */
+    public String toFilterPattern() {
+        StringBuilder pattern = new StringBuilder();
+        for (Exclusion exclusion : exclusions) {
+            pattern.append('!').append(exclusion.directory).append("/**/*, ");
+        }
+        return pattern.toString();
+    }
+
+    private static void addExcludedDirectories(Map<String, String> excludedDirectories, BuildLayoutDetector detector,
+                                               File moduleDir, String relativeModuleDir, File descriptor) {
+        List<String> directories;
+        try {
+            directories = detector.excludedDirectories(moduleDir, descriptor);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.fine("Failed to read " + descriptor + ": " + e);
+            return;
+        }
+        for (String directory : directories) {
+            String relativeDirectory = relativeModuleDir.isEmpty() ? directory : relativeModuleDir + "/" + directory;
+            if (!excludedDirectories.containsKey(relativeDirectory)) {
+                excludedDirectories.put(relativeDirectory, detector.getBuildTool());
+            }
+        }
+    }
+
+    private static boolean isBelowAnother(String directory, Map<String, String> excludedDirectories) {
+        for (int separator = directory.indexOf('/'); separator > 0; separator = directory.indexOf('/', separator + 1)) {
+            if (excludedDirectories.containsKey(directory.substring(0, separator))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Exclusion sized(File workspace, String directory, String buildTool) {
+        File root = new File(workspace, directory);
+        if (!isDirectory(root)) {
+            return new Exclusion(directory, buildTool, false, 0, 0);
+        }
+        long bytes = 0;
+        int files = 0;
+        Deque<File> directories = new ArrayDeque<>();
+        directories.push(root);
+        while (!directories.isEmpty()) {
+            File[] children = directories.pop().listFiles();
+            if (children == null) {
+                continue;
+            }
+            for (File child : children) {
+                if (isDirectory(child)) {
+                    directories.push(child);
+                } else {
+                    bytes += child.length();
+                    files++;
+                }
+            }
+        }
+        return new Exclusion(directory, buildTool, true, bytes, files);
+    }
+
+    private static boolean isDirectory(File file) {
+        try {
+            return Files.readAttributes(file.toPath(), BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS).isDirectory();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static String relativePath(File workspace, File file) {
+        String path = workspace.toURI().relativize(file.toURI()).getPath();
+        return path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+    }
+
+    /**
+     * Directory excluded from the scan.
+     */
+    public static class Exclusion implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String directory;
+        private final String buildTool;
+        private final boolean existing;
+        private final long bytes;
+        private final int files;
+
+        Exclusion(String directory, String buildTool, boolean existing, long bytes, int files) {
+            this.directory = directory;
+            this.buildTool = buildTool;
+            this.existing = existing;
+            this.bytes = bytes;
+            this.files = files;
+        }
+
+        /**
+         * @return path relative to the workspace, separated by '/'
+         */
+        public String getDirectory() {
+            return directory;
+        }
+
+        public String getBuildTool() {
+            return buildTool;
+        }
+
+        /**
+         * @return false if the directory was not created yet when the layout
+         *         was detected, it is then excluded without being sized
+         */
+        public boolean isExisting() {
+            return existing;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public int getFiles() {
+            return files;
+        }
+    }
+}
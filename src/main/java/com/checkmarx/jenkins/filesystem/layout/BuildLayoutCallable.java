@@ -0,0 +1,27 @@
+package com.checkmarx.jenkins.filesystem.layout;
+
+import hudson.FilePath;
+import hudson.remoting.VirtualChannel;
+import org.jenkinsci.remoting.Role;
+import org.jenkinsci.remoting.RoleChecker;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+
+/**
+ * Detects the {@link BuildLayout} of the workspace on the node it is on.
+ */
+public class BuildLayoutCallable implements FilePath.FileCallable<BuildLayout>, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public BuildLayout invoke(File file, VirtualChannel channel) throws IOException, InterruptedException {
+        return BuildLayout.detect(file);
+    }
+
+    public void checkRoles(RoleChecker roleChecker) throws SecurityException {
+        roleChecker.check(this, Role.UNKNOWN);
+    }
+}
@@ -0,0 +1,314 @@
+package com.checkmarx.jenkins.filesystem.layout;
+
+import org.apache.commons.io.FileUtils;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.SAXException;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Recognizes the modules of a build tool by their descriptor file and tells
+ * which of their directories hold build outputs or downloaded dependencies.
+ * <p>
+ * The descriptors are read only as far as needed to find a relocated output
+ * or dependency directory, nothing is resolved or executed. The directories
+ * are returned whether they exist or not.
+ */
+abstract class BuildLayoutDetector {
+
+    private final String buildTool;
+
+    BuildLayoutDetector(String buildTool) {
+        this.buildTool = buildTool;
+    }
+
+    static List<BuildLayoutDetector> all() {
+        return Arrays.asList(new Maven(), new Gradle(), new Npm(), new Pip(), new Go(), new DotNet(), new Composer());
+    }
+
+    String getBuildTool() {
+        return buildTool;
+    }
+
+    /**
+     * @return true if a file with this name makes its directory a module
+     */
+    abstract boolean isDescriptor(String fileName);
+
+    /**
+     * @return directories to exclude, relative to the directory of the module
+     */
+    abstract List<String> excludedDirectories(File moduleDir, File descriptor) throws IOException;
+
+    /**
+     * @return the relative directory if it can be used as is, null if it is
+     *         absolute or depends on a property
+     */
+    static String relativeDirectory(String directory) {
+        if (directory == null) {
+            return null;
+        }
+        String relative = directory.trim().replace('\\', '/');
+        for (String baseDir : new String[]{"${project.basedir}/", "${basedir}/", "$(MSBuildProjectDirectory)/", "./"}) {
+            if (relative.startsWith(baseDir)) {
+                relative = relative.substring(baseDir.length());
+            }
+        }
+        while (relative.endsWith("/")) {
+            relative = relative.substring(0, relative.length() - 1);
+        }
+        if (relative.isEmpty() || relative.contains("${") || relative.contains("$(") || relative.startsWith("/")
+                || relative.contains(":") || relative.equals("..") || relative.startsWith("../") || relative.contains("/../")) {
+            return null;
+        }
+        return relative;
+    }
+
+    private static String firstGroup(Pattern pattern, String content) {
+        Matcher matcher = pattern.matcher(content);
+        return matcher.find() ? matcher.group(1) : null;
+    }
+
+    private static List<String> childDirectories(File directory, String suffix) {
+        List<String> names = new ArrayList<>();
+        File[] children = directory.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                if (child.isDirectory() && child.getName().endsWith(suffix)) {
+                    names.add(child.getName());
+                }
+            }
+        }
+        return names;
+    }
+
+    /**
+     * target, or the directory of project/build/directory.
+     */
+    private static class Maven extends BuildLayoutDetector {
+
+        Maven() {
+            super("Maven");
+        }
+
+        @Override
+        boolean isDescriptor(String fileName) {
+            return fileName.equals("pom.xml");
+        }
+
+        @Override
+        List<String> excludedDirectories(File moduleDir, File descriptor) throws IOException {
+            String directory = relativeDirectory(buildDirectory(descriptor));
+            return Arrays.asList(directory != null ? directory : "target");
+        }
+
+        private static String buildDirectory(File pom) throws IOException {
+            try {
+                DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+                factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+                factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+                Document document = factory.newDocumentBuilder().parse(pom);
+                Element build = child(document.getDocumentElement(), "build");
+                Element directory = build != null ? child(build, "directory") : null;
+                return directory != null ? directory.getTextContent() : null;
+            } catch (ParserConfigurationException | SAXException e) {
+                return null;
+            }
+        }
+
+        private static Element child(Element parent, String name) {
+            for (Node node = parent.getFirstChild(); node != null; node = node.getNextSibling()) {
+                if (node instanceof Element && name.equals(node.getLocalName() != null ? node.getLocalName() : node.getNodeName())) {
+                    return (Element) node;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * build, or the buildDir of the build script, and the .gradle cache.
+     */
+    private static class Gradle extends BuildLayoutDetector {
+
+        private static final Pattern BUILD_DIR = Pattern.compile(
+                "(?:buildDir\\s*=\\s*(?:file\\s*\\(\\s*)?|buildDirectory\\.set\\s*\\(\\s*(?:file\\s*\\(\\s*)?)['\"]([^'\"]+)['\"]");
+
+        Gradle() {
+            super("Gradle");
+        }
+
+        @Override
+        boolean isDescriptor(String fileName) {
+            return fileName.equals("build.gradle") || fileName.equals("build.gradle.kts")
+                    || fileName.equals("settings.gradle") || fileName.equals("settings.gradle.kts");
+        }
+
+        @Override
+        List<String> excludedDirectories(File moduleDir, File descriptor) throws IOException {
+            if (descriptor.getName().startsWith("settings.")) {
+                return Arrays.asList(".gradle");
+            }
+            String buildDir = relativeDirectory(firstGroup(BUILD_DIR, FileUtils.readFileToString(descriptor, "UTF-8")));
+            return Arrays.asList(buildDir != null ? buildDir : "build", ".gradle");
+        }
+    }
+
+    /**
+     * node_modules and the bower components. The dist and build directories
+     * only when the package has a build script.
+     */
+    private static class Npm extends BuildLayoutDetector {
+
+        private static final Pattern BUILD_SCRIPT = Pattern.compile("\"scripts\"\\s*:\\s*\\{[^}]*\"build\"\\s*:", Pattern.DOTALL);
+        private static final Pattern BOWER_DIRECTORY = Pattern.compile("\"directory\"\\s*:\\s*\"([^\"]+)\"");
+
+        Npm() {
+            super("npm");
+        }
+
+        @Override
+        boolean isDescriptor(String fileName) {
+            return fileName.equals("package.json");
+        }
+
+        @Override
+        List<String> excludedDirectories(File moduleDir, File descriptor) throws IOException {
+            List<String> directories = new ArrayList<>(Arrays.asList("node_modules", ".yarn/cache"));
+            File bowerrc = new File(moduleDir, ".bowerrc");
+            String bowerDirectory = bowerrc.isFile() ? relativeDirectory(firstGroup(BOWER_DIRECTORY, FileUtils.readFileToString(bowerrc, "UTF-8"))) : null;
+            directories.add(bowerDirectory != null ? bowerDirectory : "bower_components");
+            if (BUILD_SCRIPT.matcher(FileUtils.readFileToString(descriptor, "UTF-8")).find()) {
+                directories.addAll(Arrays.asList("dist", "build", ".next"));
+            }
+            return directories;
+        }
+    }
+
+    /**
+     * Virtual environments, tox environments and, for a package, its build
+     * and distribution directories.
+     */
+    private static class Pip extends BuildLayoutDetector {
+
+        Pip() {
+            super("pip");
+        }
+
+        @Override
+        boolean isDescriptor(String fileName) {
+            return fileName.equals("setup.py") || fileName.equals("pyproject.toml") || fileName.equals("requirements.txt")
+                    || fileName.equals("Pipfile");
+        }
+
+        @Override
+        List<String> excludedDirectories(File moduleDir, File descriptor) throws IOException {
+            List<String> directories = new ArrayList<>(Arrays.asList(".tox", ".eggs", ".venv"));
+            File[] children = moduleDir.listFiles();
+            if (children != null) {
+                for (File child : children) {
+                    if (new File(child, "pyvenv.cfg").isFile()) {
+                        directories.add(child.getName());
+                    }
+                }
+            }
+            if (descriptor.getName().equals("setup.py") || descriptor.getName().equals("pyproject.toml")) {
+                directories.addAll(Arrays.asList("build", "dist"));
+                directories.addAll(childDirectories(moduleDir, ".egg-info"));
+            }
+            return directories;
+        }
+    }
+
+    /**
+     * The vendor directory of the module.
+     */
+    private static class Go extends BuildLayoutDetector {
+
+        Go() {
+            super("Go");
+        }
+
+        @Override
+        boolean isDescriptor(String fileName) {
+            return fileName.equals("go.mod");
+        }
+
+        @Override
+        List<String> excludedDirectories(File moduleDir, File descriptor) {
+            return Arrays.asList("vendor");
+        }
+    }
+
+    /**
+     * bin and obj, or the output paths of the project, and the packages of a
+     * solution.
+     */
+    private static class DotNet extends BuildLayoutDetector {
+
+        private static final Pattern OUTPUT_PATH = Pattern.compile(
+                "<(?:BaseOutputPath|OutputPath|BaseIntermediateOutputPath|IntermediateOutputPath)>([^<]+)</");
+
+        DotNet() {
+            super(".NET");
+        }
+
+        @Override
+        boolean isDescriptor(String fileName) {
+            return fileName.endsWith(".csproj") || fileName.endsWith(".vbproj") || fileName.endsWith(".fsproj")
+                    || fileName.endsWith(".sln");
+        }
+
+        @Override
+        List<String> excludedDirectories(File moduleDir, File descriptor) throws IOException {
+            if (descriptor.getName().endsWith(".sln")) {
+                return Arrays.asList("packages");
+            }
+            List<String> directories = new ArrayList<>(Arrays.asList("bin", "obj"));
+            Matcher matcher = OUTPUT_PATH.matcher(FileUtils.readFileToString(descriptor, "UTF-8"));
+            while (matcher.find()) {
+                String outputPath = relativeDirectory(matcher.group(1));
+                if (outputPath != null) {
+                    // bin/Release/ excludes bin
+                    int separator = outputPath.indexOf('/');
+                    directories.add(separator > 0 ? outputPath.substring(0, separator) : outputPath);
+                }
+            }
+            return directories;
+        }
+    }
+
+    /**
+     * vendor, or the vendor-dir of the composer configuration.
+     */
+    private static class Composer extends BuildLayoutDetector {
+
+        private static final Pattern VENDOR_DIR = Pattern.compile("\"vendor-dir\"\\s*:\\s*\"([^\"]+)\"");
+
+        Composer() {
+            super("Composer");
+        }
+
+        @Override
+        boolean isDescriptor(String fileName) {
+            return fileName.equals("composer.json");
+        }
+
+        @Override
+        List<String> excludedDirectories(File moduleDir, File descriptor) throws IOException {
+            String vendorDir = relativeDirectory(firstGroup(VENDOR_DIR, FileUtils.readFileToString(descriptor, "UTF-8")));
+            return Arrays.asList(vendorDir != null ? vendorDir : "vendor");
+        }
+    }
+}
@@ -0,0 +1,350 @@
+package com.checkmarx.jenkins.filesystem.zip;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.tools.ant.types.selectors.SelectorUtils;
+import org.apache.tools.ant.types.selectors.TokenizedPath;
+import org.apache.tools.ant.types.selectors.TokenizedPattern;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * {@link PathFilter} compiled from Ant style filter patterns.
+ * <p>
+ * The semantics are the same as the case insensitive Ant
+ * <code>DirectoryScanner</code> previously used by {@link Zipper}: a file is
+ * included if it matches at least one include pattern (all files when there
+ * are none) and does not match any exclude pattern. Instead of matching every
+ * path against every pattern, the common pattern shapes are compiled into
+ * lookup structures:
+ * <ul>
+ * <li><code>**&#47;*.ext</code> - a suffix trie over the file name</li>
+ * <li><code>**&#47;dir/**&#47;*</code> and <code>**&#47;dir/**</code> - a set of
+ * folder names</li>
+ * <li>patterns without wildcards - a set of paths</li>
+ * </ul>
+ * Anything else is matched with the Ant matcher. Directories whose whole
+ * content is excluded, or that can not contain an included file, are reported
+ * as not traversable so the walker never descends into them.
+ * <p>
+ * Compiled filters are immutable and are cached per filter pattern string, so
+ * repeated builds on the same agent JVM do not compile the patterns again.
+ */
+public class CompiledPathFilter implements PathFilter {
+
+    private static Logger LOGGER = Logger.getLogger(CompiledPathFilter.class.getName());
+
+    private static final int MAX_CACHED_FILTERS = 32;
+    private static final String SEPARATOR = File.separator;
+    private static final String ANY_FILE_PREFIX = SelectorUtils.DEEP_TREE_MATCH + SEPARATOR + "*";
+    private static final String ANY_FOLDER_PREFIX = SelectorUtils.DEEP_TREE_MATCH + SEPARATOR;
+    private static final String DEEP_FILES_SUFFIX = SEPARATOR + SelectorUtils.DEEP_TREE_MATCH + SEPARATOR + "*";
+    private static final String DEEP_TREE_SUFFIX = SEPARATOR + SelectorUtils.DEEP_TREE_MATCH;
+
+    private static final Map<String, CompiledPathFilter> CACHE = Collections.synchronizedMap(
+            new LinkedHashMap<String, CompiledPathFilter>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CompiledPathFilter> eldest) {
+                    return size() > MAX_CACHED_FILTERS;
+                }
+            });
+
+    private final CompiledPatterns includes;
+    private final CompiledPatterns excludes;
+
+    private CompiledPathFilter(String[] filterExcludePatterns, String[] filterIncludePatterns) {
+        this.excludes = new CompiledPatterns(filterExcludePatterns);
+        this.includes = filterIncludePatterns != null && filterIncludePatterns.length > 0
+                ? new CompiledPatterns(filterIncludePatterns)
+                : null;
+    }
+
+    public static CompiledPathFilter compile(String[] filterExcludePatterns, String[] filterIncludePatterns) {
+        return new CompiledPathFilter(filterExcludePatterns, filterIncludePatterns);
+    }
+
+    /**
+     * Parses comma (or new line) separated filter patterns, patterns starting
+     * with "!" are exclude patterns. The result is cached per pattern string.
+     */
+    public static CompiledPathFilter forFilterPattern(String filterPatterns) {
+        String key = StringUtils.defaultString(filterPatterns);
+        CompiledPathFilter filter = CACHE.get(key);
+        if (filter == null) {
+            filter = parseFilterPattern(key);
+            CACHE.put(key, filter);
+        }
+        return filter;
+    }
+
+    private static CompiledPathFilter parseFilterPattern(String filterPatterns) {
+        List<String> includePatterns = new LinkedList<String>();
+        List<String> excludePatterns = new LinkedList<String>();
+
+        for (String pattern : StringUtils.split(filterPatterns, ",\n")) {
+            pattern = pattern.trim();
+            if (pattern.length() > 0) {
+                if (pattern.startsWith("!")) {
+                    pattern = pattern.substring(1); // Trim the "!"
+                    excludePatterns.add(pattern);
+                    LOGGER.fine("Exclude pattern detected: >" + pattern + "<");
+                } else {
+                    includePatterns.add(pattern);
+                    LOGGER.fine("Include pattern detected: >" + pattern + "<");
+                }
+            }
+        }
+
+        return compile(excludePatterns.toArray(new String[]{}), includePatterns.toArray(new String[]{}));
+    }
+
+    @Override
+    public boolean isIncluded(String relativePath) {
+        PathSegments path = new PathSegments(relativePath);
+        return (includes == null || includes.matches(path)) && !excludes.matches(path);
+    }
+
+    @Override
+    public boolean isTraversable(String relativeDirectory) {
+        PathSegments directory = new PathSegments(relativeDirectory);
+        return !excludes.excludesContentOf(directory) && (includes == null || includes.couldMatchUnder(directory));
+    }
+
+    /**
+     * Path split into case folded segments, the Ant tokenized form is only
+     * created when a generic pattern needs it.
+     */
+    private static class PathSegments {
+        private final String path;
+        private final String[] segments;
+        private TokenizedPath tokenizedPath;
+
+        PathSegments(String path) {
+            this.path = path;
+            this.segments = StringUtils.split(foldCase(path), SEPARATOR);
+        }
+
+        String lastSegment() {
+            return segments.length == 0 ? "" : segments[segments.length - 1];
+        }
+
+        TokenizedPath tokenized() {
+            if (tokenizedPath == null) {
+                tokenizedPath = new TokenizedPath(path);
+            }
+            return tokenizedPath;
+        }
+    }
+
+    private static class CompiledPatterns {
+        private final SuffixTrie fileNameSuffixes = new SuffixTrie();
+        private final Set<String> parentFolderNames = new HashSet<>();
+        private final Set<String> anyFolderNames = new HashSet<>();
+        private final Set<String> literalPaths = new HashSet<>();
+        private final List<TokenizedPattern> genericPatterns = new ArrayList<>();
+        private final List<TokenizedPattern> deepExclusionPrefixes = new ArrayList<>();
+
+        CompiledPatterns(String[] patterns) {
+            if (patterns == null) {
+                return;
+            }
+            for (String pattern : patterns) {
+                add(normalize(pattern));
+            }
+        }
+
+        private void add(String pattern) {
+            String folded = foldCase(pattern);
+            if (folded.startsWith(ANY_FOLDER_PREFIX) && folded.endsWith(DEEP_FILES_SUFFIX)
+                    && isLiteralSegment(folded, ANY_FOLDER_PREFIX.length(), folded.length() - DEEP_FILES_SUFFIX.length())) {
+                parentFolderNames.add(folded.substring(ANY_FOLDER_PREFIX.length(), folded.length() - DEEP_FILES_SUFFIX.length()));
+            } else if (folded.startsWith(ANY_FOLDER_PREFIX) && folded.endsWith(DEEP_TREE_SUFFIX)
+                    && isLiteralSegment(folded, ANY_FOLDER_PREFIX.length(), folded.length() - DEEP_TREE_SUFFIX.length())) {
+                anyFolderNames.add(folded.substring(ANY_FOLDER_PREFIX.length(), folded.length() - DEEP_TREE_SUFFIX.length()));
+            } else if (folded.startsWith(ANY_FILE_PREFIX) && isLiteralSegment(folded, ANY_FILE_PREFIX.length(), folded.length())) {
+                fileNameSuffixes.add(folded.substring(ANY_FILE_PREFIX.length()));
+            } else if (!SelectorUtils.hasWildcards(folded) && !folded.startsWith(SEPARATOR)) {
+                literalPaths.add(folded);
+            } else {
+                genericPatterns.add(new TokenizedPattern(pattern));
+                String deepPrefix = null;
+                if (pattern.endsWith(DEEP_FILES_SUFFIX)) {
+                    deepPrefix = pattern.substring(0, pattern.length() - DEEP_FILES_SUFFIX.length());
+                } else if (pattern.endsWith(DEEP_TREE_SUFFIX)) {
+                    deepPrefix = pattern.substring(0, pattern.length() - DEEP_TREE_SUFFIX.length());
+                }
+                if (StringUtils.isNotEmpty(deepPrefix)) {
+                    deepExclusionPrefixes.add(new TokenizedPattern(deepPrefix));
+                }
+            }
+        }
+
+        boolean matches(PathSegments path) {
+            if (fileNameSuffixes.matchesEndOf(path.lastSegment())) {
+                return true;
+            }
+            String[] segments = path.segments;
+            for (int i = 0; i < segments.length; i++) {
+                if (anyFolderNames.contains(segments[i]) || (i < segments.length - 1 && parentFolderNames.contains(segments[i]))) {
+                    return true;
+                }
+            }
+            if (!literalPaths.isEmpty() && literalPaths.contains(StringUtils.join(segments, SEPARATOR))) {
+                return true;
+            }
+            for (TokenizedPattern pattern : genericPatterns) {
+                if (pattern.matchPath(path.tokenized(), false)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @return true if every file under the directory matches one of the patterns
+         */
+        boolean excludesContentOf(PathSegments directory) {
+            for (String segment : directory.segments) {
+                if (parentFolderNames.contains(segment) || anyFolderNames.contains(segment)) {
+                    return true;
+                }
+            }
+            for (TokenizedPattern prefix : deepExclusionPrefixes) {
+                if (prefix.matchPath(directory.tokenized(), false)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @return true if a file under the directory may match one of the patterns
+         */
+        boolean couldMatchUnder(PathSegments directory) {
+            if (!fileNameSuffixes.isEmpty() || !parentFolderNames.isEmpty() || !anyFolderNames.isEmpty()) {
+                return true;
+            }
+            String directoryPrefix = StringUtils.join(directory.segments, SEPARATOR) + SEPARATOR;
+            for (String literalPath : literalPaths) {
+                if (literalPath.startsWith(directoryPrefix)) {
+                    return true;
+                }
+            }
+            for (TokenizedPattern pattern : genericPatterns) {
+                if (pattern.matchStartOf(directory.tokenized(), false)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static boolean isLiteralSegment(String pattern, int start, int end) {
+            if (start >= end && start != pattern.length()) {
+                return false;
+            }
+            for (int i = start; i < end; i++) {
+                char c = pattern.charAt(i);
+                if (c == '*' || c == '?' || c == File.separatorChar) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Trie over reversed file name suffixes, matching a file name costs at
+     * most one step per character regardless of the number of suffixes.
+     */
+    private static class SuffixTrie {
+        private final Node root = new Node();
+        private boolean empty = true;
+
+        void add(String suffix) {
+            Node node = root;
+            for (int i = suffix.length() - 1; i >= 0; i--) {
+                node = node.childFor(suffix.charAt(i));
+            }
+            node.terminal = true;
+            empty = false;
+        }
+
+        boolean isEmpty() {
+            return empty;
+        }
+
+        boolean matchesEndOf(String name) {
+            Node node = root;
+            for (int i = name.length() - 1; node != null; i--) {
+                if (node.terminal) {
+                    return true;
+                }
+                if (i < 0) {
+                    return false;
+                }
+                node = node.child(name.charAt(i));
+            }
+            return false;
+        }
+
+        private static class Node {
+            private char[] keys = new char[0];
+            private Node[] children = new Node[0];
+            private boolean terminal;
+
+            Node child(char key) {
+                for (int i = 0; i < keys.length; i++) {
+                    if (keys[i] == key) {
+                        return children[i];
+                    }
+                }
+                return null;
+            }
+
+            Node childFor(char key) {
+                Node child = child(key);
+                if (child == null) {
+                    child = new Node();
+                    char[] newKeys = new char[keys.length + 1];
+                    Node[] newChildren = new Node[children.length + 1];
+                    System.arraycopy(keys, 0, newKeys, 0, keys.length);
+                    System.arraycopy(children, 0, newChildren, 0, children.length);
+                    newKeys[keys.length] = key;
+                    newChildren[children.length] = child;
+                    keys = newKeys;
+                    children = newChildren;
+                }
+                return child;
+            }
+        }
+    }
+
+    /**
+     * Same normalization as the Ant DirectoryScanner applies to its patterns.
+     */
+    private static String normalize(String pattern) {
+        String normalized = pattern.trim().replace('/', File.separatorChar).replace('\\', File.separatorChar);
+        if (normalized.endsWith(SEPARATOR)) {
+            normalized += SelectorUtils.DEEP_TREE_MATCH;
+        }
+        return normalized;
+    }
+
+    private static String foldCase(String value) {
+        char[] chars = value.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,130 @@
+package com.checkmarx.jenkins.filesystem.zip;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.Deflater;
+
+/**
+ * Decides how every entry of the zip is compressed.
+ * <p>
+ * Files in a known compressed format, and files whose first block looks
+ * random, are stored without compression: deflating them costs CPU time and
+ * saves next to nothing. The other files are deflated with a level chosen by
+ * their class: small files, mostly hand written code, with the best
+ * compression, large and generated files (minified scripts, source maps, lock
+ * files) with the fastest one.
+ */
+public class CompressionPolicy {
+
+    public static final int DEFAULT_SMALL_FILE_LEVEL = Deflater.BEST_COMPRESSION;
+    public static final int DEFAULT_LEVEL = 6;
+    public static final int DEFAULT_LARGE_FILE_LEVEL = Deflater.BEST_SPEED;
+
+    static final long SMALL_FILE_SIZE = 64 * 1024;
+    static final long LARGE_FILE_SIZE = 1024 * 1024;
+    static final int ENTROPY_SAMPLE_SIZE = 4096;
+    private static final int MIN_ENTROPY_SAMPLE_SIZE = 512;
+    /**
+     * Bits per byte above which deflate can not gain anything worthwhile,
+     * source code is typically around 5.
+     */
+    private static final double INCOMPRESSIBLE_ENTROPY = 7.5;
+
+    private static final Set<String> COMPRESSED_FORMATS = new HashSet<>(Arrays.asList(
+            "zip", "jar", "war", "ear", "aar", "apk", "nupkg", "whl", "gz", "tgz", "bz2", "xz", "lz", "lzma", "zst",
+            "7z", "rar", "cab", "png", "jpg", "jpeg", "gif", "webp", "ico", "mp3", "mp4", "ogg", "webm", "avi", "mov",
+            "woff", "woff2", "pdf", "docx", "xlsx", "pptx", "odt", "ods"));
+    private static final String[] GENERATED_SUFFIXES = {".min.js", ".min.css", ".js.map", ".css.map", "-lock.json",
+            ".lock", ".bundle.js"};
+
+    private final int smallFileLevel;
+    private final int level;
+    private final int largeFileLevel;
+
+    public CompressionPolicy() {
+        this(DEFAULT_SMALL_FILE_LEVEL, DEFAULT_LEVEL, DEFAULT_LARGE_FILE_LEVEL);
+    }
+
+    /**
+     * @param smallFileLevel deflate level of the files smaller than 64 KB
+     * @param level          deflate level of the other files
+     * @param largeFileLevel deflate level of the files larger than 1 MB and
+     *                       of the generated files
+     */
+    public CompressionPolicy(int smallFileLevel, int level, int largeFileLevel) {
+        this.smallFileLevel = checkLevel(smallFileLevel);
+        this.level = checkLevel(level);
+        this.largeFileLevel = checkLevel(largeFileLevel);
+    }
+
+    @Override
+    public String toString() {
+        return "deflate levels " + smallFileLevel + "/" + level + "/" + largeFileLevel;
+    }
+
+    /**
+     * @return true if the file is in a compressed format, judging by its name
+     */
+    public boolean isCompressedFormat(String name) {
+        return COMPRESSED_FORMATS.contains(ZipSizeEstimator.typeOf(name));
+    }
+
+    /**
+     * @return true if the file is generated (minified scripts, source maps,
+     *         lock files), judging by its name
+     */
+    public boolean isGenerated(String name) {
+        String lowerCaseName = name.toLowerCase(Locale.ENGLISH);
+        for (String generatedSuffix : GENERATED_SUFFIXES) {
+            if (lowerCaseName.endsWith(generatedSuffix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return deflate level of the file
+     */
+    public int deflateLevel(String name, long size) {
+        if (isGenerated(name)) {
+            return largeFileLevel;
+        }
+        if (size < SMALL_FILE_SIZE) {
+            return smallFileLevel;
+        }
+        return size > LARGE_FILE_SIZE ? largeFileLevel : level;
+    }
+
+    /**
+     * Estimates the entropy of the first {@link #ENTROPY_SAMPLE_SIZE} bytes
+     * of the data. Samples too short to tell are considered compressible.
+     */
+    public static boolean isIncompressible(byte[] data, int offset, int length) {
+        int sampleLength = Math.min(length, ENTROPY_SAMPLE_SIZE);
+        if (sampleLength < MIN_ENTROPY_SAMPLE_SIZE) {
+            return false;
+        }
+        int[] counts = new int[256];
+        for (int i = offset; i < offset + sampleLength; i++) {
+            counts[data[i] & 0xff]++;
+        }
+        double entropy = 0;
+        for (int count : counts) {
+            if (count > 0) {
+                double probability = (double) count / sampleLength;
+                entropy -= probability * Math.log(probability);
+            }
+        }
+        return entropy / Math.log(2) >= INCOMPRESSIBLE_ENTROPY;
+    }
+
+    private static int checkLevel(int level) {
+        if (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid deflate level: " + level);
+        }
+        return level;
+    }
+}
@@ -1,16 +1,26 @@
 package com.checkmarx.jenkins.filesystem.zip;
 
+import com.checkmarx.jenkins.CxConfig;
 import com.checkmarx.jenkins.logger.CxPluginLogger;
 import com.checkmarx.jenkins.filesystem.zip.callable.OsaZipperCallable;
+import com.checkmarx.jenkins.filesystem.zip.callable.PackagingAnalyzerCallable;
+import com.checkmarx.jenkins.filesystem.zip.callable.SastAndOsaZipperCallable;
 import com.checkmarx.jenkins.filesystem.zip.callable.SastZipperCallable;
+import com.checkmarx.jenkins.filesystem.zip.callable.WorkspaceFingerprintCallable;
+import com.checkmarx.jenkins.filesystem.zip.callable.WorkspaceSharderCallable;
 import com.checkmarx.jenkins.filesystem.zip.dto.CxZipResult;
+import com.checkmarx.jenkins.filesystem.zip.dto.PackagingAnalysis;
+import com.checkmarx.jenkins.filesystem.zip.dto.SastAndOsaZipResult;
+import com.checkmarx.jenkins.filesystem.zip.dto.WorkspaceShard;
 import hudson.AbortException;
 import hudson.FilePath;
 import hudson.model.*;
 import org.apache.commons.io.FileUtils;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.List;
 
 /**
  * Created by tsahib on 7/5/2016.
@@ -21,6 +31,13 @@ public class CxZip implements Serializable {
 
     private transient CxPluginLogger logger;
 
+    private transient TaskListener listener;
+
+    private static final String ZIPPED_FILES_LIST = "zipped-files.txt";
+
+    private static final String SAST_ZIP_FORM = "base64 zip";
+    private static final String OSA_ZIP_FORM = "zip";
+
     private static String CANNOT_FIND_WORKSPACE = "Cannot acquire Jenkins workspace location. It can be due to workspace residing on a disconnected slave.";
 
     private Run<?, ?> build;
@@ -31,9 +48,176 @@ public class CxZip implements Serializable {
         this.build = build;
         this.workspace = workspace;
         this.logger = new CxPluginLogger(listener);
+        this.listener = listener;
     }
 
     public FilePath ZipWorkspaceFolder(String filterPattern) throws IOException, InterruptedException {
+        SastZipperCallable sastZipperCallable = newSastZipperCallable(filterPattern, null);
+        sastZipperCallable.setCacheKey(cacheKey(filterPattern, WorkspaceFingerprintCallable.FINGERPRINT_HASHES, SAST_ZIP_FORM, CxConfig.maxZipSize()));
+        return zipWorkspaceFolder(sastZipperCallable);
+    }
+
+    /**
+     * Zips the whole workspace and keeps a manifest of the zipped files next
+     * to the workspace. The files unchanged since the committed manifest are
+     * not hashed again, and the manifest is only committed by
+     * {@link #commitWorkspaceManifest()}. An unchanged workspace is taken from
+     * the zip cache when it is enabled.
+     */
+    public FilePath zipWorkspaceFolderWithManifest(String filterPattern) throws IOException, InterruptedException {
+        SastZipperCallable sastZipperCallable = newSastZipperCallable(filterPattern, getManifestDir().getRemote());
+        sastZipperCallable.setCacheKey(cacheKey(filterPattern, WorkspaceFingerprintCallable.FINGERPRINT_HASHES, SAST_ZIP_FORM, CxConfig.maxZipSize()));
+        return zipWorkspaceFolder(sastZipperCallable);
+    }
+
+    /**
+     * Sources zipped on the node running the job while they are uploaded,
+     * without a temporary file.
+     *
+     * @param withManifest keep a manifest of the zipped files, see
+     *                     {@link #zipWorkspaceFolderWithManifest(String)}
+     */
+    public ScanSources streamWorkspaceFolder(String filterPattern, boolean withManifest) throws AbortException {
+        if (this.workspace == null) {
+            throw new AbortException(
+                    "Checkmarx Scan Failed: "+CANNOT_FIND_WORKSPACE);
+        }
+        return ScanSources.streamed(this.workspace, newSastZipperCallable(filterPattern, withManifest ? getManifestDir().getRemote() : null));
+    }
+
+    public void commitWorkspaceManifest() throws IOException, InterruptedException {
+        getManifestDir().act(new SastZipperCallable.CommitManifestCallable(this.workspace.getRemote()));
+    }
+
+    /**
+     * @return fingerprint of the workspace files matching the filter pattern,
+     *         identical workspaces give identical fingerprints
+     */
+    public String fingerprintWorkspaceFolder(String filterPattern) throws IOException, InterruptedException {
+        FilePath manifestDir = getManifestDir();
+        logger.info("Computing the workspace fingerprint.");
+        String fingerprint = this.workspace.act(new WorkspaceFingerprintCallable(filterPattern, manifestDir.getRemote()));
+        logger.info("Workspace fingerprint: " + fingerprint);
+        return fingerprint;
+    }
+
+    /**
+     * Like {@link #fingerprintWorkspaceFolder(String)} for the files matching
+     * the OSA filter pattern, the dependencies the OSA scan is taken from.
+     */
+    public String fingerprintOsaWorkspaceFolder(String osaFilterPattern) throws IOException, InterruptedException {
+        FilePath manifestDir = getManifestDir();
+        logger.info("Computing the OSA workspace fingerprint.");
+        String fingerprint = this.workspace.act(new WorkspaceFingerprintCallable(osaFilterPattern, manifestDir.getRemote(),
+                WorkspaceFingerprintCallable.OSA_FINGERPRINT_HASHES));
+        logger.info("OSA workspace fingerprint: " + fingerprint);
+        return fingerprint;
+    }
+
+    /**
+     * Splits the workspace into shards that each fit under the maximum zip
+     * size, see {@link WorkspaceSharder}.
+     */
+    public List<WorkspaceShard> planWorkspaceShards(String filterPattern) throws IOException, InterruptedException {
+        if (this.workspace == null) {
+            throw new AbortException(
+                    "Checkmarx Scan Failed: "+CANNOT_FIND_WORKSPACE);
+        }
+        logger.info("Splitting the workspace into shards of at most " + FileUtils.byteCountToDisplaySize(CxConfig.maxZipSize()) + " zipped.");
+        List<WorkspaceShard> shards = this.workspace.act(new WorkspaceSharderCallable(filterPattern));
+        for (WorkspaceShard shard : shards) {
+            logger.info("Shard " + shard.describe());
+        }
+        return shards;
+    }
+
+    /**
+     * Zips a shard of the workspace like {@link #ZipWorkspaceFolder(String)}
+     * zips the whole workspace.
+     */
+    public FilePath zipWorkspaceShard(String filterPattern, WorkspaceShard shard) throws IOException, InterruptedException {
+        SastZipperCallable sastZipperCallable = newSastZipperCallable(filterPattern, null);
+        sastZipperCallable.setShard(shard);
+        sastZipperCallable.setCacheKey(cacheKey(filterPattern, WorkspaceFingerprintCallable.FINGERPRINT_HASHES,
+                SAST_ZIP_FORM + ", shard " + shard.getDirectories() + " and the files of " + shard.getFileDirectories(),
+                CxConfig.maxZipSize()));
+        logger.info("Zipping shard " + shard.getName());
+        return zipWorkspaceFolder(sastZipperCallable);
+    }
+
+    /**
+     * Dry run of the zip of the workspace, nothing is compressed, see
+     * {@link PackagingAnalyzer}.
+     */
+    public PackagingAnalysis analyzeWorkspaceFolder(String filterPattern) throws IOException, InterruptedException {
+        if (this.workspace == null) {
+            throw new AbortException(
+                    "Checkmarx Scan Failed: "+CANNOT_FIND_WORKSPACE);
+        }
+        logger.info("Analyzing the packaging of the workspace, nothing is zipped.");
+        PackagingAnalysis analysis = this.workspace.act(new PackagingAnalyzerCallable(filterPattern));
+        logger.info(analysis.toLines());
+        return analysis;
+    }
+
+    /**
+     * @param hashesFileName file of the content hashes of the fingerprint,
+     *                       see {@link WorkspaceFingerprintCallable}
+     * @param form           form of the zip, see {@link ZipCache#key(String, String, String)}
+     * @param maxZipSize     size limit the zip is checked against
+     * @return key of the zip in the zip cache of the node, null when the
+     *         cache is disabled or the workspace could not be fingerprinted
+     */
+    private String cacheKey(String filterPattern, String hashesFileName, String form, long maxZipSize) throws IOException, InterruptedException {
+        if (CxConfig.zipCacheMaxBytes() <= 0) {
+            return null;
+        }
+        try {
+            String fingerprint = this.workspace.act(new WorkspaceFingerprintCallable(filterPattern, getManifestDir().getRemote(), hashesFileName));
+            // The settings changing the zipped files or how they are compressed are part of the form, and so is the
+            // size limit the zip was checked against
+            return ZipCache.key(fingerprint, filterPattern, form + ", git index: " + CxConfig.gitIndexFileList()
+                    + ", " + CxConfig.compressionPolicy() + ", max size: " + maxZipSize);
+        } catch (IOException e) {
+            logger.info("Failed to fingerprint the workspace, the zip cache is not used: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private SastZipperCallable newSastZipperCallable(String filterPattern, @Nullable String manifestDir) throws AbortException {
+        return new SastZipperCallable(filterPattern, manifestDir, listener, zippedFilesList());
+    }
+
+    /**
+     * @return file on the node the list of the zipped files is written to,
+     *         null when it is not enabled
+     */
+    private String zippedFilesList() throws AbortException {
+        if (!CxConfig.zippedFilesList()) {
+            return null;
+        }
+        String zippedFilesList = getManifestDir().child(ZIPPED_FILES_LIST).getRemote();
+        logger.info("List of the zipped files: " + zippedFilesList);
+        return zippedFilesList;
+    }
+
+    private FilePath getManifestDir() throws AbortException {
+        if (this.workspace == null) {
+            throw new AbortException(
+                    "Checkmarx Scan Failed: "+CANNOT_FIND_WORKSPACE);
+        }
+        return manifestDirOf(this.workspace);
+    }
+
+    /**
+     * @return directory next to the workspace keeping the workspace manifest
+     *         and the other files of the plugin on the node
+     */
+    public static FilePath manifestDirOf(FilePath workspace) {
+        return workspace.sibling(workspace.getName() + "@tmp").child("checkmarx");
+    }
+
+    private FilePath zipWorkspaceFolder(SastZipperCallable sastZipperCallable) throws IOException, InterruptedException {
         FilePath baseDir = this.workspace;
         if (baseDir == null) {
             throw new AbortException(
@@ -41,14 +225,42 @@ public class CxZip implements Serializable {
         }
         logger.info("Started zipping the workspace, this may take a while.");
 
-        SastZipperCallable sastZipperCallable = new SastZipperCallable(filterPattern);
         final CxZipResult zipResult = zipFileAndGetResult(baseDir, sastZipperCallable);
 
-        logZippingCompletionSummery(zipResult, "Temporary file with zipped and base64 encoded sources", 64);
+        logZippingCompletionSummery(zipResult, "Temporary file with zipped and base64 encoded sources");
 
         return zipResult.getTempFile();
     }
 
+    /**
+     * Zips the SAST sources and the OSA sources with a single walk of the
+     * workspace, see {@link SastAndOsaZipperCallable}. Only a failure of the
+     * SAST zip is thrown, the OSA zip is missing from the result when it
+     * failed.
+     */
+    public SastAndOsaZipResult zipWorkspaceFolderWithOsa(String filterPattern, String osaFilterPattern) throws IOException, InterruptedException {
+        FilePath baseDir = this.workspace;
+        if (baseDir == null) {
+            throw new AbortException(
+                    "Checkmarx Scan Failed: "+CANNOT_FIND_WORKSPACE);
+        }
+        logger.info("Started zipping the workspace for the scan and for OSA, this may take a while.");
+
+        SastAndOsaZipperCallable sastAndOsaZipperCallable = new SastAndOsaZipperCallable(filterPattern, osaFilterPattern, listener, zippedFilesList());
+        sastAndOsaZipperCallable.setCacheKeys(cacheKey(filterPattern, WorkspaceFingerprintCallable.FINGERPRINT_HASHES, SAST_ZIP_FORM, CxConfig.maxZipSize()),
+                cacheKey(osaFilterPattern, WorkspaceFingerprintCallable.OSA_FINGERPRINT_HASHES, OSA_ZIP_FORM, CxConfig.maxOSAZipSize()));
+        final SastAndOsaZipResult zipResult = zipFileAndGetResult(baseDir, sastAndOsaZipperCallable);
+
+        logZippingCompletionSummery(zipResult.getSastZipResult(), "Temporary file with zipped and base64 encoded sources");
+        if (zipResult.getOsaZipResult() != null) {
+            logZippingCompletionSummery(zipResult.getOsaZipResult(), "Temporary zip file for OSA");
+        } else {
+            logger.info(zipResult.getOsaFailure().getZippingDetails().getZippingLog());
+            logger.info("Zipping files for OSA failed: " + zipResult.getOsaFailure().getMessage() + ", they will be zipped again before the OSA scan");
+        }
+        return zipResult;
+    }
+
     public FilePath zipSourceCode(String filterPattern) throws Exception {
         FilePath baseDir = this.workspace;
         if (baseDir == null) {
@@ -57,13 +269,14 @@ public class CxZip implements Serializable {
 
         logger.info("Started zipping files for OSA, this may take a while.");
         OsaZipperCallable osaZipperCallable = new OsaZipperCallable(filterPattern);
+        osaZipperCallable.setCacheKey(cacheKey(filterPattern, WorkspaceFingerprintCallable.OSA_FINGERPRINT_HASHES, OSA_ZIP_FORM, CxConfig.maxOSAZipSize()));
         final CxZipResult zipResult = zipFileAndGetResult(baseDir, osaZipperCallable);
-        logZippingCompletionSummery(zipResult, "Temporary zip file",1);
+        logZippingCompletionSummery(zipResult, "Temporary zip file");
 
         return zipResult.getTempFile();
     }
 
-    private CxZipResult zipFileAndGetResult(FilePath baseDir, FilePath.FileCallable<CxZipResult> callable) throws InterruptedException, IOException {
+    private <T> T zipFileAndGetResult(FilePath baseDir, FilePath.FileCallable<T> callable) throws InterruptedException, IOException {
         try {
             return baseDir.act(callable);
             //Handles the case where "act" method works on a remote system catches the ZipperException and make it's own IOException
@@ -76,6 +289,9 @@ public class CxZip implements Serializable {
                 if(e.getCause().getClass() == (Zipper.MaxZipSizeReached.class)) {
                     throw (Zipper.MaxZipSizeReached) e.getCause();
                 }
+                if(e.getCause().getClass() == (Zipper.MaxZipSizePredicted.class)) {
+                    throw (Zipper.MaxZipSizePredicted) e.getCause();
+                }
                 if(e.getCause().getClass() == (Zipper.ZipperException.class)){
                     throw (Zipper.ZipperException)e.getCause();
                 }
@@ -84,9 +300,11 @@ public class CxZip implements Serializable {
         }
     }
 
-    private void logZippingCompletionSummery(CxZipResult zipResult, String tempFileDescription, int base) throws IOException, InterruptedException {
+    private void logZippingCompletionSummery(CxZipResult zipResult, String tempFileDescription) throws IOException, InterruptedException {
         logger.info("Zipping complete with " + zipResult.getZippingDetails().getNumOfZippedFiles() + " files, total compressed size: " +
-                FileUtils.byteCountToDisplaySize(zipResult.getTempFile().length() / base)); // We print here the size of compressed sources before encoding to base
+                FileUtils.byteCountToDisplaySize(zipResult.getZippingDetails().getZipSize()) + ", file size: " +
+                FileUtils.byteCountToDisplaySize(zipResult.getTempFile().length()));
+        logger.info(zipResult.getZippingDetails().getZippingLog());
         logger.info(tempFileDescription+" was created at: " + zipResult.getTempFile().getRemote());
     }
 
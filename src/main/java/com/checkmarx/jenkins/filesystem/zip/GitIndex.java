@@ -0,0 +1,349 @@
+package com.checkmarx.jenkins.filesystem.zip;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Files tracked by git in a work tree, read from its index.
+ * <p>
+ * The index (<code>.git/index</code>, versions 2 to 4) is parsed directly.
+ * When it can not be parsed, for example a split index, the list is taken
+ * from <code>git ls-files</code> if a git binary is available. Entries of a
+ * parsed index also carry the blob id of the file, which is its content hash
+ * as long as the file was not modified since it was added to the index.
+ */
+public class GitIndex {
+
+    private static Logger LOGGER = Logger.getLogger(GitIndex.class.getName());
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int SIGNATURE = 0x44495243; // "DIRC"
+    private static final int EXTENSION_LINK = 0x6c696e6b; // "link", split index
+    private static final int OBJECT_ID_LENGTH = 20;
+    private static final int ENTRY_FIXED_LENGTH = 62;
+    private static final int FLAG_EXTENDED = 0x4000;
+    private static final int FLAG_STAGE = 0x3000;
+    private static final int FLAG_NAME_LENGTH = 0xfff;
+    private static final int EXTENDED_FLAG_SKIP_WORKTREE = 0x4000;
+    private static final int MODE_TYPE = 0170000;
+    private static final int MODE_REGULAR_FILE = 0100000;
+    private static final int MODE_SYMBOLIC_LINK = 0120000;
+    private static final int MODE_GITLINK = 0160000;
+    private static final String GITDIR_PREFIX = "gitdir:";
+
+    private final List<Entry> entries;
+    private final long indexLastModified;
+
+    private GitIndex(List<Entry> entries, long indexLastModified) {
+        this.entries = entries;
+        this.indexLastModified = indexLastModified;
+    }
+
+    /**
+     * @param workTree root directory of a git work tree
+     * @return the tracked files of the work tree, or null if it is not a git
+     *         work tree or its index can not be read
+     */
+    public static GitIndex read(File workTree) {
+        File gitDir = gitDir(workTree);
+        if (gitDir == null) {
+            return null;
+        }
+        File indexFile = new File(gitDir, "index");
+        if (!indexFile.isFile()) {
+            return null;
+        }
+        long indexLastModified = indexFile.lastModified();
+        try {
+            List<Entry> entries = parse(FileUtils.readFileToByteArray(indexFile));
+            if (entries != null) {
+                return new GitIndex(entries, indexLastModified);
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.fine("Failed to parse the git index " + indexFile + ": " + e);
+        }
+        List<Entry> entries = lsFiles(workTree);
+        return entries == null ? null : new GitIndex(entries, indexLastModified);
+    }
+
+    /**
+     * @return the entries in the order of the index, sorted by path
+     */
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * @param attributes attributes of the file of the entry in the work tree
+     * @return blob id of the file content, or null if the file may have been
+     *         modified since it was added to the index
+     */
+    public byte[] contentHash(Entry entry, BasicFileAttributes attributes) {
+        if (entry.objectId == null || (entry.mode & MODE_TYPE) != MODE_REGULAR_FILE || attributes.size() != entry.size) {
+            return null;
+        }
+        long lastModifiedNanos = attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+        long lastModifiedSeconds = TimeUnit.NANOSECONDS.toSeconds(lastModifiedNanos);
+        // Compared to the millisecond, the precision of the file times is not the same everywhere
+        if (lastModifiedSeconds != entry.lastModifiedSeconds
+                || TimeUnit.NANOSECONDS.toMillis(lastModifiedNanos % 1000000000L) != TimeUnit.NANOSECONDS.toMillis(entry.lastModifiedNanos)) {
+            return null;
+        }
+        // Racily clean: modified in the second the index was written, the same size and time do not prove anything
+        if (lastModifiedSeconds >= TimeUnit.MILLISECONDS.toSeconds(indexLastModified)) {
+            return null;
+        }
+        return entry.objectId.clone();
+    }
+
+    /**
+     * @return the git directory of the work tree, also when <code>.git</code>
+     *         is a file pointing to it (linked work trees and submodules)
+     */
+    static File gitDir(File workTree) {
+        File dotGit = new File(workTree, ".git");
+        if (dotGit.isDirectory()) {
+            return dotGit;
+        }
+        if (!dotGit.isFile()) {
+            return null;
+        }
+        try {
+            String content = FileUtils.readFileToString(dotGit, "UTF-8").trim();
+            if (!content.startsWith(GITDIR_PREFIX)) {
+                return null;
+            }
+            File gitDir = new File(content.substring(GITDIR_PREFIX.length()).trim());
+            if (!gitDir.isAbsolute()) {
+                gitDir = new File(workTree, gitDir.getPath());
+            }
+            return gitDir.isDirectory() ? gitDir : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the entries, conflicting paths only once, or null if the index
+     *         is in a format that is not supported
+     */
+    static List<Entry> parse(byte[] index) {
+        if (index.length < 12 + OBJECT_ID_LENGTH || readInt(index, 0) != SIGNATURE) {
+            return null;
+        }
+        int version = readInt(index, 4);
+        if (version < 2 || version > 4) {
+            return null;
+        }
+        int count = readInt(index, 8);
+        List<Entry> entries = new ArrayList<>(Math.min(count, index.length / ENTRY_FIXED_LENGTH));
+        int position = 12;
+        byte[] previousPath = new byte[0];
+        for (int i = 0; i < count; i++) {
+            int start = position;
+            long lastModifiedSeconds = readInt(index, start + 8) & 0xffffffffL;
+            int lastModifiedNanos = readInt(index, start + 12);
+            int mode = readInt(index, start + 24);
+            long size = readInt(index, start + 36) & 0xffffffffL;
+            byte[] objectId = new byte[OBJECT_ID_LENGTH];
+            System.arraycopy(index, start + 40, objectId, 0, OBJECT_ID_LENGTH);
+            int flags = readShort(index, start + 60);
+            position = start + ENTRY_FIXED_LENGTH;
+            int extendedFlags = 0;
+            if ((flags & FLAG_EXTENDED) != 0) {
+                if (version < 3) {
+                    return null;
+                }
+                extendedFlags = readShort(index, position);
+                position += 2;
+            }
+
+            byte[] path;
+            if (version == 4) {
+                // The path is the previous one minus a number of bytes, plus a suffix
+                long[] strip = readVarint(index, position);
+                position = (int) strip[1];
+                int end = indexOfNul(index, position);
+                int prefixLength = previousPath.length - (int) strip[0];
+                if (prefixLength < 0) {
+                    return null;
+                }
+                path = new byte[prefixLength + end - position];
+                System.arraycopy(previousPath, 0, path, 0, prefixLength);
+                System.arraycopy(index, position, path, prefixLength, end - position);
+                position = end + 1;
+            } else {
+                int nameLength = flags & FLAG_NAME_LENGTH;
+                int end = nameLength < FLAG_NAME_LENGTH ? position + nameLength : indexOfNul(index, position);
+                path = new byte[end - position];
+                System.arraycopy(index, position, path, 0, path.length);
+                // Padded with 1 to 8 nul bytes to a multiple of 8
+                position = start + ((end - start + 8) & ~7);
+            }
+            previousPath = path;
+
+            if ((extendedFlags & EXTENDED_FLAG_SKIP_WORKTREE) != 0) {
+                // Not checked out, sparse checkout
+                continue;
+            }
+            String pathName = new String(path, UTF8);
+            if ((flags & FLAG_STAGE) != 0) {
+                // A conflict has up to three entries, the file holds none of them
+                if (entries.isEmpty() || !entries.get(entries.size() - 1).path.equals(pathName)) {
+                    entries.add(new Entry(pathName, mode, size, 0, 0, null));
+                }
+                continue;
+            }
+            entries.add(new Entry(pathName, mode, size, lastModifiedSeconds, lastModifiedNanos, objectId));
+        }
+
+        // Extensions, a split index keeps most of its entries in a shared index
+        while (position + 8 <= index.length - OBJECT_ID_LENGTH) {
+            int signature = readInt(index, position);
+            if (signature == EXTENSION_LINK) {
+                return null;
+            }
+            position += 8 + readInt(index, position + 4);
+        }
+        return entries;
+    }
+
+    /**
+     * @return the entries listed by <code>git ls-files</code>, without blob
+     *         ids since the file may differ from the index, or null if git is
+     *         not available
+     */
+    private static List<Entry> lsFiles(File workTree) {
+        Process process;
+        try {
+            process = new ProcessBuilder("git", "ls-files", "--stage", "-z")
+                    .directory(workTree)
+                    .redirectError(ProcessBuilder.Redirect.INHERIT)
+                    .start();
+        } catch (IOException e) {
+            LOGGER.fine("git is not available: " + e.getMessage());
+            return null;
+        }
+        try {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            InputStream inputStream = process.getInputStream();
+            try {
+                IOUtils.copy(inputStream, output);
+            } finally {
+                inputStream.close();
+            }
+            if (process.waitFor() != 0) {
+                return null;
+            }
+            List<Entry> entries = new ArrayList<>();
+            String previousPath = null;
+            // <mode> SP <object id> SP <stage> TAB <path> NUL
+            for (String line : output.toString("UTF-8").split("\0")) {
+                int tab = line.indexOf('\t');
+                if (tab < 0) {
+                    continue;
+                }
+                String path = line.substring(tab + 1);
+                if (!path.equals(previousPath)) {
+                    entries.add(new Entry(path, Integer.parseInt(line.substring(0, line.indexOf(' ')), 8), -1, 0, 0, null));
+                    previousPath = path;
+                }
+            }
+            return entries;
+        } catch (IOException | RuntimeException e) {
+            LOGGER.fine("git ls-files failed: " + e);
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } finally {
+            process.destroy();
+        }
+    }
+
+    private static int readInt(byte[] data, int offset) {
+        return (data[offset] & 0xff) << 24 | (data[offset + 1] & 0xff) << 16 | (data[offset + 2] & 0xff) << 8 | (data[offset + 3] & 0xff);
+    }
+
+    private static int readShort(byte[] data, int offset) {
+        return (data[offset] & 0xff) << 8 | (data[offset + 1] & 0xff);
+    }
+
+    /**
+     * Variable length integer of the index version 4.
+     *
+     * @return the value and the position after it
+     */
+    private static long[] readVarint(byte[] data, int offset) {
+        int b = data[offset++] & 0xff;
+        long value = b & 0x7f;
+        while ((b & 0x80) != 0) {
+            b = data[offset++] & 0xff;
+            value = ((value + 1) << 7) | (b & 0x7f);
+        }
+        return new long[]{value, offset};
+    }
+
+    private static int indexOfNul(byte[] data, int offset) {
+        for (int i = offset; i < data.length; i++) {
+            if (data[i] == 0) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unterminated path in the git index");
+    }
+
+    /**
+     * Tracked path of the work tree.
+     */
+    public static class Entry {
+        private final String path;
+        private final int mode;
+        private final long size;
+        private final long lastModifiedSeconds;
+        private final int lastModifiedNanos;
+        private final byte[] objectId;
+
+        Entry(String path, int mode, long size, long lastModifiedSeconds, int lastModifiedNanos, byte[] objectId) {
+            this.path = path;
+            this.mode = mode;
+            this.size = size;
+            this.lastModifiedSeconds = lastModifiedSeconds;
+            this.lastModifiedNanos = lastModifiedNanos;
+            this.objectId = objectId;
+        }
+
+        /**
+         * @return path relative to the work tree, separated by '/'
+         */
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * @return true for files and symbolic links
+         */
+        public boolean isFile() {
+            int type = mode & MODE_TYPE;
+            return type == MODE_REGULAR_FILE || type == MODE_SYMBOLIC_LINK;
+        }
+
+        /**
+         * @return true for a submodule, its files are tracked by its own index
+         */
+        public boolean isSubmodule() {
+            return (mode & MODE_TYPE) == MODE_GITLINK;
+        }
+    }
+}
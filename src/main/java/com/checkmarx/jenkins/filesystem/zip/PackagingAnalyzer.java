@@ -0,0 +1,279 @@
+package com.checkmarx.jenkins.filesystem.zip;
+
+import com.checkmarx.jenkins.filesystem.zip.dto.PackagingAnalysis;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Dry run of the zip: tells what the zip of the workspace would hold with a
+ * filter pattern without compressing anything.
+ * <p>
+ * The whole workspace is walked, excluded directories included, so that
+ * every pattern of the filter can be counted against the files it matches.
+ * The files to zip are totalled per directory, up to
+ * {@link #MAX_DIRECTORY_DEPTH} levels, and per file type, their compressed
+ * size is estimated like {@link ZipSizeEstimator} does. Directories made
+ * mostly of binaries, archives or generated files, and binary file types,
+ * are suggested as exclusions, largest saving first.
+ */
+public class PackagingAnalyzer {
+
+    static final int MAX_DIRECTORY_DEPTH = 3;
+    static final int TOP_ROWS = 15;
+    static final int MAX_SUGGESTIONS = 5;
+    /**
+     * Share of binary bytes above which a directory is suggested as an
+     * exclusion.
+     */
+    private static final double BINARY_DIRECTORY_SHARE = 0.5;
+    private static final String NO_TYPE = "(none)";
+    private static final Set<String> BINARY_TYPES = new HashSet<>(Arrays.asList(
+            "class", "dll", "exe", "so", "dylib", "o", "obj", "a", "lib", "pdb", "pyc", "pyo", "bin", "dat", "db",
+            "sqlite", "iso", "dmg", "msi", "tar", "mdb", "ttf", "otf", "eot", "bmp", "tif", "tiff", "psd", "wav"));
+
+    private final PathFilter filter;
+    private final String filterPattern;
+    private final Map<String, PatternCounter> patterns = new LinkedHashMap<>();
+    private final ZipSizeEstimator estimator = new ZipSizeEstimator();
+    private final CompressionPolicy compressionPolicy = new CompressionPolicy();
+    private final Map<String, Totals> directories = new HashMap<>();
+    private final Map<String, Totals> types = new HashMap<>();
+    private int numberOfFiles;
+    private long size;
+    private int numberOfExcludedFiles;
+    private long excludedSize;
+
+    PackagingAnalyzer(String filterPattern) {
+        this.filterPattern = StringUtils.defaultString(filterPattern);
+        this.filter = CompiledPathFilter.forFilterPattern(this.filterPattern);
+        for (String pattern : StringUtils.split(this.filterPattern, ",\n")) {
+            pattern = pattern.trim();
+            if (pattern.length() > 0 && !patterns.containsKey(pattern)) {
+                patterns.put(pattern, new PatternCounter(pattern));
+            }
+        }
+    }
+
+    /**
+     * @param gitIndex take the files from the git index, like the zipper
+     */
+    public static PackagingAnalysis analyze(File baseDir, String filterPattern, boolean gitIndex) throws IOException {
+        PackagingAnalyzer analyzer = new PackagingAnalyzer(filterPattern);
+        WorkspaceWalker walker = new WorkspaceWalker(baseDir, CompiledPathFilter.forFilterPattern(""));
+        walker.setGitIndex(gitIndex);
+        walker.start();
+        try {
+            WorkspaceFile file;
+            while ((file = walker.take()) != null) {
+                analyzer.add(file);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Packaging analysis interrupted", e);
+        } finally {
+            walker.close();
+            analyzer.estimator.end();
+        }
+        return analyzer.toAnalysis();
+    }
+
+    void add(WorkspaceFile file) {
+        String relativePath = file.getRelativePath();
+        for (PatternCounter pattern : patterns.values()) {
+            if (pattern.filter.isIncluded(relativePath)) {
+                pattern.files++;
+                pattern.size += file.getSize();
+            }
+        }
+        if (!filter.isIncluded(relativePath)) {
+            numberOfExcludedFiles++;
+            excludedSize += file.getSize();
+            return;
+        }
+
+        estimator.add(file);
+        numberOfFiles++;
+        size += file.getSize();
+        String type = ZipSizeEstimator.typeOf(relativePath);
+        boolean binary = isBinary(relativePath, type);
+        totalsOf(types, type).add(type, file.getSize(), binary);
+        String[] segments = StringUtils.split(relativePath.replace('\\', '/'), '/');
+        StringBuilder directory = new StringBuilder();
+        for (int i = 0; i < segments.length - 1 && i < MAX_DIRECTORY_DEPTH; i++) {
+            if (i > 0) {
+                directory.append('/');
+            }
+            directory.append(segments[i]);
+            totalsOf(directories, directory.toString()).add(type, file.getSize(), binary);
+        }
+    }
+
+    PackagingAnalysis toAnalysis() {
+        List<PackagingAnalysis.Row> directoryRows = rows(directories, false);
+        List<PackagingAnalysis.Row> typeRows = rows(types, true);
+
+        List<PackagingAnalysis.PatternMatch> patternMatches = new ArrayList<>();
+        for (PatternCounter pattern : patterns.values()) {
+            patternMatches.add(new PackagingAnalysis.PatternMatch(pattern.pattern, pattern.files, pattern.size));
+        }
+
+        return new PackagingAnalysis(filterPattern, numberOfFiles, size, estimator.toEstimate().getCompressedSize(),
+                numberOfExcludedFiles, excludedSize,
+                top(directoryRows, BY_SIZE), top(directoryRows, BY_FILES), top(typeRows, BY_SIZE), top(typeRows, BY_FILES),
+                patternMatches, suggestions());
+    }
+
+    /**
+     * Binary directories and binary file types, the largest first, without
+     * a directory inside or around another suggested one.
+     */
+    private List<PackagingAnalysis.Row> suggestions() {
+        List<PackagingAnalysis.Row> candidates = new ArrayList<>();
+        for (Map.Entry<String, Totals> directory : directories.entrySet()) {
+            Totals totals = directory.getValue();
+            if (totals.binarySize >= BINARY_DIRECTORY_SHARE * totals.size && totals.size > 0) {
+                candidates.add(new PackagingAnalysis.Row("!" + directory.getKey() + "/**/*", totals.files, totals.size, compressedSize(totals)));
+            }
+        }
+        for (Map.Entry<String, Totals> type : types.entrySet()) {
+            Totals totals = type.getValue();
+            if (!type.getKey().isEmpty() && totals.binarySize == totals.size && totals.size > 0) {
+                candidates.add(new PackagingAnalysis.Row("!**/*." + type.getKey(), totals.files, totals.size, compressedSize(totals)));
+            }
+        }
+        Collections.sort(candidates, BY_COMPRESSED_SIZE);
+
+        List<PackagingAnalysis.Row> suggestions = new ArrayList<>();
+        List<String> suggestedDirectories = new ArrayList<>();
+        for (PackagingAnalysis.Row candidate : candidates) {
+            if (suggestions.size() == MAX_SUGGESTIONS) {
+                break;
+            }
+            String name = candidate.getName();
+            if (name.endsWith("/**/*")) {
+                String directory = name.substring(1, name.length() - "/**/*".length());
+                if (overlaps(directory, suggestedDirectories)) {
+                    continue;
+                }
+                suggestedDirectories.add(directory);
+            }
+            suggestions.add(candidate);
+        }
+        return suggestions;
+    }
+
+    private boolean isBinary(String relativePath, String type) {
+        return BINARY_TYPES.contains(type) || compressionPolicy.isCompressedFormat(relativePath) || compressionPolicy.isGenerated(relativePath);
+    }
+
+    private List<PackagingAnalysis.Row> rows(Map<String, Totals> totalsByName, boolean types) {
+        List<PackagingAnalysis.Row> rows = new ArrayList<>();
+        for (Map.Entry<String, Totals> totals : totalsByName.entrySet()) {
+            String name = types && totals.getKey().isEmpty() ? NO_TYPE : totals.getKey();
+            rows.add(new PackagingAnalysis.Row(name, totals.getValue().files, totals.getValue().size, compressedSize(totals.getValue())));
+        }
+        return rows;
+    }
+
+    private long compressedSize(Totals totals) {
+        double compressedSize = 0;
+        for (Map.Entry<String, Long> sizeOfType : totals.sizePerType.entrySet()) {
+            compressedSize += sizeOfType.getValue() * estimator.ratioOf(sizeOfType.getKey());
+        }
+        return (long) compressedSize;
+    }
+
+    private static boolean overlaps(String directory, List<String> directories) {
+        for (String other : directories) {
+            if (directory.startsWith(other + "/") || other.startsWith(directory + "/")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<PackagingAnalysis.Row> top(List<PackagingAnalysis.Row> rows, Comparator<PackagingAnalysis.Row> order) {
+        List<PackagingAnalysis.Row> sorted = new ArrayList<>(rows);
+        Collections.sort(sorted, order);
+        return new ArrayList<>(sorted.subList(0, Math.min(TOP_ROWS, sorted.size())));
+    }
+
+    private static Totals totalsOf(Map<String, Totals> totalsByName, String name) {
+        Totals totals = totalsByName.get(name);
+        if (totals == null) {
+            totals = new Totals();
+            totalsByName.put(name, totals);
+        }
+        return totals;
+    }
+
+    private static final Comparator<PackagingAnalysis.Row> BY_SIZE = new Comparator<PackagingAnalysis.Row>() {
+        @Override
+        public int compare(PackagingAnalysis.Row first, PackagingAnalysis.Row second) {
+            int order = Long.compare(second.getSize(), first.getSize());
+            return order != 0 ? order : first.getName().compareTo(second.getName());
+        }
+    };
+
+    private static final Comparator<PackagingAnalysis.Row> BY_FILES = new Comparator<PackagingAnalysis.Row>() {
+        @Override
+        public int compare(PackagingAnalysis.Row first, PackagingAnalysis.Row second) {
+            int order = Integer.compare(second.getFiles(), first.getFiles());
+            return order != 0 ? order : first.getName().compareTo(second.getName());
+        }
+    };
+
+    private static final Comparator<PackagingAnalysis.Row> BY_COMPRESSED_SIZE = new Comparator<PackagingAnalysis.Row>() {
+        @Override
+        public int compare(PackagingAnalysis.Row first, PackagingAnalysis.Row second) {
+            int order = Long.compare(second.getCompressedSize(), first.getCompressedSize());
+            return order != 0 ? order : first.getName().compareTo(second.getName());
+        }
+    };
+
+    private static class Totals {
+        private final Map<String, Long> sizePerType = new HashMap<>();
+        private int files;
+        private long size;
+        private long binarySize;
+
+        void add(String type, long fileSize, boolean binary) {
+            files++;
+            size += fileSize;
+            if (binary) {
+                binarySize += fileSize;
+            }
+            Long sizeOfType = sizePerType.get(type);
+            sizePerType.put(type, (sizeOfType == null ? 0 : sizeOfType) + fileSize);
+        }
+    }
+
+    /**
+     * Pattern of the filter on its own, without the "!" of an exclude
+     * pattern, and the files it matches.
+     */
+    private static class PatternCounter {
+        private final String pattern;
+        private final PathFilter filter;
+        private int files;
+        private long size;
+
+        PatternCounter(String pattern) {
+            this.pattern = pattern;
+            String body = pattern.startsWith("!") ? pattern.substring(1) : pattern;
+            this.filter = CompiledPathFilter.compile(new String[0], new String[]{body});
+        }
+    }
+}
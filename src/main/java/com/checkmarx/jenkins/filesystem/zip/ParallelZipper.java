@@ -0,0 +1,826 @@
+package com.checkmarx.jenkins.filesystem.zip;
+
+import com.checkmarx.jenkins.filesystem.zip.dto.ZippingDetails;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * Multi-core deflate engine used by {@link Zipper}.
+ * <p>
+ * A pool of workers compresses the entries, files larger than
+ * {@link #CHUNK_SIZE} are split into chunks that are compressed independently
+ * (pigz style: every chunk is primed with the last 32K of the previous chunk as
+ * dictionary and terminated with a sync flush, so the chunks concatenate into a
+ * single valid deflate stream). The calling thread acts as the single writer
+ * and assembles the archive strictly in the order of the given file list, so
+ * the produced zip is deterministic regardless of the number of threads.
+ * <p>
+ * The number of chunks that are compressed but not yet written is bounded, so
+ * the memory footprint does not depend on the size of the workspace.
+ * <p>
+ * The {@link CompressionPolicy} of the zipper picks the deflate level of every
+ * entry, or stores it without compression. A stored file split into chunks
+ * gets its crc computed by a separate task first, since the crc of a stored
+ * entry has to be written before its data.
+ * <p>
+ * Every worker reads its chunks with a single positional read into a buffer
+ * it reuses, and deflates into a reused output buffer, so compressing a chunk
+ * allocates nothing but its result. The chunks of the following files are
+ * read by the other workers while the current file is written.
+ * <p>
+ * A {@link SecondaryArchive} can be written from the same walk: the walker
+ * finds the files of both archives, every file is read and compressed once
+ * and its compressed chunks are written to the archives whose filter includes
+ * it, each with its own writer and size limit.
+ */
+class ParallelZipper {
+
+    private static Logger LOGGER = Logger.getLogger(ParallelZipper.class.getName());
+
+    static final int CHUNK_SIZE = 1024 * 1024;
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+    private static final int CHUNKS_IN_FLIGHT_PER_THREAD = 3;
+    private static final CompressedChunk UNREADABLE = new CompressedChunk(new byte[0], 0, 0, ZipEntry.DEFLATED);
+
+    private final Zipper zipper;
+    private final CompressionPolicy compressionPolicy;
+    private final ReadThrottle readThrottle;
+    private final int threads;
+    private final int maxChunksInFlight;
+    private final ConcurrentLinkedQueue<Deflater> deflaters = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<Deflater[]> threadDeflaters = new ThreadLocal<Deflater[]>() {
+        @Override
+        protected Deflater[] initialValue() {
+            // One deflater per level, changing the level of a deflater would flush its stream
+            return new Deflater[Deflater.BEST_COMPRESSION + 1];
+        }
+    };
+    private final ThreadLocal<byte[]> threadInputBuffer = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[DICTIONARY_SIZE + CHUNK_SIZE];
+        }
+    };
+    private final ThreadLocal<ByteArrayBuilder> threadOutputBuffer = new ThreadLocal<ByteArrayBuilder>() {
+        @Override
+        protected ByteArrayBuilder initialValue() {
+            return new ByteArrayBuilder(CHUNK_SIZE / 2);
+        }
+    };
+    private final AtomicLong deflateNanos = new AtomicLong();
+    private final AtomicLong deflatedBytes = new AtomicLong();
+
+    private int chunksInFlight;
+    private PathFilter filter;
+    private PathFilter secondaryFilter;
+
+    ParallelZipper(Zipper zipper, int threads) {
+        this.zipper = zipper;
+        this.compressionPolicy = zipper.getCompressionPolicy();
+        this.readThrottle = zipper.getReadThrottle();
+        this.threads = threads;
+        this.maxChunksInFlight = threads * CHUNKS_IN_FLIGHT_PER_THREAD;
+    }
+
+    /**
+     * Zips the files found by the walker in the order they are found. Closes
+     * the output stream when done, also on failure.
+     *
+     * @param manifestTracker  records the zipped files, its counts are logged;
+     *                         may be null
+     * @param filter           filter of this archive, the walker also finds the
+     *                         files of the secondary archive
+     * @param secondaryArchive written with the files matching secondaryFilter;
+     *                         may be null
+     */
+    ZippingDetails zip(WorkspaceWalker files, OutputStream outputStream, long maxZipSize,
+                       WorkspaceManifestTracker manifestTracker, PathFilter filter,
+                       SecondaryArchive secondaryArchive, PathFilter secondaryFilter) throws IOException {
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ZipWorkerThreadFactory());
+        Deque<PendingEntry> pendingEntries = new ArrayDeque<>();
+        ZipArchiveWriter writer = new ZipArchiveWriter(outputStream);
+        SecondaryWriter secondary = null;
+        int numberOfZippedFiles = 0;
+        int numberOfMatchedFiles = 0;
+        if (secondaryArchive != null) {
+            this.filter = filter;
+            this.secondaryFilter = secondaryFilter;
+            secondary = new SecondaryWriter(secondaryArchive);
+        }
+
+        try {
+            while (true) {
+                submitChunks(executor, files, pendingEntries, true);
+                PendingEntry entry = pendingEntries.poll();
+                if (entry == null) {
+                    break;
+                }
+                if (entry.primary) {
+                    ++numberOfMatchedFiles;
+                }
+
+                CompressedChunk firstChunk = takeChunk(entry);
+                if (firstChunk == UNREADABLE) {
+                    zipper.getLog().fileUnreadable(entry.file.getPath());
+                    // The other chunks of the entry are never taken, give their room in the window back
+                    entry.cancel();
+                    chunksInFlight -= entry.chunksSubmitted - entry.chunksWritten;
+                    continue;
+                }
+
+                long entryOffset = writer.getBytesWritten();
+                int method = writeEntry(executor, files, pendingEntries, entry, firstChunk, entry.primary ? writer : null,
+                        maxZipSize, numberOfZippedFiles, entry.secondary ? secondary : null);
+                if (entry.primary) {
+                    zipper.getLog().fileZipped(entry.name, entry.length, writer.getBytesWritten() - entryOffset, method == ZipEntry.STORED);
+                    ++numberOfZippedFiles;
+                }
+            }
+
+            zipper.getLog().filesExcluded(files.getNumberOfExcludedFiles());
+            zipper.getLog().deflateTime(deflatedBytes.get(), deflateNanos.get());
+            if (manifestTracker != null && manifestTracker.getPreviousManifest() != null) {
+                zipper.updateInfoProgress(manifestTracker.getNumberOfChangedFiles() + " files added or modified since the last zip, "
+                        + manifestTracker.getNumberOfHashedFiles() + " files hashed");
+            }
+
+            if (numberOfMatchedFiles == 0) {
+                zipper.updateError("No files to zip");
+                throw new Zipper.NoFilesToZip(new ZippingDetails(numberOfZippedFiles, zipper.getZippingLog()));
+            }
+            writer.finish();
+            // The central directory is written last, the archive may only now be over the limit
+            checkMaxZipSize(writer, 0, maxZipSize, "(zip central directory)", numberOfZippedFiles);
+            if (secondary != null) {
+                secondary.finish();
+            }
+        } catch (Zipper.ZipperException e) {
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new Zipper.ZipperException(e, new ZippingDetails(numberOfZippedFiles, zipper.getZippingLog()));
+        } catch (ExecutionException e) {
+            throw new Zipper.ZipperException(e.getCause(), new ZippingDetails(numberOfZippedFiles, zipper.getZippingLog()));
+        } catch (Exception e) {
+            throw new Zipper.ZipperException(e, new ZippingDetails(numberOfZippedFiles, zipper.getZippingLog()));
+        } finally {
+            for (PendingEntry entry : pendingEntries) {
+                entry.cancel();
+            }
+            executor.shutdownNow();
+            if (secondary != null) {
+                secondary.close();
+            }
+            writer.close();
+            releaseDeflaters();
+        }
+
+        return new ZippingDetails(numberOfZippedFiles, writer.getBytesWritten(), zipper.getLog().toSummaryLines());
+    }
+
+    /**
+     * Writes all chunks of the entry, keeping the workers busy with the
+     * following entries while waiting for the compressed data. The size limit
+     * is checked against the bytes actually written before every chunk.
+     *
+     * @param writer    writer of the main archive, null if the entry only goes
+     *                  to the secondary archive
+     * @param secondary writer of the secondary archive, null if the entry does
+     *                  not go to it
+     * @return compression method of the entry
+     */
+    private int writeEntry(ExecutorService executor, WorkspaceWalker files, Deque<PendingEntry> pendingEntries,
+                            PendingEntry entry, CompressedChunk firstChunk, ZipArchiveWriter writer,
+                            long maxZipSize, int numberOfZippedFiles, SecondaryWriter secondary)
+            throws IOException, InterruptedException, ExecutionException {
+
+        CompressedChunk chunk = firstChunk;
+        if (entry.chunkCount == 1) {
+            if (writer != null) {
+                checkMaxZipSize(writer, chunk.data.length, maxZipSize, entry.name, numberOfZippedFiles);
+                writer.writeEntry(entry.name, entry.lastModified, chunk.method, chunk.crc, chunk.length,
+                        chunk.data, 0, chunk.data.length);
+            }
+            if (secondary != null) {
+                secondary.writeEntry(entry, chunk);
+            }
+            return chunk.method;
+        }
+
+        if (writer != null) {
+            if (entry.stored) {
+                writer.beginStoredEntry(entry.name, entry.lastModified, entry.storedCrc.get(), entry.length);
+            } else {
+                writer.beginEntry(entry.name, entry.lastModified, ZipEntry.DEFLATED, entry.length);
+            }
+        }
+        if (secondary != null) {
+            secondary.beginEntry(entry, entry.stored ? entry.storedCrc.get() : 0);
+        }
+        long crc = 0;
+        long size = 0;
+        while (true) {
+            if (chunk == UNREADABLE) {
+                throw new IOException("File became unreadable while zipping: " + entry.file);
+            }
+            if (writer != null) {
+                checkMaxZipSize(writer, chunk.data.length, maxZipSize, entry.name, numberOfZippedFiles);
+                writer.writeEntryData(chunk.data, 0, chunk.data.length);
+            }
+            if (secondary != null) {
+                secondary.writeEntryData(entry, chunk);
+            }
+            crc = combineCrc(crc, chunk.crc, chunk.length);
+            size += chunk.length;
+            if (entry.chunksWritten == entry.chunkCount) {
+                break;
+            }
+
+            if (entry.chunksSubmitted < entry.chunkCount && chunksInFlight < maxChunksInFlight) {
+                submitNextChunk(executor, entry);
+            }
+            submitChunks(executor, files, pendingEntries, false);
+            if (entry.chunksSubmitted == entry.chunksWritten) {
+                // The window was filled by the following entries, make room for this one.
+                submitNextChunk(executor, entry);
+            }
+            chunk = takeChunk(entry);
+        }
+        if (entry.stored && crc != entry.storedCrc.get()) {
+            IOException changed = new IOException("File changed while zipping: " + entry.file);
+            if (writer != null) {
+                throw changed;
+            }
+            secondary.fail(changed);
+            return ZipEntry.STORED;
+        }
+        if (writer != null) {
+            if (entry.stored) {
+                writer.endStoredEntry();
+            } else {
+                writer.endEntry(crc, size);
+            }
+        }
+        if (secondary != null) {
+            secondary.endEntry(entry, crc, size);
+        }
+        return entry.stored ? ZipEntry.STORED : ZipEntry.DEFLATED;
+    }
+
+    /**
+     * @param length number of bytes about to be written
+     */
+    private void checkMaxZipSize(ZipArchiveWriter writer, long length, long maxZipSize, String entryName,
+                                 int numberOfZippedFiles) throws Zipper.MaxZipSizeReached {
+        if (maxZipSize > 0 && writer.getBytesWritten() + length > maxZipSize) {
+            zipper.updateError("Maximum zip file size reached. Zip size: " + writer.getBytesWritten() + " bytes Limit: " + maxZipSize
+                    + " bytes");
+            throw new Zipper.MaxZipSizeReached(new ZippingDetails(numberOfZippedFiles, writer.getBytesWritten(), zipper.getZippingLog()),
+                    entryName, writer.getBytesWritten(), maxZipSize);
+        }
+    }
+
+    private CompressedChunk takeChunk(PendingEntry entry) throws InterruptedException, ExecutionException {
+        Future<CompressedChunk> future = entry.chunks.poll();
+        try {
+            return future.get();
+        } finally {
+            entry.chunksWritten++;
+            chunksInFlight--;
+        }
+    }
+
+    /**
+     * Fills the window of chunks in flight, first with the remaining chunks of
+     * the already known entries and then with new files in their order.
+     */
+    private void submitChunks(ExecutorService executor, WorkspaceWalker files, Deque<PendingEntry> pendingEntries,
+                              boolean waitForFiles) throws IOException, InterruptedException {
+        for (PendingEntry entry : pendingEntries) {
+            while (chunksInFlight < maxChunksInFlight && entry.chunksSubmitted < entry.chunkCount) {
+                submitNextChunk(executor, entry);
+            }
+            if (chunksInFlight >= maxChunksInFlight) {
+                return;
+            }
+        }
+
+        while (chunksInFlight < maxChunksInFlight) {
+            // Only wait for the walker when there is nothing else to write.
+            WorkspaceFile file = waitForFiles && pendingEntries.isEmpty() ? files.take() : files.poll();
+            if (file == null) {
+                return;
+            }
+            PendingEntry entry = newEntry(executor, file);
+            pendingEntries.add(entry);
+            while (chunksInFlight < maxChunksInFlight && entry.chunksSubmitted < entry.chunkCount) {
+                submitNextChunk(executor, entry);
+            }
+        }
+    }
+
+    private PendingEntry newEntry(ExecutorService executor, WorkspaceFile file) {
+        final PendingEntry entry = new PendingEntry(file, compressionPolicy.deflateLevel(file.getRelativePath(), file.getSize()));
+        if (secondaryFilter != null) {
+            entry.primary = filter.isIncluded(entry.name);
+            entry.secondary = secondaryFilter.isIncluded(entry.name);
+        }
+        if (compressionPolicy.isCompressedFormat(entry.name)) {
+            entry.stored = true;
+        } else if (entry.chunkCount > 1) {
+            // The chunks are compressed independently, sample the first block before submitting any of them
+            entry.stored = isIncompressible(entry.file);
+        }
+        // The entropy of a single chunk entry is sampled by the worker compressing it
+
+        if (entry.stored && entry.chunkCount > 1) {
+            entry.storedCrc = executor.submit(new Callable<Long>() {
+                @Override
+                public Long call() throws IOException {
+                    return crc(entry.file, threadInputBuffer.get());
+                }
+            });
+        }
+        return entry;
+    }
+
+    private void submitNextChunk(ExecutorService executor, PendingEntry entry) {
+        final File file = entry.file;
+        final long offset = (long) entry.chunksSubmitted * CHUNK_SIZE;
+        final int length = (int) Math.min(CHUNK_SIZE, entry.length - offset);
+        final boolean last = entry.chunksSubmitted == entry.chunkCount - 1;
+        final int level = entry.level;
+        final boolean stored = entry.stored;
+
+        entry.chunks.add(executor.submit(new Callable<CompressedChunk>() {
+            @Override
+            public CompressedChunk call() throws IOException {
+                return compressChunk(file, offset, length, last, level, stored);
+            }
+        }));
+        entry.chunksSubmitted++;
+        chunksInFlight++;
+    }
+
+    private CompressedChunk compressChunk(File file, long offset, int length, boolean last, int level, boolean stored) throws IOException {
+        int dictionaryLength = stored ? 0 : (int) Math.min(DICTIONARY_SIZE, offset);
+        byte[] input = threadInputBuffer.get();
+
+        FileInputStream inputStream;
+        try {
+            inputStream = new FileInputStream(file);
+        } catch (FileNotFoundException e) {
+            return UNREADABLE;
+        }
+        int read;
+        try {
+            read = readFully(inputStream.getChannel(), offset - dictionaryLength, input, dictionaryLength + length);
+        } finally {
+            inputStream.close();
+        }
+        int dataLength = Math.max(0, read - dictionaryLength);
+
+        CRC32 crc = new CRC32();
+        crc.update(input, dictionaryLength, dataLength);
+
+        boolean singleChunk = offset == 0 && last;
+        if (stored || (singleChunk && CompressionPolicy.isIncompressible(input, 0, dataLength))) {
+            return storedChunk(input, dataLength, crc.getValue());
+        }
+
+        long deflateStart = System.nanoTime();
+        Deflater deflater = deflater(level);
+        deflater.reset();
+        if (dictionaryLength > 0) {
+            deflater.setDictionary(input, 0, dictionaryLength);
+        }
+        deflater.setInput(input, dictionaryLength, dataLength);
+
+        ByteArrayBuilder output = threadOutputBuffer.get();
+        output.reset();
+        if (last) {
+            deflater.finish();
+            while (!deflater.finished()) {
+                output.deflateFrom(deflater, Deflater.NO_FLUSH);
+            }
+        } else {
+            // Sync flush leaves the stream open and byte aligned, so the next chunk can be appended to it.
+            do {
+                output.deflateFrom(deflater, Deflater.SYNC_FLUSH);
+            } while (output.lastDeflateFilledBuffer());
+        }
+        deflateNanos.addAndGet(System.nanoTime() - deflateStart);
+        deflatedBytes.addAndGet(dataLength);
+
+        if (singleChunk && output.size() >= dataLength) {
+            // Deflate did not help, the entry is smaller stored
+            return storedChunk(input, dataLength, crc.getValue());
+        }
+        return new CompressedChunk(output.toByteArray(), crc.getValue(), dataLength, ZipEntry.DEFLATED);
+    }
+
+    private static CompressedChunk storedChunk(byte[] input, int dataLength, long crc) {
+        // The input buffer is reused for the next chunk
+        return new CompressedChunk(Arrays.copyOf(input, dataLength), crc, dataLength, ZipEntry.STORED);
+    }
+
+    /**
+     * Reads with positional reads, a chunk usually takes a single system call.
+     * Waits afterwards when the read throughput is limited.
+     *
+     * @return number of bytes read, less than length at the end of the file
+     */
+    private int readFully(FileChannel channel, long position, byte[] buffer, int length) throws IOException {
+        ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, length);
+        while (byteBuffer.hasRemaining()) {
+            if (channel.read(byteBuffer, position + byteBuffer.position()) < 0) {
+                break;
+            }
+        }
+        if (readThrottle != null) {
+            readThrottle.acquire(byteBuffer.position());
+        }
+        return byteBuffer.position();
+    }
+
+    private Deflater deflater(int level) {
+        Deflater[] levels = threadDeflaters.get();
+        if (levels[level] == null) {
+            levels[level] = new Deflater(level, true);
+            deflaters.add(levels[level]);
+        }
+        return levels[level];
+    }
+
+    private static boolean isIncompressible(File file) {
+        byte[] sample = new byte[CompressionPolicy.ENTROPY_SAMPLE_SIZE];
+        int read = 0;
+        try {
+            InputStream inputStream = new FileInputStream(file);
+            try {
+                int count;
+                while (read < sample.length && (count = inputStream.read(sample, read, sample.length - read)) >= 0) {
+                    read += count;
+                }
+            } finally {
+                inputStream.close();
+            }
+        } catch (IOException e) {
+            // Reported as unreadable when its chunks are read
+            return false;
+        }
+        return CompressionPolicy.isIncompressible(sample, 0, read);
+    }
+
+    private long crc(File file, byte[] buffer) throws IOException {
+        CRC32 crc = new CRC32();
+        FileInputStream inputStream = new FileInputStream(file);
+        try {
+            FileChannel channel = inputStream.getChannel();
+            long position = 0;
+            int count;
+            while ((count = readFully(channel, position, buffer, buffer.length)) > 0) {
+                crc.update(buffer, 0, count);
+                position += count;
+            }
+        } finally {
+            inputStream.close();
+        }
+        return crc.getValue();
+    }
+
+    private void releaseDeflaters() {
+        Deflater deflater;
+        while ((deflater = deflaters.poll()) != null) {
+            deflater.end();
+        }
+    }
+
+    /*
+     * CRC-32 combination as done by zlib's crc32_combine(): computes the crc of
+     * two concatenated blocks out of their separate crc values.
+     */
+
+    private static final int GF2_DIM = 32;
+
+    static long combineCrc(long crc1, long crc2, long length2) {
+        if (length2 <= 0) {
+            return crc1;
+        }
+
+        long[] even = new long[GF2_DIM];
+        long[] odd = new long[GF2_DIM];
+
+        odd[0] = 0xedb88320L;
+        long row = 1;
+        for (int n = 1; n < GF2_DIM; n++) {
+            odd[n] = row;
+            row <<= 1;
+        }
+
+        gf2MatrixSquare(even, odd);
+        gf2MatrixSquare(odd, even);
+
+        do {
+            gf2MatrixSquare(even, odd);
+            if ((length2 & 1) != 0) {
+                crc1 = gf2MatrixTimes(even, crc1);
+            }
+            length2 >>= 1;
+            if (length2 == 0) {
+                break;
+            }
+
+            gf2MatrixSquare(odd, even);
+            if ((length2 & 1) != 0) {
+                crc1 = gf2MatrixTimes(odd, crc1);
+            }
+            length2 >>= 1;
+        } while (length2 != 0);
+
+        return (crc1 ^ crc2) & 0xffffffffL;
+    }
+
+    private static long gf2MatrixTimes(long[] matrix, long vector) {
+        long sum = 0;
+        int i = 0;
+        while (vector != 0) {
+            if ((vector & 1) != 0) {
+                sum ^= matrix[i];
+            }
+            vector >>>= 1;
+            i++;
+        }
+        return sum;
+    }
+
+    private static void gf2MatrixSquare(long[] square, long[] matrix) {
+        for (int n = 0; n < GF2_DIM; n++) {
+            square[n] = gf2MatrixTimes(matrix, matrix[n]);
+        }
+    }
+
+    private static class PendingEntry {
+        private final String name;
+        private final File file;
+        private final long length;
+        private final long lastModified;
+        private final int chunkCount;
+        private final int level;
+        private final Deque<Future<CompressedChunk>> chunks = new ArrayDeque<>();
+        private int chunksSubmitted;
+        private int chunksWritten;
+        private boolean stored;
+        private Future<Long> storedCrc;
+        private boolean primary = true;
+        private boolean secondary;
+
+        PendingEntry(WorkspaceFile workspaceFile, int level) {
+            this.name = workspaceFile.getRelativePath();
+            this.file = workspaceFile.getFile();
+            this.length = workspaceFile.getSize();
+            this.lastModified = workspaceFile.getLastModified();
+            this.chunkCount = (int) Math.max(1, (length + CHUNK_SIZE - 1) / CHUNK_SIZE);
+            this.level = level;
+        }
+
+        void cancel() {
+            for (Future<CompressedChunk> chunk : chunks) {
+                chunk.cancel(true);
+            }
+            if (storedCrc != null) {
+                storedCrc.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Writes the secondary archive from the compressed chunks of the entries
+     * it includes. Its failures are recorded in the archive and only stop
+     * this writer, the main archive goes on.
+     */
+    private class SecondaryWriter {
+        private final SecondaryArchive archive;
+        private final ZipArchiveWriter writer;
+        private int numberOfZippedFiles;
+        private long bytes;
+
+        SecondaryWriter(SecondaryArchive archive) {
+            this.archive = archive;
+            this.writer = new ZipArchiveWriter(archive.getOutputStream());
+        }
+
+        void writeEntry(PendingEntry entry, CompressedChunk chunk) {
+            if (archive.isDone()) {
+                return;
+            }
+            try {
+                checkMaxZipSize(chunk.data.length, entry.name);
+                writer.writeEntry(entry.name, entry.lastModified, chunk.method, chunk.crc, chunk.length,
+                        chunk.data, 0, chunk.data.length);
+                entryWritten(entry);
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        void beginEntry(PendingEntry entry, long storedCrc) {
+            if (archive.isDone()) {
+                return;
+            }
+            try {
+                if (entry.stored) {
+                    writer.beginStoredEntry(entry.name, entry.lastModified, storedCrc, entry.length);
+                } else {
+                    writer.beginEntry(entry.name, entry.lastModified, ZipEntry.DEFLATED, entry.length);
+                }
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        void writeEntryData(PendingEntry entry, CompressedChunk chunk) {
+            if (archive.isDone()) {
+                return;
+            }
+            try {
+                checkMaxZipSize(chunk.data.length, entry.name);
+                writer.writeEntryData(chunk.data, 0, chunk.data.length);
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        void endEntry(PendingEntry entry, long crc, long size) {
+            if (archive.isDone()) {
+                return;
+            }
+            try {
+                if (entry.stored) {
+                    writer.endStoredEntry();
+                } else {
+                    writer.endEntry(crc, size);
+                }
+                entryWritten(entry);
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        /**
+         * Writes the central directory once all the entries are written.
+         */
+        void finish() {
+            if (archive.isDone()) {
+                return;
+            }
+            try {
+                if (numberOfZippedFiles == 0) {
+                    throw new Zipper.NoFilesToZip(details("No files to zip"));
+                }
+                writer.finish();
+                checkMaxZipSize(0, "(zip central directory)");
+                writer.close();
+                archive.succeeded(details("Zipped " + numberOfZippedFiles + " files, " + FileUtils.byteCountToDisplaySize(bytes)
+                        + " compressed to " + FileUtils.byteCountToDisplaySize(writer.getBytesWritten())));
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        /**
+         * Closes the output stream, the archive is failed if the main archive
+         * stopped before it was finished.
+         */
+        void close() {
+            if (!archive.isDone()) {
+                archive.failed(new Zipper.ZipperException("Zipping of the main archive failed", details("Zipping of the main archive failed")));
+            }
+            try {
+                writer.close();
+            } catch (IOException e) {
+                LOGGER.warning("Failed to close the secondary archive: " + e.getMessage());
+            }
+        }
+
+        void fail(IOException e) {
+            Zipper.ZipperException failure = e instanceof Zipper.ZipperException ? (Zipper.ZipperException) e
+                    : new Zipper.ZipperException(e, details(e.getMessage()));
+            zipper.updateError("Secondary archive failed: " + failure.getMessage());
+            archive.failed(failure);
+            close();
+        }
+
+        private void entryWritten(PendingEntry entry) {
+            numberOfZippedFiles++;
+            bytes += entry.length;
+        }
+
+        private void checkMaxZipSize(long length, String entryName) throws Zipper.MaxZipSizeReached {
+            long maxZipSize = archive.getMaxZipSize();
+            if (maxZipSize > 0 && writer.getBytesWritten() + length > maxZipSize) {
+                throw new Zipper.MaxZipSizeReached(details("Maximum zip file size reached. Zip size: " + writer.getBytesWritten()
+                        + " bytes Limit: " + maxZipSize + " bytes"), entryName, writer.getBytesWritten(), maxZipSize);
+            }
+        }
+
+        private ZippingDetails details(String message) {
+            return new ZippingDetails(numberOfZippedFiles, writer.getBytesWritten(), Collections.singletonList(message));
+        }
+    }
+
+    private static class CompressedChunk {
+        private final byte[] data;
+        private final long crc;
+        private final int length;
+        private final int method;
+
+        CompressedChunk(byte[] data, long crc, int length, int method) {
+            this.data = data;
+            this.crc = crc;
+            this.length = length;
+            this.method = method;
+        }
+    }
+
+    /**
+     * Growable output buffer that lets the deflater write directly into it.
+     */
+    private static class ByteArrayBuilder {
+        private byte[] buffer;
+        private int size;
+        private boolean filled;
+
+        ByteArrayBuilder(int initialCapacity) {
+            buffer = new byte[initialCapacity];
+        }
+
+        void reset() {
+            size = 0;
+            filled = false;
+        }
+
+        void deflateFrom(Deflater deflater, int flush) {
+            if (size == buffer.length) {
+                byte[] grown = new byte[buffer.length * 2];
+                System.arraycopy(buffer, 0, grown, 0, size);
+                buffer = grown;
+            }
+            int free = buffer.length - size;
+            int count = deflater.deflate(buffer, size, free, flush);
+            size += count;
+            filled = count == free;
+        }
+
+        int size() {
+            return size;
+        }
+
+        boolean lastDeflateFilledBuffer() {
+            return filled;
+        }
+
+        byte[] toByteArray() {
+            byte[] result = new byte[size];
+            System.arraycopy(buffer, 0, result, 0, size);
+            return result;
+        }
+    }
+
+    private static class ZipWorkerThreadFactory implements ThreadFactory {
+        private static final AtomicInteger THREAD_NUMBER = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "Checkmarx zip worker " + THREAD_NUMBER.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
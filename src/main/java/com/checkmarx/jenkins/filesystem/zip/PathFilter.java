@@ -0,0 +1,20 @@
+package com.checkmarx.jenkins.filesystem.zip;
+
+/**
+ * Include/exclude filter applied by {@link WorkspaceWalker} while walking the
+ * workspace. Paths are relative to the walked base directory and use
+ * <code>File.separator</code> between segments.
+ */
+public interface PathFilter {
+
+    /**
+     * @return true if the file should be zipped
+     */
+    boolean isIncluded(String relativePath);
+
+    /**
+     * @return false if no file under this directory can be included, so the
+     *         walker does not need to descend into it
+     */
+    boolean isTraversable(String relativeDirectory);
+}
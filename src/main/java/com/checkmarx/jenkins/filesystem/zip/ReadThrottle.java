@@ -0,0 +1,59 @@
+package com.checkmarx.jenkins.filesystem.zip;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the rate at which files are read, shared by the threads of every
+ * zip of the JVM.
+ * <p>
+ * Token bucket: the budget grows at the given rate up to one second worth of
+ * bytes. A read larger than the budget leaves it negative and the reader
+ * waits until it is paid back, so the average rate never exceeds the limit
+ * whatever the number of readers.
+ */
+public class ReadThrottle {
+
+    private final long bytesPerSecond;
+    private long availableBytes;
+    private long lastRefillNanos;
+
+    /**
+     * @param bytesPerSecond maximum average read rate, must be positive
+     */
+    public ReadThrottle(long bytesPerSecond) {
+        if (bytesPerSecond <= 0) {
+            throw new IllegalArgumentException("Invalid read rate: " + bytesPerSecond);
+        }
+        this.bytesPerSecond = bytesPerSecond;
+        this.availableBytes = bytesPerSecond;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    public long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    /**
+     * Accounts for bytes just read and waits until the budget allows them.
+     */
+    public void acquire(long bytes) throws InterruptedIOException {
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            long refill = (long) ((double) (now - lastRefillNanos) * bytesPerSecond / TimeUnit.SECONDS.toNanos(1));
+            availableBytes = Math.min(bytesPerSecond, availableBytes + refill);
+            lastRefillNanos = now;
+            availableBytes -= bytes;
+            waitNanos = availableBytes < 0 ? (long) ((double) -availableBytes * TimeUnit.SECONDS.toNanos(1) / bytesPerSecond) : 0;
+        }
+        if (waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the read throughput limit");
+            }
+        }
+    }
+}
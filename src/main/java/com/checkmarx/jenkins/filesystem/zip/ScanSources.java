@@ -0,0 +1,56 @@
+package com.checkmarx.jenkins.filesystem.zip;
+
+import com.checkmarx.jenkins.filesystem.zip.callable.SastZipperCallable;
+import hudson.FilePath;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Sources submitted with a scan: either a temporary file holding the base 64
+ * encoded zip, or the workspace, zipped while it is uploaded.
+ */
+public class ScanSources {
+
+    @Nullable
+    private final FilePath base64ZipFile;
+    @Nullable
+    private final FilePath workspace;
+    @Nullable
+    private final SastZipperCallable zipperCallable;
+
+    private ScanSources(@Nullable FilePath base64ZipFile, @Nullable FilePath workspace, @Nullable SastZipperCallable zipperCallable) {
+        this.base64ZipFile = base64ZipFile;
+        this.workspace = workspace;
+        this.zipperCallable = zipperCallable;
+    }
+
+    public static ScanSources zippedFile(FilePath base64ZipFile) {
+        return new ScanSources(base64ZipFile, null, null);
+    }
+
+    public static ScanSources streamed(FilePath workspace, SastZipperCallable zipperCallable) {
+        return new ScanSources(null, workspace, zipperCallable);
+    }
+
+    /**
+     * @return true if the workspace is zipped while being uploaded, the
+     *         upload can then not be repeated without zipping it again
+     */
+    public boolean isStreamed() {
+        return base64ZipFile == null;
+    }
+
+    @Nullable
+    public FilePath getBase64ZipFile() {
+        return base64ZipFile;
+    }
+
+    @Nullable
+    public FilePath getWorkspace() {
+        return workspace;
+    }
+
+    @Nullable
+    public SastZipperCallable getZipperCallable() {
+        return zipperCallable;
+    }
+}
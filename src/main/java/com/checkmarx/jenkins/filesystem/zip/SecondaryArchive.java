@@ -0,0 +1,73 @@
+package com.checkmarx.jenkins.filesystem.zip;
+
+import com.checkmarx.jenkins.filesystem.zip.dto.ZippingDetails;
+
+import java.io.OutputStream;
+
+/**
+ * Second archive written by the same walk of the workspace as the main one,
+ * see {@link Zipper#zip(java.io.File, String, OutputStream, long, SecondaryArchive)}.
+ * <p>
+ * It has its own filter, output stream and size limit. A file matching both
+ * filters is read and compressed once and its compressed data is written to
+ * both archives. A failure of the secondary archive, for example reaching its
+ * size limit, does not stop the main one: it is kept here instead of thrown.
+ */
+public class SecondaryArchive {
+
+    private final String filterPatterns;
+    private final OutputStream outputStream;
+    private final long maxZipSize;
+    private ZippingDetails zippingDetails;
+    private Zipper.ZipperException failure;
+
+    /**
+     * @param filterPatterns Filter wildcard patterns of this archive
+     * @param outputStream   Compressed file content is written to this stream,
+     *                       closed when done
+     * @param maxZipSize     Limit of this archive, zero means no limit
+     */
+    public SecondaryArchive(String filterPatterns, OutputStream outputStream, long maxZipSize) {
+        this.filterPatterns = filterPatterns;
+        this.outputStream = outputStream;
+        this.maxZipSize = maxZipSize;
+    }
+
+    public String getFilterPatterns() {
+        return filterPatterns;
+    }
+
+    OutputStream getOutputStream() {
+        return outputStream;
+    }
+
+    long getMaxZipSize() {
+        return maxZipSize;
+    }
+
+    /**
+     * @return details of the archive, null if it failed
+     */
+    public ZippingDetails getZippingDetails() {
+        return zippingDetails;
+    }
+
+    /**
+     * @return why the archive could not be written, null if it succeeded
+     */
+    public Zipper.ZipperException getFailure() {
+        return failure;
+    }
+
+    boolean isDone() {
+        return zippingDetails != null || failure != null;
+    }
+
+    void succeeded(ZippingDetails zippingDetails) {
+        this.zippingDetails = zippingDetails;
+    }
+
+    void failed(Zipper.ZipperException failure) {
+        this.failure = failure;
+    }
+}
@@ -0,0 +1,28 @@
+package com.checkmarx.jenkins.filesystem.zip;
+
+import com.checkmarx.jenkins.filesystem.zip.dto.WorkspaceShard;
+
+/**
+ * Restricts a filter to the files of a shard of the workspace, the
+ * directories out of the shard are not walked.
+ */
+class ShardPathFilter implements PathFilter {
+
+    private final PathFilter filter;
+    private final WorkspaceShard shard;
+
+    ShardPathFilter(PathFilter filter, WorkspaceShard shard) {
+        this.filter = filter;
+        this.shard = shard;
+    }
+
+    @Override
+    public boolean isIncluded(String relativePath) {
+        return shard.contains(relativePath) && filter.isIncluded(relativePath);
+    }
+
+    @Override
+    public boolean isTraversable(String relativeDirectory) {
+        return shard.mayContain(relativeDirectory) && filter.isTraversable(relativeDirectory);
+    }
+}
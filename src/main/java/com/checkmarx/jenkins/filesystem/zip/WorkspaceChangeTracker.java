@@ -0,0 +1,378 @@
+package com.checkmarx.jenkins.filesystem.zip;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystemLoopException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Watches the workspaces of a long-lived node for changes between builds, so
+ * a workspace is zipped from its manifest and the changed paths instead of
+ * listing all its directories.
+ * <p>
+ * Each watched workspace has a {@link WatchService} (inotify on Linux) with a
+ * watch on every directory the filter pattern traverses, and a background
+ * thread collecting the changed paths. A {@link #snapshot(File, String)
+ * snapshot} returns the paths changed since the last committed manifest; the
+ * manifest of the zip becomes the new base with {@link #commit(File)}, like
+ * {@link WorkspaceManifest} does on disk.
+ * <p>
+ * A snapshot returns null, and the workspace is walked as before, whenever
+ * the changes can not be trusted: events lost by an overflow of the event
+ * queue, a watch that could not be registered (the inotify watch limit for
+ * example), too many changes to be worth tracking, or a committed manifest
+ * taken before the watch started. The next full walk, once committed, is the
+ * base of the following snapshots.
+ */
+public class WorkspaceChangeTracker {
+
+    private static Logger LOGGER = Logger.getLogger(WorkspaceChangeTracker.class.getName());
+
+    /**
+     * Number of changed paths above which the workspace is walked again, a
+     * full walk is then about as fast and the paths are not kept in memory.
+     */
+    static final int MAX_CHANGED_PATHS = 100000;
+    private static final AtomicInteger THREAD_NUMBER = new AtomicInteger();
+    private static final WorkspaceChangeTracker JVM_TRACKER = new WorkspaceChangeTracker();
+
+    private final Map<File, Watch> watches = new HashMap<>();
+
+    /**
+     * @return the tracker of the workspaces of this node
+     */
+    public static WorkspaceChangeTracker forJvm() {
+        return JVM_TRACKER;
+    }
+
+    /**
+     * Starts watching the workspace, unless it is already watched with the
+     * same filter pattern. The directories are registered on a background
+     * thread; when a committed manifest is given the workspace is compared
+     * with it while registering, so that the first snapshot after a restart
+     * of the node already has the changed paths.
+     *
+     * @param committedManifest manifest the next snapshot is compared with,
+     *                          may be null
+     */
+    public synchronized void watch(File workspace, String filterPattern, @Nullable File committedManifest) {
+        File key = workspace.getAbsoluteFile();
+        Watch watch = watches.get(key);
+        if (watch != null && watch.filterPattern.equals(filterPattern) && !watch.isRestartable()) {
+            return;
+        }
+        if (watch != null) {
+            watch.stop();
+        }
+        watch = new Watch(key, filterPattern, committedManifest);
+        watches.put(key, watch);
+        watch.start();
+    }
+
+    /**
+     * @return relative paths of the files and directories changed since the
+     *         last committed manifest, null when the whole workspace must be
+     *         walked
+     */
+    @Nullable
+    public Set<String> snapshot(File workspace, String filterPattern) {
+        Watch watch = get(workspace);
+        if (watch == null || !watch.filterPattern.equals(filterPattern)) {
+            return null;
+        }
+        return watch.snapshot();
+    }
+
+    /**
+     * Makes the manifest zipped after the last snapshot the base of the next
+     * snapshot, called when the pending manifest is committed.
+     */
+    public void commit(File workspace) {
+        Watch watch = get(workspace);
+        if (watch != null) {
+            watch.commit();
+        }
+    }
+
+    public synchronized void unwatch(File workspace) {
+        Watch watch = watches.remove(workspace.getAbsoluteFile());
+        if (watch != null) {
+            watch.stop();
+        }
+    }
+
+    /**
+     * @return true when the workspace is watched and all its directories are
+     *         registered
+     */
+    public boolean isReady(File workspace) {
+        Watch watch = get(workspace);
+        return watch != null && watch.isReady();
+    }
+
+    private synchronized Watch get(File workspace) {
+        return watches.get(workspace.getAbsoluteFile());
+    }
+
+    /**
+     * Watch of a workspace and the paths changed in it.
+     */
+    private static class Watch implements Runnable {
+
+        private final Path basePath;
+        private final String filterPattern;
+        private final PathFilter filter;
+        private final File committedManifest;
+        private final Map<WatchKey, Path> directories = new HashMap<>();
+        private WatchService watchService;
+        private Thread thread;
+
+        // Changes since the last snapshot
+        private final Set<String> dirty = new HashSet<>();
+        // Changes between the committed manifest and the last snapshot
+        private final Set<String> pending = new HashSet<>();
+        private boolean ready;
+        private boolean failed;
+        private boolean stopped;
+        private boolean overflowed;
+        // The committed manifest was taken while the workspace was watched
+        private boolean baseline;
+        // The last snapshot was taken while the workspace was watched
+        private boolean snapshotCovered;
+        private long generation;
+
+        Watch(File workspace, String filterPattern, File committedManifest) {
+            this.basePath = workspace.toPath();
+            this.filterPattern = filterPattern;
+            this.filter = CompiledPathFilter.forFilterPattern(filterPattern);
+            this.committedManifest = committedManifest;
+        }
+
+        synchronized void start() {
+            thread = new Thread(this, "Checkmarx workspace watcher " + THREAD_NUMBER.incrementAndGet());
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        synchronized void stop() {
+            stopped = true;
+            if (watchService != null) {
+                try {
+                    watchService.close();
+                } catch (IOException e) {
+                    LOGGER.fine("Failed to close the watch of " + basePath + ": " + e.getMessage());
+                }
+            }
+            if (thread != null) {
+                thread.interrupt();
+            }
+        }
+
+        /**
+         * A failed watch is not started again for the same filter pattern,
+         * registering would most likely fail again.
+         */
+        synchronized boolean isRestartable() {
+            return stopped && !failed;
+        }
+
+        synchronized boolean isStopped() {
+            return stopped;
+        }
+
+        synchronized boolean isReady() {
+            return ready && !stopped;
+        }
+
+        synchronized Set<String> snapshot() {
+            snapshotCovered = ready && !stopped;
+            if (!snapshotCovered || overflowed || !baseline) {
+                overflowed = false;
+                baseline = false;
+                dirty.clear();
+                pending.clear();
+                return null;
+            }
+            pending.addAll(dirty);
+            dirty.clear();
+            return Collections.unmodifiableSet(new HashSet<>(pending));
+        }
+
+        synchronized void commit() {
+            generation++;
+            baseline = snapshotCovered && !overflowed && !stopped;
+            snapshotCovered = false;
+            pending.clear();
+        }
+
+        @Override
+        public void run() {
+            try {
+                long generationAtStart;
+                synchronized (this) {
+                    if (stopped) {
+                        return;
+                    }
+                    watchService = basePath.getFileSystem().newWatchService();
+                    generationAtStart = generation;
+                }
+                WorkspaceManifest manifest = committedManifest != null ? WorkspaceManifest.read(committedManifest) : null;
+                Set<String> changedSinceManifest = register(basePath, manifest);
+                synchronized (this) {
+                    ready = true;
+                    if (manifest != null && generation == generationAtStart && !overflowed) {
+                        pending.addAll(changedSinceManifest);
+                        baseline = true;
+                    }
+                }
+                LOGGER.info("Watching " + directories.size() + " directories of " + basePath + " for changes");
+                while (process(watchService.take())) {
+                    // Until the workspace is deleted or the watch stopped
+                }
+                LOGGER.info("Workspace " + basePath + " deleted, no longer watched");
+                stop();
+            } catch (ClosedWatchServiceException | InterruptedException e) {
+                LOGGER.fine("Stopped watching " + basePath);
+            } catch (IOException | RuntimeException e) {
+                LOGGER.warning("Stopped watching " + basePath + ", the workspace is walked again: " + e.getMessage());
+                synchronized (this) {
+                    failed = true;
+                }
+                stop();
+            }
+        }
+
+        /**
+         * Registers the directory and the directories under it that the filter
+         * traverses.
+         *
+         * @param manifest manifest the files are compared with, may be null
+         * @return the files added or modified since the manifest and the files
+         *         of the manifest not found
+         */
+        private Set<String> register(Path start, final WorkspaceManifest manifest) throws IOException {
+            final Set<String> changed = new HashSet<>();
+            final Set<String> found = new HashSet<>();
+            Files.walkFileTree(start, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, new SimpleFileVisitor<Path>() {
+
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                    if (isStopped()) {
+                        return FileVisitResult.TERMINATE;
+                    }
+                    if (!dir.equals(basePath) && !filter.isTraversable(basePath.relativize(dir).toString())) {
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    WatchKey key = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                            StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+                    directories.put(key, dir);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (manifest == null || !attrs.isRegularFile()) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                    String relativePath = basePath.relativize(file).toString();
+                    if (filter.isIncluded(relativePath)) {
+                        found.add(relativePath);
+                        WorkspaceManifest.Entry entry = manifest.get(relativePath);
+                        if (entry == null || !entry.sameAttributes(new WorkspaceFile(relativePath, file.toFile(), attrs.size(),
+                                attrs.lastModifiedTime().toMillis()))) {
+                            changed.add(relativePath);
+                        }
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
+                    if (exc instanceof FileSystemLoopException) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                    if (file.equals(basePath)) {
+                        throw exc;
+                    }
+                    // Deleted while walking, the event is already queued
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+            if (manifest != null) {
+                for (String path : manifest.getPaths()) {
+                    if (!found.contains(path)) {
+                        changed.add(path);
+                    }
+                }
+            }
+            return changed;
+        }
+
+        /**
+         * @return false when the workspace itself was deleted
+         */
+        private boolean process(WatchKey key) throws IOException {
+            Path directory = directories.get(key);
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW || directory == null) {
+                    overflow("events were lost");
+                    continue;
+                }
+                Path path = directory.resolve((Path) event.context());
+                String relativePath = basePath.relativize(path).toString();
+                if (Files.isDirectory(path)) {
+                    // A modified directory only had its attributes or entries changed, the entries have their own events
+                    if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && filter.isTraversable(relativePath)) {
+                        register(path, null);
+                        // Files created before the watch was registered are found by walking the new directory
+                        changed(relativePath);
+                    }
+                } else if (filter.isIncluded(relativePath)
+                        || event.kind() == StandardWatchEventKinds.ENTRY_DELETE && filter.isTraversable(relativePath)) {
+                    changed(relativePath);
+                }
+            }
+            if (!key.reset()) {
+                directories.remove(key);
+                return !basePath.equals(directory);
+            }
+            return true;
+        }
+
+        private synchronized void changed(String relativePath) {
+            dirty.add(relativePath);
+            if (dirty.size() + pending.size() > MAX_CHANGED_PATHS) {
+                overflow("more than " + MAX_CHANGED_PATHS + " paths changed");
+            }
+        }
+
+        private synchronized void overflow(String reason) {
+            if (!overflowed) {
+                LOGGER.info("Changes of " + basePath + " no longer tracked until the next full walk, " + reason);
+            }
+            overflowed = true;
+            dirty.clear();
+            pending.clear();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.checkmarx.jenkins.filesystem.zip;
+
+import java.io.File;
+
+/**
+ * File found by {@link WorkspaceWalker}, with the attributes read during the
+ * walk so the zipper does not have to stat the file again.
+ */
+public class WorkspaceFile {
+
+    private final String relativePath;
+    private final File file;
+    private final long size;
+    private final long lastModified;
+    private final byte[] contentHash;
+
+    public WorkspaceFile(String relativePath, File file, long size, long lastModified) {
+        this(relativePath, file, size, lastModified, null);
+    }
+
+    /**
+     * @param contentHash git blob id of the content when it is already known,
+     *                    see {@link GitIndex}; may be null
+     */
+    public WorkspaceFile(String relativePath, File file, long size, long lastModified, byte[] contentHash) {
+        this.relativePath = relativePath;
+        this.file = file;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.contentHash = contentHash;
+    }
+
+    public String getRelativePath() {
+        return relativePath;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * @return git blob id of the content, null if it was not known while
+     *         walking
+     */
+    public byte[] getContentHash() {
+        return contentHash;
+    }
+}
@@ -0,0 +1,262 @@
+package com.checkmarx.jenkins.filesystem.zip;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Merkle tree fingerprint of the workspace files accepted by a {@link PathFilter}.
+ * <p>
+ * A file is identified by the SHA-1 of its content and a directory by the
+ * SHA-1 of the sorted names and fingerprints of its children, directories
+ * without any accepted file are left out. Sub directories are hashed in
+ * parallel on a fork/join pool and the content hash of a file is taken from
+ * the hashes of the previous run when its size and modification time did not
+ * change.
+ */
+public class WorkspaceFingerprint {
+
+    private static Logger LOGGER = Logger.getLogger(WorkspaceFingerprint.class.getName());
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final byte FILE = 'f';
+    private static final byte DIRECTORY = 'd';
+
+    private final PathFilter filter;
+    private final WorkspaceManifest previousHashes;
+    private final Map<String, WorkspaceManifest.Entry> fileHashes = new ConcurrentHashMap<>();
+    private final AtomicInteger numberOfHashedFiles = new AtomicInteger();
+
+    /**
+     * @param previousHashes content hashes of the previous run, may be null
+     */
+    public WorkspaceFingerprint(PathFilter filter, WorkspaceManifest previousHashes) {
+        this.filter = filter;
+        this.previousHashes = previousHashes;
+    }
+
+    /**
+     * @param parallelism number of threads hashing the workspace, 0 or less
+     *                    means one thread per available processor
+     * @return hex encoded fingerprint of the base directory
+     */
+    public String compute(File baseDir, int parallelism) {
+        if (parallelism <= 0) {
+            parallelism = Runtime.getRuntime().availableProcessors();
+        }
+        byte[] fingerprint = null;
+        if (baseDir.isDirectory()) {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                fingerprint = pool.invoke(new DirectoryTask(baseDir.toPath(), "", new Ancestor(fileKey(baseDir.toPath()), null)));
+            } finally {
+                pool.shutdown();
+            }
+        }
+        return Hex.encodeHexString(fingerprint != null ? fingerprint : DigestUtils.sha1(new byte[0]));
+    }
+
+    /**
+     * @return content hashes of the fingerprinted files, to be passed as the
+     *         previous hashes of the next run
+     */
+    public WorkspaceManifest getFileHashes() {
+        WorkspaceManifest manifest = new WorkspaceManifest();
+        for (Map.Entry<String, WorkspaceManifest.Entry> entry : fileHashes.entrySet()) {
+            manifest.put(entry.getKey(), entry.getValue());
+        }
+        return manifest;
+    }
+
+    public int getNumberOfFiles() {
+        return fileHashes.size();
+    }
+
+    public int getNumberOfHashedFiles() {
+        return numberOfHashedFiles.get();
+    }
+
+    private static Object fileKey(Path path) {
+        try {
+            Object key = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+            return key != null ? key : path.toRealPath();
+        } catch (IOException e) {
+            return path.toAbsolutePath();
+        }
+    }
+
+    /**
+     * Directories being hashed from the root down to the current one, used to
+     * detect symbolic link loops.
+     */
+    private static class Ancestor {
+        private final Object fileKey;
+        private final Ancestor parent;
+
+        Ancestor(Object fileKey, Ancestor parent) {
+            this.fileKey = fileKey;
+            this.parent = parent;
+        }
+
+        boolean contains(Object key) {
+            for (Ancestor ancestor = this; ancestor != null; ancestor = ancestor.parent) {
+                if (ancestor.fileKey.equals(key)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static class Child {
+        private final String name;
+        private final byte type;
+        private final RecursiveTask<byte[]> task;
+
+        Child(String name, byte type, RecursiveTask<byte[]> task) {
+            this.name = name;
+            this.type = type;
+            this.task = task;
+        }
+    }
+
+    private class DirectoryTask extends RecursiveTask<byte[]> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Path directory;
+        private final String relativeDirectory;
+        private final Ancestor ancestors;
+
+        DirectoryTask(Path directory, String relativeDirectory, Ancestor ancestors) {
+            this.directory = directory;
+            this.relativeDirectory = relativeDirectory;
+            this.ancestors = ancestors;
+        }
+
+        @Override
+        protected byte[] compute() {
+            List<Path> entries = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                for (Path entry : stream) {
+                    entries.add(entry);
+                }
+            } catch (IOException e) {
+                LOGGER.fine("Failed to visit: " + directory + " (" + e.getMessage() + ")");
+                return null;
+            }
+            Collections.sort(entries);
+
+            List<Child> children = new ArrayList<>(entries.size());
+            for (Path entry : entries) {
+                Child child = createChild(entry);
+                if (child != null) {
+                    child.task.fork();
+                    children.add(child);
+                }
+            }
+
+            MessageDigest digest = DigestUtils.getSha1Digest();
+            boolean empty = true;
+            for (Child child : children) {
+                byte[] hash = child.task.join();
+                if (hash != null) {
+                    digest.update(child.type);
+                    digest.update(child.name.getBytes(UTF_8));
+                    digest.update((byte) 0);
+                    digest.update(hash);
+                    empty = false;
+                }
+            }
+            return empty ? null : digest.digest();
+        }
+
+        private Child createChild(Path entry) {
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(entry, BasicFileAttributes.class);
+            } catch (IOException e) {
+                LOGGER.fine("Failed to visit: " + entry + " (" + e.getMessage() + ")");
+                return null;
+            }
+            String name = entry.getFileName().toString();
+            String relativePath = relativeDirectory.isEmpty() ? name : relativeDirectory + File.separator + name;
+
+            if (attributes.isDirectory()) {
+                Object key = attributes.fileKey() != null ? attributes.fileKey() : fileKey(entry);
+                if (ancestors.contains(key)) {
+                    LOGGER.fine("Not followed symbolic link: " + entry);
+                    return null;
+                }
+                if (!filter.isTraversable(relativePath)) {
+                    return null;
+                }
+                return new Child(name, DIRECTORY, new DirectoryTask(entry, relativePath, new Ancestor(key, ancestors)));
+            }
+            if (attributes.isRegularFile() && filter.isIncluded(relativePath)) {
+                WorkspaceFile workspaceFile = new WorkspaceFile(relativePath, entry.toFile(), attributes.size(), attributes.lastModifiedTime().toMillis());
+                return new Child(name, FILE, new FileTask(workspaceFile));
+            }
+            return null;
+        }
+    }
+
+    private class FileTask extends RecursiveTask<byte[]> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final WorkspaceFile file;
+
+        FileTask(WorkspaceFile file) {
+            this.file = file;
+        }
+
+        @Override
+        protected byte[] compute() {
+            WorkspaceManifest.Entry previous = previousHashes != null ? previousHashes.get(file.getRelativePath()) : null;
+            WorkspaceManifest.Entry current;
+            if (previous != null && previous.sameAttributes(file) && previous.hasContentHash()) {
+                current = previous;
+            } else {
+                current = new WorkspaceManifest.Entry(file.getSize(), file.getLastModified(), sha1(file.getFile()));
+                numberOfHashedFiles.incrementAndGet();
+            }
+            fileHashes.put(file.getRelativePath(), current);
+            return current.getSha1();
+        }
+
+        private byte[] sha1(File file) {
+            try {
+                InputStream inputStream = new FileInputStream(file);
+                try {
+                    return DigestUtils.sha1(inputStream);
+                } finally {
+                    inputStream.close();
+                }
+            } catch (IOException e) {
+                // Unreadable files are skipped by the zipper, they only count by name
+                LOGGER.fine("Failed to read: " + file + " (" + e.getMessage() + ")");
+                return new byte[0];
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.checkmarx.jenkins.filesystem.zip;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Files of a workspace as zipped by the last scan: relative path, size,
+ * modification time and SHA-1 of the content.
+ * <p>
+ * The manifest is kept on the node running the job, next to the workspace.
+ * The next zip does not hash the files unchanged since, and the workspace
+ * does not have to be walked when its changes are tracked, see
+ * {@link WorkspaceChangeTracker}.
+ */
+public class WorkspaceManifest {
+
+    // 2: the content hashes of the packaging manifest are git blob ids
+    private static final int FORMAT_VERSION = 2;
+
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    public Entry get(String relativePath) {
+        return entries.get(relativePath);
+    }
+
+    public void put(String relativePath, Entry entry) {
+        entries.put(relativePath, entry);
+    }
+
+    public Set<String> getPaths() {
+        return Collections.unmodifiableSet(entries.keySet());
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the manifest stored in the file, or null if the file does not
+     *         exist or can not be read
+     */
+    public static WorkspaceManifest read(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        DataInputStream input = null;
+        try {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (input.readInt() != FORMAT_VERSION) {
+                return null;
+            }
+            WorkspaceManifest manifest = new WorkspaceManifest();
+            int count = input.readInt();
+            for (int i = 0; i < count; i++) {
+                String path = input.readUTF();
+                long size = input.readLong();
+                long lastModified = input.readLong();
+                byte[] sha1 = new byte[input.readUnsignedByte()];
+                input.readFully(sha1);
+                manifest.put(path, new Entry(size, lastModified, sha1));
+            }
+            return manifest;
+        } catch (IOException e) {
+            return null;
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+    }
+
+    public void write(File file) throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Failed to create directory " + parent);
+        }
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            output.writeInt(FORMAT_VERSION);
+            output.writeInt(entries.size());
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                output.writeUTF(entry.getKey());
+                output.writeLong(entry.getValue().getSize());
+                output.writeLong(entry.getValue().getLastModified());
+                output.writeByte(entry.getValue().sha1.length);
+                output.write(entry.getValue().sha1);
+            }
+        } finally {
+            output.close();
+        }
+    }
+
+    public static class Entry {
+        private final long size;
+        private final long lastModified;
+        private final byte[] sha1;
+
+        public Entry(long size, long lastModified, byte[] sha1) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.sha1 = sha1;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public byte[] getSha1() {
+            return sha1.clone();
+        }
+
+        public boolean sameAttributes(WorkspaceFile file) {
+            return size == file.getSize() && lastModified == file.getLastModified();
+        }
+
+        public boolean hasContentHash() {
+            return sha1.length > 0;
+        }
+
+        public boolean sameContent(Entry other) {
+            return Arrays.equals(sha1, other.sha1);
+        }
+    }
+}
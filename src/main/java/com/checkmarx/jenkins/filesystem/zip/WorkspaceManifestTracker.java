@@ -0,0 +1,98 @@
+package com.checkmarx.jenkins.filesystem.zip;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+
+/**
+ * Builds the manifest of the current workspace while it is walked and
+ * compares it with the manifest of the previous zip.
+ * <p>
+ * The content hash of a file is its git blob id. It is taken from the git
+ * index when the walker read it there, otherwise it is only recomputed when
+ * the size or modification time of the file differ from the previous
+ * manifest. Every file is zipped: the scan request has no way to list the
+ * deleted files, a package of the changed files only would leave them in
+ * the project. The manifest only saves work on the node.
+ */
+public class WorkspaceManifestTracker {
+
+    private final WorkspaceManifest previousManifest;
+    private final WorkspaceManifest currentManifest = new WorkspaceManifest();
+
+    private int numberOfHashedFiles;
+    private int numberOfChangedFiles;
+
+    /**
+     * @param previousManifest manifest of the previous zip, may be null
+     */
+    public WorkspaceManifestTracker(WorkspaceManifest previousManifest) {
+        this.previousManifest = previousManifest;
+    }
+
+    /**
+     * Records the file in the current manifest.
+     */
+    public void track(WorkspaceFile file) throws IOException {
+        WorkspaceManifest.Entry previous = previousManifest != null ? previousManifest.get(file.getRelativePath()) : null;
+        WorkspaceManifest.Entry current;
+        if (file.getContentHash() != null) {
+            current = new WorkspaceManifest.Entry(file.getSize(), file.getLastModified(), file.getContentHash());
+        } else if (previous != null && previous.sameAttributes(file) && previous.hasContentHash()) {
+            current = previous;
+        } else {
+            current = new WorkspaceManifest.Entry(file.getSize(), file.getLastModified(), blobId(file));
+            numberOfHashedFiles++;
+        }
+        currentManifest.put(file.getRelativePath(), current);
+
+        if (previous == null || !previous.sameContent(current)) {
+            numberOfChangedFiles++;
+        }
+    }
+
+    public WorkspaceManifest getPreviousManifest() {
+        return previousManifest;
+    }
+
+    public WorkspaceManifest getCurrentManifest() {
+        return currentManifest;
+    }
+
+    public int getNumberOfHashedFiles() {
+        return numberOfHashedFiles;
+    }
+
+    public int getNumberOfChangedFiles() {
+        return numberOfChangedFiles;
+    }
+
+    /**
+     * @return the git blob id of the file: SHA-1 of a "blob" header and the
+     *         content, comparable with the ids of the git index
+     */
+    static byte[] blobId(WorkspaceFile file) throws IOException {
+        InputStream inputStream;
+        try {
+            inputStream = new FileInputStream(file.getFile());
+        } catch (IOException e) {
+            // Unreadable files are reported by the zipper, never match them with the previous manifest
+            return new byte[0];
+        }
+        try {
+            MessageDigest digest = DigestUtils.getSha1Digest();
+            digest.update(("blob " + file.getSize() + "\0").getBytes("UTF-8"));
+            byte[] buffer = new byte[64 * 1024];
+            int count;
+            while ((count = inputStream.read(buffer)) >= 0) {
+                digest.update(buffer, 0, count);
+            }
+            return digest.digest();
+        } finally {
+            inputStream.close();
+        }
+    }
+}
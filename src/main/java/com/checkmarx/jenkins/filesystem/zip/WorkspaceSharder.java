@@ -0,0 +1,281 @@
+package com.checkmarx.jenkins.filesystem.zip;
+
+import com.checkmarx.jenkins.filesystem.zip.dto.WorkspaceShard;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Splits a workspace too large for a single zip into shards that each fit
+ * under the maximum zip size, along module boundaries.
+ * <p>
+ * The files matching the filter are totalled per directory, their compressed
+ * size estimated like {@link ZipSizeEstimator} does. Top level directories
+ * are the modules of the workspace; a module larger than a shard is split
+ * into its subdirectories, the nested modules, and its own files, again and
+ * again up to {@link #MAX_DEPTH} levels. The modules are then packed into as
+ * few shards as possible, largest first. Shards are only filled up to
+ * {@link #SHARD_FILL} of the maximum zip size, the estimate being an
+ * estimate.
+ * <p>
+ * A shard is named after the first of its modules, so a shard keeps its name
+ * from build to build as long as the modules do not move much.
+ */
+public class WorkspaceSharder {
+
+    static final int MAX_DEPTH = 8;
+    static final double SHARD_FILL = 0.8;
+    static final String ROOT_NAME = "root";
+    private static final int ENTRY_OVERHEAD = 30 + 16 + 46;
+
+    private final PathFilter filter;
+    private final ZipSizeEstimator estimator = new ZipSizeEstimator();
+    private final Directory root = new Directory("", 0);
+
+    WorkspaceSharder(PathFilter filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * @param maxShardSize maximum zip size of a shard
+     * @param gitIndex     take the files from the git index, like the zipper
+     * @return a single shard with the whole workspace when it fits, the
+     *         shards in name order otherwise
+     * @throws IOException when a directory can not be split any further and
+     *                     still does not fit in a shard
+     */
+    public static List<WorkspaceShard> plan(File baseDir, String filterPattern, long maxShardSize, boolean gitIndex) throws IOException {
+        PathFilter filter = CompiledPathFilter.forFilterPattern(filterPattern);
+        WorkspaceSharder sharder = new WorkspaceSharder(filter);
+        WorkspaceWalker walker = new WorkspaceWalker(baseDir, filter);
+        walker.setGitIndex(gitIndex);
+        walker.start();
+        try {
+            WorkspaceFile file;
+            while ((file = walker.take()) != null) {
+                sharder.add(file);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Workspace sharding interrupted", e);
+        } finally {
+            walker.close();
+            sharder.estimator.end();
+        }
+        return sharder.plan(maxShardSize);
+    }
+
+    void add(WorkspaceFile file) {
+        estimator.add(file);
+        String relativePath = file.getRelativePath().replace('\\', '/');
+        String[] segments = StringUtils.split(relativePath, '/');
+        Directory directory = root;
+        for (int i = 0; i < segments.length - 1 && i < MAX_DEPTH; i++) {
+            directory = directory.child(segments[i]);
+        }
+        directory.add(ZipSizeEstimator.typeOf(relativePath), file.getSize(), ENTRY_OVERHEAD + 2L * relativePath.length());
+    }
+
+    List<WorkspaceShard> plan(long maxShardSize) throws IOException {
+        long capacity = (long) (maxShardSize * SHARD_FILL);
+        root.computeTotals();
+        if (root.totalFiles == 0) {
+            return Collections.emptyList();
+        }
+        if (root.totalCompressedSize <= capacity) {
+            return Collections.singletonList(new WorkspaceShard(ROOT_NAME, Collections.singletonList(""),
+                    Collections.<String>emptyList(), root.totalFiles, root.totalSize, root.totalCompressedSize));
+        }
+
+        List<Module> modules = new ArrayList<>();
+        split(root, capacity, modules);
+        Collections.sort(modules, LARGEST_FIRST);
+
+        List<List<Module>> bins = new ArrayList<>();
+        List<Long> binSizes = new ArrayList<>();
+        for (Module module : modules) {
+            int bin = 0;
+            while (bin < bins.size() && binSizes.get(bin) + module.compressedSize > capacity) {
+                bin++;
+            }
+            if (bin == bins.size()) {
+                bins.add(new ArrayList<Module>());
+                binSizes.add(0L);
+            }
+            bins.get(bin).add(module);
+            binSizes.set(bin, binSizes.get(bin) + module.compressedSize);
+        }
+
+        List<WorkspaceShard> shards = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        for (List<Module> bin : bins) {
+            Collections.sort(bin, BY_PATH);
+            shards.add(toShard(bin, names));
+        }
+        Collections.sort(shards, new Comparator<WorkspaceShard>() {
+            @Override
+            public int compare(WorkspaceShard first, WorkspaceShard second) {
+                return first.getName().compareTo(second.getName());
+            }
+        });
+        return shards;
+    }
+
+    /**
+     * Adds the modules of a directory too large for a shard: its
+     * subdirectories that fit, the modules of those that do not, and its own
+     * files.
+     */
+    private void split(Directory directory, long capacity, List<Module> modules) throws IOException {
+        for (Directory child : directory.children.values()) {
+            if (child.totalFiles == 0) {
+                continue;
+            }
+            if (child.totalCompressedSize <= capacity) {
+                modules.add(new Module(child.path, true, child.totalFiles, child.totalSize, child.totalCompressedSize));
+            } else if (child.depth < MAX_DEPTH && !child.children.isEmpty()) {
+                split(child, capacity, modules);
+            } else {
+                throw tooLarge(child.path, child.totalCompressedSize, capacity);
+            }
+        }
+        if (directory.files > 0) {
+            long compressedSize = directory.compressedSize();
+            if (compressedSize > capacity) {
+                throw tooLarge(directory.path, compressedSize, capacity);
+            }
+            modules.add(new Module(directory.path, false, directory.files, directory.size, compressedSize));
+        }
+    }
+
+    private WorkspaceShard toShard(List<Module> modules, Set<String> names) {
+        List<String> directories = new ArrayList<>();
+        List<String> fileDirectories = new ArrayList<>();
+        int files = 0;
+        long size = 0;
+        long compressedSize = 0;
+        for (Module module : modules) {
+            (module.recursive ? directories : fileDirectories).add(module.path);
+            files += module.files;
+            size += module.size;
+            compressedSize += module.compressedSize;
+        }
+        String baseName = modules.get(0).path.isEmpty() ? ROOT_NAME : modules.get(0).path.replaceAll("[^A-Za-z0-9._-]", "-");
+        String name = baseName;
+        for (int i = 2; !names.add(name); i++) {
+            name = baseName + "-" + i;
+        }
+        return new WorkspaceShard(name, directories, fileDirectories, files, size, compressedSize);
+    }
+
+    private static IOException tooLarge(String path, long compressedSize, long capacity) {
+        return new IOException("The files of " + (path.isEmpty() ? "the workspace root" : path) + " alone would make a zip of about "
+                + FileUtils.byteCountToDisplaySize(compressedSize) + ", more than a shard can hold ("
+                + FileUtils.byteCountToDisplaySize(capacity) + "). Exclude some of them with the filter pattern");
+    }
+
+    private static final Comparator<Module> LARGEST_FIRST = new Comparator<Module>() {
+        @Override
+        public int compare(Module first, Module second) {
+            int order = Long.compare(second.compressedSize, first.compressedSize);
+            return order != 0 ? order : first.path.compareTo(second.path);
+        }
+    };
+
+    private static final Comparator<Module> BY_PATH = new Comparator<Module>() {
+        @Override
+        public int compare(Module first, Module second) {
+            return first.path.compareTo(second.path);
+        }
+    };
+
+    /**
+     * Directory of the workspace with the files directly in it, or deeper than
+     * {@link #MAX_DEPTH} levels under it, and the totals of its whole tree.
+     */
+    private class Directory {
+        private final String path;
+        private final int depth;
+        private final Map<String, Directory> children = new TreeMap<>();
+        private final Map<String, Long> sizePerType = new HashMap<>();
+        private int files;
+        private long size;
+        private long headersSize;
+        private int totalFiles;
+        private long totalSize;
+        private long totalCompressedSize;
+
+        Directory(String path, int depth) {
+            this.path = path;
+            this.depth = depth;
+        }
+
+        Directory child(String name) {
+            Directory child = children.get(name);
+            if (child == null) {
+                child = new Directory(path.isEmpty() ? name : path + "/" + name, depth + 1);
+                children.put(name, child);
+            }
+            return child;
+        }
+
+        void add(String type, long fileSize, long headerSize) {
+            files++;
+            size += fileSize;
+            headersSize += headerSize;
+            Long sizeOfType = sizePerType.get(type);
+            sizePerType.put(type, (sizeOfType == null ? 0 : sizeOfType) + fileSize);
+        }
+
+        long compressedSize() {
+            double compressedSize = headersSize;
+            for (Map.Entry<String, Long> sizeOfType : sizePerType.entrySet()) {
+                compressedSize += sizeOfType.getValue() * estimator.ratioOf(sizeOfType.getKey());
+            }
+            return (long) compressedSize;
+        }
+
+        void computeTotals() {
+            totalFiles = files;
+            totalSize = size;
+            totalCompressedSize = compressedSize();
+            for (Directory child : children.values()) {
+                child.computeTotals();
+                totalFiles += child.totalFiles;
+                totalSize += child.totalSize;
+                totalCompressedSize += child.totalCompressedSize;
+            }
+        }
+    }
+
+    /**
+     * Directory scanned as a whole, with its subdirectories or only with its
+     * own files.
+     */
+    private static class Module {
+        private final String path;
+        private final boolean recursive;
+        private final int files;
+        private final long size;
+        private final long compressedSize;
+
+        Module(String path, boolean recursive, int files, long size, long compressedSize) {
+            this.path = path;
+            this.recursive = recursive;
+            this.files = files;
+            this.size = size;
+            this.compressedSize = compressedSize;
+        }
+    }
+}
@@ -0,0 +1,420 @@
+package com.checkmarx.jenkins.filesystem.zip;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.FileSystemLoopException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Single pass workspace walker.
+ * <p>
+ * Walks the base directory on a background thread with
+ * {@link Files#walkFileTree}, following symbolic links, applies the
+ * {@link PathFilter} while walking and hands the matched files to the consumer
+ * through a bounded queue. The consumer can start zipping as soon as the first
+ * file is found and the memory used does not depend on the number of files in
+ * the workspace.
+ * <p>
+ * In a git work tree the files can be taken from the git index instead, see
+ * {@link #setGitIndex(boolean)}: untracked files, typically build outputs,
+ * are then never visited.
+ * <p>
+ * When the changes since the previous manifest are known the directories are
+ * not listed: the files of the manifest and the changed paths are visited
+ * instead, see {@link #setChangedPaths(Collection)}.
+ */
+public class WorkspaceWalker implements Closeable {
+
+    private static Logger LOGGER = Logger.getLogger(WorkspaceWalker.class.getName());
+
+    private static final int QUEUE_CAPACITY = 1024;
+    private static final WorkspaceFile END_OF_WALK = new WorkspaceFile(null, null, 0, 0);
+    private static final AtomicInteger THREAD_NUMBER = new AtomicInteger();
+
+    private final File baseDir;
+    private final PathFilter filter;
+    private final BlockingQueue<WorkspaceFile> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+    private WorkspaceManifestTracker manifestTracker;
+    private boolean gitIndex;
+    private Collection<String> changedPaths;
+    private Thread walkerThread;
+    private volatile boolean cancelled;
+    private volatile IOException walkError;
+    private boolean finished;
+    private int numberOfMatchedFiles;
+    private volatile int numberOfExcludedFiles;
+
+    public WorkspaceWalker(File baseDir, PathFilter filter) {
+        this.baseDir = baseDir;
+        this.filter = filter;
+    }
+
+    /**
+     * Records every matched file in the tracker. Must be set before
+     * {@link #start()}.
+     */
+    public void setManifestTracker(WorkspaceManifestTracker manifestTracker) {
+        this.manifestTracker = manifestTracker;
+    }
+
+    /**
+     * Takes the files from the git index when the base directory is a git
+     * work tree, only tracked files are then found. Falls back to walking
+     * the file system when it is not. Must be set before {@link #start()}.
+     */
+    public void setGitIndex(boolean gitIndex) {
+        this.gitIndex = gitIndex;
+    }
+
+    /**
+     * Visits the files of the previous manifest and the changed paths, files
+     * or directories, instead of listing every directory. Requires a manifest
+     * tracker with a previous manifest; the git index is not read. Must be
+     * set before {@link #start()}.
+     *
+     * @param changedPaths paths relative to the base directory changed since
+     *                     the previous manifest, see {@link WorkspaceChangeTracker}
+     */
+    public void setChangedPaths(Collection<String> changedPaths) {
+        this.changedPaths = changedPaths;
+    }
+
+    public synchronized void start() {
+        if (walkerThread != null) {
+            return;
+        }
+        walkerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                walk();
+            }
+        }, "Checkmarx workspace walker " + THREAD_NUMBER.incrementAndGet());
+        walkerThread.setDaemon(true);
+        walkerThread.start();
+    }
+
+    /**
+     * Waits for the next matched file.
+     *
+     * @return the next file or null when the walk is over
+     */
+    public WorkspaceFile take() throws IOException, InterruptedException {
+        if (finished) {
+            return null;
+        }
+        return consume(queue.take());
+    }
+
+    /**
+     * @return the next matched file if one is already available, otherwise
+     *         null (see {@link #isFinished()})
+     */
+    public WorkspaceFile poll() throws IOException {
+        if (finished) {
+            return null;
+        }
+        return consume(queue.poll());
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * @return number of files returned to the consumer so far
+     */
+    public int getNumberOfMatchedFiles() {
+        return numberOfMatchedFiles;
+    }
+
+    /**
+     * @return number of files not matching the filter, the files of pruned
+     *         directories are not counted
+     */
+    public int getNumberOfExcludedFiles() {
+        return numberOfExcludedFiles;
+    }
+
+    /**
+     * Stops the walk if it is still running.
+     */
+    @Override
+    public void close() {
+        cancelled = true;
+        if (walkerThread != null) {
+            walkerThread.interrupt();
+        }
+        queue.clear();
+    }
+
+    private WorkspaceFile consume(WorkspaceFile workspaceFile) throws IOException {
+        if (workspaceFile == END_OF_WALK) {
+            finished = true;
+            if (walkError != null) {
+                throw walkError;
+            }
+            return null;
+        }
+        if (workspaceFile != null) {
+            numberOfMatchedFiles++;
+        }
+        return workspaceFile;
+    }
+
+    private void walk() {
+        try {
+            if (baseDir.isDirectory()) {
+                GitIndex index = gitIndex && changedPaths == null ? GitIndex.read(baseDir) : null;
+                if (changedPaths != null && manifestTracker != null && manifestTracker.getPreviousManifest() != null) {
+                    walkChanges(baseDir.toPath());
+                } else if (index != null) {
+                    LOGGER.fine("Taking the files from the git index of " + baseDir);
+                    walkGitIndex(index, baseDir.toPath(), baseDir.toPath(), new HashMap<String, Boolean>());
+                } else {
+                    if (gitIndex) {
+                        LOGGER.info("No readable git index in " + baseDir + ", walking the workspace");
+                    }
+                    walkFileSystem(baseDir.toPath(), baseDir.toPath());
+                }
+            }
+        } catch (IOException e) {
+            walkError = e;
+        } catch (RuntimeException e) {
+            walkError = new IOException(e);
+        } finally {
+            if (!cancelled) {
+                try {
+                    queue.put(END_OF_WALK);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    private void walkFileSystem(final Path basePath, final Path start) throws IOException {
+        Files.walkFileTree(start, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, new SimpleFileVisitor<Path>() {
+
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                if (cancelled) {
+                    return FileVisitResult.TERMINATE;
+                }
+                if (dir.equals(basePath)) {
+                    return FileVisitResult.CONTINUE;
+                }
+                String relativeDirectory = basePath.relativize(dir).toString();
+                if (!filter.isTraversable(relativeDirectory)) {
+                    LOGGER.fine("Excluded Dir: " + relativeDirectory);
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                if (cancelled) {
+                    return FileVisitResult.TERMINATE;
+                }
+                if (attrs.isRegularFile()) {
+                    visit(basePath.relativize(file).toString(), file, attrs, null);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                if (exc instanceof FileSystemLoopException) {
+                    LOGGER.fine("Not followed symbolic link: " + file);
+                } else {
+                    LOGGER.fine("Failed to visit: " + file + " (" + exc.getMessage() + ")");
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Visits the files tracked in the index of the work tree, in the index
+     * order. Submodules are visited with their own index.
+     *
+     * @param traversable directories already checked against the filter
+     */
+    private void walkGitIndex(GitIndex index, Path basePath, Path workTree, Map<String, Boolean> traversable) throws IOException {
+        for (GitIndex.Entry entry : index.getEntries()) {
+            if (cancelled) {
+                return;
+            }
+            Path file = workTree.resolve(entry.getPath());
+            String relativePath = basePath.relativize(file).toString();
+            if (!isInTraversableDirectory(relativePath, traversable)) {
+                continue;
+            }
+            if (entry.isSubmodule()) {
+                if (Files.isDirectory(file) && filter.isTraversable(relativePath)) {
+                    GitIndex submoduleIndex = GitIndex.read(file.toFile());
+                    if (submoduleIndex != null) {
+                        walkGitIndex(submoduleIndex, basePath, file, traversable);
+                    } else {
+                        walkFileSystem(basePath, file);
+                    }
+                }
+                continue;
+            }
+            if (!entry.isFile()) {
+                continue;
+            }
+            BasicFileAttributes attrs;
+            try {
+                attrs = Files.readAttributes(file, BasicFileAttributes.class);
+            } catch (IOException e) {
+                // Deleted from the work tree but still in the index
+                continue;
+            }
+            if (attrs.isRegularFile()) {
+                visit(relativePath, file, attrs, index.contentHash(entry, attrs));
+            }
+        }
+    }
+
+    /**
+     * Visits the unchanged files of the previous manifest, then the changed
+     * paths: a changed directory is walked, a changed path no longer there is
+     * a deleted file or directory. The files are still visited one by one,
+     * only the listing of the unchanged directories is saved.
+     */
+    private void walkChanges(Path basePath) throws IOException {
+        Map<String, Boolean> traversable = new HashMap<>();
+        Set<String> changed = new HashSet<>(changedPaths);
+        List<String> unchanged = new ArrayList<>();
+        for (String path : manifestTracker.getPreviousManifest().getPaths()) {
+            if (!isChanged(path, changed) && isInTraversableDirectory(path, traversable)) {
+                unchanged.add(path);
+            }
+        }
+        Collections.sort(unchanged);
+        for (String path : unchanged) {
+            if (cancelled) {
+                return;
+            }
+            Path file = basePath.resolve(path);
+            BasicFileAttributes attrs;
+            try {
+                attrs = Files.readAttributes(file, BasicFileAttributes.class);
+            } catch (IOException e) {
+                // Deleted without the change being reported
+                continue;
+            }
+            if (attrs.isRegularFile()) {
+                visit(path, file, attrs, null);
+            }
+        }
+        List<String> sortedChanges = new ArrayList<>(changed);
+        Collections.sort(sortedChanges);
+        for (String changedPath : sortedChanges) {
+            if (cancelled) {
+                return;
+            }
+            // A path under a changed directory is visited with the directory
+            int separator = changedPath.lastIndexOf(File.separatorChar);
+            if (separator > 0 && isChanged(changedPath.substring(0, separator), changed)
+                    || !isInTraversableDirectory(changedPath, traversable)) {
+                continue;
+            }
+            Path file = basePath.resolve(changedPath);
+            BasicFileAttributes attrs;
+            try {
+                attrs = Files.readAttributes(file, BasicFileAttributes.class);
+            } catch (IOException e) {
+                // Deleted since the previous manifest
+                continue;
+            }
+            if (attrs.isDirectory()) {
+                if (filter.isTraversable(changedPath)) {
+                    walkFileSystem(basePath, file);
+                }
+            } else if (attrs.isRegularFile()) {
+                visit(changedPath, file, attrs, null);
+            }
+        }
+    }
+
+    /**
+     * @return true if the path or one of its parent directories changed
+     */
+    private static boolean isChanged(String relativePath, Set<String> changed) {
+        String path = relativePath;
+        while (true) {
+            if (changed.contains(path)) {
+                return true;
+            }
+            int separator = path.lastIndexOf(File.separatorChar);
+            if (separator < 0) {
+                return false;
+            }
+            path = path.substring(0, separator);
+        }
+    }
+
+    private boolean isInTraversableDirectory(String relativePath, Map<String, Boolean> traversable) {
+        int separator = relativePath.lastIndexOf(File.separatorChar);
+        if (separator < 0) {
+            return true;
+        }
+        String directory = relativePath.substring(0, separator);
+        Boolean result = traversable.get(directory);
+        if (result == null) {
+            result = isInTraversableDirectory(directory, traversable) && filter.isTraversable(directory);
+            if (!result) {
+                LOGGER.fine("Excluded Dir: " + directory);
+            }
+            traversable.put(directory, result);
+        }
+        return result;
+    }
+
+    private void visit(String relativePath, Path file, BasicFileAttributes attrs, byte[] contentHash) throws IOException {
+        if (filter.isIncluded(relativePath)) {
+            LOGGER.fine("Included: " + relativePath);
+            WorkspaceFile workspaceFile = new WorkspaceFile(relativePath, file.toFile(), attrs.size(),
+                    attrs.lastModifiedTime().toMillis(), contentHash);
+            if (manifestTracker != null) {
+                manifestTracker.track(workspaceFile);
+            }
+            put(workspaceFile);
+        } else {
+            LOGGER.fine("Excluded File: " + relativePath);
+            numberOfExcludedFiles++;
+        }
+    }
+
+    private void put(WorkspaceFile workspaceFile) throws IOException {
+        try {
+            queue.put(workspaceFile);
+        } catch (InterruptedException e) {
+            cancelled = true;
+            throw new InterruptedIOException("Workspace walk interrupted");
+        }
+    }
+}
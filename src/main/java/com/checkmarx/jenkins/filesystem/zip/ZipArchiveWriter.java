@@ -0,0 +1,349 @@
+package com.checkmarx.jenkins.filesystem.zip;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.zip.ZipEntry;
+
+/**
+ * Low level zip container writer.
+ * <p>
+ * Unlike {@link org.apache.tools.zip.ZipOutputStream} this writer does not
+ * compress anything by itself, it receives entry data that was already
+ * compressed (for example by a pool of worker threads) and only takes care
+ * of the zip headers, the central directory and the Zip64 extensions. Entry
+ * names are always written in UTF-8 with the language encoding flag set,
+ * same as the Ant zipper was configured before.
+ */
+public class ZipArchiveWriter implements Closeable {
+
+    private static final int LOCAL_FILE_HEADER_SIGNATURE = 0x04034b50;
+    private static final int DATA_DESCRIPTOR_SIGNATURE = 0x08074b50;
+    private static final int CENTRAL_FILE_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIGNATURE = 0x07064b50;
+
+    private static final int ZIP64_EXTRA_FIELD_ID = 0x0001;
+    private static final int VERSION_DEFAULT = 20;
+    private static final int VERSION_ZIP64 = 45;
+    private static final int FLAG_DATA_DESCRIPTOR = 0x0008;
+    private static final int FLAG_UTF8 = 0x0800;
+
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+    private static final int ZIP64_MAGIC_SHORT = 0xFFFF;
+
+    /**
+     * Entries whose uncompressed size is above this value are streamed with
+     * Zip64 data descriptors, since deflate may slightly expand incompressible
+     * data and the final size is not known when the local header is written.
+     */
+    private static final long STREAMED_ZIP64_THRESHOLD = ZIP64_MAGIC - (ZIP64_MAGIC / 100);
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final OutputStream out;
+    private final List<CentralDirectoryRecord> centralDirectory = new ArrayList<>();
+    private final byte[] scratch = new byte[8];
+
+    private long bytesWritten;
+    private CentralDirectoryRecord currentEntry;
+    private boolean finished;
+
+    public ZipArchiveWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * @return number of bytes written to the underlying stream so far
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    public int getNumberOfEntries() {
+        return centralDirectory.size();
+    }
+
+    /**
+     * Writes a complete entry whose data, sizes and crc are known in advance.
+     *
+     * @param method {@link ZipEntry#DEFLATED} or {@link ZipEntry#STORED}
+     */
+    public void writeEntry(String name, long time, int method, long crc, long size, byte[] data, int offset, int length)
+            throws IOException {
+        assert currentEntry == null : "Previous entry was not closed";
+
+        CentralDirectoryRecord record = new CentralDirectoryRecord(name, time, method, bytesWritten);
+        record.crc = crc;
+        record.size = size;
+        record.compressedSize = length;
+        record.zip64 = size >= ZIP64_MAGIC || length >= ZIP64_MAGIC;
+        writeLocalFileHeader(record);
+        writeOut(data, offset, length);
+        centralDirectory.add(record);
+    }
+
+    /**
+     * Starts an entry whose data will be provided in several parts, the crc and
+     * sizes are written in a data descriptor by {@link #endEntry(long, long)}.
+     *
+     * @param expectedSize uncompressed size as known before compression, used
+     *                     to decide whether Zip64 data descriptor is required
+     */
+    public void beginEntry(String name, long time, int method, long expectedSize) throws IOException {
+        assert currentEntry == null : "Previous entry was not closed";
+
+        currentEntry = new CentralDirectoryRecord(name, time, method, bytesWritten);
+        currentEntry.flags |= FLAG_DATA_DESCRIPTOR;
+        currentEntry.zip64 = expectedSize >= STREAMED_ZIP64_THRESHOLD;
+        writeLocalFileHeader(currentEntry);
+    }
+
+    /**
+     * Starts a {@link ZipEntry#STORED} entry whose crc and size are known in
+     * advance, the data is provided in several parts and the entry is closed
+     * by {@link #endStoredEntry()}. Stored entries are not streamed with a
+     * data descriptor, most zip readers do not support it.
+     */
+    public void beginStoredEntry(String name, long time, long crc, long size) throws IOException {
+        assert currentEntry == null : "Previous entry was not closed";
+
+        currentEntry = new CentralDirectoryRecord(name, time, ZipEntry.STORED, bytesWritten);
+        currentEntry.crc = crc;
+        currentEntry.size = size;
+        currentEntry.compressedSize = size;
+        currentEntry.zip64 = size >= ZIP64_MAGIC;
+        writeLocalFileHeader(currentEntry);
+        // Counts the data actually written from now on
+        currentEntry.compressedSize = 0;
+    }
+
+    public void endStoredEntry() throws IOException {
+        assert currentEntry != null : "No entry was started";
+
+        CentralDirectoryRecord record = currentEntry;
+        if (record.compressedSize != record.size) {
+            throw new IOException("Entry " + record.name + " has " + record.compressedSize + " bytes instead of " + record.size);
+        }
+        centralDirectory.add(record);
+        currentEntry = null;
+    }
+
+    public void writeEntryData(byte[] data, int offset, int length) throws IOException {
+        assert currentEntry != null : "No entry was started";
+
+        writeOut(data, offset, length);
+        currentEntry.compressedSize += length;
+    }
+
+    public void endEntry(long crc, long size) throws IOException {
+        assert currentEntry != null : "No entry was started";
+
+        CentralDirectoryRecord record = currentEntry;
+        record.crc = crc;
+        record.size = size;
+        if (!record.zip64 && (size >= ZIP64_MAGIC || record.compressedSize >= ZIP64_MAGIC)) {
+            throw new IOException("Entry " + record.name + " exceeded the Zip64 streaming threshold");
+        }
+
+        writeInt(DATA_DESCRIPTOR_SIGNATURE);
+        writeInt(record.crc);
+        if (record.zip64) {
+            writeLong(record.compressedSize);
+            writeLong(record.size);
+        } else {
+            writeInt(record.compressedSize);
+            writeInt(record.size);
+        }
+        centralDirectory.add(record);
+        currentEntry = null;
+    }
+
+    /**
+     * Writes the central directory. No entries can be added afterwards.
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        assert currentEntry == null : "Last entry was not closed";
+
+        long centralDirectoryOffset = bytesWritten;
+        for (CentralDirectoryRecord record : centralDirectory) {
+            writeCentralFileHeader(record);
+        }
+        long centralDirectorySize = bytesWritten - centralDirectoryOffset;
+        long entries = centralDirectory.size();
+
+        boolean zip64 = entries >= ZIP64_MAGIC_SHORT || centralDirectoryOffset >= ZIP64_MAGIC || centralDirectorySize >= ZIP64_MAGIC;
+        if (zip64) {
+            long zip64EndOffset = bytesWritten;
+            writeInt(ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE);
+            writeLong(44);
+            writeShort(VERSION_ZIP64);
+            writeShort(VERSION_ZIP64);
+            writeInt(0);
+            writeInt(0);
+            writeLong(entries);
+            writeLong(entries);
+            writeLong(centralDirectorySize);
+            writeLong(centralDirectoryOffset);
+
+            writeInt(ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIGNATURE);
+            writeInt(0);
+            writeLong(zip64EndOffset);
+            writeInt(1);
+        }
+
+        writeInt(END_OF_CENTRAL_DIRECTORY_SIGNATURE);
+        writeShort(0);
+        writeShort(0);
+        writeShort((int) Math.min(entries, ZIP64_MAGIC_SHORT));
+        writeShort((int) Math.min(entries, ZIP64_MAGIC_SHORT));
+        writeInt(Math.min(centralDirectorySize, ZIP64_MAGIC));
+        writeInt(Math.min(centralDirectoryOffset, ZIP64_MAGIC));
+        writeShort(0);
+        out.flush();
+        finished = true;
+    }
+
+    /**
+     * Closes the underlying stream without writing the central directory
+     * unless {@link #finish()} was called before.
+     */
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private void writeLocalFileHeader(CentralDirectoryRecord record) throws IOException {
+        boolean streamed = (record.flags & FLAG_DATA_DESCRIPTOR) != 0;
+
+        writeInt(LOCAL_FILE_HEADER_SIGNATURE);
+        writeShort(record.zip64 ? VERSION_ZIP64 : VERSION_DEFAULT);
+        writeShort(record.flags);
+        writeShort(record.method);
+        writeInt(record.dosTime);
+        if (streamed) {
+            writeInt(0);
+            writeInt(record.zip64 ? ZIP64_MAGIC : 0);
+            writeInt(record.zip64 ? ZIP64_MAGIC : 0);
+        } else {
+            writeInt(record.crc);
+            writeInt(record.zip64 ? ZIP64_MAGIC : record.compressedSize);
+            writeInt(record.zip64 ? ZIP64_MAGIC : record.size);
+        }
+        writeShort(record.nameBytes.length);
+        writeShort(record.zip64 ? 20 : 0);
+        writeOut(record.nameBytes, 0, record.nameBytes.length);
+        if (record.zip64) {
+            writeShort(ZIP64_EXTRA_FIELD_ID);
+            writeShort(16);
+            writeLong(streamed ? 0 : record.size);
+            writeLong(streamed ? 0 : record.compressedSize);
+        }
+    }
+
+    private void writeCentralFileHeader(CentralDirectoryRecord record) throws IOException {
+        boolean sizesOverflow = record.size >= ZIP64_MAGIC || record.compressedSize >= ZIP64_MAGIC;
+        boolean offsetOverflow = record.localHeaderOffset >= ZIP64_MAGIC;
+        boolean needsZip64 = record.zip64 || sizesOverflow || offsetOverflow;
+        int extraLength = (needsZip64 ? 4 : 0) + (record.zip64 || sizesOverflow ? 16 : 0) + (offsetOverflow ? 8 : 0);
+
+        writeInt(CENTRAL_FILE_HEADER_SIGNATURE);
+        writeShort(needsZip64 ? VERSION_ZIP64 : VERSION_DEFAULT);
+        writeShort(needsZip64 ? VERSION_ZIP64 : VERSION_DEFAULT);
+        writeShort(record.flags);
+        writeShort(record.method);
+        writeInt(record.dosTime);
+        writeInt(record.crc);
+        writeInt(record.zip64 || sizesOverflow ? ZIP64_MAGIC : record.compressedSize);
+        writeInt(record.zip64 || sizesOverflow ? ZIP64_MAGIC : record.size);
+        writeShort(record.nameBytes.length);
+        writeShort(extraLength);
+        writeShort(0);
+        writeShort(0);
+        writeShort(0);
+        writeInt(0);
+        writeInt(offsetOverflow ? ZIP64_MAGIC : record.localHeaderOffset);
+        writeOut(record.nameBytes, 0, record.nameBytes.length);
+        if (needsZip64) {
+            writeShort(ZIP64_EXTRA_FIELD_ID);
+            writeShort(extraLength - 4);
+            if (record.zip64 || sizesOverflow) {
+                writeLong(record.size);
+                writeLong(record.compressedSize);
+            }
+            if (offsetOverflow) {
+                writeLong(record.localHeaderOffset);
+            }
+        }
+    }
+
+    private void writeShort(int value) throws IOException {
+        scratch[0] = (byte) value;
+        scratch[1] = (byte) (value >>> 8);
+        writeOut(scratch, 0, 2);
+    }
+
+    private void writeInt(long value) throws IOException {
+        scratch[0] = (byte) value;
+        scratch[1] = (byte) (value >>> 8);
+        scratch[2] = (byte) (value >>> 16);
+        scratch[3] = (byte) (value >>> 24);
+        writeOut(scratch, 0, 4);
+    }
+
+    private void writeLong(long value) throws IOException {
+        for (int i = 0; i < 8; i++) {
+            scratch[i] = (byte) (value >>> (8 * i));
+        }
+        writeOut(scratch, 0, 8);
+    }
+
+    private void writeOut(byte[] data, int offset, int length) throws IOException {
+        out.write(data, offset, length);
+        bytesWritten += length;
+    }
+
+    private static long toDosTime(long time) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(time);
+        int year = calendar.get(Calendar.YEAR);
+        if (year < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return ((year - 1980) << 25)
+                | ((calendar.get(Calendar.MONTH) + 1) << 21)
+                | (calendar.get(Calendar.DAY_OF_MONTH) << 16)
+                | (calendar.get(Calendar.HOUR_OF_DAY) << 11)
+                | (calendar.get(Calendar.MINUTE) << 5)
+                | (calendar.get(Calendar.SECOND) >> 1);
+    }
+
+    private static class CentralDirectoryRecord {
+        private final String name;
+        private final byte[] nameBytes;
+        private final long dosTime;
+        private final int method;
+        private final long localHeaderOffset;
+        private int flags = FLAG_UTF8;
+        private boolean zip64;
+        private long crc;
+        private long size;
+        private long compressedSize;
+
+        CentralDirectoryRecord(String name, long time, int method, long localHeaderOffset) {
+            this.name = name;
+            this.nameBytes = name.replace('\\', '/').getBytes(UTF8);
+            this.dosTime = toDosTime(time);
+            this.method = method;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+    }
+}
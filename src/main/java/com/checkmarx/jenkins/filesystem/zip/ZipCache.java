@@ -0,0 +1,267 @@
+package com.checkmarx.jenkins.filesystem.zip;
+
+import com.checkmarx.jenkins.filesystem.zip.dto.ZippingDetails;
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Finished archives kept on a node, so that packaging the same sources again
+ * (a retry, another scan step of the pipeline, another configuration of a
+ * matrix over the same checkout) takes them from the disk instead of zipping
+ * the workspace again.
+ * <p>
+ * An archive is found by a {@link #key(String, String, String) key} made of
+ * the fingerprint of the workspace, the filter pattern and the form of the
+ * archive. Each entry is the archive and a small file with its zipping
+ * details. The least recently used entries are deleted when the archives
+ * take more than the quota.
+ * <p>
+ * Archives are hard linked in and out of the cache when the temporary
+ * directory is on the same file system, copied otherwise. An entry becomes
+ * visible only once complete, so nodes sharing the directory never see a
+ * partial archive.
+ */
+public class ZipCache {
+
+    private static Logger LOGGER = Logger.getLogger(ZipCache.class.getName());
+
+    static final String ARCHIVE_SUFFIX = ".archive";
+    static final String DETAILS_SUFFIX = ".details";
+    static final String PENDING_SUFFIX = ".pending";
+    /**
+     * Age after which a pending file, or an archive without details, is known
+     * to be left over by a node that stopped while adding an entry.
+     */
+    private static final long PENDING_MAX_AGE_MILLIS = TimeUnit.HOURS.toMillis(1);
+    static final String CACHED_LOG_LINE = "Archive taken from the zip cache of the node, zipped by an earlier build:";
+
+    private static final String FILES_PROPERTY = "files";
+    private static final String ZIP_SIZE_PROPERTY = "zipSize";
+    private static final String LOG_PROPERTY = "log.";
+
+    private static final Object LOCK = new Object();
+
+    private final File directory;
+    private final long maxBytes;
+
+    /**
+     * @param maxBytes quota of the archives, zero or less disables the cache
+     */
+    public ZipCache(File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    public boolean isEnabled() {
+        return maxBytes > 0;
+    }
+
+    /**
+     * @param fingerprint   fingerprint of the workspace files matching the
+     *                      filter pattern
+     * @param filterPattern filter pattern of the zipped files
+     * @param form          form of the archive, such as its encoding, and the
+     *                      settings changing its content
+     */
+    public static String key(String fingerprint, String filterPattern, String form) {
+        return DigestUtils.sha256Hex(fingerprint + "\n" + filterPattern + "\n" + form);
+    }
+
+    /**
+     * Puts the cached archive of the key in place of the target file.
+     *
+     * @return zipping details of the archive when the key was found, null
+     *         otherwise
+     */
+    public ZippingDetails get(String key, File target) {
+        if (!isEnabled()) {
+            return null;
+        }
+        synchronized (LOCK) {
+            File archive = new File(directory, key + ARCHIVE_SUFFIX);
+            File details = new File(directory, key + DETAILS_SUFFIX);
+            if (!details.isFile() || !archive.isFile()) {
+                return null;
+            }
+            try {
+                ZippingDetails zippingDetails = readDetails(details);
+                linkOrCopy(archive, target);
+                // Most recently used entry, the last one evicted
+                details.setLastModified(System.currentTimeMillis());
+                LOGGER.fine("Zip cache hit " + key);
+                return zippingDetails;
+            } catch (IOException e) {
+                LOGGER.warning("Failed to take " + archive + " from the zip cache: " + e.getMessage());
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Keeps a copy of a finished archive under the key, then evicts the least
+     * recently used entries above the quota. A failure only costs zipping
+     * again next time, it is logged.
+     */
+    public void put(String key, File archive, ZippingDetails zippingDetails) {
+        if (!isEnabled()) {
+            return;
+        }
+        if (archive.length() > maxBytes) {
+            LOGGER.fine("Archive of " + archive.length() + " bytes above the zip cache quota, not cached");
+            return;
+        }
+        synchronized (LOCK) {
+            File pendingArchive = null;
+            File pendingDetails = null;
+            try {
+                if (!directory.isDirectory() && !directory.mkdirs()) {
+                    throw new IOException("Failed to create directory " + directory);
+                }
+                pendingArchive = File.createTempFile(key, ARCHIVE_SUFFIX + PENDING_SUFFIX, directory);
+                pendingDetails = File.createTempFile(key, DETAILS_SUFFIX + PENDING_SUFFIX, directory);
+                linkOrCopy(archive, pendingArchive);
+                writeDetails(zippingDetails, pendingDetails);
+                // The details make the entry visible, they are moved last
+                move(pendingArchive, new File(directory, key + ARCHIVE_SUFFIX));
+                move(pendingDetails, new File(directory, key + DETAILS_SUFFIX));
+                evict();
+            } catch (IOException e) {
+                LOGGER.warning("Failed to add " + archive + " to the zip cache: " + e.getMessage());
+                deleteQuietly(pendingArchive);
+                deleteQuietly(pendingDetails);
+            }
+        }
+    }
+
+    /**
+     * Deletes the least recently used entries until the archives fit the
+     * quota, along with the archives left without details and the pending
+     * files of entries never completed.
+     */
+    void evict() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        List<File> entries = new ArrayList<>();
+        long size = 0;
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(DETAILS_SUFFIX)) {
+                entries.add(file);
+                size += file.length() + archiveOf(file).length();
+            } else if (file.lastModified() < System.currentTimeMillis() - PENDING_MAX_AGE_MILLIS
+                    && (name.endsWith(PENDING_SUFFIX) || name.endsWith(ARCHIVE_SUFFIX) && !detailsOf(file).exists())) {
+                deleteQuietly(file);
+            }
+        }
+        Collections.sort(entries, OLDEST_FIRST);
+        for (File details : entries) {
+            if (size <= maxBytes) {
+                break;
+            }
+            File archive = archiveOf(details);
+            size -= details.length() + archive.length();
+            LOGGER.fine("Evicting " + archive.getName() + " from the zip cache");
+            // Details first, the entry is then no longer visible
+            deleteQuietly(details);
+            deleteQuietly(archive);
+        }
+    }
+
+    private static File archiveOf(File details) {
+        String name = details.getName();
+        return new File(details.getParentFile(), name.substring(0, name.length() - DETAILS_SUFFIX.length()) + ARCHIVE_SUFFIX);
+    }
+
+    private static File detailsOf(File archive) {
+        String name = archive.getName();
+        return new File(archive.getParentFile(), name.substring(0, name.length() - ARCHIVE_SUFFIX.length()) + DETAILS_SUFFIX);
+    }
+
+    private static ZippingDetails readDetails(File details) throws IOException {
+        Properties properties = new Properties();
+        InputStream in = new FileInputStream(details);
+        try {
+            properties.load(in);
+        } finally {
+            in.close();
+        }
+        List<String> log = new ArrayList<>();
+        log.add(CACHED_LOG_LINE);
+        for (int i = 0; properties.containsKey(LOG_PROPERTY + i); i++) {
+            log.add(properties.getProperty(LOG_PROPERTY + i));
+        }
+        try {
+            return new ZippingDetails(Integer.parseInt(properties.getProperty(FILES_PROPERTY)),
+                    Long.parseLong(properties.getProperty(ZIP_SIZE_PROPERTY)), log);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid zip cache entry " + details, e);
+        }
+    }
+
+    private static void writeDetails(ZippingDetails zippingDetails, File details) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(FILES_PROPERTY, String.valueOf(zippingDetails.getNumOfZippedFiles()));
+        properties.setProperty(ZIP_SIZE_PROPERTY, String.valueOf(zippingDetails.getZipSize()));
+        List<String> log = zippingDetails.getZippingLog();
+        for (int i = 0; log != null && i < log.size(); i++) {
+            properties.setProperty(LOG_PROPERTY + i, log.get(i));
+        }
+        OutputStream out = new FileOutputStream(details);
+        try {
+            properties.store(out, null);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Hard links the source to the target, replacing it, or copies it when
+     * they are not on the same file system.
+     */
+    private static void linkOrCopy(File source, File target) throws IOException {
+        Files.deleteIfExists(target.toPath());
+        try {
+            Files.createLink(target.toPath(), source.toPath());
+        } catch (IOException | UnsupportedOperationException e) {
+            Files.copy(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void move(File source, File target) throws IOException {
+        try {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void deleteQuietly(File file) {
+        if (file != null && file.exists() && !file.delete()) {
+            LOGGER.warning("Failed to delete " + file);
+        }
+    }
+
+    private static final Comparator<File> OLDEST_FIRST = new Comparator<File>() {
+        @Override
+        public int compare(File first, File second) {
+            return Long.compare(first.lastModified(), second.lastModified());
+        }
+    };
+}
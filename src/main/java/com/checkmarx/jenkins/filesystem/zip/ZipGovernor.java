@@ -0,0 +1,122 @@
+package com.checkmarx.jenkins.filesystem.zip;
+
+import com.checkmarx.jenkins.logger.CxPluginLogger;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the zips of a JVM (an agent) within a CPU and I/O budget, so that
+ * zipping a large workspace does not slow down the builds of the other
+ * executors of the same machine:
+ * <ul>
+ * <li>at most a number of zips run at the same time, the others wait for
+ * their turn in the order they arrived</li>
+ * <li>the files of all the zips are read at most at a given rate, see
+ * {@link ReadThrottle}</li>
+ * <li>a zip compresses with at most a number of threads</li>
+ * </ul>
+ * Zero means no limit for each of them.
+ */
+public class ZipGovernor {
+
+    private static Logger LOGGER = Logger.getLogger(ZipGovernor.class.getName());
+
+    private static ZipGovernor jvmGovernor;
+
+    private final int maxConcurrentZips;
+    private final long maxReadBytesPerSecond;
+    private final int maxThreads;
+    private final Semaphore zips;
+    private final ReadThrottle readThrottle;
+
+    /**
+     * @param maxConcurrentZips     zips running at the same time
+     * @param maxReadBytesPerSecond read rate of all the zips together
+     * @param maxThreads            compression threads of a single zip
+     */
+    public ZipGovernor(int maxConcurrentZips, long maxReadBytesPerSecond, int maxThreads) {
+        this.maxConcurrentZips = maxConcurrentZips;
+        this.maxReadBytesPerSecond = maxReadBytesPerSecond;
+        this.maxThreads = maxThreads;
+        this.zips = maxConcurrentZips > 0 ? new Semaphore(maxConcurrentZips, true) : null;
+        this.readThrottle = maxReadBytesPerSecond > 0 ? new ReadThrottle(maxReadBytesPerSecond) : null;
+    }
+
+    /**
+     * @return the governor shared by the zips of this JVM. It is replaced
+     *         when the limits changed since it was created, the zips already
+     *         running finish under the limits they started with.
+     */
+    public static synchronized ZipGovernor forJvm(int maxConcurrentZips, long maxReadBytesPerSecond, int maxThreads) {
+        if (jvmGovernor == null || !jvmGovernor.hasLimits(maxConcurrentZips, maxReadBytesPerSecond, maxThreads)) {
+            if (jvmGovernor != null) {
+                LOGGER.info("Zip limits changed to " + maxConcurrentZips + " concurrent zips, " + maxReadBytesPerSecond
+                        + " bytes read per second and " + maxThreads + " threads per zip");
+            }
+            jvmGovernor = new ZipGovernor(maxConcurrentZips, maxReadBytesPerSecond, maxThreads);
+        }
+        return jvmGovernor;
+    }
+
+    private boolean hasLimits(int maxConcurrentZips, long maxReadBytesPerSecond, int maxThreads) {
+        return this.maxConcurrentZips == maxConcurrentZips && this.maxReadBytesPerSecond == maxReadBytesPerSecond
+                && this.maxThreads == maxThreads;
+    }
+
+    /**
+     * Waits for the turn of a zip, {@link #release()} must be called when it
+     * is done.
+     *
+     * @param progressLogger told when the zip has to wait, may be null
+     */
+    public void acquire(CxPluginLogger progressLogger) throws InterruptedIOException {
+        if (zips == null) {
+            return;
+        }
+        try {
+            // Unlike tryAcquire(), does not take a released permit ahead of the zips already waiting
+            if (zips.tryAcquire(0, TimeUnit.SECONDS)) {
+                return;
+            }
+            String message = "Waiting for one of the " + maxConcurrentZips + " zips running on this node to finish ("
+                    + zips.getQueueLength() + " zips waiting)";
+            LOGGER.info(message);
+            if (progressLogger != null) {
+                progressLogger.info(message);
+            }
+            long start = System.nanoTime();
+            zips.acquire();
+            LOGGER.info("Zip started after waiting " + TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) + " s");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the turn of the zip");
+        }
+    }
+
+    public void release() {
+        if (zips != null) {
+            zips.release();
+        }
+    }
+
+    /**
+     * @param zipThreads threads requested, zero or less for one per
+     *                   available processor
+     * @return threads the zip may use
+     */
+    public int threads(int zipThreads) {
+        int threads = zipThreads > 0 ? zipThreads : Runtime.getRuntime().availableProcessors();
+        return maxThreads > 0 ? Math.min(threads, maxThreads) : threads;
+    }
+
+    /**
+     * @return throttle of the file reads, null when the read rate is not
+     *         limited
+     */
+    public ReadThrottle getReadThrottle() {
+        return readThrottle;
+    }
+}
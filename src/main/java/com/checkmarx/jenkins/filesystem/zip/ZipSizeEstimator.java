@@ -0,0 +1,304 @@
+package com.checkmarx.jenkins.filesystem.zip;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+/**
+ * Predicts the size of the archive before anything is compressed.
+ * <p>
+ * The workspace is walked with the same filter as the zipper, only the size
+ * of the files is read. The compressibility of every file type (extension) is
+ * measured on the beginning of its first few files, the predicted size of the
+ * archive is the size of the files weighted by the ratio of their type plus
+ * the zip headers. The samples are compressed like the zipper compresses the
+ * files, with the deflate level of the compression policy, and counted as
+ * stored when the policy stores them. This takes seconds even on workspaces
+ * that take minutes to compress.
+ */
+public class ZipSizeEstimator {
+
+    static final int SAMPLE_SIZE = 64 * 1024;
+    static final int SAMPLES_PER_TYPE = 4;
+    private static final int ENTRY_OVERHEAD = 30 + 16 + 46;
+    private static final String ROOT_DIRECTORY = ".";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final Map<String, TypeSample> samples = new HashMap<>();
+    private final Map<String, Map<String, Long>> bytesPerDirectoryAndType = new HashMap<>();
+    private final CompressionPolicy compressionPolicy;
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    private final byte[] sampleBuffer = new byte[SAMPLE_SIZE];
+    private final byte[] deflateBuffer = new byte[SAMPLE_SIZE];
+    private long headersSize;
+    private int numberOfFiles;
+
+    public ZipSizeEstimator() {
+        this(new CompressionPolicy());
+    }
+
+    public ZipSizeEstimator(CompressionPolicy compressionPolicy) {
+        this.compressionPolicy = compressionPolicy;
+    }
+
+    /**
+     * Walks the base directory and predicts the size of the zip holding the
+     * files matching the filter.
+     */
+    public static ZipSizeEstimate estimate(File baseDir, PathFilter filter) throws IOException {
+        return estimate(baseDir, filter, false);
+    }
+
+    /**
+     * @param gitIndex take the files from the git index, like the zipper
+     */
+    public static ZipSizeEstimate estimate(File baseDir, PathFilter filter, boolean gitIndex) throws IOException {
+        return estimate(baseDir, filter, gitIndex, new CompressionPolicy());
+    }
+
+    /**
+     * @param compressionPolicy policy of the zipper, the samples are
+     *                          compressed with its levels
+     */
+    public static ZipSizeEstimate estimate(File baseDir, PathFilter filter, boolean gitIndex, CompressionPolicy compressionPolicy)
+            throws IOException {
+        ZipSizeEstimator estimator = new ZipSizeEstimator(compressionPolicy);
+        WorkspaceWalker walker = new WorkspaceWalker(baseDir, filter);
+        walker.setGitIndex(gitIndex);
+        walker.start();
+        try {
+            WorkspaceFile file;
+            while ((file = walker.take()) != null) {
+                estimator.add(file);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Zip size estimation interrupted", e);
+        } finally {
+            walker.close();
+            estimator.end();
+        }
+        return estimator.toEstimate();
+    }
+
+    void add(WorkspaceFile file) {
+        String relativePath = file.getRelativePath();
+        String type = typeOf(relativePath);
+        TypeSample sample = samples.get(type);
+        if (sample == null) {
+            sample = new TypeSample();
+            samples.put(type, sample);
+        }
+        if (sample.sampledFiles < SAMPLES_PER_TYPE && file.getSize() > 0) {
+            sample(file, sample);
+        }
+
+        String directory = topDirectoryOf(relativePath);
+        Map<String, Long> bytesPerType = bytesPerDirectoryAndType.get(directory);
+        if (bytesPerType == null) {
+            bytesPerType = new HashMap<>();
+            bytesPerDirectoryAndType.put(directory, bytesPerType);
+        }
+        Long bytes = bytesPerType.get(type);
+        bytesPerType.put(type, (bytes == null ? 0 : bytes) + file.getSize());
+
+        headersSize += ENTRY_OVERHEAD + 2L * relativePath.getBytes(UTF8).length;
+        numberOfFiles++;
+    }
+
+    ZipSizeEstimate toEstimate() {
+        List<ZipSizeEstimate.Directory> directories = new ArrayList<>();
+        long totalSize = 0;
+        long totalCompressedSize = headersSize;
+        for (Map.Entry<String, Map<String, Long>> directory : bytesPerDirectoryAndType.entrySet()) {
+            long size = 0;
+            long compressedSize = 0;
+            for (Map.Entry<String, Long> bytesOfType : directory.getValue().entrySet()) {
+                size += bytesOfType.getValue();
+                compressedSize += (long) (bytesOfType.getValue() * samples.get(bytesOfType.getKey()).ratio());
+            }
+            directories.add(new ZipSizeEstimate.Directory(directory.getKey(), size, compressedSize));
+            totalSize += size;
+            totalCompressedSize += compressedSize;
+        }
+        Collections.sort(directories, new Comparator<ZipSizeEstimate.Directory>() {
+            @Override
+            public int compare(ZipSizeEstimate.Directory first, ZipSizeEstimate.Directory second) {
+                return Long.compare(second.getCompressedSize(), first.getCompressedSize());
+            }
+        });
+        return new ZipSizeEstimate(numberOfFiles, totalSize, totalCompressedSize, directories);
+    }
+
+    /**
+     * @return compressed size per byte of the file type, 1 when nothing could
+     *         be sampled
+     */
+    double ratioOf(String type) {
+        TypeSample sample = samples.get(type);
+        return sample != null ? sample.ratio() : 1.0;
+    }
+
+    void end() {
+        deflater.end();
+    }
+
+    private void sample(WorkspaceFile file, TypeSample sample) {
+        int read = 0;
+        try {
+            InputStream inputStream = new FileInputStream(file.getFile());
+            try {
+                int count;
+                while (read < sampleBuffer.length && (count = inputStream.read(sampleBuffer, read, sampleBuffer.length - read)) >= 0) {
+                    read += count;
+                }
+            } finally {
+                inputStream.close();
+            }
+        } catch (IOException e) {
+            // Unreadable files are skipped by the zipper as well
+            return;
+        }
+        if (read == 0) {
+            return;
+        }
+
+        long compressed = 0;
+        if (compressionPolicy.isCompressedFormat(file.getRelativePath()) || CompressionPolicy.isIncompressible(sampleBuffer, 0, read)) {
+            // Stored by the zipper
+            compressed = read;
+        } else {
+            deflater.reset();
+            deflater.setLevel(compressionPolicy.deflateLevel(file.getRelativePath(), file.getSize()));
+            deflater.setInput(sampleBuffer, 0, read);
+            deflater.finish();
+            while (!deflater.finished()) {
+                compressed += deflater.deflate(deflateBuffer);
+            }
+        }
+        sample.sampledBytes += read;
+        sample.compressedBytes += compressed;
+        sample.sampledFiles++;
+    }
+
+    static String typeOf(String relativePath) {
+        String name = new File(relativePath).getName();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(dot + 1).toLowerCase() : "";
+    }
+
+    private static String topDirectoryOf(String relativePath) {
+        String path = relativePath.replace('\\', '/');
+        int separator = path.indexOf('/');
+        return separator > 0 ? path.substring(0, separator) : ROOT_DIRECTORY;
+    }
+
+    private static class TypeSample {
+        private long sampledBytes;
+        private long compressedBytes;
+        private int sampledFiles;
+
+        /**
+         * @return compressed size per byte, 1 when nothing could be sampled
+         */
+        double ratio() {
+            return sampledBytes > 0 ? (double) compressedBytes / sampledBytes : 1.0;
+        }
+    }
+
+    /**
+     * Predicted size of the archive with the breakdown per top level
+     * directory, largest first.
+     */
+    public static class ZipSizeEstimate {
+
+        private final int numberOfFiles;
+        private final long size;
+        private final long compressedSize;
+        private final List<Directory> directories;
+
+        ZipSizeEstimate(int numberOfFiles, long size, long compressedSize, List<Directory> directories) {
+            this.numberOfFiles = numberOfFiles;
+            this.size = size;
+            this.compressedSize = compressedSize;
+            this.directories = directories;
+        }
+
+        public int getNumberOfFiles() {
+            return numberOfFiles;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getCompressedSize() {
+            return compressedSize;
+        }
+
+        public List<Directory> getDirectories() {
+            return directories;
+        }
+
+        /**
+         * @param maxDirectories number of directories listed, the others are
+         *                       summed up in one line
+         */
+        public List<String> describe(int maxDirectories) {
+            List<String> lines = new ArrayList<>();
+            lines.add("Predicted zip size: " + FileUtils.byteCountToDisplaySize(compressedSize) + " (" + numberOfFiles
+                    + " files, " + FileUtils.byteCountToDisplaySize(size) + " before compression)");
+            long otherSize = 0;
+            int otherDirectories = 0;
+            for (int i = 0; i < directories.size(); i++) {
+                Directory directory = directories.get(i);
+                if (i < maxDirectories) {
+                    lines.add("  " + directory.getName() + ": " + FileUtils.byteCountToDisplaySize(directory.getCompressedSize())
+                            + " (" + FileUtils.byteCountToDisplaySize(directory.getSize()) + " before compression)");
+                } else {
+                    otherSize += directory.getCompressedSize();
+                    otherDirectories++;
+                }
+            }
+            if (otherDirectories > 0) {
+                lines.add("  " + otherDirectories + " other directories: " + FileUtils.byteCountToDisplaySize(otherSize));
+            }
+            return lines;
+        }
+
+        public static class Directory {
+            private final String name;
+            private final long size;
+            private final long compressedSize;
+
+            Directory(String name, long size, long compressedSize) {
+                this.name = name;
+                this.size = size;
+                this.compressedSize = compressedSize;
+            }
+
+            public String getName() {
+                return name;
+            }
+
+            public long getSize() {
+                return size;
+            }
+
+            public long getCompressedSize() {
+                return compressedSize;
+            }
+        }
+    }
+}
@@ -1,19 +1,14 @@
 package com.checkmarx.jenkins.filesystem.zip;
 
+import com.checkmarx.jenkins.filesystem.zip.dto.WorkspaceShard;
 import com.checkmarx.jenkins.filesystem.zip.dto.ZippingDetails;
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.output.ByteArrayOutputStream;
-import org.apache.commons.lang3.StringUtils;
-import org.apache.tools.ant.DirectoryScanner;
-import org.apache.tools.zip.ZipEntry;
-import org.apache.tools.zip.ZipOutputStream;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.util.LinkedList;
+import java.util.Collection;
 import java.util.List;
 import java.util.logging.Logger;
 
@@ -23,10 +18,17 @@ import java.util.logging.Logger;
  * This class implements a file zipper with filter. Zipper will traverse a
  * specified base directory and archive all files passing the specified filter
  * test. The filter string is a comma separated list of include and exclude
- * patterns.
+ * patterns, compiled once by {@link CompiledPathFilter}.
  * <p>
+ * The base directory is walked with NIO by a {@link WorkspaceWalker}, which
+ * applies the filter while walking and does not enter excluded directories.
+ * It can take the files from the git index or from the changed paths instead,
+ * see {@link #setGitIndex(boolean)} and {@link #setChangedPaths(Collection)}.
+ * The files it finds are read and compressed by a {@link ParallelZipper} on
+ * the number of threads given to the constructor, while the calling thread
+ * writes the archive in the order of the walk.
  * <p>
- * Pattern Syntax: (taken from DirectoryScanner documentation)
+ * Pattern Syntax: (the one of Ant's DirectoryScanner)
  * <p>
  * A given directory is recursively scanned for all files and directories. Each
  * file/directory is matched against a set of selectors, including special
@@ -75,29 +77,6 @@ import java.util.logging.Logger;
  * <p>
  * "**\test\**\XYZ*" matches all files/dirs which start with "XYZ" and where
  * there is a parent directory called test (e.g. "abc\test\def\ghi\XYZ123").
- * <p>
- * Case sensitivity may be turned off if necessary. By default, it is turned on.
- * <p>
- * Example of usage:
- * <p>
- * <pre>
- * String[] includes = { &quot;**\\*.class&quot; };
- * String[] excludes = { &quot;modules\\*\\**&quot; };
- * ds.setIncludes(includes);
- * ds.setExcludes(excludes);
- * ds.setBasedir(new File(&quot;test&quot;));
- * ds.setCaseSensitive(true);
- * ds.scan();
- *
- * System.out.println(&quot;FILES:&quot;);
- * String[] files = ds.getIncludedFiles();
- * for (int i = 0; i &lt; files.length; i++) {
- * 	System.out.println(files[i]);
- * }
- * </pre>
- * <p>
- * This will scan a directory called test for .class files, but excludes all
- * files in all proper subdirectories of a directory called "modules"
  *
  * @author Denis Krivitski
  *         <p>
@@ -106,8 +85,98 @@ import java.util.logging.Logger;
 public class Zipper {
 
     private static Logger LOGGER = Logger.getLogger(Zipper.class.getName());
-    private List<String> zippingLogForJenkinsConsole = new LinkedList<>();
+    /**
+     * The prediction is a sample, zipping is only skipped when it exceeds the
+     * limit by more than its error margin.
+     */
+    private static final double PREDICTED_SIZE_MARGIN = 1.25;
+    private static final int MAX_DIRECTORIES_IN_BREAKDOWN = 10;
+    private final ZippingLog zippingLog = new ZippingLog();
     private int numberOfZippedFiles = 0;
+    private final int zipThreads;
+    private boolean sizePreflight;
+    private boolean gitIndex;
+    private CompressionPolicy compressionPolicy = new CompressionPolicy();
+    private ReadThrottle readThrottle;
+    private Collection<String> changedPaths;
+
+    /**
+     * Zipper compressing on one thread, the files are still compressed by the
+     * {@link ParallelZipper} while the calling thread writes the archive.
+     */
+    public Zipper() {
+        this(1);
+    }
+
+    /**
+     * @param zipThreads Number of threads compressing the files, besides the
+     *                   calling thread writing the archive. Zero or a
+     *                   negative value means one thread per available
+     *                   processor.
+     */
+    public Zipper(int zipThreads) {
+        this.zipThreads = zipThreads > 0 ? zipThreads : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Predict the size of the zip before compressing anything and fail
+     * without zipping when the prediction clearly exceeds maxZipSize, see
+     * {@link ZipSizeEstimator}.
+     */
+    public void setSizePreflight(boolean sizePreflight) {
+        this.sizePreflight = sizePreflight;
+    }
+
+    /**
+     * Take the files from the git index when the base directory is a git work
+     * tree, untracked files are not zipped, see {@link GitIndex}. Not done
+     * when a secondary archive is written, its files (dependencies for
+     * example) are usually not tracked.
+     */
+    public void setGitIndex(boolean gitIndex) {
+        this.gitIndex = gitIndex;
+    }
+
+    public CompressionPolicy getCompressionPolicy() {
+        return compressionPolicy;
+    }
+
+    /**
+     * Decides which entries are stored without compression and the deflate
+     * level of the others.
+     */
+    public void setCompressionPolicy(CompressionPolicy compressionPolicy) {
+        this.compressionPolicy = compressionPolicy;
+    }
+
+    public ReadThrottle getReadThrottle() {
+        return readThrottle;
+    }
+
+    /**
+     * Limits the rate at which the files are read, may be null for no limit.
+     */
+    public void setReadThrottle(ReadThrottle readThrottle) {
+        this.readThrottle = readThrottle;
+    }
+
+    /**
+     * Paths changed since the previous manifest, the files of the manifest
+     * and these paths are then zipped without listing the directories of the
+     * base directory, see {@link WorkspaceWalker#setChangedPaths(Collection)}.
+     * Null walks the base directory.
+     */
+    public void setChangedPaths(Collection<String> changedPaths) {
+        this.changedPaths = changedPaths;
+    }
+
+    /**
+     * @return the log of this zipper, to follow the progress or to write the
+     *         list of the zipped files
+     */
+    public ZippingLog getLog() {
+        return zippingLog;
+    }
 
     /**
      * Scans the base directory, filters the files, and writes the compressed
@@ -118,11 +187,9 @@ public class Zipper {
      * @param outputStream   Compressed file content is written to this stream
      * @param maxZipSize     Limits the number of bytes that will be written to the output
      *                       stream. Zero value means no limit. When the limit is reached,
-     *                       MaxZipSizeReached exception is thrown. NOTE: This limit is
-     *                       checked on file boundaries. Once the limit is reached no more
-     *                       files will be written to the output stream. Therefore, the
-     *                       maxZipSize limit may be beached by the compressed size of the
-     *                       last file.
+     *                       MaxZipSizeReached exception is thrown. The limit is checked
+     *                       against the bytes actually written, before every compressed
+     *                       chunk, no zip larger than the limit is produced.
      * @throws com.checkmarx.components.zipper.Zipper.MaxZipSizeReached If maxZipSize limit is reached
      * @throws NoFilesToZip                                             If there are no files to zip. Either the base directory is
      *                                                                  empty or does not exists, or all the files are filtered out
@@ -132,25 +199,78 @@ public class Zipper {
 
     public ZippingDetails zip(File baseDir, String filterPatterns, OutputStream outputStream, long maxZipSize)
             throws IOException {
+        return zip(baseDir, filterPatterns, outputStream, maxZipSize, (WorkspaceManifestTracker) null);
+    }
 
-        DirectoryScanner ds = null;
+    /**
+     * Same as {@link #zip(File, String, OutputStream, long)}, every zipped
+     * file is also recorded in the manifest tracker, see
+     * {@link WorkspaceManifestTracker}.
+     *
+     * @param manifestTracker Tracker of the workspace manifest, may be null
+     */
+    public ZippingDetails zip(File baseDir, String filterPatterns, OutputStream outputStream, long maxZipSize,
+                              WorkspaceManifestTracker manifestTracker) throws IOException {
+
+        PathFilter filter;
         try {
             assert baseDir != null : "baseDir must not be null";
             assert outputStream != null : "outputStream must not be null";
 
-            ds = createDirectoryScanner(baseDir, filterPatterns);
-            ds.setFollowSymlinks(true);
-            ds.scan();
-            printDebug(ds);
+            filter = CompiledPathFilter.forFilterPattern(filterPatterns);
         }catch (Exception e){
-            throw new ZipperException(e, new ZippingDetails(numberOfZippedFiles, zippingLogForJenkinsConsole));
+            throw new ZipperException(e, new ZippingDetails(numberOfZippedFiles, getZippingLog()));
         }
-        if (ds.getIncludedFiles().length == 0) {
-            outputStream.close();
-            updateError("No files to zip");
-            throw new NoFilesToZip(new ZippingDetails(numberOfZippedFiles, zippingLogForJenkinsConsole));
+        return zipFiles(baseDir, filter, outputStream, maxZipSize, manifestTracker, null, null);
+    }
+
+    /**
+     * Same as {@link #zip(File, String, OutputStream, long)}, the files
+     * matching the filter of the secondary archive are written to it during
+     * the same walk of the base directory. A file matching both filters is
+     * read and compressed only once.
+     * <p>
+     * Only the failures of the main archive are thrown, the secondary archive
+     * holds its own result or failure once this method returns.
+     *
+     * @param secondaryArchive Second archive with its own filter and limit
+     */
+    public ZippingDetails zip(File baseDir, String filterPatterns, OutputStream outputStream, long maxZipSize,
+                              SecondaryArchive secondaryArchive) throws IOException {
+
+        PathFilter filter;
+        PathFilter secondaryFilter;
+        try {
+            assert baseDir != null : "baseDir must not be null";
+            assert outputStream != null : "outputStream must not be null";
+            assert secondaryArchive != null : "secondaryArchive must not be null";
+
+            filter = CompiledPathFilter.forFilterPattern(filterPatterns);
+            secondaryFilter = CompiledPathFilter.forFilterPattern(secondaryArchive.getFilterPatterns());
+        }catch (Exception e){
+            throw new ZipperException(e, new ZippingDetails(numberOfZippedFiles, getZippingLog()));
         }
-        return zipFile(baseDir, ds.getIncludedFiles(), outputStream, maxZipSize);
+        return zipFiles(baseDir, filter, outputStream, maxZipSize, null, secondaryArchive, secondaryFilter);
+    }
+
+    /**
+     * Same as {@link #zip(File, String, OutputStream, long)}, restricted to the
+     * files of a shard of the workspace, see {@link WorkspaceSharder}.
+     */
+    public ZippingDetails zip(File baseDir, String filterPatterns, WorkspaceShard shard, OutputStream outputStream,
+                              long maxZipSize) throws IOException {
+
+        PathFilter filter;
+        try {
+            assert baseDir != null : "baseDir must not be null";
+            assert outputStream != null : "outputStream must not be null";
+            assert shard != null : "shard must not be null";
+
+            filter = new ShardPathFilter(CompiledPathFilter.forFilterPattern(filterPatterns), shard);
+        }catch (Exception e){
+            throw new ZipperException(e, new ZippingDetails(numberOfZippedFiles, getZippingLog()));
+        }
+        return zipFiles(baseDir, filter, outputStream, maxZipSize, null, null, null);
     }
 
     /**
@@ -163,11 +283,9 @@ public class Zipper {
      * @param outputStream          Compressed file content is written to this stream
      * @param maxZipSize            Limits the number of bytes that will be written to the output
      *                              stream. Zero value means no limit. When the limit is reached,
-     *                              MaxZipSizeReached exception is thrown. NOTE: This limit is
-     *                              checked on file boundaries. Once the limit is reached no more
-     *                              files will be written to the output stream. Therefore, the
-     *                              maxZipSize limit may be beached by the compressed size of the
-     *                              last file.
+     *                              MaxZipSizeReached exception is thrown. The limit is checked
+     *                              against the bytes actually written, before every compressed
+     *                              chunk, no zip larger than the limit is produced.
      * @throws com.checkmarx.components.zipper.Zipper.MaxZipSizeReached If maxZipSize limit is reached
      * @throws NoFilesToZip                                             If there are no files to zip. Either the base directory is
      *                                                                  empty or does not exists, or all the files are filtered out
@@ -178,25 +296,16 @@ public class Zipper {
     public ZippingDetails zip(File baseDir, String[] filterExcludePatterns, String[] filterIncludePatterns, OutputStream outputStream,
                     long maxZipSize) throws IOException {
 
-        DirectoryScanner ds = null;
+        PathFilter filter;
         try {
             assert baseDir != null : "baseDir must not be null";
-                assert outputStream != null : "outputStream must not be null";
+            assert outputStream != null : "outputStream must not be null";
 
-            ds = createDirectoryScanner(baseDir, filterExcludePatterns, filterIncludePatterns);
-            ds.setFollowSymlinks(true);
-            ds.scan();
-            printDebug(ds);
+            filter = CompiledPathFilter.compile(filterExcludePatterns, filterIncludePatterns);
         }catch (Exception e){
-            throw new ZipperException(e,new ZippingDetails(numberOfZippedFiles, zippingLogForJenkinsConsole));
+            throw new ZipperException(e,new ZippingDetails(numberOfZippedFiles, getZippingLog()));
         }
-
-        if (ds.getIncludedFiles().length == 0) {
-            outputStream.close();
-            updateError("No files to zip");
-            throw new NoFilesToZip(new ZippingDetails(numberOfZippedFiles, zippingLogForJenkinsConsole));
-        }
-        return zipFile(baseDir, ds.getIncludedFiles(), outputStream, maxZipSize);
+        return zipFiles(baseDir, filter, outputStream, maxZipSize, null, null, null);
     }
 
     /**
@@ -207,11 +316,9 @@ public class Zipper {
      * @param filterPatterns Filter wildcard patterns
      * @param maxZipSize     Limits the number of bytes that will be written to the output
      *                       stream. Zero value means no limit. When the limit is reached,
-     *                       MaxZipSizeReached exception is thrown. NOTE: This limit is
-     *                       checked on file boundaries. Once the limit is reached no more
-     *                       files will be written to the output stream. Therefore, the
-     *                       maxZipSize limit may be beached by the compressed size of the
-     *                       last file.
+     *                       MaxZipSizeReached exception is thrown. The limit is checked
+     *                       against the bytes actually written, before every compressed
+     *                       chunk, no zip larger than the limit is produced.
      * @throws com.checkmarx.components.zipper.Zipper.MaxZipSizeReached If maxZipSize limit is reached
      * @throws NoFilesToZip                                             If there are no files to zip. Either the base directory is
      *                                                                  empty or does not exists, or all the files are filtered out
@@ -234,11 +341,9 @@ public class Zipper {
      * @param filterIncludePatterns Array of filter wildcard include patterns
      * @param maxZipSize            Limits the number of bytes that will be written to the output
      *                              stream. Zero value means no limit. When the limit is reached,
-     *                              MaxZipSizeReached exception is thrown. NOTE: This limit is
-     *                              checked on file boundaries. Once the limit is reached no more
-     *                              files will be written to the output stream. Therefore, the
-     *                              maxZipSize limit may be beached by the compressed size of the
-     *                              last file.
+     *                              MaxZipSizeReached exception is thrown. The limit is checked
+     *                              against the bytes actually written, before every compressed
+     *                              chunk, no zip larger than the limit is produced.
      * @throws com.checkmarx.components.zipper.Zipper.MaxZipSizeReached If maxZipSize limit is reached
      * @throws NoFilesToZip                                             If there are no files to zip. Either the base directory is
      *                                                                  empty or does not exists, or all the files are filtered out
@@ -252,139 +357,90 @@ public class Zipper {
         return byteOutputStream.toByteArray();
     }
 
-    private ZippingDetails zipFile(File baseDir, String[] files, OutputStream outputStream, long maxZipSize)
-            throws IOException {
-
-        // Switched to Apache implementation due to missing support for UTF in
-        // Java 6. Should be reverted after upgrading to Java 7.
-        ZipOutputStream zipOutputStream = new ZipOutputStream(outputStream);
-        zipOutputStream.setEncoding("UTF8");
-
-        numberOfZippedFiles = 0;
-        long compressedSize = 0;
-        final double AVERAGE_ZIP_COMPRESSION_RATIO = 4.0;
-
-        for (String fileName : files) {
-            File file = null;
-
-            try {
-                updateInfoProgress("Adding file to zip: " + fileName);
-                file = new File(baseDir, fileName);
-                if (!file.canRead()) {
-                    updateError("Skipping unreadable file: " + file);
-                    continue;
-                }
-            }catch (Exception e){
-                zipOutputStream.close();
-                throw new ZipperException(e, new ZippingDetails(numberOfZippedFiles, zippingLogForJenkinsConsole));
-            }
-
-            if (maxZipSize > 0 && compressedSize + (file.length() / AVERAGE_ZIP_COMPRESSION_RATIO) > maxZipSize) {
-                updateError("Maximum zip file size reached. Zip size: " + compressedSize + " bytes Limit: " + maxZipSize
-                        + " bytes");
-                zipOutputStream.close();
-                throw new MaxZipSizeReached(new ZippingDetails(numberOfZippedFiles, zippingLogForJenkinsConsole), fileName, compressedSize, maxZipSize);
-            }
+    /**
+     * Walks the base directory and zips the matching files while they are
+     * found, so zipping starts with the first file instead of after the
+     * whole tree was enumerated.
+     */
+    private ZippingDetails zipFiles(File baseDir, PathFilter filter, OutputStream outputStream, long maxZipSize,
+                                    WorkspaceManifestTracker manifestTracker, SecondaryArchive secondaryArchive,
+                                    PathFilter secondaryFilter) throws IOException {
 
-            try {
-                updateInfoProgress("Zipping (" + FileUtils.byteCountToDisplaySize(compressedSize) + "): " + fileName + "\n");
-                ZipEntry zipEntry = new ZipEntry(fileName);
-                zipOutputStream.putNextEntry(zipEntry);
-
-                FileInputStream fileInputStream = new FileInputStream(file);
-                IOUtils.copy(fileInputStream, zipOutputStream);
-                fileInputStream.close();
-                zipOutputStream.closeEntry();
-                compressedSize += zipEntry.getCompressedSize();
-                ++numberOfZippedFiles;
-            }catch (Exception e){
-                zipOutputStream.close();
-                throw new ZipperException(e, new ZippingDetails(numberOfZippedFiles, zippingLogForJenkinsConsole));
-            }
+        LOGGER.fine("Base Directory: " + baseDir);
+        if (sizePreflight && maxZipSize > 0) {
+            checkPredictedSize(baseDir, filter, maxZipSize);
         }
-
-        zipOutputStream.close();
-        return new ZippingDetails(numberOfZippedFiles, zippingLogForJenkinsConsole);
-    }
-
-
-    private DirectoryScanner createDirectoryScanner(File baseDir, String filterPatterns) {
-        LinkedList<String> includePatterns = new LinkedList<String>();
-        LinkedList<String> excludePatterns = new LinkedList<String>();
-
-        // Parse filter patterns
-        String[] patterns;
-        if (filterPatterns != null) {
-            patterns = StringUtils.split(filterPatterns, ",\n");
-        } else {
-            patterns = new String[]{};
+        WorkspaceWalker walker = new WorkspaceWalker(baseDir, secondaryArchive == null ? filter : new EitherPathFilter(filter, secondaryFilter));
+        walker.setManifestTracker(manifestTracker);
+        walker.setGitIndex(gitIndex && secondaryArchive == null);
+        if (changedPaths != null && manifestTracker != null && manifestTracker.getPreviousManifest() != null) {
+            updateInfoProgress(changedPaths.size() + " paths changed since the last zip, the directories of the workspace are not listed");
+            walker.setChangedPaths(changedPaths);
         }
-
-        for (String pattern : patterns) {
-            pattern = pattern.trim();
-            if (pattern.length() > 0) {
-                if (pattern.startsWith("!")) {
-                    pattern = pattern.substring(1); // Trim the "!"
-                    excludePatterns.add(pattern);
-                    LOGGER.fine("Exclude pattern detected: >" + pattern + "<");
-                } else {
-                    includePatterns.add(pattern);
-                    LOGGER.fine("Include pattern detected: >" + pattern + "<");
-                }
-            }
+        walker.start();
+        try {
+            ZippingDetails zippingDetails = new ParallelZipper(this, zipThreads).zip(walker, outputStream, maxZipSize, manifestTracker,
+                    filter, secondaryArchive, secondaryFilter);
+            numberOfZippedFiles = zippingDetails.getNumOfZippedFiles();
+            return zippingDetails;
+        } finally {
+            walker.close();
+            zippingLog.close();
         }
-
-        return createDirectoryScanner(baseDir, excludePatterns.toArray(new String[]{}), includePatterns.toArray(new String[]{}));
     }
 
-
-    private DirectoryScanner createDirectoryScanner(File baseDir, String[] filterExcludePatterns, String[] filterIncludePatterns) {
-        DirectoryScanner ds = new DirectoryScanner();
-        ds.setBasedir(baseDir);
-        ds.setCaseSensitive(false);
-        ds.setFollowSymlinks(false);
-        ds.setErrorOnMissingDir(false);
-
-        if (filterIncludePatterns != null && filterIncludePatterns.length > 0) {
-            ds.setIncludes(filterIncludePatterns);
+    private void checkPredictedSize(File baseDir, PathFilter filter, long maxZipSize) throws MaxZipSizePredicted {
+        ZipSizeEstimator.ZipSizeEstimate estimate;
+        try {
+            estimate = ZipSizeEstimator.estimate(baseDir, filter, gitIndex, compressionPolicy);
+        } catch (IOException e) {
+            // Only a shortcut, zipping enforces the limit anyway
+            LOGGER.warning("Failed to predict the zip size: " + e.getMessage());
+            return;
         }
-        if (filterExcludePatterns != null && filterExcludePatterns.length > 0) {
-            ds.setExcludes(filterExcludePatterns);
+        if (estimate.getCompressedSize() > maxZipSize * PREDICTED_SIZE_MARGIN) {
+            for (String line : estimate.describe(MAX_DIRECTORIES_IN_BREAKDOWN)) {
+                updateError(line);
+            }
+            throw new MaxZipSizePredicted(new ZippingDetails(numberOfZippedFiles, getZippingLog()),
+                    estimate.getCompressedSize(), maxZipSize);
         }
-        return ds;
+        LOGGER.info("Predicted zip size: " + estimate.getCompressedSize() + " bytes, limit: " + maxZipSize + " bytes");
     }
 
+    /**
+     * Walks the files matching either of two filters.
+     */
+    private static class EitherPathFilter implements PathFilter {
+        private final PathFilter first;
+        private final PathFilter second;
 
-    private void printDebug(DirectoryScanner ds) {
-
-        LOGGER.fine("Base Directory: " + ds.getBasedir());
-
-        for (String file : ds.getIncludedFiles()) {
-            LOGGER.fine("Included: " + file);
-        }
-
-        for (String file : ds.getExcludedFiles()) {
-            LOGGER.fine("Excluded File: " + file);
+        EitherPathFilter(PathFilter first, PathFilter second) {
+            this.first = first;
+            this.second = second;
         }
 
-        for (String file : ds.getExcludedDirectories()) {
-            LOGGER.fine("Excluded Dir: " + file);
+        @Override
+        public boolean isIncluded(String relativePath) {
+            return first.isIncluded(relativePath) || second.isIncluded(relativePath);
         }
 
-        for (String file : ds.getNotFollowedSymlinks()) {
-            LOGGER.fine("Not followed symbolic link: " + file);
+        @Override
+        public boolean isTraversable(String relativeDirectory) {
+            return first.isTraversable(relativeDirectory) || second.isTraversable(relativeDirectory);
         }
     }
 
+    void updateInfoProgress(String message){
+        zippingLog.info(message);
+    }
 
-    private void updateInfoProgress(String message){
-        LOGGER.info(message);
-        zippingLogForJenkinsConsole.add(message);
+    void updateError(String message){
+        zippingLog.error(message);
     }
 
-    private void updateError(String message){
-        LOGGER.warning(message);
-        zippingLogForJenkinsConsole.add(message);
+    List<String> getZippingLog() {
+        return zippingLog.toLines();
     }
 
     /**
@@ -438,6 +494,33 @@ public class Zipper {
         }
     }
 
+    /**
+     * Thrown before zipping when the predicted zip size clearly exceeds the
+     * maxZipSize limit. The zipping log holds the predicted size of the
+     * largest directories.
+     */
+    public static class MaxZipSizePredicted extends ZipperException {
+        private static final long serialVersionUID = 1L;
+
+        private long predictedSize;
+        private long maxZipSize;
+
+        public MaxZipSizePredicted(ZippingDetails zippingDetails, long predictedSize, long maxZipSize) {
+            super("Predicted zip size of " + FileUtils.byteCountToDisplaySize(predictedSize) + " exceeds the limit of "
+                    + FileUtils.byteCountToDisplaySize(maxZipSize), zippingDetails);
+            this.predictedSize = predictedSize;
+            this.maxZipSize = maxZipSize;
+        }
+
+        public long getPredictedSize() {
+            return predictedSize;
+        }
+
+        public long getMaxZipSize() {
+            return maxZipSize;
+        }
+    }
+
     /**
      * Thrown when there are no files to zip. Either the base directory is empty
      * or does not exists, or all the files are filtered out by the filter.
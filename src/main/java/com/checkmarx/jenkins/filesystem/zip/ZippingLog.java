@@ -0,0 +1,244 @@
+package com.checkmarx.jenkins.filesystem.zip;
+
+import com.checkmarx.jenkins.logger.CxPluginLogger;
+import org.apache.commons.io.FileUtils;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Log of a zip operation whose size does not depend on the number of files.
+ * <p>
+ * Only the last {@link #RECENT_FILES} zipped files are kept, together with
+ * counters: files, bytes, unreadable and excluded files, files stored without
+ * compression, totals per file extension and throughput. A progress line is logged every
+ * {@link #PROGRESS_INTERVAL_MILLIS}. The complete list of zipped files can be
+ * written to a file on the node doing the zip.
+ */
+public class ZippingLog {
+
+    private static Logger LOGGER = Logger.getLogger(ZippingLog.class.getName());
+
+    static final int RECENT_FILES = 20;
+    static final int MAX_MESSAGES = 100;
+    static final long PROGRESS_INTERVAL_MILLIS = 10000;
+    private static final int MAX_EXTENSIONS_IN_SUMMARY = 5;
+
+    private final Deque<String> recentFiles = new ArrayDeque<>();
+    private final List<String> messages = new ArrayList<>();
+    private final Map<String, long[]> filesAndBytesPerExtension = new HashMap<>();
+    private final long startTime = System.currentTimeMillis();
+    private long lastProgressTime = startTime;
+    private int numberOfFiles;
+    private long bytes;
+    private long compressedBytes;
+    private int numberOfUnreadableFiles;
+    private int numberOfExcludedFiles;
+    private int numberOfStoredFiles;
+    private long storedBytes;
+    private long deflatedBytes;
+    private long deflateNanos;
+    private int droppedMessages;
+
+    private CxPluginLogger progressLogger;
+    private Writer fileList;
+
+    /**
+     * @param progressLogger also receives the periodic progress lines, for
+     *                       example the console of the job; may be null
+     */
+    public void setProgressLogger(CxPluginLogger progressLogger) {
+        this.progressLogger = progressLogger;
+    }
+
+    /**
+     * Writes every zipped file to the given file: uncompressed size,
+     * compressed size and path separated by tabs.
+     */
+    public void writeFileList(File fileList) throws IOException {
+        File parent = fileList.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Failed to create directory " + parent);
+        }
+        this.fileList = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(fileList), "UTF-8"));
+    }
+
+    /**
+     * @param stored true if the file was stored without compression
+     */
+    void fileZipped(String name, long size, long compressedSize, boolean stored) throws IOException {
+        numberOfFiles++;
+        bytes += size;
+        compressedBytes += compressedSize;
+        if (stored) {
+            numberOfStoredFiles++;
+            storedBytes += size;
+        }
+
+        long[] filesAndBytes = filesAndBytesPerExtension.get(ZipSizeEstimator.typeOf(name));
+        if (filesAndBytes == null) {
+            filesAndBytes = new long[2];
+            filesAndBytesPerExtension.put(ZipSizeEstimator.typeOf(name), filesAndBytes);
+        }
+        filesAndBytes[0]++;
+        filesAndBytes[1] += size;
+
+        LOGGER.fine("Zipped: " + name);
+        if (recentFiles.size() == RECENT_FILES) {
+            recentFiles.removeFirst();
+        }
+        recentFiles.addLast(name);
+        if (fileList != null) {
+            fileList.write(size + "\t" + compressedSize + "\t" + name + "\n");
+        }
+
+        long now = System.currentTimeMillis();
+        if (now - lastProgressTime >= PROGRESS_INTERVAL_MILLIS) {
+            lastProgressTime = now;
+            progress(throughput(now));
+        }
+    }
+
+    void fileUnreadable(String name) {
+        numberOfUnreadableFiles++;
+        error("Skipping unreadable file: " + name);
+    }
+
+    void filesExcluded(int numberOfExcludedFiles) {
+        this.numberOfExcludedFiles += numberOfExcludedFiles;
+    }
+
+    /**
+     * @param deflatedBytes number of bytes that were deflated
+     * @param deflateNanos  CPU time spent deflating them, over all threads
+     */
+    void deflateTime(long deflatedBytes, long deflateNanos) {
+        this.deflatedBytes = deflatedBytes;
+        this.deflateNanos = deflateNanos;
+    }
+
+    void info(String message) {
+        LOGGER.info(message);
+        addMessage(message);
+    }
+
+    void error(String message) {
+        LOGGER.warning(message);
+        addMessage(message);
+    }
+
+    /**
+     * Closes the file list, if one is written.
+     */
+    void close() throws IOException {
+        if (fileList != null) {
+            fileList.close();
+            fileList = null;
+        }
+    }
+
+    /**
+     * @return the counters and the messages
+     */
+    public List<String> toSummaryLines() {
+        List<String> lines = getSummary();
+        if (droppedMessages > 0) {
+            lines.add(droppedMessages + " more messages were dropped, the first " + MAX_MESSAGES + " follow");
+        }
+        lines.addAll(messages);
+        return lines;
+    }
+
+    /**
+     * @return the counters, the messages and the last zipped files
+     */
+    public List<String> toLines() {
+        List<String> lines = toSummaryLines();
+        if (!recentFiles.isEmpty()) {
+            lines.add("Last zipped files:");
+            for (String recentFile : recentFiles) {
+                lines.add("  " + recentFile);
+            }
+        }
+        return lines;
+    }
+
+    public List<String> getSummary() {
+        List<String> summary = new ArrayList<>();
+        summary.add(throughput(System.currentTimeMillis()));
+        if (numberOfUnreadableFiles > 0 || numberOfExcludedFiles > 0) {
+            summary.add("Unreadable files: " + numberOfUnreadableFiles + ", excluded files: " + numberOfExcludedFiles);
+        }
+        if (!filesAndBytesPerExtension.isEmpty()) {
+            summary.add("Largest file types: " + largestExtensions());
+        }
+        if (numberOfStoredFiles > 0) {
+            String stored = "Stored without compression: " + numberOfStoredFiles + " files, " + FileUtils.byteCountToDisplaySize(storedBytes);
+            if (deflatedBytes > 0) {
+                // Time it would have taken to deflate them at the speed measured on the other files
+                stored += ", saving about " + TimeUnit.NANOSECONDS.toMillis((long) ((double) storedBytes * deflateNanos / deflatedBytes))
+                        + " ms of compression time";
+            }
+            summary.add(stored);
+        }
+        return summary;
+    }
+
+    private String throughput(long now) {
+        long millis = Math.max(1, now - startTime);
+        return "Zipped " + numberOfFiles + " files, " + FileUtils.byteCountToDisplaySize(bytes) + " compressed to "
+                + FileUtils.byteCountToDisplaySize(compressedBytes) + " in " + TimeUnit.MILLISECONDS.toSeconds(millis) + " s ("
+                + numberOfFiles * 1000L / millis + " files/s, "
+                + FileUtils.byteCountToDisplaySize(bytes * 1000L / millis) + "/s)";
+    }
+
+    private String largestExtensions() {
+        List<Map.Entry<String, long[]>> extensions = new ArrayList<>(filesAndBytesPerExtension.entrySet());
+        Collections.sort(extensions, new Comparator<Map.Entry<String, long[]>>() {
+            @Override
+            public int compare(Map.Entry<String, long[]> first, Map.Entry<String, long[]> second) {
+                return Long.compare(second.getValue()[1], first.getValue()[1]);
+            }
+        });
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < extensions.size() && i < MAX_EXTENSIONS_IN_SUMMARY; i++) {
+            Map.Entry<String, long[]> extension = extensions.get(i);
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(extension.getKey().isEmpty() ? "(none)" : extension.getKey()).append(' ')
+                    .append(extension.getValue()[0]).append(" files ")
+                    .append(FileUtils.byteCountToDisplaySize(extension.getValue()[1]));
+        }
+        return builder.toString();
+    }
+
+    private void progress(String message) {
+        LOGGER.info(message);
+        if (progressLogger != null) {
+            progressLogger.info(message);
+        }
+    }
+
+    private void addMessage(String message) {
+        if (messages.size() < MAX_MESSAGES) {
+            messages.add(message);
+        } else {
+            droppedMessages++;
+        }
+    }
+}
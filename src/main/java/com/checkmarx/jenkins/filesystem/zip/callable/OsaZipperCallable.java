@@ -1,12 +1,15 @@
 package com.checkmarx.jenkins.filesystem.zip.callable;
 
 import com.checkmarx.jenkins.CxConfig;
+import com.checkmarx.jenkins.filesystem.zip.ZipCache;
+import com.checkmarx.jenkins.filesystem.zip.ZipGovernor;
 import com.checkmarx.jenkins.filesystem.zip.Zipper;
 import com.checkmarx.jenkins.filesystem.zip.dto.CxZipResult;
 import com.checkmarx.jenkins.filesystem.zip.dto.ZippingDetails;
 import hudson.FilePath;
 import hudson.remoting.VirtualChannel;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.jenkinsci.remoting.Role;
 import org.jenkinsci.remoting.RoleChecker;
 
@@ -27,18 +30,51 @@ public class OsaZipperCallable implements FilePath.FileCallable<CxZipResult>  {
     @NotNull
     private final String combinedFilterPattern;
 
+    @Nullable
+    private String cacheKey;
+
     public OsaZipperCallable(@NotNull String combinedFilterPattern){
         this.combinedFilterPattern = combinedFilterPattern;
     }
 
+    /**
+     * @param cacheKey Key of the zip in the zip cache of the node, see
+     *                 {@link ZipCache#key(String, String, String)}. Null
+     *                 disables the cache.
+     */
+    public void setCacheKey(@Nullable String cacheKey) {
+        this.cacheKey = cacheKey;
+    }
+
     @Override
     public CxZipResult invoke(File file, VirtualChannel channel) throws IOException, InterruptedException {
-        final File tempFile = File.createTempFile("ZippedSourceCode", ".zip");
+        final File tempFile = SastZipperCallable.createTempFile("ZippedSourceCode", ".zip");
         FilePath remoteTempFile = new FilePath(tempFile);
+        ZipCache zipCache = SastZipperCallable.zipCache();
+        if (cacheKey != null) {
+            ZippingDetails cachedZippingDetails = zipCache.get(cacheKey, tempFile);
+            if (cachedZippingDetails != null) {
+                return new CxZipResult(remoteTempFile, cachedZippingDetails);
+            }
+        }
         OutputStream fileOutputStream = null;
         try{
             fileOutputStream = new FileOutputStream(tempFile);
-            ZippingDetails zippingDetails = new Zipper().zip(file, combinedFilterPattern, fileOutputStream, CxConfig.maxOSAZipSize());
+            ZipGovernor governor = SastZipperCallable.zipGovernor();
+            Zipper zipper = new Zipper(governor.threads(CxConfig.zipThreads()));
+            zipper.setCompressionPolicy(CxConfig.compressionPolicy());
+            zipper.setReadThrottle(governor.getReadThrottle());
+            ZippingDetails zippingDetails;
+            governor.acquire(null);
+            try {
+                zippingDetails = zipper.zip(file, combinedFilterPattern, fileOutputStream, CxConfig.maxOSAZipSize());
+            } finally {
+                governor.release();
+            }
+            fileOutputStream.close();
+            if (cacheKey != null) {
+                zipCache.put(cacheKey, tempFile, zippingDetails);
+            }
             return new CxZipResult(remoteTempFile, zippingDetails);
         } catch (Exception e){
             deleteTempFile(remoteTempFile);
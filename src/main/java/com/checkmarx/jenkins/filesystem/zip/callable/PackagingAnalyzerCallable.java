@@ -0,0 +1,39 @@
+package com.checkmarx.jenkins.filesystem.zip.callable;
+
+import com.checkmarx.jenkins.CxConfig;
+import com.checkmarx.jenkins.filesystem.zip.PackagingAnalyzer;
+import com.checkmarx.jenkins.filesystem.zip.dto.PackagingAnalysis;
+import hudson.FilePath;
+import hudson.remoting.VirtualChannel;
+import org.jetbrains.annotations.NotNull;
+import org.jenkinsci.remoting.Role;
+import org.jenkinsci.remoting.RoleChecker;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+
+/**
+ * Analyzes what the zip of the workspace would hold, without zipping it, on
+ * the node running the job.
+ */
+public class PackagingAnalyzerCallable implements FilePath.FileCallable<PackagingAnalysis>, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @NotNull
+    private final String combinedFilterPattern;
+
+    public PackagingAnalyzerCallable(@NotNull String combinedFilterPattern) {
+        this.combinedFilterPattern = combinedFilterPattern;
+    }
+
+    @Override
+    public PackagingAnalysis invoke(File file, VirtualChannel channel) throws IOException, InterruptedException {
+        return PackagingAnalyzer.analyze(file, combinedFilterPattern, CxConfig.gitIndexFileList());
+    }
+
+    public void checkRoles(RoleChecker roleChecker) throws SecurityException {
+        roleChecker.check(this, Role.UNKNOWN);
+    }
+}
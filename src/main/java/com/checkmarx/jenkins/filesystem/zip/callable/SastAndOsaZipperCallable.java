@@ -0,0 +1,165 @@
+package com.checkmarx.jenkins.filesystem.zip.callable;
+
+import com.checkmarx.jenkins.CxConfig;
+import com.checkmarx.jenkins.filesystem.zip.SecondaryArchive;
+import com.checkmarx.jenkins.filesystem.zip.ZipCache;
+import com.checkmarx.jenkins.filesystem.zip.ZipGovernor;
+import com.checkmarx.jenkins.filesystem.zip.dto.CxZipResult;
+import com.checkmarx.jenkins.filesystem.zip.dto.SastAndOsaZipResult;
+import com.checkmarx.jenkins.filesystem.zip.dto.ZippingDetails;
+import com.checkmarx.jenkins.logger.CxPluginLogger;
+import hudson.FilePath;
+import hudson.model.TaskListener;
+import hudson.remoting.VirtualChannel;
+import org.apache.commons.codec.binary.Base64OutputStream;
+import org.apache.commons.io.IOUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jenkinsci.remoting.Role;
+import org.jenkinsci.remoting.RoleChecker;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.util.logging.Logger;
+
+/**
+ * Creates the SAST and the OSA zip files with a single walk of the
+ * workspace. A file included by both filters is read and compressed once and
+ * written to both zips.
+ * <p>
+ * The SAST zip is base64 encoded like the one of {@link SastZipperCallable},
+ * the OSA zip is a plain zip like the one of {@link OsaZipperCallable}. A
+ * failure of the OSA zip does not fail the SAST one, it is returned in the
+ * result.
+ */
+public class SastAndOsaZipperCallable implements FilePath.FileCallable<SastAndOsaZipResult>, Serializable {
+
+    private static Logger LOGGER = Logger.getLogger(SastAndOsaZipperCallable.class.getName());
+
+    private static final long serialVersionUID = 1L;
+
+    @NotNull
+    private final String sastFilterPattern;
+
+    @NotNull
+    private final String osaFilterPattern;
+
+    @Nullable
+    private final TaskListener listener;
+
+    @Nullable
+    private final String zippedFilesList;
+
+    @Nullable
+    private String sastCacheKey;
+
+    @Nullable
+    private String osaCacheKey;
+
+    /**
+     * @param listener        Console of the build receiving the periodic
+     *                        zipping progress, the logger writing to it is
+     *                        created on the node; may be null
+     * @param zippedFilesList File on the node the list of all the SAST
+     *                        zipped files is written to, may be null
+     */
+    public SastAndOsaZipperCallable(@NotNull String sastFilterPattern, @NotNull String osaFilterPattern,
+                                    @Nullable TaskListener listener, @Nullable String zippedFilesList) {
+        this.sastFilterPattern = sastFilterPattern;
+        this.osaFilterPattern = osaFilterPattern;
+        this.listener = listener;
+        this.zippedFilesList = zippedFilesList;
+    }
+
+    /**
+     * Keys of the zips in the zip cache of the node, see
+     * {@link ZipCache#key(String, String, String)}. The zips are taken from
+     * the cache only when both are found. Null disables the cache.
+     */
+    public void setCacheKeys(@Nullable String sastCacheKey, @Nullable String osaCacheKey) {
+        this.sastCacheKey = sastCacheKey;
+        this.osaCacheKey = osaCacheKey;
+    }
+
+    @Override
+    public SastAndOsaZipResult invoke(File file, VirtualChannel channel) throws IOException, InterruptedException {
+        final File sastTempFile = SastZipperCallable.createTempFile("base64ZippedSource", ".bin");
+        final File osaTempFile = SastZipperCallable.createTempFile("ZippedSourceCode", ".zip");
+        FilePath remoteSastTempFile = new FilePath(sastTempFile);
+        FilePath remoteOsaTempFile = new FilePath(osaTempFile);
+
+        ZipCache zipCache = SastZipperCallable.zipCache();
+        boolean cached = sastCacheKey != null && osaCacheKey != null;
+        if (cached) {
+            ZippingDetails cachedSastZippingDetails = zipCache.get(sastCacheKey, sastTempFile);
+            if (cachedSastZippingDetails != null) {
+                ZippingDetails cachedOsaZippingDetails = zipCache.get(osaCacheKey, osaTempFile);
+                if (cachedOsaZippingDetails != null) {
+                    return new SastAndOsaZipResult(new CxZipResult(remoteSastTempFile, cachedSastZippingDetails),
+                            new CxZipResult(remoteOsaTempFile, cachedOsaZippingDetails), null);
+                }
+                // The SAST temporary file is now the cached zip itself, it must not be written to
+                Files.delete(sastTempFile.toPath());
+            }
+        }
+
+        final OutputStream fileOutputStream = new FileOutputStream(sastTempFile);
+        final OutputStream osaFileOutputStream = new FileOutputStream(osaTempFile);
+        SecondaryArchive osaArchive = new SecondaryArchive(osaFilterPattern, osaFileOutputStream, CxConfig.maxOSAZipSize());
+        ZippingDetails zippingDetails;
+        ZipGovernor governor = SastZipperCallable.zipGovernor();
+        CxPluginLogger progressLogger = listener != null ? new CxPluginLogger(listener) : null;
+        try {
+            governor.acquire(progressLogger);
+            try {
+                zippingDetails = SastZipperCallable.newZipper(progressLogger, zippedFilesList).zip(file, sastFilterPattern,
+                        new Base64OutputStream(fileOutputStream, true, 0, null), CxConfig.maxZipSize(), osaArchive);
+            } finally {
+                governor.release();
+            }
+        } catch (Exception e) {
+            // The zipper did not get to close the OSA zip when it failed before zipping
+            IOUtils.closeQuietly(osaFileOutputStream);
+            deleteTempFile(remoteSastTempFile);
+            deleteTempFile(remoteOsaTempFile);
+            throw e;
+        } finally {
+            fileOutputStream.close();
+        }
+
+        CxZipResult sastZipResult = new CxZipResult(remoteSastTempFile, zippingDetails);
+        if (cached) {
+            zipCache.put(sastCacheKey, sastTempFile, zippingDetails);
+        }
+        if (osaArchive.getFailure() != null) {
+            deleteTempFile(remoteOsaTempFile);
+            return new SastAndOsaZipResult(sastZipResult, null, osaArchive.getFailure());
+        }
+        if (cached) {
+            zipCache.put(osaCacheKey, osaTempFile, osaArchive.getZippingDetails());
+        }
+        return new SastAndOsaZipResult(sastZipResult, new CxZipResult(remoteOsaTempFile, osaArchive.getZippingDetails()), null);
+    }
+
+    public void deleteTempFile(FilePath tempFileToDelete) {
+        if(tempFileToDelete != null) {
+            try {
+                if(tempFileToDelete.exists()) {
+                    if(!tempFileToDelete.delete()) {
+                        LOGGER.warning("Fail to delete temp file");
+                    }
+                }
+            } catch (Exception e) {
+                LOGGER.warning("Fail to delete temp file: " + e.getMessage());
+            }
+        }
+    }
+
+    public void checkRoles(RoleChecker roleChecker) throws SecurityException {
+        roleChecker.check(this, Role.UNKNOWN);
+    }
+}
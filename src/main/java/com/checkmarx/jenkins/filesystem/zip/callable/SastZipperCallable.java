@@ -1,18 +1,31 @@
 package com.checkmarx.jenkins.filesystem.zip.callable;
 
 import com.checkmarx.jenkins.CxConfig;
+import com.checkmarx.jenkins.filesystem.zip.WorkspaceChangeTracker;
+import com.checkmarx.jenkins.filesystem.zip.WorkspaceManifest;
+import com.checkmarx.jenkins.filesystem.zip.WorkspaceManifestTracker;
+import com.checkmarx.jenkins.filesystem.zip.ZipCache;
+import com.checkmarx.jenkins.filesystem.zip.ZipGovernor;
 import com.checkmarx.jenkins.filesystem.zip.Zipper;
 import com.checkmarx.jenkins.filesystem.zip.dto.CxZipResult;
+import com.checkmarx.jenkins.filesystem.zip.dto.WorkspaceShard;
 import com.checkmarx.jenkins.filesystem.zip.dto.ZippingDetails;
+import com.checkmarx.jenkins.logger.CxPluginLogger;
 import hudson.FilePath;
+import hudson.model.TaskListener;
 import hudson.remoting.VirtualChannel;
 import org.apache.commons.codec.binary.Base64OutputStream;
+import org.apache.commons.io.FileUtils;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.jenkinsci.remoting.Role;
 import org.jenkinsci.remoting.RoleChecker;
 
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Set;
 import java.util.logging.Logger;
 
 /**
@@ -27,26 +40,115 @@ public class SastZipperCallable implements FilePath.FileCallable<CxZipResult>, S
 
     private static final long serialVersionUID = 1L;
 
+    public static final String WORKSPACE_MANIFEST = "workspace-manifest.bin";
+    public static final String PENDING_WORKSPACE_MANIFEST = "workspace-manifest.pending";
+    /**
+     * Filter pattern of the manifest, to watch the workspace for changes
+     * when the node starts, see {@link WatchWorkspaceCallable}
+     */
+    public static final String WORKSPACE_FILTER = "workspace-filter.txt";
+    public static final String PENDING_WORKSPACE_FILTER = "workspace-filter.pending";
+
     @NotNull
     private final String combinedFilterPattern;
 
+    @Nullable
+    private final String manifestDir;
+
+    @Nullable
+    private final TaskListener listener;
+
+    @Nullable
+    private transient CxPluginLogger progressLogger;
+
+    @Nullable
+    private final String zippedFilesList;
+
+    @Nullable
+    private String cacheKey;
+
+    @Nullable
+    private WorkspaceShard shard;
+
 
     public SastZipperCallable(@NotNull String combinedFilterPattern) {
+        this(combinedFilterPattern, null);
+    }
+
+    /**
+     * @param manifestDir Directory on the node keeping the workspace manifest,
+     *                    the manifest of this zip is written there as pending
+     *                    until the scan is submitted. The whole workspace is
+     *                    zipped, the manifest saves the hashing of the
+     *                    unchanged files. Null disables the manifest.
+     */
+    public SastZipperCallable(@NotNull String combinedFilterPattern, @Nullable String manifestDir) {
+        this(combinedFilterPattern, manifestDir, null, null);
+    }
+
+    /**
+     * @param listener        Console of the build receiving the periodic
+     *                        zipping progress, the logger writing to it is
+     *                        created on the node; may be null
+     * @param zippedFilesList File on the node the list of all the zipped
+     *                        files is written to, may be null
+     */
+    public SastZipperCallable(@NotNull String combinedFilterPattern, @Nullable String manifestDir,
+                              @Nullable TaskListener listener, @Nullable String zippedFilesList) {
         this.combinedFilterPattern = combinedFilterPattern;
+        this.manifestDir = manifestDir;
+        this.listener = listener;
+        this.zippedFilesList = zippedFilesList;
     }
 
 
+    /**
+     * @param cacheKey Key of the zip in the zip cache of the node, see
+     *                 {@link ZipCache#key(String, String, String)}. A zip with a
+     *                 manifest taken from the cache leaves the committed
+     *                 manifest as it is. Null disables the cache.
+     */
+    public void setCacheKey(@Nullable String cacheKey) {
+        this.cacheKey = cacheKey;
+    }
+
+    /**
+     * @param shard Shard of the workspace to zip instead of the whole
+     *              workspace, see {@link com.checkmarx.jenkins.filesystem.zip.WorkspaceSharder}.
+     *              Not combined with a manifest.
+     */
+    public void setShard(@Nullable WorkspaceShard shard) {
+        this.shard = shard;
+    }
+
     @Override
     public CxZipResult invoke(final File file, final VirtualChannel channel) throws IOException, InterruptedException {
 
-        final File tempFile = File.createTempFile("base64ZippedSource", ".bin");
+        final File tempFile = createTempFile("base64ZippedSource", ".bin");
         FilePath remoteTempFile = new FilePath(tempFile);
+        ZipCache zipCache = zipCache();
+        if (cacheKey != null) {
+            ZippingDetails cachedZippingDetails = zipCache.get(cacheKey, tempFile);
+            if (cachedZippingDetails != null) {
+                if (manifestDir != null) {
+                    // A manifest left pending by an earlier zip must not be committed with this one
+                    deletePendingManifest(new File(manifestDir));
+                }
+                return new CxZipResult(remoteTempFile, cachedZippingDetails);
+            }
+        }
         final OutputStream fileOutputStream = new FileOutputStream(tempFile);
         final Base64OutputStream base64FileOutputStream = new Base64OutputStream(fileOutputStream, true, 0, null);
 
         ZippingDetails zippingDetails;
+        ZipGovernor governor = zipGovernor();
         try {
-            zippingDetails = new Zipper().zip(file, combinedFilterPattern, base64FileOutputStream, CxConfig.maxZipSize());
+            governor.acquire(progressLogger());
+            try {
+                zippingDetails = zip(file, base64FileOutputStream);
+            } finally {
+                governor.release();
+            }
         } catch (Exception e) {
             deleteTempFile(remoteTempFile);
             throw e;
@@ -55,9 +157,177 @@ public class SastZipperCallable implements FilePath.FileCallable<CxZipResult>, S
             fileOutputStream.close();
         }
 
+        if (cacheKey != null) {
+            zipCache.put(cacheKey, tempFile, zippingDetails);
+        }
         return new CxZipResult(remoteTempFile, zippingDetails);
     }
 
+    /**
+     * Zips the sources straight into the output stream, used when they are
+     * uploaded while being zipped. The zip cache is not used.
+     */
+    public ZippingDetails zipSources(File file, OutputStream outputStream) throws IOException {
+        ZipGovernor governor = zipGovernor();
+        governor.acquire(progressLogger());
+        try {
+            return zip(file, outputStream);
+        } finally {
+            governor.release();
+        }
+    }
+
+    private ZippingDetails zip(File file, OutputStream outputStream) throws IOException {
+        if (shard != null) {
+            return newZipper().zip(file, combinedFilterPattern, shard, outputStream, CxConfig.maxZipSize());
+        }
+        if (manifestDir == null) {
+            return newZipper().zip(file, combinedFilterPattern, outputStream, CxConfig.maxZipSize());
+        }
+        return zipWithManifest(file, outputStream);
+    }
+
+    private ZippingDetails zipWithManifest(File file, OutputStream outputStream) throws IOException {
+        WorkspaceManifestTracker tracker = new WorkspaceManifestTracker(readPreviousManifest());
+        Zipper zipper = newZipper();
+        zipper.setChangedPaths(changedPaths(file));
+        ZippingDetails zippingDetails = zipper.zip(file, combinedFilterPattern, outputStream, CxConfig.maxZipSize(), tracker);
+        tracker.getCurrentManifest().write(new File(manifestDir, PENDING_WORKSPACE_MANIFEST));
+        FileUtils.writeStringToFile(new File(manifestDir, PENDING_WORKSPACE_FILTER), combinedFilterPattern, "UTF-8");
+        return zippingDetails;
+    }
+
+    /**
+     * Watches the workspace for changes, when enabled, from this zip on.
+     *
+     * @return paths changed since the committed manifest, null when the
+     *         workspace must be walked
+     */
+    @Nullable
+    private Set<String> changedPaths(File file) {
+        if (!CxConfig.workspaceChangeTracking() || CxConfig.gitIndexFileList()) {
+            return null;
+        }
+        WorkspaceChangeTracker changeTracker = WorkspaceChangeTracker.forJvm();
+        changeTracker.watch(file, combinedFilterPattern, new File(manifestDir, WORKSPACE_MANIFEST));
+        return changeTracker.snapshot(file, combinedFilterPattern);
+    }
+
+    private Zipper newZipper() throws IOException {
+        return newZipper(progressLogger(), zippedFilesList);
+    }
+
+    @Nullable
+    private CxPluginLogger progressLogger() {
+        if (progressLogger == null && listener != null) {
+            progressLogger = new CxPluginLogger(listener);
+        }
+        return progressLogger;
+    }
+
+    /**
+     * @return zipper of the sources configured with the plugin settings
+     */
+    static Zipper newZipper(@Nullable CxPluginLogger progressLogger, @Nullable String zippedFilesList) throws IOException {
+        ZipGovernor governor = zipGovernor();
+        Zipper zipper = new Zipper(governor.threads(CxConfig.zipThreads()));
+        zipper.setReadThrottle(governor.getReadThrottle());
+        zipper.setSizePreflight(CxConfig.zipSizePreflight());
+        zipper.setGitIndex(CxConfig.gitIndexFileList());
+        zipper.setCompressionPolicy(CxConfig.compressionPolicy());
+        zipper.getLog().setProgressLogger(progressLogger);
+        if (zippedFilesList != null) {
+            zipper.getLog().writeFileList(new File(zippedFilesList));
+        }
+        return zipper;
+    }
+
+    /**
+     * @return the governor of the zips of this node, configured with the
+     *         plugin settings
+     */
+    static ZipGovernor zipGovernor() {
+        return ZipGovernor.forJvm(CxConfig.zipMaxConcurrentJobs(), CxConfig.zipMaxReadBytesPerSecond(), CxConfig.zipMaxThreads());
+    }
+
+    /**
+     * @return the zip cache of this node, configured with the plugin settings
+     */
+    static ZipCache zipCache() {
+        return new ZipCache(CxConfig.zipCacheDir(), CxConfig.zipCacheMaxBytes());
+    }
+
+    /**
+     * @return new empty temporary file in the directory of the temporary zip
+     *         files of the plugin settings
+     */
+    static File createTempFile(String prefix, String suffix) throws IOException {
+        File zipTempDir = CxConfig.zipTempDir();
+        if (zipTempDir != null && !zipTempDir.isDirectory() && !zipTempDir.mkdirs()) {
+            throw new IOException("Failed to create the directory of the temporary zip files " + zipTempDir);
+        }
+        return File.createTempFile(prefix, suffix, zipTempDir);
+    }
+
+    private WorkspaceManifest readPreviousManifest() {
+        return WorkspaceManifest.read(new File(manifestDir, WORKSPACE_MANIFEST));
+    }
+
+    private static void deletePendingManifest(File manifestDir) {
+        for (String pending : new String[]{PENDING_WORKSPACE_MANIFEST, PENDING_WORKSPACE_FILTER}) {
+            File pendingFile = new File(manifestDir, pending);
+            if (pendingFile.exists() && !pendingFile.delete()) {
+                LOGGER.warning("Fail to delete " + pendingFile);
+            }
+        }
+    }
+
+    /**
+     * Makes the pending manifest written by the last zip the one the next zip
+     * compares the workspace with. Called once the scan is submitted.
+     */
+    public static class CommitManifestCallable implements FilePath.FileCallable<Void>, Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        @Nullable
+        private final String workspace;
+
+        /**
+         * @param workspace workspace of the manifest, its changes are then
+         *                  tracked from the committed manifest on; may be null
+         */
+        public CommitManifestCallable(@Nullable String workspace) {
+            this.workspace = workspace;
+        }
+
+        @Override
+        public Void invoke(File manifestDir, VirtualChannel channel) throws IOException, InterruptedException {
+            File pendingManifest = new File(manifestDir, PENDING_WORKSPACE_MANIFEST);
+            if (pendingManifest.isFile()) {
+                File manifest = new File(manifestDir, WORKSPACE_MANIFEST);
+                if (manifest.exists() && !manifest.delete()) {
+                    throw new IOException("Failed to replace workspace manifest " + manifest);
+                }
+                if (!pendingManifest.renameTo(manifest)) {
+                    throw new IOException("Failed to commit workspace manifest " + pendingManifest);
+                }
+                File pendingFilter = new File(manifestDir, PENDING_WORKSPACE_FILTER);
+                if (pendingFilter.isFile()) {
+                    Files.move(pendingFilter.toPath(), new File(manifestDir, WORKSPACE_FILTER).toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+                if (workspace != null) {
+                    WorkspaceChangeTracker.forJvm().commit(new File(workspace));
+                }
+            }
+            return null;
+        }
+
+        public void checkRoles(RoleChecker roleChecker) throws SecurityException {
+            roleChecker.check(this, Role.UNKNOWN);
+        }
+    }
+
     public void deleteTempFile(FilePath tempFileToDelete) {
         if(tempFileToDelete != null) {
             try {
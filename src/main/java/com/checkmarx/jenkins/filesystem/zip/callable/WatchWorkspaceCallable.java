@@ -0,0 +1,52 @@
+package com.checkmarx.jenkins.filesystem.zip.callable;
+
+import com.checkmarx.jenkins.filesystem.zip.WorkspaceChangeTracker;
+import hudson.FilePath;
+import hudson.remoting.VirtualChannel;
+import org.apache.commons.io.FileUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jenkinsci.remoting.Role;
+import org.jenkinsci.remoting.RoleChecker;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+
+/**
+ * Starts watching the workspace for changes on the node, with the filter
+ * pattern of its committed manifest, see {@link WorkspaceChangeTracker}.
+ * Returns at once, the directories are registered in the background.
+ */
+public class WatchWorkspaceCallable implements FilePath.FileCallable<Boolean>, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @NotNull
+    private final String manifestDir;
+
+    /**
+     * @param manifestDir directory on the node keeping the workspace manifest
+     */
+    public WatchWorkspaceCallable(@NotNull String manifestDir) {
+        this.manifestDir = manifestDir;
+    }
+
+    /**
+     * @return false if the workspace has no committed manifest to track the
+     *         changes from
+     */
+    @Override
+    public Boolean invoke(File workspace, VirtualChannel channel) throws IOException, InterruptedException {
+        File manifest = new File(manifestDir, SastZipperCallable.WORKSPACE_MANIFEST);
+        File filter = new File(manifestDir, SastZipperCallable.WORKSPACE_FILTER);
+        if (!workspace.isDirectory() || !manifest.isFile() || !filter.isFile()) {
+            return false;
+        }
+        WorkspaceChangeTracker.forJvm().watch(workspace, FileUtils.readFileToString(filter, "UTF-8"), manifest);
+        return true;
+    }
+
+    public void checkRoles(RoleChecker roleChecker) throws SecurityException {
+        roleChecker.check(this, Role.UNKNOWN);
+    }
+}
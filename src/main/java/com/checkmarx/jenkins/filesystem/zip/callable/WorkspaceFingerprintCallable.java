@@ -0,0 +1,80 @@
+package com.checkmarx.jenkins.filesystem.zip.callable;
+
+import com.checkmarx.jenkins.CxConfig;
+import com.checkmarx.jenkins.filesystem.zip.CompiledPathFilter;
+import com.checkmarx.jenkins.filesystem.zip.WorkspaceFingerprint;
+import com.checkmarx.jenkins.filesystem.zip.WorkspaceManifest;
+import hudson.FilePath;
+import hudson.remoting.VirtualChannel;
+import org.jetbrains.annotations.NotNull;
+import org.jenkinsci.remoting.Role;
+import org.jenkinsci.remoting.RoleChecker;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.logging.Logger;
+
+/**
+ * Computes the fingerprint of the workspace files matching the filter
+ * pattern on the node running the job.
+ * <p>
+ * The content hashes are kept next to the workspace so that only the files
+ * whose size or modification time changed are read again on the next build.
+ */
+public class WorkspaceFingerprintCallable implements FilePath.FileCallable<String>, Serializable {
+
+    private static Logger LOGGER = Logger.getLogger(WorkspaceFingerprintCallable.class.getName());
+
+    private static final long serialVersionUID = 1L;
+
+    public static final String FINGERPRINT_HASHES = "workspace-fingerprint.bin";
+    public static final String OSA_FINGERPRINT_HASHES = "workspace-fingerprint-osa.bin";
+
+    @NotNull
+    private final String combinedFilterPattern;
+
+    @NotNull
+    private final String hashesDir;
+
+    @NotNull
+    private final String hashesFileName;
+
+    public WorkspaceFingerprintCallable(@NotNull String combinedFilterPattern, @NotNull String hashesDir) {
+        this(combinedFilterPattern, hashesDir, FINGERPRINT_HASHES);
+    }
+
+    /**
+     * @param hashesFileName file of the content hashes in the hashes
+     *                       directory, one per filter pattern fingerprinted
+     *                       in the same workspace
+     */
+    public WorkspaceFingerprintCallable(@NotNull String combinedFilterPattern, @NotNull String hashesDir, @NotNull String hashesFileName) {
+        this.combinedFilterPattern = combinedFilterPattern;
+        this.hashesDir = hashesDir;
+        this.hashesFileName = hashesFileName;
+    }
+
+    @Override
+    public String invoke(File file, VirtualChannel channel) throws IOException, InterruptedException {
+        File hashesFile = new File(hashesDir, hashesFileName);
+        WorkspaceFingerprint workspaceFingerprint = new WorkspaceFingerprint(CompiledPathFilter.forFilterPattern(combinedFilterPattern),
+                WorkspaceManifest.read(hashesFile));
+
+        String fingerprint = workspaceFingerprint.compute(file, CxConfig.zipThreads());
+        LOGGER.fine("Workspace fingerprint of " + workspaceFingerprint.getNumberOfFiles() + " files, "
+                + workspaceFingerprint.getNumberOfHashedFiles() + " of them hashed again: " + fingerprint);
+
+        try {
+            workspaceFingerprint.getFileHashes().write(hashesFile);
+        } catch (IOException e) {
+            // Only costs hashing the whole workspace again next time
+            LOGGER.warning("Failed to save the workspace file hashes: " + e.getMessage());
+        }
+        return fingerprint;
+    }
+
+    public void checkRoles(RoleChecker roleChecker) throws SecurityException {
+        roleChecker.check(this, Role.UNKNOWN);
+    }
+}
@@ -0,0 +1,40 @@
+package com.checkmarx.jenkins.filesystem.zip.callable;
+
+import com.checkmarx.jenkins.CxConfig;
+import com.checkmarx.jenkins.filesystem.zip.WorkspaceSharder;
+import com.checkmarx.jenkins.filesystem.zip.dto.WorkspaceShard;
+import hudson.FilePath;
+import hudson.remoting.VirtualChannel;
+import org.jetbrains.annotations.NotNull;
+import org.jenkinsci.remoting.Role;
+import org.jenkinsci.remoting.RoleChecker;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+
+/**
+ * Splits the workspace into shards that each fit under the maximum zip size,
+ * on the node running the job.
+ */
+public class WorkspaceSharderCallable implements FilePath.FileCallable<ArrayList<WorkspaceShard>>, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @NotNull
+    private final String combinedFilterPattern;
+
+    public WorkspaceSharderCallable(@NotNull String combinedFilterPattern) {
+        this.combinedFilterPattern = combinedFilterPattern;
+    }
+
+    @Override
+    public ArrayList<WorkspaceShard> invoke(File file, VirtualChannel channel) throws IOException, InterruptedException {
+        return new ArrayList<>(WorkspaceSharder.plan(file, combinedFilterPattern, CxConfig.maxZipSize(), CxConfig.gitIndexFileList()));
+    }
+
+    public void checkRoles(RoleChecker roleChecker) throws SecurityException {
+        roleChecker.check(this, Role.UNKNOWN);
+    }
+}
@@ -0,0 +1,237 @@
+package com.checkmarx.jenkins.filesystem.zip.dto;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * What the zip of the workspace would hold with a filter pattern, computed
+ * without compressing anything, see
+ * {@link com.checkmarx.jenkins.filesystem.zip.PackagingAnalyzer}.
+ * <p>
+ * Only the largest directories and file types are kept, the analysis is
+ * stored with the build.
+ */
+public class PackagingAnalysis implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String filterPattern;
+    private final int numberOfFiles;
+    private final long size;
+    private final long estimatedCompressedSize;
+    private final int numberOfExcludedFiles;
+    private final long excludedSize;
+    private final List<Row> directoriesBySize;
+    private final List<Row> directoriesByFiles;
+    private final List<Row> typesBySize;
+    private final List<Row> typesByFiles;
+    private final List<PatternMatch> patterns;
+    private final List<Row> suggestions;
+
+    public PackagingAnalysis(String filterPattern, int numberOfFiles, long size, long estimatedCompressedSize,
+                             int numberOfExcludedFiles, long excludedSize,
+                             List<Row> directoriesBySize, List<Row> directoriesByFiles,
+                             List<Row> typesBySize, List<Row> typesByFiles,
+                             List<PatternMatch> patterns, List<Row> suggestions) {
+        this.filterPattern = filterPattern;
+        this.numberOfFiles = numberOfFiles;
+        this.size = size;
+        this.estimatedCompressedSize = estimatedCompressedSize;
+        this.numberOfExcludedFiles = numberOfExcludedFiles;
+        this.excludedSize = excludedSize;
+        this.directoriesBySize = directoriesBySize;
+        this.directoriesByFiles = directoriesByFiles;
+        this.typesBySize = typesBySize;
+        this.typesByFiles = typesByFiles;
+        this.patterns = patterns;
+        this.suggestions = suggestions;
+    }
+
+    public String getFilterPattern() {
+        return filterPattern;
+    }
+
+    public int getNumberOfFiles() {
+        return numberOfFiles;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getEstimatedCompressedSize() {
+        return estimatedCompressedSize;
+    }
+
+    public int getNumberOfExcludedFiles() {
+        return numberOfExcludedFiles;
+    }
+
+    public long getExcludedSize() {
+        return excludedSize;
+    }
+
+    public String getDisplaySize() {
+        return FileUtils.byteCountToDisplaySize(size);
+    }
+
+    public String getDisplayEstimatedCompressedSize() {
+        return FileUtils.byteCountToDisplaySize(estimatedCompressedSize);
+    }
+
+    public String getDisplayExcludedSize() {
+        return FileUtils.byteCountToDisplaySize(excludedSize);
+    }
+
+    public List<Row> getDirectoriesBySize() {
+        return directoriesBySize;
+    }
+
+    public List<Row> getDirectoriesByFiles() {
+        return directoriesByFiles;
+    }
+
+    public List<Row> getTypesBySize() {
+        return typesBySize;
+    }
+
+    public List<Row> getTypesByFiles() {
+        return typesByFiles;
+    }
+
+    /**
+     * @return every pattern of the filter with the number of files it matches,
+     *         whether they end up in the zip or not
+     */
+    public List<PatternMatch> getPatterns() {
+        return patterns;
+    }
+
+    /**
+     * @return exclude patterns that would cut the zip the most, the name of
+     *         each row is the pattern
+     */
+    public List<Row> getSuggestions() {
+        return suggestions;
+    }
+
+    /**
+     * @return the analysis in the form logged to the console
+     */
+    public List<String> toLines() {
+        List<String> lines = new ArrayList<>();
+        lines.add("Files to zip: " + numberOfFiles + ", " + getDisplaySize() + ", estimated zip size: " + getDisplayEstimatedCompressedSize());
+        lines.add("Excluded files: " + numberOfExcludedFiles + ", " + getDisplayExcludedSize());
+        addRows(lines, "Largest directories:", directoriesBySize);
+        addRows(lines, "Largest file types:", typesBySize);
+        lines.add("Files matched by each pattern:");
+        for (PatternMatch pattern : patterns) {
+            lines.add("  " + pattern.getPattern() + ": " + pattern.getFiles() + " files, " + pattern.getDisplaySize());
+        }
+        if (suggestions.isEmpty()) {
+            lines.add("No exclusion to suggest");
+        } else {
+            lines.add("Suggested exclusions:");
+            for (Row suggestion : suggestions) {
+                lines.add("  " + suggestion.getName() + " would save about " + suggestion.getDisplayCompressedSize()
+                        + " of the zip (" + suggestion.getFiles() + " files)");
+            }
+        }
+        return lines;
+    }
+
+    private static void addRows(List<String> lines, String title, List<Row> rows) {
+        lines.add(title);
+        for (Row row : rows) {
+            lines.add("  " + row.getName() + ": " + row.getFiles() + " files, " + row.getDisplaySize() + ", about "
+                    + row.getDisplayCompressedSize() + " zipped");
+        }
+    }
+
+    /**
+     * Files of a directory, of a file type or matched by a suggested pattern.
+     */
+    public static class Row implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String name;
+        private final int files;
+        private final long size;
+        private final long compressedSize;
+
+        public Row(String name, int files, long size, long compressedSize) {
+            this.name = name;
+            this.files = files;
+            this.size = size;
+            this.compressedSize = compressedSize;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getFiles() {
+            return files;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * @return estimated size in the zip
+         */
+        public long getCompressedSize() {
+            return compressedSize;
+        }
+
+        public String getDisplaySize() {
+            return FileUtils.byteCountToDisplaySize(size);
+        }
+
+        public String getDisplayCompressedSize() {
+            return FileUtils.byteCountToDisplaySize(compressedSize);
+        }
+    }
+
+    /**
+     * Pattern of the filter and the files of the workspace matching it.
+     */
+    public static class PatternMatch implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String pattern;
+        private final int files;
+        private final long size;
+
+        public PatternMatch(String pattern, int files, long size) {
+            this.pattern = pattern;
+            this.files = files;
+            this.size = size;
+        }
+
+        /**
+         * @return the pattern as written, exclude patterns start with "!"
+         */
+        public String getPattern() {
+            return pattern;
+        }
+
+        public int getFiles() {
+            return files;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public String getDisplaySize() {
+            return FileUtils.byteCountToDisplaySize(size);
+        }
+    }
+}
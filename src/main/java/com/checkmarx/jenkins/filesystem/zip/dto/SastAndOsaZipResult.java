@@ -0,0 +1,51 @@
+package com.checkmarx.jenkins.filesystem.zip.dto;
+
+import com.checkmarx.jenkins.filesystem.zip.Zipper;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Serializable;
+
+/**
+ * Stores the SAST and OSA zip files written by a single walk of the
+ * workspace. The OSA zip is missing when it failed, the SAST zip is then
+ * still usable.
+ */
+public class SastAndOsaZipResult implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    @NotNull
+    private final CxZipResult sastZipResult;
+    @Nullable
+    private final CxZipResult osaZipResult;
+    @Nullable
+    private final Zipper.ZipperException osaFailure;
+
+    public SastAndOsaZipResult(@NotNull CxZipResult sastZipResult, @Nullable CxZipResult osaZipResult,
+                               @Nullable Zipper.ZipperException osaFailure) {
+        this.sastZipResult = sastZipResult;
+        this.osaZipResult = osaZipResult;
+        this.osaFailure = osaFailure;
+    }
+
+    @NotNull
+    public CxZipResult getSastZipResult() {
+        return sastZipResult;
+    }
+
+    /**
+     * @return the OSA zip, null if it could not be written
+     */
+    @Nullable
+    public CxZipResult getOsaZipResult() {
+        return osaZipResult;
+    }
+
+    /**
+     * @return why the OSA zip could not be written, null if it was
+     */
+    @Nullable
+    public Zipper.ZipperException getOsaFailure() {
+        return osaFailure;
+    }
+}
@@ -0,0 +1,125 @@
+package com.checkmarx.jenkins.filesystem.zip.dto;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Part of the workspace scanned on its own when the whole workspace does not
+ * fit in a single zip, see
+ * {@link com.checkmarx.jenkins.filesystem.zip.WorkspaceSharder}.
+ * <p>
+ * A shard is made of whole directories, with everything under them, and of
+ * directories whose files are taken without their subdirectories. Paths are
+ * relative to the workspace and use "/" between segments, the root of the
+ * workspace is the empty path.
+ */
+public class WorkspaceShard implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String name;
+    private final List<String> directories;
+    private final List<String> fileDirectories;
+    private final int numberOfFiles;
+    private final long size;
+    private final long estimatedCompressedSize;
+
+    /**
+     * @param directories     directories taken with all their subdirectories
+     * @param fileDirectories directories of which only the files directly in
+     *                        them are taken
+     */
+    public WorkspaceShard(String name, List<String> directories, List<String> fileDirectories,
+                          int numberOfFiles, long size, long estimatedCompressedSize) {
+        this.name = name;
+        this.directories = directories;
+        this.fileDirectories = fileDirectories;
+        this.numberOfFiles = numberOfFiles;
+        this.size = size;
+        this.estimatedCompressedSize = estimatedCompressedSize;
+    }
+
+    /**
+     * @return name of the shard, stable as long as the modules it is made of
+     *         do not move, made of letters, digits, "-", "_" and "."
+     */
+    public String getName() {
+        return name;
+    }
+
+    public List<String> getDirectories() {
+        return directories;
+    }
+
+    public List<String> getFileDirectories() {
+        return fileDirectories;
+    }
+
+    public int getNumberOfFiles() {
+        return numberOfFiles;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getEstimatedCompressedSize() {
+        return estimatedCompressedSize;
+    }
+
+    /**
+     * @param relativePath path of a file relative to the workspace
+     */
+    public boolean contains(String relativePath) {
+        String path = relativePath.replace('\\', '/');
+        for (String directory : directories) {
+            if (directory.isEmpty() || path.startsWith(directory + "/")) {
+                return true;
+            }
+        }
+        int separator = path.lastIndexOf('/');
+        String parent = separator < 0 ? "" : path.substring(0, separator);
+        return fileDirectories.contains(parent);
+    }
+
+    /**
+     * @param relativeDirectory path of a directory relative to the workspace
+     * @return false if no file of the shard can be under this directory
+     */
+    public boolean mayContain(String relativeDirectory) {
+        String path = relativeDirectory.replace('\\', '/');
+        for (String directory : directories) {
+            if (isSameOrUnder(path, directory) || isSameOrUnder(directory, path)) {
+                return true;
+            }
+        }
+        for (String fileDirectory : fileDirectories) {
+            if (isSameOrUnder(fileDirectory, path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the directories of the shard in the form logged to the console
+     */
+    public String describe() {
+        StringBuilder sb = new StringBuilder();
+        for (String directory : directories) {
+            sb.append(sb.length() > 0 ? ", " : "").append(directory.isEmpty() ? "/" : directory + "/");
+        }
+        for (String fileDirectory : fileDirectories) {
+            sb.append(sb.length() > 0 ? ", " : "").append(fileDirectory.isEmpty() ? "" : fileDirectory + "/").append("*");
+        }
+        return name + ": " + numberOfFiles + " files, " + FileUtils.byteCountToDisplaySize(size) + ", estimated zip size "
+                + FileUtils.byteCountToDisplaySize(estimatedCompressedSize) + " (" + StringUtils.abbreviate(sb.toString(), 200) + ")";
+    }
+
+    private static boolean isSameOrUnder(String path, String directory) {
+        return directory.isEmpty() || path.equals(directory) || path.startsWith(directory + "/");
+    }
+}
@@ -15,11 +15,21 @@ public class ZippingDetails implements Serializable{
 
     @NotNull
     private final int numOfZippedFiles;
+    private final long zipSize;
     @NotNull
     private final List<String> zippingLog;
 
     public ZippingDetails(int numOfZippedFiles, List<String> zippingLog) {
+        this(numOfZippedFiles, 0, zippingLog);
+    }
+
+    /**
+     * @param zipSize number of bytes of the zip, as written to the output
+     *                stream before any encoding
+     */
+    public ZippingDetails(int numOfZippedFiles, long zipSize, List<String> zippingLog) {
         this.numOfZippedFiles = numOfZippedFiles;
+        this.zipSize = zipSize;
         this.zippingLog = zippingLog;
     }
 
@@ -28,6 +38,10 @@ public class ZippingDetails implements Serializable{
         return numOfZippedFiles;
     }
 
+    public long getZipSize() {
+        return zipSize;
+    }
+
     public List<String> getZippingLog() {
         return zippingLog;
     }
@@ -26,6 +26,7 @@ public class ScanService {
     private CxWebService webServiceClient;
     private final CxZip cxZip;
     private final FolderPattern folderPattern;
+    private final FilePath osaSourcesZip;
     private ScanResultsPresenter scanResultsPresenter;
     private ScanSender scanSender;
     private LibrariesAndCVEsExtractor librariesAndCVEsExtractor;
@@ -35,6 +36,7 @@ public class ScanService {
         this.webServiceClient = scanServiceTools.getWebServiceClient();
         this.cxZip = new CxZip(scanServiceTools.getBuild(), scanServiceTools.getWorkspace(), scanServiceTools.getListener());
         this.folderPattern = new FolderPattern(scanServiceTools.getBuild(), scanServiceTools.getListener());
+        this.osaSourcesZip = scanServiceTools.getOsaSourcesZip();
         this.scanResultsPresenter = new ScanResultsPresenter(scanServiceTools.getListener());
         this.scanSender = new ScanSender(scanServiceTools.getOsaScanClient(), scanServiceTools.getProjectId());
         this.librariesAndCVEsExtractor = new LibrariesAndCVEsExtractor(scanServiceTools.getOsaScanClient());
@@ -43,7 +45,8 @@ public class ScanService {
 
     public OsaScanResult scan(boolean asynchronousScan) {
         OsaScanResult osaScanResult = new OsaScanResult();
-        FilePath sourceCodeZip = null;
+        // Zipped together with the SAST sources, deleted like the zip made here
+        FilePath sourceCodeZip = osaSourcesZip;
 
         try {
             if (!validLicense()) {
@@ -52,7 +55,9 @@ public class ScanService {
                 return osaScanResult;
             }
 
-            sourceCodeZip = zipOpenSourceCode();
+            if (sourceCodeZip == null) {
+                sourceCodeZip = zipOpenSourceCode();
+            }
             if (asynchronousScan) {
                 logger.info(OSA_RUN_SUBMITTED);
                 scanSender.sendAsync(sourceCodeZip);
@@ -19,6 +19,7 @@ public class ScanServiceTools {
     private TaskListener listener;
     private FilePath workspace;
     private long projectId;
+    private FilePath osaSourcesZip;
 
     public DependencyFolder getDependencyFolder() {
         return dependencyFolder;
@@ -75,4 +76,16 @@ public class ScanServiceTools {
     public void setWorkspace(FilePath workspace) {
         this.workspace = workspace;
     }
+
+    public FilePath getOsaSourcesZip() {
+        return osaSourcesZip;
+    }
+
+    /**
+     * @param osaSourcesZip OSA sources already zipped together with the SAST
+     *                      sources, may be null
+     */
+    public void setOsaSourcesZip(FilePath osaSourcesZip) {
+        this.osaSourcesZip = osaSourcesZip;
+    }
 }
@@ -0,0 +1,16 @@
+package com.checkmarx.jenkins.web.client;
+
+import java.io.IOException;
+
+/**
+ * Thrown when the server refuses a request body sent with chunked transfer
+ * encoding and needs to know its length up front.
+ */
+public class ChunkedUploadNotSupportedException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public ChunkedUploadNotSupportedException(String message) {
+        super(message);
+    }
+}
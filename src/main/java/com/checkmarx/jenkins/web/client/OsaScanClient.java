@@ -142,6 +142,7 @@ public class OsaScanClient implements Closeable {
     public CreateScanResponse createScan(CreateScanRequest request) throws IOException, InterruptedException {
         final MultiPart multipart = createScanMultiPartRequest(request);
         logger.info("sending request for osa scan");
+        // The sources are streamed once, a rejected session fails the request instead of sending them again
         Invocation invocation = root.path(ANALYZE_PATH)
                 .resolveTemplate("projectId", request.getProjectId())
                 .request()
@@ -154,38 +155,55 @@ public class OsaScanClient implements Closeable {
         return response.readEntity(CreateScanResponse.class);
     }
 
-    public GetOpenSourceSummaryResponse getOpenSourceSummary(String scanId) throws IOException {
-        Invocation invocation = getSummeryByAcceptHeaderInvocation(scanId, "application/json");
+    public GetOpenSourceSummaryResponse getOpenSourceSummary(final String scanId) throws IOException {
         logger.info("sending request for HTML report");
-        Response response = invokeRequest(invocation);
+        Response response = invokeAuthenticatedRequest(new AuthenticatedRequest() {
+            @Override
+            Invocation build() {
+                return getSummeryByAcceptHeaderInvocation(scanId, "application/json");
+            }
+        });
         validateResponse(response, Response.Status.OK, "fail get OSA scan summary results");
         return response.readEntity(GetOpenSourceSummaryResponse.class);
     }
 
-    public String getOSAScanHtmlResults(String scanId) {
-        Invocation invocation = getSummeryByAcceptHeaderInvocation(scanId, "text/html");
+    public String getOSAScanHtmlResults(final String scanId) {
         logger.info("sending request for JSON report");
-        Response response = invokeRequest(invocation);
+        Response response = invokeAuthenticatedRequest(new AuthenticatedRequest() {
+            @Override
+            Invocation build() {
+                return getSummeryByAcceptHeaderInvocation(scanId, "text/html");
+            }
+        });
         validateResponse(response, Response.Status.OK, "fail get OSA scan html results");
         return response.readEntity(String.class);
     }
 
-    public byte[] getOSAScanPdfResults(String scanId) {
-        Invocation invocation = getSummeryByAcceptHeaderInvocation(scanId, "application/pdf");
+    public byte[] getOSAScanPdfResults(final String scanId) {
         logger.info("sending request for PDF report");
-        Response response = invokeRequest(invocation);
+        Response response = invokeAuthenticatedRequest(new AuthenticatedRequest() {
+            @Override
+            Invocation build() {
+                return getSummeryByAcceptHeaderInvocation(scanId, "application/pdf");
+            }
+        });
         validateResponse(response, Response.Status.OK, "fail get OSA scan pdf results");
         return response.readEntity(byte[].class);
     }
 
-    public List<Library> getScanResultLibraries(String scanId) {
+    public List<Library> getScanResultLibraries(final String scanId) {
         List<Library> libraryList = new LinkedList<>();
         int lastListSize = ITEMS_PER_PAGE;
         int currentPage = 1;
         while (lastListSize == ITEMS_PER_PAGE) {
-            Invocation invocation = getPageRequestInvocation(LIBRARIES_PATH, currentPage, scanId);
+            final int page = currentPage;
             logger.info("sending request for libraries page number " + currentPage);
-            Response response = invokeRequest(invocation);
+            Response response = invokeAuthenticatedRequest(new AuthenticatedRequest() {
+                @Override
+                Invocation build() {
+                    return getPageRequestInvocation(LIBRARIES_PATH, page, scanId);
+                }
+            });
             validateResponse(response, Response.Status.OK, "fail get OSA scan libraries");
             try {
                 List<Library> libraryPage = mapper.readValue(response.readEntity(String.class), new TypeReference<List<Library>>() {
@@ -205,14 +223,19 @@ public class OsaScanClient implements Closeable {
         return libraryList;
     }
 
-    public List<CVE> getScanResultCVEs(String scanId) {
+    public List<CVE> getScanResultCVEs(final String scanId) {
         List<CVE> cvesList = new LinkedList<>();
         int lastListSize = ITEMS_PER_PAGE;
         int currentPage = 1;
         while (lastListSize == ITEMS_PER_PAGE) {
-            Invocation invocation = getPageRequestInvocation(CVEs_PATH, currentPage, scanId);
+            final int page = currentPage;
             logger.info("sending request for CVE's page number " + currentPage);
-            Response response = invokeRequest(invocation);
+            Response response = invokeAuthenticatedRequest(new AuthenticatedRequest() {
+                @Override
+                Invocation build() {
+                    return getPageRequestInvocation(CVEs_PATH, page, scanId);
+                }
+            });
             validateResponse(response, Response.Status.OK, "fail get OSA scan CVE's");
             try {
                 List<CVE> cvePage = mapper.readValue(response.readEntity(String.class), new TypeReference<List<CVE>>() {
@@ -266,34 +289,41 @@ public class OsaScanClient implements Closeable {
         return new File(request.getZipFile().getRemote());
     }
 
-    public void waitForScanToFinish(String scanId) throws InterruptedException {
-        Map<String, NewCookie> cookies = login();
-        Invocation invocation = root.path(SCAN_STATUS_PATH).resolveTemplate("scanId", scanId)
-                .request()
-                .header(CX_ORIGIN_HEADER, CX_ORIGIN_VALUE)
-                .cookie(cookies.get(CX_COOKIE))
-                .cookie(CSRF_COOKIE, cookies.get(CSRF_COOKIE).getValue())
-                .header(CSRF_COOKIE, cookies.get(CSRF_COOKIE).getValue())
-                .buildGet();
-        sampleScan(invocation);
+    public void waitForScanToFinish(final String scanId) throws InterruptedException {
+        // The session expiring while the scan runs is logged in again
+        sampleScan(new AuthenticatedRequest() {
+            @Override
+            Invocation build() {
+                return root.path(SCAN_STATUS_PATH).resolveTemplate("scanId", scanId)
+                        .request()
+                        .header(CX_ORIGIN_HEADER, CX_ORIGIN_VALUE)
+                        .cookie(cookies.get(CX_COOKIE))
+                        .cookie(CSRF_COOKIE, cookies.get(CSRF_COOKIE).getValue())
+                        .header(CSRF_COOKIE, cookies.get(CSRF_COOKIE).getValue())
+                        .buildGet();
+            }
+        });
     }
 
-    private void sampleScan(Invocation invocation) throws InterruptedException {
-        Boolean scanFinished = false;
-        while (!scanFinished) {
-            Response response = invokeRequest(invocation);
+    private void sampleScan(AuthenticatedRequest request) throws InterruptedException {
+        PollingSchedule schedule = new PollingSchedule(PollingSchedule.Phase.OSA_SCAN);
+        ScanStatus previousStatus = null;
+        while (true) {
+            Response response = invokeAuthenticatedRequest(request);
             validateResponse(response, Response.Status.OK, "error occured while waiting for scan to finish");
-            if (scanFinished(response)) {
-                scanFinished = true;
-            } else {
-                Thread.sleep(5L * 1000);
+            ScanDetails scanStatusResponse = response.readEntity(ScanDetails.class);
+            ScanStatus scanStatus = ScanStatus.fromId(scanStatusResponse.getState().getId());
+            long delay = schedule.nextDelay(scanStatus != previousStatus);
+            previousStatus = scanStatus;
+            if (scanFinished(scanStatus)) {
+                logger.info(schedule.summary());
+                return;
             }
+            Thread.sleep(delay);
         }
     }
 
-    private boolean scanFinished(Response response) {
-        ScanDetails scanStatusResponse = response.readEntity(ScanDetails.class);
-        ScanStatus scanStatus = ScanStatus.fromId(scanStatusResponse.getState().getId());
+    private boolean scanFinished(ScanStatus scanStatus) {
         switch (scanStatus) {
             case NotStarted:
                 return false;
@@ -321,6 +351,28 @@ public class OsaScanClient implements Closeable {
         return response.getCookies();
     }
 
+    /**
+     * Invokes a request made with the cookies of the session, and once again
+     * after logging in when the server rejected the session.
+     */
+    private Response invokeAuthenticatedRequest(AuthenticatedRequest request) {
+        Response response = invokeRequest(request.build());
+        if (response.getStatus() != Response.Status.UNAUTHORIZED.getStatusCode()) {
+            return response;
+        }
+        logger.info("Session was rejected by the Checkmarx server, trying to re-login");
+        response.close();
+        cookies = login();
+        return invokeRequest(request.build());
+    }
+
+    /**
+     * Request built again with the new cookies after a login.
+     */
+    private abstract static class AuthenticatedRequest {
+        abstract Invocation build();
+    }
+
     private Response invokeRequest(Invocation invocation) {
         try {
             return invocation.invoke();
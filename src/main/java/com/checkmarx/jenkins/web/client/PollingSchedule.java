@@ -0,0 +1,116 @@
+package com.checkmarx.jenkins.web.client;
+
+import com.checkmarx.jenkins.CxConfig;
+import org.apache.commons.lang3.time.DurationFormatUtils;
+
+import java.util.Random;
+
+/**
+ * Delays between the polls of a build waiting for the server: a scan, a
+ * report or an OSA scan to finish.
+ * <p>
+ * Polling starts at the minimum interval of the phase and backs off
+ * exponentially while nothing changes, up to the maximum interval. Any
+ * progress brings the interval back to the minimum. A scan near completion
+ * is polled at the minimum interval, a scan queued behind others is polled
+ * less often the deeper it is in the queue. A random jitter keeps the builds
+ * started together from polling together.
+ * <p>
+ * The polls are counted, and summarized to the console of the build once the
+ * wait is over.
+ */
+public class PollingSchedule {
+
+    static final double BACKOFF_FACTOR = 1.5;
+    static final double JITTER = 0.2;
+    // Total progress from which a scan is polled at the minimum interval
+    static final int NEAR_COMPLETION_PERCENT = 90;
+
+    public enum Phase {
+        SCAN("Scan", "scan status", 10, 120),
+        REPORT("Report", "report status", 5, 30),
+        OSA_SCAN("OsaScan", "OSA scan status", 5, 60);
+
+        private final String configurationPrefix;
+        private final String description;
+        private final long defaultMinSec;
+        private final long defaultMaxSec;
+
+        Phase(String configurationPrefix, String description, long defaultMinSec, long defaultMaxSec) {
+            this.configurationPrefix = configurationPrefix;
+            this.description = description;
+            this.defaultMinSec = defaultMinSec;
+            this.defaultMaxSec = defaultMaxSec;
+        }
+
+        public long minIntervalMillis() {
+            return CxConfig.pollingIntervalMillis(configurationPrefix + "PollingMinSec", defaultMinSec);
+        }
+
+        public long maxIntervalMillis() {
+            return Math.max(minIntervalMillis(), CxConfig.pollingIntervalMillis(configurationPrefix + "PollingMaxSec", defaultMaxSec));
+        }
+    }
+
+    private final String description;
+    private final long minIntervalMillis;
+    private final long maxIntervalMillis;
+    private final Random random;
+    private final long startTime = System.currentTimeMillis();
+    private int polls;
+    private int pollsWithoutProgress;
+
+    public PollingSchedule(Phase phase) {
+        this(phase.description, phase.minIntervalMillis(), phase.maxIntervalMillis(), new Random());
+    }
+
+    private PollingSchedule(String description, long minIntervalMillis, long maxIntervalMillis, Random random) {
+        this.description = description;
+        this.minIntervalMillis = minIntervalMillis;
+        this.maxIntervalMillis = maxIntervalMillis;
+        this.random = random;
+    }
+
+    /**
+     * Counts a poll and returns the delay before the next one.
+     *
+     * @param progressed    true if the status changed since the last poll
+     * @param totalPercent  total progress of the scan, 0 when not known
+     * @param queuePosition position of the scan in the queue of the server,
+     *                      0 when not queued
+     */
+    public long nextDelay(boolean progressed, int totalPercent, int queuePosition) {
+        polls++;
+        pollsWithoutProgress = progressed ? 0 : pollsWithoutProgress + 1;
+        if (totalPercent >= NEAR_COMPLETION_PERCENT) {
+            return minIntervalMillis;
+        }
+        double delay = minIntervalMillis * Math.pow(BACKOFF_FACTOR, pollsWithoutProgress);
+        if (queuePosition > 1) {
+            delay = Math.max(delay, (double) minIntervalMillis * queuePosition);
+        }
+        delay = Math.min(delay, maxIntervalMillis) * (1 - JITTER + 2 * JITTER * random.nextDouble());
+        return Math.max(minIntervalMillis, Math.min(maxIntervalMillis, (long) delay));
+    }
+
+    public long nextDelay(boolean progressed) {
+        return nextDelay(progressed, 0, 0);
+    }
+
+    public int getPolls() {
+        return polls;
+    }
+
+    public long getMinIntervalMillis() {
+        return minIntervalMillis;
+    }
+
+    /**
+     * @return the number of polls and the time spent waiting, in the form
+     *         logged to the console
+     */
+    public String summary() {
+        return "Polled the " + description + " " + polls + " times in "
+                + DurationFormatUtils.formatDurationWords(System.currentTimeMillis() - startTime, true, true);
+    }
+}
@@ -0,0 +1,211 @@
+package com.checkmarx.jenkins.web.client;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Status of the scans of all the builds waiting on the same server, polled
+ * with a single batch call per interval instead of a call per scan.
+ * <p>
+ * A build waiting for the next status of its scans registers their run ids
+ * and waits for the next round. A background thread runs a round every
+ * interval while builds are waiting: it asks the statuses of all the scans
+ * at once and hands each build the statuses of its own. Only the scans
+ * missing from the batch response, or all of them when the batch call
+ * failed, are asked one by one, as is a scan waited for alone.
+ * <p>
+ * Each scan is polled alone with the source of the build waiting for it, the
+ * batch call with the source of the last build that registered in the round.
+ * A build that stops waiting takes its scans out of the next round, so a
+ * round does not depend on a build that already ended.
+ *
+ * @param <S> status of a scan
+ */
+public class ScanStatusMultiplexer<S> {
+
+    private static Logger LOGGER = Logger.getLogger(ScanStatusMultiplexer.class.getName());
+    private static final AtomicInteger THREAD_NUMBER = new AtomicInteger();
+
+    public interface StatusSource<S> {
+        /**
+         * @return statuses of all the scans of the server by run id
+         */
+        Map<String, S> fetchAll() throws IOException;
+
+        S fetch(String runId) throws IOException;
+    }
+
+    private final long intervalMillis;
+    // Source of the caller waiting for each scan of the next round
+    private final Map<String, StatusSource<S>> waiting = new LinkedHashMap<>();
+    private Round<S> next = new Round<>();
+    private Thread poller;
+
+    public ScanStatusMultiplexer(long intervalMillis) {
+        this.intervalMillis = intervalMillis;
+    }
+
+    /**
+     * Waits for the next round and returns the statuses of the scans.
+     *
+     * @param runIds run ids of the scans of the caller
+     * @param source used for the scans of the caller, and for the batch call
+     *               of the round unless another caller registers after it
+     * @return statuses by run id, in the order of the run ids
+     * @throws IOException the error of the first scan whose status could not
+     *                     be polled
+     */
+    public Map<String, S> next(Collection<String> runIds, StatusSource<S> source) throws IOException, InterruptedException {
+        Round<S> round;
+        synchronized (this) {
+            for (String runId : runIds) {
+                // Registered again, the run id goes last
+                waiting.remove(runId);
+                waiting.put(runId, source);
+            }
+            round = next;
+            if (poller == null) {
+                startPoller();
+            }
+            try {
+                while (!round.done) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                if (round == next) {
+                    unregister(runIds, source);
+                }
+                throw e;
+            }
+        }
+        Map<String, S> statuses = new LinkedHashMap<>();
+        for (String runId : runIds) {
+            Exception error = round.errors.get(runId);
+            if (error instanceof IOException) {
+                throw (IOException) error;
+            }
+            if (error instanceof RuntimeException) {
+                throw (RuntimeException) error;
+            }
+            S status = round.statuses.get(runId);
+            if (status == null) {
+                // The round ended without polling the scan
+                throw new IOException("Failed to poll the status of the scan with run id " + runId);
+            }
+            statuses.put(runId, status);
+        }
+        return statuses;
+    }
+
+    public S next(String runId, StatusSource<S> source) throws IOException, InterruptedException {
+        return next(Collections.singleton(runId), source).get(runId);
+    }
+
+    private void startPoller() {
+        poller = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                poll();
+            }
+        }, "Checkmarx scan status poller " + THREAD_NUMBER.incrementAndGet());
+        poller.setDaemon(true);
+        poller.start();
+    }
+
+    private void unregister(Collection<String> runIds, StatusSource<S> source) {
+        for (String runId : runIds) {
+            if (waiting.get(runId) == source) {
+                waiting.remove(runId);
+            }
+        }
+    }
+
+    private void poll() {
+        try {
+            while (true) {
+                try {
+                    Thread.sleep(intervalMillis);
+                } catch (InterruptedException e) {
+                    LOGGER.warning("Scan status polling interrupted");
+                }
+                Map<String, StatusSource<S>> runIds;
+                Round<S> round;
+                synchronized (this) {
+                    if (waiting.isEmpty()) {
+                        return;
+                    }
+                    runIds = new LinkedHashMap<>(waiting);
+                    waiting.clear();
+                    round = next;
+                    next = new Round<>();
+                }
+                try {
+                    fetch(runIds, round);
+                } finally {
+                    synchronized (this) {
+                        round.done = true;
+                        notifyAll();
+                    }
+                }
+            }
+        } finally {
+            synchronized (this) {
+                poller = null;
+                // Ended by an error, the callers waiting for the next round still need a poller
+                if (!waiting.isEmpty()) {
+                    startPoller();
+                }
+            }
+        }
+    }
+
+    /**
+     * @param runIds scans of the round with the source of the caller waiting
+     *               for each, in the order they registered
+     */
+    private void fetch(Map<String, StatusSource<S>> runIds, Round<S> round) {
+        Map<String, S> all = null;
+        if (runIds.size() > 1) {
+            try {
+                all = lastRegistered(runIds).fetchAll();
+            } catch (IOException | RuntimeException e) {
+                LOGGER.info("Failed to poll the status of all the scans, polling them one by one: " + e.getMessage());
+            }
+        }
+        for (Map.Entry<String, StatusSource<S>> run : runIds.entrySet()) {
+            String runId = run.getKey();
+            S status = all != null ? all.get(runId) : null;
+            if (status == null) {
+                try {
+                    status = run.getValue().fetch(runId);
+                } catch (IOException | RuntimeException e) {
+                    round.errors.put(runId, e);
+                    continue;
+                }
+            }
+            round.statuses.put(runId, status);
+        }
+    }
+
+    private static <S> StatusSource<S> lastRegistered(Map<String, StatusSource<S>> runIds) {
+        Iterator<StatusSource<S>> sources = runIds.values().iterator();
+        StatusSource<S> last = sources.next();
+        while (sources.hasNext()) {
+            last = sources.next();
+        }
+        return last;
+    }
+
+    private static class Round<S> {
+        private final Map<String, S> statuses = new HashMap<>();
+        private final Map<String, Exception> errors = new HashMap<>();
+        private boolean done;
+    }
+}
@@ -0,0 +1,165 @@
+package com.checkmarx.jenkins.web.client;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+/**
+ * Clients of the Checkmarx servers shared by all the builds and form
+ * validations of the controller, one per server url.
+ * <p>
+ * Connecting to a server takes several round trips (connectivity check,
+ * resolution of the web service url), the result is kept for a time to live. A client older than that is still
+ * returned while a fresh one is connected in the background, and replaces it
+ * once connected; when the server can not be reached any more the client is
+ * dropped and the next caller gets the error. Concurrent callers of a server
+ * not connected yet wait for a single connection.
+ * <p>
+ * The clients must be safe to use from several threads at once.
+ *
+ * @param <C> client of a server
+ */
+public class ServerClientRegistry<C> {
+
+    private static Logger LOGGER = Logger.getLogger(ServerClientRegistry.class.getName());
+
+    public interface Connector<C> {
+        C connect(String serverUrl) throws IOException;
+    }
+
+    private final Connector<C> connector;
+    private final long timeToLiveMillis;
+    private final Map<String, Entry<C>> entries = new HashMap<>();
+    private final ExecutorService revalidator;
+
+    /**
+     * @param timeToLiveMillis age after which a client is connected again in
+     *                         the background, zero or less connects on every
+     *                         call
+     */
+    public ServerClientRegistry(Connector<C> connector, long timeToLiveMillis) {
+        this.connector = connector;
+        this.timeToLiveMillis = timeToLiveMillis;
+        this.revalidator = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "Checkmarx server client revalidation");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public C get(final String serverUrl) throws IOException {
+        if (timeToLiveMillis <= 0) {
+            return connector.connect(serverUrl);
+        }
+        Entry<C> entry;
+        boolean connect = false;
+        synchronized (this) {
+            entry = entries.get(serverUrl);
+            if (entry == null) {
+                entry = new Entry<>(connectTask(serverUrl));
+                entries.put(serverUrl, entry);
+                connect = true;
+            }
+        }
+        if (connect) {
+            entry.client.run();
+        }
+        C client = await(serverUrl, entry);
+        if (entry.isOlderThan(timeToLiveMillis) && entry.revalidating.compareAndSet(false, true)) {
+            revalidate(serverUrl, entry);
+        }
+        return client;
+    }
+
+    /**
+     * Drops the client of the server, the next caller connects again. Called
+     * when the client failed in a way a new connection may fix, the server
+     * moved for example.
+     */
+    public synchronized void invalidate(String serverUrl) {
+        entries.remove(serverUrl);
+    }
+
+    private C await(String serverUrl, Entry<C> entry) throws IOException {
+        try {
+            return entry.client.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while connecting to " + serverUrl);
+        } catch (ExecutionException e) {
+            remove(serverUrl, entry);
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private void revalidate(final String serverUrl, final Entry<C> entry) {
+        revalidator.execute(new Runnable() {
+            @Override
+            public void run() {
+                FutureTask<C> client = connectTask(serverUrl);
+                client.run();
+                try {
+                    client.get();
+                    synchronized (ServerClientRegistry.this) {
+                        if (entries.get(serverUrl) == entry) {
+                            entries.put(serverUrl, new Entry<>(client));
+                        }
+                    }
+                } catch (ExecutionException e) {
+                    LOGGER.warning("Failed to connect again to " + serverUrl + ", its client is dropped: " + e.getCause());
+                    remove(serverUrl, entry);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+    }
+
+    private synchronized void remove(String serverUrl, Entry<C> entry) {
+        if (entries.get(serverUrl) == entry) {
+            entries.remove(serverUrl);
+        }
+    }
+
+    private FutureTask<C> connectTask(final String serverUrl) {
+        return new FutureTask<>(new Callable<C>() {
+            @Override
+            public C call() throws IOException {
+                return connector.connect(serverUrl);
+            }
+        });
+    }
+
+    private static class Entry<C> {
+        private final FutureTask<C> client;
+        private final long createdAt = System.currentTimeMillis();
+        private final AtomicBoolean revalidating = new AtomicBoolean();
+
+        Entry(FutureTask<C> client) {
+            this.client = client;
+        }
+
+        boolean isOlderThan(long millis) {
+            return System.currentTimeMillis() - createdAt > millis;
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package com.checkmarx.jenkins.web.client;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+/**
+ * Sessions of the Checkmarx servers shared by the builds and form validations
+ * logged in with the same credentials, instead of a login for each of them.
+ * <p>
+ * A session is pooled under its server, user name and a hash of the password,
+ * and held by every caller using it until released. Its id is renewed
+ * proactively in the background once older than the renewal age, and on
+ * demand with {@link Session#renew(String)} when the server rejected it; in
+ * both cases a single login is made for all the holders, which read the new
+ * id on their next call.
+ * <p>
+ * The number of sessions pooled per server is capped: when a new session is
+ * needed beyond the cap the least recently used session not held by anyone is
+ * dropped, and when all of them are held the caller waits for one to be
+ * released, up to a maximum wait. The server has no logout, a dropped session
+ * expires on its own.
+ */
+public class SessionPool {
+
+    private static Logger LOGGER = Logger.getLogger(SessionPool.class.getName());
+
+    // Delay before a failed background renewal is tried again
+    static final long RENEWAL_RETRY_MILLIS = 60 * 1000;
+
+    public interface Authenticator {
+        /**
+         * @return id of a new session
+         */
+        String login() throws IOException;
+    }
+
+    private final int maxSessionsPerServer;
+    private final long maxWaitMillis;
+    private final long renewAfterMillis;
+    private final Map<String, Session> sessions = new HashMap<>();
+    private final ExecutorService renewer;
+
+    /**
+     * @param maxSessionsPerServer sessions pooled per server, zero or less for
+     *                             no limit
+     * @param maxWaitMillis        time a caller waits for a session of a full
+     *                             server to be released before failing
+     * @param renewAfterMillis     age after which a session is renewed in the
+     *                             background, zero or less never renews it
+     *                             before the server rejects it
+     */
+    public SessionPool(int maxSessionsPerServer, long maxWaitMillis, long renewAfterMillis) {
+        this.maxSessionsPerServer = maxSessionsPerServer;
+        this.maxWaitMillis = maxWaitMillis;
+        this.renewAfterMillis = renewAfterMillis;
+        this.renewer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "Checkmarx session renewal");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Returns the session of the credentials, logged in with the
+     * authenticator if there is none yet. The session must be released once
+     * the caller is done with it.
+     *
+     * @throws IOException          when no session of the full server was
+     *                              released within the maximum wait
+     * @throws InterruptedException while waiting for a session of the server
+     *                              to be released
+     */
+    public Session acquire(String serverUrl, @Nullable String username, @Nullable String password, Authenticator authenticator)
+            throws IOException, InterruptedException {
+        String server = StringUtils.removeEnd(serverUrl.trim(), "/");
+        String key = server + "\n" + StringUtils.defaultString(username) + "\n" + DigestUtils.sha256Hex(StringUtils.defaultString(password));
+        Session session;
+        synchronized (this) {
+            session = sessions.get(key);
+            long deadline = System.currentTimeMillis() + maxWaitMillis;
+            while (session == null && isFull(server) && !dropIdle(server)) {
+                long remainingMillis = deadline - System.currentTimeMillis();
+                if (remainingMillis <= 0) {
+                    throw new IOException("All the " + maxSessionsPerServer + " sessions to " + server + " are in use by other credentials, none was released within "
+                            + TimeUnit.MILLISECONDS.toSeconds(maxWaitMillis) + " seconds. Raise MaxSessionsPerServer in cxconfig.xml, or set it to 0 for no limit");
+                }
+                LOGGER.info("All the " + maxSessionsPerServer + " sessions to " + server + " are in use, waiting for one to be released");
+                wait(remainingMillis);
+                session = sessions.get(key);
+            }
+            if (session == null) {
+                session = new Session(key, server);
+                sessions.put(key, session);
+            }
+            session.holders++;
+            session.authenticator = authenticator;
+        }
+        try {
+            session.login();
+        } catch (IOException | RuntimeException e) {
+            session.release();
+            synchronized (this) {
+                if (session.id == null && session.holders == 0) {
+                    remove(session);
+                }
+            }
+            throw e;
+        }
+        return session;
+    }
+
+    /**
+     * @return true if the error message of a call tells the session was
+     *         rejected, expired or logged out by the server
+     */
+    public static boolean isRejection(@Nullable String message) {
+        return message != null && (message.contains("Unauthorized") || message.contains("ReConnect"));
+    }
+
+    private boolean isFull(String serverUrl) {
+        if (maxSessionsPerServer <= 0) {
+            return false;
+        }
+        int count = 0;
+        for (Session session : sessions.values()) {
+            if (session.serverUrl.equals(serverUrl)) {
+                count++;
+            }
+        }
+        return count >= maxSessionsPerServer;
+    }
+
+    /**
+     * @return true if an idle session of the server was dropped
+     */
+    private boolean dropIdle(String serverUrl) {
+        Session leastRecentlyUsed = null;
+        for (Session session : sessions.values()) {
+            if (session.serverUrl.equals(serverUrl) && session.holders == 0
+                    && (leastRecentlyUsed == null || session.lastUsed < leastRecentlyUsed.lastUsed)) {
+                leastRecentlyUsed = session;
+            }
+        }
+        if (leastRecentlyUsed == null) {
+            return false;
+        }
+        remove(leastRecentlyUsed);
+        return true;
+    }
+
+    private void remove(Session session) {
+        if (sessions.get(session.key) == session) {
+            sessions.remove(session.key);
+            notifyAll();
+        }
+    }
+
+    /**
+     * Session shared by the callers logged in with the same credentials.
+     */
+    public class Session {
+        private final String key;
+        private final String serverUrl;
+        private final Object loginLock = new Object();
+        private final AtomicBoolean renewing = new AtomicBoolean();
+        private volatile String id;
+        private volatile long renewAt;
+        private volatile long lastUsed = System.currentTimeMillis();
+        // Guarded by the pool
+        private int holders;
+        private Authenticator authenticator;
+
+        Session(String key, String serverUrl) {
+            this.key = key;
+            this.serverUrl = serverUrl;
+        }
+
+        /**
+         * @return id of the session, renewed in the background when old
+         */
+        public String getId() {
+            lastUsed = System.currentTimeMillis();
+            if (renewAfterMillis > 0 && id != null && lastUsed > renewAt && renewing.compareAndSet(false, true)) {
+                renewInBackground(id);
+            }
+            return id;
+        }
+
+        /**
+         * Logs in again unless another holder already did since the id was
+         * rejected.
+         *
+         * @param rejectedId id the server rejected
+         * @return the new id of the session
+         */
+        public String renew(String rejectedId) throws IOException {
+            synchronized (loginLock) {
+                if (id != null && !id.equals(rejectedId)) {
+                    return id;
+                }
+                LOGGER.info("Session to " + serverUrl + " rejected by the server, logging in again");
+                loginNow();
+                return id;
+            }
+        }
+
+        /**
+         * Stops holding the session, it stays in the pool for the next
+         * callers.
+         */
+        public void release() {
+            synchronized (SessionPool.this) {
+                if (holders > 0) {
+                    holders--;
+                }
+                if (holders == 0) {
+                    SessionPool.this.notifyAll();
+                }
+            }
+        }
+
+        void login() throws IOException {
+            synchronized (loginLock) {
+                if (id == null) {
+                    loginNow();
+                }
+            }
+        }
+
+        private void loginNow() throws IOException {
+            Authenticator current;
+            synchronized (SessionPool.this) {
+                current = authenticator;
+            }
+            String newId = current.login();
+            renewAt = System.currentTimeMillis() + renewAfterMillis;
+            id = newId;
+        }
+
+        private void renewInBackground(final String oldId) {
+            renewer.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        synchronized (loginLock) {
+                            if (oldId.equals(id)) {
+                                loginNow();
+                            }
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        // The session is renewed again once the server rejects it
+                        LOGGER.warning("Failed to renew the session to " + serverUrl + ": " + e.getMessage());
+                        renewAt = System.currentTimeMillis() + RENEWAL_RETRY_MILLIS;
+                    } finally {
+                        renewing.set(false);
+                    }
+                }
+            });
+        }
+    }
+}
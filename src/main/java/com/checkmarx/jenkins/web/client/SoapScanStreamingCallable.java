@@ -0,0 +1,98 @@
+package com.checkmarx.jenkins.web.client;
+
+import com.checkmarx.jenkins.CxSSLUtility;
+import com.checkmarx.jenkins.filesystem.zip.Zipper;
+import com.checkmarx.jenkins.filesystem.zip.callable.SastZipperCallable;
+import com.checkmarx.jenkins.filesystem.zip.dto.ZippingDetails;
+import com.checkmarx.jenkins.logger.CxPluginLogger;
+import hudson.FilePath;
+import hudson.model.TaskListener;
+import hudson.remoting.VirtualChannel;
+import org.apache.commons.codec.binary.Base64OutputStream;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.jetbrains.annotations.Nullable;
+import org.jenkinsci.remoting.Role;
+import org.jenkinsci.remoting.RoleChecker;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.stream.XMLStreamException;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Serializable;
+
+/**
+ * Zips the workspace into the body of the scan request while it is uploaded:
+ * walk, zip, base 64 encoding and upload run in one pass on the node holding
+ * the workspace, without a temporary file.
+ * <p>
+ * A failure of the zipper is thrown as the {@link Zipper.ZipperException} it
+ * is, a failure of the upload as the IOException of the connection.
+ */
+public class SoapScanStreamingCallable implements FilePath.FileCallable<SoapScanUploadCallable.Result>, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final SoapScanUpload soapScanUpload;
+    private final SastZipperCallable zipperCallable;
+    private final boolean disableCertificateValidation;
+    @Nullable
+    private final TaskListener listener;
+
+    /**
+     * @param listener Console of the build, the logger writing to it is
+     *                 created on the node; may be null
+     */
+    public SoapScanStreamingCallable(SoapScanUpload soapScanUpload, SastZipperCallable zipperCallable,
+                                     boolean disableCertificateValidation, @Nullable TaskListener listener) {
+        this.soapScanUpload = soapScanUpload;
+        this.zipperCallable = zipperCallable;
+        this.disableCertificateValidation = disableCertificateValidation;
+        this.listener = listener;
+    }
+
+    @Override
+    public SoapScanUploadCallable.Result invoke(final File workspace, VirtualChannel channel) throws IOException, InterruptedException {
+        CxPluginLogger logger = listener != null ? new CxPluginLogger(listener) : new CxPluginLogger();
+        if (disableCertificateValidation) {
+            CxSSLUtility.disableSSLCertificateVerification(logger);
+        }
+        final ZippingDetails[] zippingDetails = new ZippingDetails[1];
+        final CountingOutputStream[] base64Bytes = new CountingOutputStream[1];
+        final IOException[] uploadFailure = new IOException[1];
+        try {
+            SoapScanUploadCallable.Result result = new SoapScanUploadCallable.Result(soapScanUpload.sendChunked(new SoapScanUpload.Body() {
+                @Override
+                public void writeTo(OutputStream outputStream) throws IOException {
+                    // The zipper closes the base 64 stream, which writes the final padding
+                    base64Bytes[0] = new CountingOutputStream(outputStream) {
+                        @Override
+                        protected void handleIOException(IOException e) throws IOException {
+                            // The zipper wraps the failures of its output, they are told apart from its own here
+                            uploadFailure[0] = e;
+                            throw e;
+                        }
+                    };
+                    zippingDetails[0] = zipperCallable.zipSources(workspace, new Base64OutputStream(base64Bytes[0], true, 0, null));
+                }
+            }));
+            logger.info("Zipping complete with " + zippingDetails[0].getNumOfZippedFiles() + " files, total compressed size: "
+                    + FileUtils.byteCountToDisplaySize(zippingDetails[0].getZipSize()) + ", uploaded: "
+                    + FileUtils.byteCountToDisplaySize(base64Bytes[0].getByteCount()));
+            logger.info(zippingDetails[0].getZippingLog());
+            return result;
+        } catch (Zipper.ZipperException e) {
+            if (uploadFailure[0] != null) {
+                throw uploadFailure[0];
+            }
+            throw e;
+        } catch (JAXBException | XMLStreamException e) {
+            throw new IOException("Failed to parse the scan submission response: " + e.getMessage(), e);
+        }
+    }
+
+    public void checkRoles(RoleChecker roleChecker) throws SecurityException {
+        roleChecker.check(this, Role.UNKNOWN);
+    }
+}
@@ -0,0 +1,119 @@
+package com.checkmarx.jenkins.web.client;
+
+import com.checkmarx.jenkins.xmlresponseparser.XmlResponseParser;
+import com.checkmarx.ws.CxJenkinsWebService.CxWSResponseRunID;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+import org.apache.commons.io.output.CountingOutputStream;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.stream.XMLStreamException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Streaming POST of a scan SOAP request: the head of the message, the zipped
+ * sources encoded with base 64 and the tail of the message.
+ * <p>
+ * Serializable so that the upload can run on the node holding the zipped
+ * sources, see {@link SoapScanUploadCallable}.
+ */
+public class SoapScanUpload implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final URL webServiceUrl;
+    private final String soapActionName;
+    private final byte[] soapMessageHead;
+    private final byte[] soapMessageTail;
+    private final XmlResponseParser xmlResponseParser;
+
+    public SoapScanUpload(URL webServiceUrl, String soapActionName, byte[] soapMessageHead, byte[] soapMessageTail,
+                          XmlResponseParser xmlResponseParser) {
+        this.webServiceUrl = webServiceUrl;
+        this.soapActionName = soapActionName;
+        this.soapMessageHead = soapMessageHead;
+        this.soapMessageTail = soapMessageTail;
+        this.xmlResponseParser = xmlResponseParser;
+    }
+
+    /**
+     * @param base64ZipFile       zipped sources encoded with base 64
+     * @param base64ZipFileLength number of bytes in base64ZipFile
+     * @return the parsed server response
+     * @throws UploadInterruptedException if the connection dropped while the
+     *                                    request was sent
+     */
+    public CxWSResponseRunID send(InputStream base64ZipFile, long base64ZipFileLength) throws IOException, JAXBException, XMLStreamException {
+        final HttpURLConnection streamingUrlConnection = openConnection();
+        // Calculate the length of the soap message, archives may exceed 2 GB
+        final long length = soapMessageHead.length + soapMessageTail.length + base64ZipFileLength;
+        streamingUrlConnection.setFixedLengthStreamingMode(length);
+        streamingUrlConnection.connect();
+
+        final CountingOutputStream os = new CountingOutputStream(streamingUrlConnection.getOutputStream());
+        try {
+            os.write(soapMessageHead);
+            IOUtils.copyLarge(base64ZipFile, os);
+            os.write(soapMessageTail);
+            os.close();
+        } catch (IOException e) {
+            throw new UploadInterruptedException(os.getByteCount(), length, e);
+        }
+
+        return xmlResponseParser.parse(streamingUrlConnection.getInputStream());
+    }
+
+    /**
+     * Sends the request with chunked transfer encoding, the zipped sources are
+     * written by the body while they are uploaded and their length does not
+     * need to be known.
+     *
+     * @throws ChunkedUploadNotSupportedException if the server requires the
+     *                                            length of the request
+     */
+    public CxWSResponseRunID sendChunked(Body base64ZipFile) throws IOException, JAXBException, XMLStreamException {
+        final HttpURLConnection streamingUrlConnection = openConnection();
+        streamingUrlConnection.setChunkedStreamingMode(CHUNK_SIZE);
+        streamingUrlConnection.connect();
+
+        try {
+            final OutputStream os = streamingUrlConnection.getOutputStream();
+            os.write(soapMessageHead);
+            base64ZipFile.writeTo(new CloseShieldOutputStream(os));
+            os.write(soapMessageTail);
+            os.close();
+        } catch (IOException e) {
+            // Drop the connection, closing the stream would send an incomplete message as a complete one
+            streamingUrlConnection.disconnect();
+            throw e;
+        }
+
+        if (streamingUrlConnection.getResponseCode() == HttpURLConnection.HTTP_LENGTH_REQUIRED) {
+            throw new ChunkedUploadNotSupportedException("Checkmarx server does not accept chunked uploads");
+        }
+        return xmlResponseParser.parse(streamingUrlConnection.getInputStream());
+    }
+
+    private HttpURLConnection openConnection() throws IOException {
+        final HttpURLConnection streamingUrlConnection = (HttpURLConnection) webServiceUrl.openConnection();
+        streamingUrlConnection.addRequestProperty("Content-Type", "text/xml; charset=utf-8");
+        streamingUrlConnection.addRequestProperty("SOAPAction",
+                String.format("\"http://Checkmarx.com/v7/%s\"", soapActionName));
+        streamingUrlConnection.setDoOutput(true);
+        return streamingUrlConnection;
+    }
+
+    /**
+     * Zipped sources encoded with base 64, written while the request is sent.
+     */
+    public interface Body {
+        void writeTo(OutputStream outputStream) throws IOException;
+    }
+}
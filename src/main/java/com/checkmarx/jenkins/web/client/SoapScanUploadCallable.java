@@ -0,0 +1,92 @@
+package com.checkmarx.jenkins.web.client;
+
+import com.checkmarx.jenkins.CxSSLUtility;
+import com.checkmarx.jenkins.logger.CxPluginLogger;
+import com.checkmarx.ws.CxJenkinsWebService.CxWSResponseRunID;
+import hudson.FilePath;
+import hudson.model.TaskListener;
+import hudson.remoting.VirtualChannel;
+import org.jetbrains.annotations.Nullable;
+import org.jenkinsci.remoting.Role;
+import org.jenkinsci.remoting.RoleChecker;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.stream.XMLStreamException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+
+/**
+ * Uploads the zipped sources to the Checkmarx server from the node holding
+ * them, so that they do not travel through the Jenkins master. Only the
+ * parsed server response is sent back.
+ */
+public class SoapScanUploadCallable implements FilePath.FileCallable<SoapScanUploadCallable.Result>, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final SoapScanUpload soapScanUpload;
+    private final boolean disableCertificateValidation;
+    @Nullable
+    private final TaskListener listener;
+
+    /**
+     * @param listener Console of the build, the logger writing to it is
+     *                 created on the node; may be null
+     */
+    public SoapScanUploadCallable(SoapScanUpload soapScanUpload, boolean disableCertificateValidation, @Nullable TaskListener listener) {
+        this.soapScanUpload = soapScanUpload;
+        this.disableCertificateValidation = disableCertificateValidation;
+        this.listener = listener;
+    }
+
+    @Override
+    public Result invoke(File base64ZipFile, VirtualChannel channel) throws IOException, InterruptedException {
+        if (disableCertificateValidation) {
+            CxSSLUtility.disableSSLCertificateVerification(listener != null ? new CxPluginLogger(listener) : new CxPluginLogger());
+        }
+        InputStream inputStream = new FileInputStream(base64ZipFile);
+        try {
+            return new Result(soapScanUpload.send(inputStream, base64ZipFile.length()));
+        } catch (JAXBException | XMLStreamException e) {
+            throw new IOException("Failed to parse the scan submission response: " + e.getMessage(), e);
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    public void checkRoles(RoleChecker roleChecker) throws SecurityException {
+        roleChecker.check(this, Role.UNKNOWN);
+    }
+
+    /**
+     * Serializable copy of the {@link CxWSResponseRunID} returned by the server.
+     */
+    public static class Result implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final boolean successful;
+        private final String errorMessage;
+        private final long projectId;
+        private final String runId;
+
+        Result(CxWSResponseRunID cxWSResponseRunID) {
+            this.successful = cxWSResponseRunID.isIsSuccesfull();
+            this.errorMessage = cxWSResponseRunID.getErrorMessage();
+            this.projectId = cxWSResponseRunID.getProjectID();
+            this.runId = cxWSResponseRunID.getRunId();
+        }
+
+        public CxWSResponseRunID toCxWSResponseRunID() {
+            CxWSResponseRunID cxWSResponseRunID = new CxWSResponseRunID();
+            cxWSResponseRunID.setIsSuccesfull(successful);
+            cxWSResponseRunID.setErrorMessage(errorMessage);
+            cxWSResponseRunID.setProjectID(projectId);
+            cxWSResponseRunID.setRunId(runId);
+            return cxWSResponseRunID;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.checkmarx.jenkins.web.client;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.IOException;
+
+/**
+ * Thrown when the connection drops while the sources are uploaded. The
+ * request never reached the server as a whole, so it is safe to send again.
+ */
+public class UploadInterruptedException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long bytesSent;
+    private final long length;
+
+    public UploadInterruptedException(long bytesSent, long length, IOException cause) {
+        super("Upload interrupted after " + FileUtils.byteCountToDisplaySize(bytesSent) + " of "
+                + FileUtils.byteCountToDisplaySize(length) + ": " + cause.getMessage(), cause);
+        this.bytesSent = bytesSent;
+        this.length = length;
+    }
+
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    public long getLength() {
+        return length;
+    }
+}
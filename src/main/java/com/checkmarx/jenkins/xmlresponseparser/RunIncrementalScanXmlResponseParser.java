@@ -16,6 +16,9 @@ import java.io.InputStream;
  * Created by ehuds on 16/11/2015.
  */
 public class RunIncrementalScanXmlResponseParser implements XmlResponseParser {
+
+    private static final long serialVersionUID = 1L;
+
     @Override
     public CxWSResponseRunID parse(InputStream inputStream) throws XMLStreamException, JAXBException {
         XMLInputFactory xif = XMLInputFactory.newFactory();
@@ -15,6 +15,9 @@ import java.io.InputStream;
  * Created by ehuds on 15/11/2015.
  */
 public class RunScanAndAddToProjectXmlResponseParser implements XmlResponseParser {
+
+    private static final long serialVersionUID = 1L;
+
     @Override
     public CxWSResponseRunID parse(InputStream inputStream) throws XMLStreamException, JAXBException {
         XMLInputFactory xif = XMLInputFactory.newFactory();
@@ -5,10 +5,11 @@ import com.checkmarx.ws.CxJenkinsWebService.CxWSResponseRunID;
 import javax.xml.bind.JAXBException;
 import javax.xml.stream.XMLStreamException;
 import java.io.InputStream;
+import java.io.Serializable;
 
 /**
  * Created by ehuds on 15/11/2015.
  */
-public interface XmlResponseParser {
+public interface XmlResponseParser extends Serializable {
     public CxWSResponseRunID parse(InputStream inputStream) throws XMLStreamException, JAXBException;
 }
@@ -0,0 +1,119 @@
+package com.checkmarx.jenkins;
+
+import com.checkmarx.jenkins.filesystem.layout.BuildLayout;
+import com.checkmarx.jenkins.filesystem.zip.CompiledPathFilter;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BuildLayoutTests {
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File workspace;
+
+    @Before
+    public void createWorkspace() throws IOException {
+        workspace = temporaryFolder.newFolder("workspace");
+    }
+
+    @Test
+    public void detect_mavenMultiModule_targetOfEveryModule() throws IOException {
+        TestFiles.writeFile(workspace, "pom.xml", "<project><modules><module>service</module></modules></project>");
+        TestFiles.writeFile(workspace, "target/app.jar", "jar");
+        TestFiles.writeFile(workspace, "service/pom.xml", "<project><build><directory>${project.basedir}/out</directory></build></project>");
+        TestFiles.writeFile(workspace, "service/out/classes/Service.class", "class");
+        TestFiles.writeFile(workspace, "service/target/notAnOutput.txt", "text");
+        TestFiles.writeFile(workspace, "service/src/main/java/Service.java", "class Service {}");
+
+        BuildLayout buildLayout = BuildLayout.detect(workspace);
+
+        assertEquals(Arrays.asList("service/out", "target"), directories(buildLayout));
+        assertEquals(8, buildLayout.getExcludedBytes());
+    }
+
+    @Test
+    public void detect_dependencyDirectories_excludedOnceAndNotEntered() throws IOException {
+        TestFiles.writeFile(workspace, "web/package.json", "{\"name\": \"web\", \"scripts\": {\"build\": \"webpack\"}}");
+        TestFiles.writeFile(workspace, "web/node_modules/lib/package.json", "{\"name\": \"lib\"}");
+        TestFiles.writeFile(workspace, "web/node_modules/lib/node_modules/other/index.js", "js");
+        TestFiles.writeFile(workspace, "web/dist/bundle.js", "js");
+        TestFiles.writeFile(workspace, "php/composer.json", "{\"config\": {\"vendor-dir\": \"libs\"}}");
+        TestFiles.writeFile(workspace, "php/libs/autoload.php", "php");
+        TestFiles.writeFile(workspace, "go/go.mod", "module example.com/go");
+        TestFiles.writeFile(workspace, "go/vendor/modules.txt", "# example.com/dep");
+        TestFiles.writeFile(workspace, "go/vendor/example.com/dep/dep.go", "package dep");
+        TestFiles.writeFile(workspace, "dotnet/App.sln", "");
+        TestFiles.writeFile(workspace, "dotnet/App/App.csproj", "<Project><PropertyGroup><OutputPath>artifacts\\Release\\</OutputPath></PropertyGroup></Project>");
+        TestFiles.writeFile(workspace, "dotnet/App/obj/project.assets.json", "{}");
+        TestFiles.writeFile(workspace, "dotnet/App/artifacts/Release/App.dll", "dll");
+        TestFiles.writeFile(workspace, "dotnet/packages/Newtonsoft.Json/lib.dll", "dll");
+
+        BuildLayout buildLayout = BuildLayout.detect(workspace);
+
+        assertEquals(Arrays.asList("dotnet/App/artifacts", "dotnet/App/bin", "dotnet/App/obj", "dotnet/packages", "go/vendor",
+                "php/libs", "web/.next", "web/.yarn/cache", "web/bower_components", "web/build", "web/dist", "web/node_modules"),
+                directories(buildLayout));
+    }
+
+    @Test
+    public void detect_directoriesNotCreatedYet_excludedWithoutSize() throws IOException {
+        TestFiles.writeFile(workspace, "pom.xml", "<project/>");
+        TestFiles.writeFile(workspace, "src/main/java/Main.java", "class Main {}");
+
+        BuildLayout buildLayout = BuildLayout.detect(workspace);
+
+        assertEquals(Arrays.asList("target"), directories(buildLayout));
+        assertFalse(buildLayout.getExclusions().get(0).isExisting());
+        assertEquals(0, buildLayout.getExcludedBytes());
+        CompiledPathFilter filter = CompiledPathFilter.forFilterPattern("**/*," + buildLayout.toFilterPattern());
+        assertFalse(filter.isIncluded("target/classes/Main.class"));
+        assertTrue(filter.isIncluded("src/main/java/Main.java"));
+    }
+
+    @Test
+    public void detect_noBuildFiles_nothingExcluded() throws IOException {
+        TestFiles.writeFile(workspace, "target/file.txt", "text");
+        TestFiles.writeFile(workspace, "node_modules/lib/index.js", "js");
+
+        BuildLayout buildLayout = BuildLayout.detect(workspace);
+
+        assertTrue(buildLayout.getExclusions().isEmpty());
+        assertEquals("", buildLayout.toFilterPattern());
+    }
+
+    @Test
+    public void toFilterPattern_excludesOnlyTheDetectedDirectories() throws IOException {
+        TestFiles.writeFile(workspace, "build.gradle", "buildDir = 'gradle-out'");
+        TestFiles.writeFile(workspace, "gradle-out/classes/Main.class", "class");
+        TestFiles.writeFile(workspace, "build/generated/Main.java", "class Main {}");
+
+        CompiledPathFilter filter = CompiledPathFilter.forFilterPattern(
+                "**/*, !**/*.txt," + BuildLayout.detect(workspace).toFilterPattern());
+
+        assertFalse(filter.isIncluded("gradle-out/classes/Main.class"));
+        assertFalse(filter.isTraversable("gradle-out"));
+        assertTrue(filter.isIncluded("build/generated/Main.java"));
+        assertTrue(filter.isIncluded("build.gradle"));
+    }
+
+    private static List<String> directories(BuildLayout buildLayout) {
+        List<String> directories = new ArrayList<>();
+        for (BuildLayout.Exclusion exclusion : buildLayout.getExclusions()) {
+            directories.add(exclusion.getDirectory());
+        }
+        return directories;
+    }
+}
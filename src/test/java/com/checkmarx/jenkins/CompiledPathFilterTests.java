@@ -0,0 +1,113 @@
+package com.checkmarx.jenkins;
+
+import com.checkmarx.jenkins.filesystem.zip.CompiledPathFilter;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.tools.ant.types.selectors.SelectorUtils;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CompiledPathFilterTests {
+
+    private static final String[] PATHS = {
+            "pom.xml", "POM.XML", "src/Main.java", "src/Main.CLASS", "src/main/resources/logo.png",
+            "node_modules/lodash/index.js", "web/node_modules/a/b.js", "web/node_modules",
+            ".git/config", "module/.GIT/objects/ab/cd", "archive.tar.gz", "docs/x.tar.gz.txt",
+            "Checkmarx/Reports/report.xml", "Checkmarx/Reports/sub/report.xml", "a/Checkmarx/Reports/report.xml",
+            "build/classes/A.class", "test/.DS_Store", "generated/sources/Gen.java", "generated",
+            "lib/a.jar", "src/bin.java", "bin/tool.sh", "x/y/z/Test.cs", "Makefile"
+    };
+
+    @Test
+    public void isIncluded_defaultPatternWithFolders_sameAsAntMatcher() throws IOException {
+        String filterPattern = defaultFilterPattern() + ", !**/node_modules/**/*, !**/generated/**, !src/main/resources/**/*";
+
+        assertSameAsAnt(filterPattern);
+    }
+
+    @Test
+    public void isIncluded_includePatterns_sameAsAntMatcher() {
+        assertSameAsAnt("**/*.java, Makefile, pom.xml, !**/generated/**/*, !src/bin.java");
+        assertSameAsAnt("src/**/*, **/*.cs, !**/*.class");
+        assertSameAsAnt("");
+    }
+
+    @Test
+    public void isTraversable_excludedFolders_subtreePruned() {
+        CompiledPathFilter filter = CompiledPathFilter.forFilterPattern("!**/node_modules/**/*, !**/.git/**/*, !Checkmarx/Reports/**");
+
+        assertFalse(filter.isTraversable(path("web/node_modules")));
+        assertFalse(filter.isTraversable(path(".GIT")));
+        assertFalse(filter.isTraversable(path("Checkmarx/Reports")));
+        assertTrue(filter.isTraversable(path("Checkmarx")));
+        assertTrue(filter.isTraversable(path("src/main")));
+    }
+
+    @Test
+    public void isTraversable_includePatterns_unreachableFoldersPruned() {
+        CompiledPathFilter filter = CompiledPathFilter.forFilterPattern("src/**/*.java, pom.xml");
+
+        assertTrue(filter.isTraversable(path("src/main")));
+        assertFalse(filter.isTraversable(path("docs")));
+    }
+
+    @Test
+    public void forFilterPattern_samePattern_compiledOnce() {
+        assertSame(CompiledPathFilter.forFilterPattern("!**/*.tmp, !**/obj/**/*"),
+                CompiledPathFilter.forFilterPattern("!**/*.tmp, !**/obj/**/*"));
+    }
+
+    private static void assertSameAsAnt(String filterPattern) {
+        CompiledPathFilter filter = CompiledPathFilter.forFilterPattern(filterPattern);
+        List<String> includes = new ArrayList<>();
+        List<String> excludes = new ArrayList<>();
+        for (String pattern : StringUtils.split(filterPattern, ",\n")) {
+            pattern = path(pattern.trim());
+            if (pattern.startsWith("!")) {
+                excludes.add(pattern.substring(1));
+            } else if (!pattern.isEmpty()) {
+                includes.add(pattern);
+            }
+        }
+
+        for (String path : PATHS) {
+            String relativePath = path(path);
+            boolean expected = (includes.isEmpty() || matchesAny(includes, relativePath)) && !matchesAny(excludes, relativePath);
+            assertEquals(filterPattern + " -> " + path, expected, filter.isIncluded(relativePath));
+        }
+    }
+
+    private static boolean matchesAny(List<String> patterns, String path) {
+        for (String pattern : patterns) {
+            if (SelectorUtils.matchPath(pattern, path, false)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String path(String path) {
+        return path.replace('/', File.separatorChar);
+    }
+
+    private static String defaultFilterPattern() throws IOException {
+        Properties properties = new Properties();
+        InputStream inputStream = CompiledPathFilterTests.class.getResourceAsStream("cxconfig.xml");
+        try {
+            properties.loadFromXML(inputStream);
+        } finally {
+            inputStream.close();
+        }
+        return properties.getProperty("DefaultFilterPattern");
+    }
+}
@@ -0,0 +1,22 @@
+package com.checkmarx.jenkins;
+
+import hudson.util.AbstractTaskListener;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+/**
+ * Console of a build, serializable like the listeners sent to the nodes. All
+ * the copies write to the same console.
+ */
+class ConsoleListener extends AbstractTaskListener {
+
+    private static final long serialVersionUID = 1L;
+
+    static final ByteArrayOutputStream CONSOLE = new ByteArrayOutputStream();
+
+    @Override
+    public PrintStream getLogger() {
+        return new PrintStream(CONSOLE, true);
+    }
+}
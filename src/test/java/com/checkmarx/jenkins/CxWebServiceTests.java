@@ -0,0 +1,42 @@
+package com.checkmarx.jenkins;
+
+import com.checkmarx.ws.CxJenkinsWebService.CxJenkinsWebService;
+import com.checkmarx.ws.CxJenkinsWebService.CxJenkinsWebServiceSoap;
+import com.checkmarx.ws.CxWSResolver.CxWSResolver;
+import org.junit.Test;
+
+import javax.xml.ws.BindingProvider;
+import java.net.URL;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+
+public class CxWebServiceTests {
+
+    // Any download of the WSDL from these servers fails
+    private static final String UNREACHABLE_SERVER = "http://checkmarx.invalid";
+    private static final String OTHER_UNREACHABLE_SERVER = "http://other-checkmarx.invalid";
+
+    @Test
+    public void getCxWSResolver_unreachableServer_builtFromBundledWsdl() throws Exception {
+        CxWSResolver resolver = CxWebService.getCxWSResolver(new URL(UNREACHABLE_SERVER + "/cxwebinterface/cxwsresolver.asmx"));
+
+        assertSame(resolver, CxWebService.getCxWSResolver(new URL(OTHER_UNREACHABLE_SERVER + "/cxwebinterface/cxwsresolver.asmx")));
+        assertNotNull(resolver.getCxWSResolverSoap());
+    }
+
+    @Test
+    public void getJenkinsWebServiceSoap_unreachableServer_portWithEndpointOfServer() throws Exception {
+        URL webServiceUrl = new URL(UNREACHABLE_SERVER + "/cxwebinterface/Jenkins/CxJenkinsWebService.asmx");
+        URL otherWebServiceUrl = new URL(OTHER_UNREACHABLE_SERVER + "/cxwebinterface/Jenkins/CxJenkinsWebService.asmx");
+        CxJenkinsWebService webService = CxWebService.getJenkinsWebService(webServiceUrl);
+
+        CxJenkinsWebServiceSoap port = CxWebService.getJenkinsWebServiceSoap(webService, webServiceUrl);
+        CxJenkinsWebServiceSoap otherPort = CxWebService.getJenkinsWebServiceSoap(CxWebService.getJenkinsWebService(otherWebServiceUrl), otherWebServiceUrl);
+
+        assertEquals(webServiceUrl.toString(), ((BindingProvider) port).getRequestContext().get(BindingProvider.ENDPOINT_ADDRESS_PROPERTY));
+        assertEquals(otherWebServiceUrl.toString(), ((BindingProvider) otherPort).getRequestContext().get(BindingProvider.ENDPOINT_ADDRESS_PROPERTY));
+        assertSame(webService, CxWebService.getJenkinsWebService(otherWebServiceUrl));
+    }
+}
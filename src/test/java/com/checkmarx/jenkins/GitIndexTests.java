@@ -0,0 +1,133 @@
+package com.checkmarx.jenkins;
+
+import com.checkmarx.jenkins.filesystem.zip.CompiledPathFilter;
+import com.checkmarx.jenkins.filesystem.zip.GitIndex;
+import com.checkmarx.jenkins.filesystem.zip.WorkspaceFile;
+import com.checkmarx.jenkins.filesystem.zip.WorkspaceManifestTracker;
+import com.checkmarx.jenkins.filesystem.zip.WorkspaceWalker;
+import org.apache.commons.io.FileUtils;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class GitIndexTests {
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File workspace;
+
+    @Before
+    public void createWorkTree() throws IOException, InterruptedException {
+        workspace = temporaryFolder.newFolder("workspace");
+        Assume.assumeTrue("git is not available", git("init", "-q"));
+        TestFiles.writeFile(workspace, "src/Main.java", "class Main {}");
+        TestFiles.writeFile(workspace, "src/util/Helper.java", "class Helper {}");
+        TestFiles.writeFile(workspace, "pom.xml", "<project/>");
+        git("add", ".");
+        TestFiles.writeFile(workspace, "src/Untracked.java", "class Untracked {}");
+        TestFiles.writeFile(workspace, "target/classes/Main.class", "binary");
+    }
+
+    @Test
+    public void walk_gitIndex_onlyTrackedFiles() throws Exception {
+        assertEquals(paths("pom.xml", "src/Main.java", "src/util/Helper.java"), walk(workspace, "", true));
+        assertEquals(paths("src/Main.java"), walk(workspace, "**/*.java, !**/util/**/*", true));
+    }
+
+    @Test
+    public void walk_notGitWorkTree_walksFileSystem() throws Exception {
+        FileUtils.deleteDirectory(new File(workspace, ".git"));
+
+        assertNull(GitIndex.read(workspace));
+        assertEquals(paths("pom.xml", "src/Main.java", "src/util/Helper.java", "src/Untracked.java", "target/classes/Main.class"),
+                walk(workspace, "", true));
+    }
+
+    @Test
+    public void read_indexVersion4_sameEntries() throws Exception {
+        git("update-index", "--index-version", "4");
+
+        assertEquals(paths("pom.xml", "src/Main.java", "src/util/Helper.java"), walk(workspace, "", true));
+    }
+
+    @Test
+    public void contentHash_unmodifiedFile_blobIdOfTheTracker() throws Exception {
+        File main = new File(workspace, "src/Main.java");
+        File helper = new File(workspace, "src/util/Helper.java");
+        // Older than the index, otherwise the file is racily clean and its blob id can not be trusted
+        main.setLastModified(System.currentTimeMillis() - 10000);
+        helper.setLastModified(System.currentTimeMillis() - 10000);
+        git("add", ".");
+        TestFiles.writeFile(workspace, "src/util/Helper.java", "class Helper { int modified; }");
+
+        GitIndex index = GitIndex.read(workspace);
+        assertNotNull(index);
+        GitIndex.Entry mainEntry = null;
+        GitIndex.Entry helperEntry = null;
+        for (GitIndex.Entry entry : index.getEntries()) {
+            if (entry.getPath().equals("src/Main.java")) {
+                mainEntry = entry;
+            } else if (entry.getPath().equals("src/util/Helper.java")) {
+                helperEntry = entry;
+            }
+        }
+
+        byte[] mainHash = index.contentHash(mainEntry, attributes(main));
+        assertNotNull(mainHash);
+        WorkspaceManifestTracker tracker = new WorkspaceManifestTracker(null);
+        tracker.track(new WorkspaceFile("src/Main.java", main, main.length(), main.lastModified()));
+        assertArrayEquals(tracker.getCurrentManifest().get("src/Main.java").getSha1(), mainHash);
+        assertNull(index.contentHash(helperEntry, attributes(helper)));
+    }
+
+    private static Set<String> walk(File baseDir, String filterPattern, boolean gitIndex) throws Exception {
+        WorkspaceWalker walker = new WorkspaceWalker(baseDir, CompiledPathFilter.forFilterPattern(filterPattern));
+        walker.setGitIndex(gitIndex);
+        walker.start();
+        Set<String> paths = new HashSet<>();
+        try {
+            WorkspaceFile file;
+            while ((file = walker.take()) != null) {
+                paths.add(file.getRelativePath().replace('\\', '/'));
+            }
+        } finally {
+            walker.close();
+        }
+        return paths;
+    }
+
+    private static Set<String> paths(String... paths) {
+        return new HashSet<>(Arrays.asList(paths));
+    }
+
+    private static BasicFileAttributes attributes(File file) throws IOException {
+        return Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+    }
+
+    private boolean git(String... args) throws InterruptedException {
+        String[] command = new String[args.length + 1];
+        command[0] = "git";
+        System.arraycopy(args, 0, command, 1, args.length);
+        try {
+            return new ProcessBuilder(command).directory(workspace).inheritIO().start().waitFor() == 0;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.checkmarx.jenkins;
+
+import com.checkmarx.jenkins.filesystem.zip.PackagingAnalyzer;
+import com.checkmarx.jenkins.filesystem.zip.dto.PackagingAnalysis;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PackagingAnalyzerTests {
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File workspace;
+
+    @Before
+    public void createWorkspace() throws IOException {
+        workspace = temporaryFolder.newFolder("workspace");
+        TestFiles.writeRandomFile(workspace, "src/main/java/Main.java", 1000, 1);
+        TestFiles.writeRandomFile(workspace, "src/main/java/Helper.java", 500, 2);
+        TestFiles.writeRandomFile(workspace, "src/test/java/MainTest.java", 800, 3);
+        TestFiles.writeRandomFile(workspace, "lib/dependency.jar", 20000, 4);
+        TestFiles.writeRandomFile(workspace, "lib/native.dll", 10000, 5);
+        TestFiles.writeRandomFile(workspace, "docs/readme.txt", 300, 6);
+        TestFiles.writeRandomFile(workspace, "node_modules/lib/index.js", 700, 7);
+    }
+
+    @Test
+    public void analyze_filterPattern_totalsOfTheFilesToZip() throws IOException {
+        PackagingAnalysis analysis = PackagingAnalyzer.analyze(workspace, "!**/*.txt, !**/node_modules/**/*", false);
+
+        assertEquals(5, analysis.getNumberOfFiles());
+        assertEquals(32300, analysis.getSize());
+        assertEquals(2, analysis.getNumberOfExcludedFiles());
+        assertEquals(1000, analysis.getExcludedSize());
+        assertTrue(analysis.getEstimatedCompressedSize() > 0);
+
+        assertEquals(Arrays.asList("lib", "src", "src/main", "src/main/java", "src/test", "src/test/java"), names(analysis.getDirectoriesBySize()));
+        assertEquals("src", analysis.getDirectoriesByFiles().get(0).getName());
+        assertEquals(Arrays.asList("jar", "dll", "java"), names(analysis.getTypesBySize()));
+        assertEquals("java", analysis.getTypesByFiles().get(0).getName());
+    }
+
+    @Test
+    public void analyze_filterPattern_filesMatchedByEachPattern() throws IOException {
+        PackagingAnalysis analysis = PackagingAnalyzer.analyze(workspace, "**/*.java, **/*.jar, !**/test/**/*, !**/*.cs", false);
+
+        List<String> patterns = new ArrayList<>();
+        for (PackagingAnalysis.PatternMatch pattern : analysis.getPatterns()) {
+            patterns.add(pattern.getPattern() + "=" + pattern.getFiles());
+        }
+        assertEquals(Arrays.asList("**/*.java=3", "**/*.jar=1", "!**/test/**/*=1", "!**/*.cs=0"), patterns);
+        assertEquals(3, analysis.getNumberOfFiles());
+    }
+
+    @Test
+    public void analyze_binaries_suggestedLargestSavingFirst() throws IOException {
+        PackagingAnalysis analysis = PackagingAnalyzer.analyze(workspace, "!**/node_modules/**/*", false);
+
+        // lib holds only binaries, the jar and dll types are part of it
+        assertEquals("!lib/**/*", analysis.getSuggestions().get(0).getName());
+        assertEquals(2, analysis.getSuggestions().get(0).getFiles());
+        assertTrue(names(analysis.getSuggestions()).containsAll(Arrays.asList("!**/*.jar", "!**/*.dll")));
+        for (PackagingAnalysis.Row suggestion : analysis.getSuggestions()) {
+            assertTrue(suggestion.getName(), !suggestion.getName().contains("src"));
+        }
+    }
+
+    private static List<String> names(List<PackagingAnalysis.Row> rows) {
+        List<String> names = new ArrayList<>();
+        for (PackagingAnalysis.Row row : rows) {
+            names.add(row.getName());
+        }
+        return names;
+    }
+}
@@ -0,0 +1,78 @@
+package com.checkmarx.jenkins;
+
+import com.checkmarx.jenkins.web.client.PollingSchedule;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PollingScheduleTests {
+
+    private final PollingSchedule schedule = new PollingSchedule(PollingSchedule.Phase.SCAN);
+    private final long min = PollingSchedule.Phase.SCAN.minIntervalMillis();
+    private final long max = PollingSchedule.Phase.SCAN.maxIntervalMillis();
+
+    @Test
+    public void nextDelay_noProgress_backsOffUpToMaximum() {
+        long first = schedule.nextDelay(true);
+        long last = first;
+        for (int i = 0; i < 20; i++) {
+            last = schedule.nextDelay(false);
+        }
+
+        assertBetween(min, min * 1.2, first);
+        assertBetween(max * 0.8, max, last);
+    }
+
+    @Test
+    public void nextDelay_progressAfterBackOff_backToMinimum() {
+        for (int i = 0; i < 20; i++) {
+            schedule.nextDelay(false);
+        }
+
+        assertBetween(min, min * 1.2, schedule.nextDelay(true));
+    }
+
+    @Test
+    public void nextDelay_nearCompletion_minimumWithoutJitter() {
+        for (int i = 0; i < 20; i++) {
+            schedule.nextDelay(false, 50, 0);
+        }
+
+        assertEquals(min, schedule.nextDelay(false, 95, 0));
+    }
+
+    @Test
+    public void nextDelay_deepInQueue_polledLessOften() {
+        assertBetween(min * 10 * 0.8, Math.min(max, min * 10 * 1.2), schedule.nextDelay(true, 0, 10));
+        assertBetween(min, min * 1.2, schedule.nextDelay(true, 0, 1));
+    }
+
+    @Test
+    public void minIntervalMillis_defaults_notShorterThanFixedIntervals() {
+        assertTrue(PollingSchedule.Phase.SCAN.minIntervalMillis() >= 10000);
+        assertTrue(PollingSchedule.Phase.REPORT.minIntervalMillis() >= 5000);
+        assertTrue(PollingSchedule.Phase.OSA_SCAN.minIntervalMillis() >= 5000);
+    }
+
+    @Test
+    public void nextDelay_anyPoll_notShorterThanMinimum() {
+        for (int i = 0; i < 100; i++) {
+            assertTrue(schedule.nextDelay(i % 3 == 0, i % 100, i % 5) >= min);
+        }
+    }
+
+    @Test
+    public void summary_countsPolls() {
+        schedule.nextDelay(true);
+        schedule.nextDelay(false);
+        schedule.nextDelay(false);
+
+        assertEquals(3, schedule.getPolls());
+        assertTrue(schedule.summary(), schedule.summary().startsWith("Polled the scan status 3 times in "));
+    }
+
+    private static void assertBetween(double lower, double upper, long delay) {
+        assertTrue(delay + " not in [" + lower + ", " + upper + "]", delay >= lower && delay <= upper);
+    }
+}
@@ -0,0 +1,71 @@
+package com.checkmarx.jenkins;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ScanReportMergerTests {
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("scanReportMergerTests").toFile();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    @Test
+    public void merge_twoReports_queriesAppendedAndCountsSummed() throws Exception {
+        File first = report("first.xml", "<CxXMLResults ProjectName=\"app-service-a\" LinesOfCodeScanned=\"1200\" FilesScanned=\"10\" "
+                + "DeepLink=\"http://server/a\"><Query name=\"SQL_Injection\"><Result Severity=\"High\"/></Query></CxXMLResults>");
+        File second = report("second.xml", "<CxXMLResults ProjectName=\"app-service-b\" LinesOfCodeScanned=\"800\" FilesScanned=\"5\" "
+                + "DeepLink=\"http://server/b\"><Query name=\"XSS\"><Result Severity=\"Medium\"/><Result Severity=\"Medium\"/></Query>"
+                + "<Query name=\"CSRF\"/></CxXMLResults>");
+        File merged = new File(directory, "ScanReport.xml");
+
+        ScanReportMerger.merge(Arrays.asList(first, second), merged);
+
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(merged);
+        Element root = document.getDocumentElement();
+        assertEquals("CxXMLResults", root.getTagName());
+        assertEquals("2000", root.getAttribute("LinesOfCodeScanned"));
+        assertEquals("15", root.getAttribute("FilesScanned"));
+        assertEquals("http://server/a", root.getAttribute("DeepLink"));
+        assertEquals(3, root.getElementsByTagName("Query").getLength());
+        assertEquals(3, root.getElementsByTagName("Result").getLength());
+    }
+
+    @Test
+    public void merge_otherRootElement_fails() throws IOException {
+        File report = report("other.xml", "<html><body/></html>");
+        try {
+            ScanReportMerger.merge(Arrays.asList(report), new File(directory, "ScanReport.xml"));
+            fail("Expected the merge to fail");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("Unexpected root element"));
+        }
+    }
+
+    private File report(String name, String content) throws IOException {
+        File report = new File(directory, name);
+        FileUtils.writeStringToFile(report, "<?xml version=\"1.0\" encoding=\"utf-8\"?>" + content, "UTF-8");
+        return report;
+    }
+}
@@ -0,0 +1,190 @@
+package com.checkmarx.jenkins;
+
+import com.checkmarx.jenkins.web.client.ScanStatusMultiplexer;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class ScanStatusMultiplexerTests {
+
+    private final AtomicInteger batchCalls = new AtomicInteger();
+    private final AtomicInteger singleCalls = new AtomicInteger();
+    private final Map<String, String> server = new HashMap<>();
+
+    @Test
+    public void next_severalBuildsWaiting_oneBatchCallPerRound() throws Exception {
+        server.put("1", "Queued");
+        server.put("2", "Working");
+        // Both builds register during the first interval
+        ScanStatusMultiplexer<String> multiplexer = new ScanStatusMultiplexer<>(500);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> first = executor.submit(waitFor(multiplexer, "1"));
+            Future<String> second = executor.submit(waitFor(multiplexer, "2"));
+
+            assertEquals("Queued", first.get(5, TimeUnit.SECONDS));
+            assertEquals("Working", second.get(5, TimeUnit.SECONDS));
+            assertEquals(1, batchCalls.get());
+            assertEquals(0, singleCalls.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void next_runMissingFromBatch_polledAlone() throws Exception {
+        server.put("1", "Queued");
+        ScanStatusMultiplexer<String> multiplexer = new ScanStatusMultiplexer<>(10);
+
+        Map<String, String> statuses = multiplexer.next(Arrays.asList("1", "finished"), source());
+
+        assertEquals("Queued", statuses.get("1"));
+        assertEquals("Finished", statuses.get("finished"));
+        assertEquals(1, batchCalls.get());
+        assertEquals(1, singleCalls.get());
+    }
+
+    @Test
+    public void next_singleRun_noBatchCall() throws Exception {
+        server.put("1", "Queued");
+        ScanStatusMultiplexer<String> multiplexer = new ScanStatusMultiplexer<>(10);
+
+        assertEquals("Queued", multiplexer.next("1", source()));
+        assertEquals("Queued", multiplexer.next("1", source()));
+
+        assertEquals(0, batchCalls.get());
+        assertEquals(2, singleCalls.get());
+    }
+
+    @Test
+    public void next_runFailed_errorThrownForThatRound() throws Exception {
+        server.put("1", "Queued");
+        ScanStatusMultiplexer<String> multiplexer = new ScanStatusMultiplexer<>(10);
+
+        try {
+            multiplexer.next(Arrays.asList("1", "deleted"), source());
+            fail("The status of a deleted scan can not be polled");
+        } catch (IOException e) {
+            assertEquals("Scan deleted not found", e.getMessage());
+        }
+        assertEquals("Queued", multiplexer.next("1", source()));
+    }
+
+    @Test
+    public void next_pollerEndedByError_errorThrownAndNextRoundPolled() throws Exception {
+        server.put("1", "Queued");
+        ScanStatusMultiplexer<String> multiplexer = new ScanStatusMultiplexer<>(10);
+        ScanStatusMultiplexer.StatusSource<String> broken = new ScanStatusMultiplexer.StatusSource<String>() {
+            @Override
+            public Map<String, String> fetchAll() {
+                throw new LinkageError("Broken SOAP stack");
+            }
+
+            @Override
+            public String fetch(String runId) {
+                throw new LinkageError("Broken SOAP stack");
+            }
+        };
+
+        try {
+            multiplexer.next("1", broken);
+            fail("The status of the scan was not polled");
+        } catch (IOException e) {
+            assertEquals("Failed to poll the status of the scan with run id 1", e.getMessage());
+        }
+        assertEquals("Queued", multiplexer.next("1", source()));
+    }
+
+    @Test
+    public void next_callerStoppedWaiting_itsSourceNotUsed() throws Exception {
+        server.put("1", "Queued");
+        server.put("2", "Working");
+        final ScanStatusMultiplexer<String> multiplexer = new ScanStatusMultiplexer<>(500);
+        final AtomicInteger endedCalls = new AtomicInteger();
+        // Source of a build whose session was released once it stopped waiting
+        final ScanStatusMultiplexer.StatusSource<String> ended = new ScanStatusMultiplexer.StatusSource<String>() {
+            @Override
+            public Map<String, String> fetchAll() {
+                endedCalls.incrementAndGet();
+                throw new IllegalStateException("Session released");
+            }
+
+            @Override
+            public String fetch(String runId) {
+                endedCalls.incrementAndGet();
+                throw new IllegalStateException("Session released");
+            }
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(1);
+        try {
+            Future<String> waiting = executor.submit(waitFor(multiplexer, "2"));
+            Thread.sleep(100);
+            // Registers after the waiting build, then is aborted before the round
+            Thread aborted = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        multiplexer.next("1", ended);
+                    } catch (IOException | InterruptedException e) {
+                        // Expected
+                    }
+                }
+            });
+            aborted.start();
+            Thread.sleep(100);
+            aborted.interrupt();
+            aborted.join(5000);
+
+            assertEquals("Working", waiting.get(5, TimeUnit.SECONDS));
+            assertEquals(0, endedCalls.get());
+            assertEquals(1, singleCalls.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Callable<String> waitFor(final ScanStatusMultiplexer<String> multiplexer, final String runId) {
+        return new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return multiplexer.next(runId, source());
+            }
+        };
+    }
+
+    private ScanStatusMultiplexer.StatusSource<String> source() {
+        return new ScanStatusMultiplexer.StatusSource<String>() {
+            @Override
+            public Map<String, String> fetchAll() {
+                batchCalls.incrementAndGet();
+                return new HashMap<>(server);
+            }
+
+            @Override
+            public String fetch(String runId) throws IOException {
+                singleCalls.incrementAndGet();
+                if (server.containsKey(runId)) {
+                    return server.get(runId);
+                }
+                if (runId.equals("finished")) {
+                    return "Finished";
+                }
+                throw new IOException("Scan " + runId + " not found");
+            }
+        };
+    }
+}
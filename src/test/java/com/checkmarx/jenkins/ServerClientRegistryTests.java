@@ -0,0 +1,132 @@
+package com.checkmarx.jenkins;
+
+import com.checkmarx.jenkins.web.client.ServerClientRegistry;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ServerClientRegistryTests {
+
+    private final AtomicInteger connections = new AtomicInteger();
+
+    @Test
+    public void get_sameServer_connectedOnce() throws IOException {
+        ServerClientRegistry<String> registry = new ServerClientRegistry<>(countingConnector(), 60000);
+
+        String first = registry.get("http://server");
+        String second = registry.get("http://server");
+        registry.get("http://other");
+
+        assertSame(first, second);
+        assertEquals(2, connections.get());
+    }
+
+    @Test
+    public void get_olderThanTimeToLive_connectedAgainInBackground() throws Exception {
+        ServerClientRegistry<String> registry = new ServerClientRegistry<>(countingConnector(), 1);
+        String first = registry.get("http://server");
+        Thread.sleep(10);
+
+        // The old client is returned at once while the new one connects
+        assertSame(first, registry.get("http://server"));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (connections.get() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(50);
+        assertNotEquals(first, registry.get("http://server"));
+    }
+
+    @Test
+    public void get_connectionFailed_nextCallConnectsAgain() throws IOException {
+        ServerClientRegistry<String> registry = new ServerClientRegistry<>(new ServerClientRegistry.Connector<String>() {
+            @Override
+            public String connect(String serverUrl) throws IOException {
+                if (connections.incrementAndGet() == 1) {
+                    throw new IOException("Connection refused");
+                }
+                return serverUrl + " " + connections.get();
+            }
+        }, 60000);
+
+        try {
+            registry.get("http://server");
+            fail("Expected the connection to fail");
+        } catch (IOException e) {
+            assertEquals("Connection refused", e.getMessage());
+        }
+        assertEquals("http://server 2", registry.get("http://server"));
+    }
+
+    @Test
+    public void get_concurrentCallers_singleConnection() throws Exception {
+        final CountDownLatch connecting = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final ServerClientRegistry<String> registry = new ServerClientRegistry<>(new ServerClientRegistry.Connector<String>() {
+            @Override
+            public String connect(String serverUrl) throws IOException {
+                connections.incrementAndGet();
+                connecting.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return serverUrl;
+            }
+        }, 60000);
+        Callable<String> get = new Callable<String>() {
+            @Override
+            public String call() throws IOException {
+                return registry.get("http://server");
+            }
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> first = executor.submit(get);
+            assertTrue(connecting.await(5, TimeUnit.SECONDS));
+            Future<String> second = executor.submit(get);
+            Thread.sleep(50);
+            release.countDown();
+
+            assertEquals("http://server", first.get(5, TimeUnit.SECONDS));
+            assertEquals("http://server", second.get(5, TimeUnit.SECONDS));
+            assertEquals(1, connections.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void invalidate_connectedAgain() throws IOException {
+        ServerClientRegistry<String> registry = new ServerClientRegistry<>(countingConnector(), 60000);
+        registry.get("http://server");
+
+        registry.invalidate("http://server");
+        registry.get("http://server");
+
+        assertEquals(2, connections.get());
+    }
+
+    private ServerClientRegistry.Connector<String> countingConnector() {
+        return new ServerClientRegistry.Connector<String>() {
+            @Override
+            public String connect(String serverUrl) {
+                return serverUrl + " " + connections.incrementAndGet();
+            }
+        };
+    }
+}
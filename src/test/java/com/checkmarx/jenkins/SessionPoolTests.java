@@ -0,0 +1,144 @@
+package com.checkmarx.jenkins;
+
+import com.checkmarx.jenkins.web.client.SessionPool;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SessionPoolTests {
+
+    private final AtomicInteger logins = new AtomicInteger();
+
+    @Test
+    public void acquire_sameCredentials_loggedInOnce() throws Exception {
+        SessionPool pool = new SessionPool(0, 5000, 0);
+
+        SessionPool.Session first = pool.acquire("http://server", "user", "password", countingLogin());
+        SessionPool.Session second = pool.acquire("http://server/", "user", "password", countingLogin());
+        SessionPool.Session otherPassword = pool.acquire("http://server", "user", "other", countingLogin());
+
+        assertSame(first, second);
+        assertNotSame(first, otherPassword);
+        assertEquals(2, logins.get());
+    }
+
+    @Test
+    public void renew_rejectedByAllHolders_loggedInOnce() throws Exception {
+        SessionPool pool = new SessionPool(0, 5000, 0);
+        SessionPool.Session session = pool.acquire("http://server", "user", "password", countingLogin());
+        String rejected = session.getId();
+
+        String renewed = session.renew(rejected);
+
+        // Another holder rejected with the same id gets the new one without a login
+        assertEquals(renewed, session.renew(rejected));
+        assertNotEquals(rejected, renewed);
+        assertEquals(2, logins.get());
+    }
+
+    @Test
+    public void getId_olderThanRenewalAge_renewedInBackground() throws Exception {
+        SessionPool pool = new SessionPool(0, 5000, 1);
+        SessionPool.Session session = pool.acquire("http://server", "user", "password", countingLogin());
+        String first = session.getId();
+        Thread.sleep(10);
+
+        // The old id is returned at once while the new one is logged in
+        assertEquals(first, session.getId());
+        long deadline = System.currentTimeMillis() + 5000;
+        while (session.getId().equals(first) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertNotEquals(first, session.getId());
+    }
+
+    @Test
+    public void acquire_serverFull_dropsIdleSessionOrWaitsForRelease() throws Exception {
+        final SessionPool pool = new SessionPool(1, 5000, 0);
+        SessionPool.Session first = pool.acquire("http://server", "first", "password", countingLogin());
+        first.release();
+        final SessionPool.Session second = pool.acquire("http://server", "second", "password", countingLogin());
+        pool.acquire("http://other", "first", "password", countingLogin());
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<SessionPool.Session> third = executor.submit(new Callable<SessionPool.Session>() {
+                @Override
+                public SessionPool.Session call() throws Exception {
+                    return pool.acquire("http://server", "first", "password", countingLogin());
+                }
+            });
+            try {
+                third.get(200, TimeUnit.MILLISECONDS);
+                fail("The session of the server is held, a new one must wait");
+            } catch (TimeoutException e) {
+                // Expected
+            }
+            second.release();
+            assertNotSame(first, third.get(5, TimeUnit.SECONDS));
+            assertEquals(4, logins.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void acquire_serverFullBeyondMaxWait_fails() throws Exception {
+        SessionPool pool = new SessionPool(1, 100, 0);
+        pool.acquire("http://server", "first", "password", countingLogin());
+
+        long start = System.currentTimeMillis();
+        try {
+            pool.acquire("http://server", "second", "password", countingLogin());
+            fail("The only session of the server is held, the wait must end");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("MaxSessionsPerServer"));
+        }
+        assertTrue(System.currentTimeMillis() - start < 5000);
+        assertEquals(1, logins.get());
+    }
+
+    @Test
+    public void acquire_loginFailed_nextCallLogsInAgain() throws Exception {
+        SessionPool pool = new SessionPool(1, 5000, 0);
+        SessionPool.Authenticator failing = new SessionPool.Authenticator() {
+            @Override
+            public String login() throws IOException {
+                logins.incrementAndGet();
+                throw new IOException("Invalid credentials");
+            }
+        };
+        try {
+            pool.acquire("http://server", "user", "password", failing);
+            fail("Login failure expected");
+        } catch (IOException e) {
+            assertEquals("Invalid credentials", e.getMessage());
+        }
+
+        // The failed session does not hold the only place of the server
+        assertEquals("session-2", pool.acquire("http://server", "user", "password", countingLogin()).getId());
+    }
+
+    private SessionPool.Authenticator countingLogin() {
+        return new SessionPool.Authenticator() {
+            @Override
+            public String login() {
+                return "session-" + logins.incrementAndGet();
+            }
+        };
+    }
+}
@@ -0,0 +1,220 @@
+package com.checkmarx.jenkins;
+
+import com.checkmarx.jenkins.filesystem.zip.callable.SastZipperCallable;
+import com.checkmarx.jenkins.web.client.ChunkedUploadNotSupportedException;
+import com.checkmarx.jenkins.web.client.SoapScanUpload;
+import com.checkmarx.jenkins.web.client.SoapScanStreamingCallable;
+import com.checkmarx.jenkins.web.client.SoapScanUploadCallable;
+import com.checkmarx.jenkins.web.client.UploadInterruptedException;
+import com.checkmarx.jenkins.xmlresponseparser.XmlResponseParser;
+import com.checkmarx.ws.CxJenkinsWebService.CxWSResponseRunID;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.NullInputStream;
+import org.apache.commons.lang3.SerializationUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SoapScanUploadTests {
+
+    private static final byte[] HEAD = "<head>".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] TAIL = "</head>".getBytes(StandardCharsets.UTF_8);
+
+    private HttpServer server;
+    private volatile String receivedBody;
+    private volatile String receivedContentLength;
+    private volatile int responseCode = 200;
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                receivedBody = IOUtils.toString(exchange.getRequestBody(), "UTF-8");
+                receivedContentLength = exchange.getRequestHeaders().getFirst("Content-Length");
+                byte[] response = "run-42".getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(responseCode, response.length);
+                exchange.getResponseBody().write(response);
+                exchange.close();
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void send_fixedLength_postsWholeMessage() throws Exception {
+        byte[] sources = "c291cmNlcw==".getBytes(StandardCharsets.UTF_8);
+
+        CxWSResponseRunID response = upload(serverUrl()).send(new ByteArrayInputStream(sources), sources.length);
+
+        assertEquals("run-42", response.getRunId());
+        assertEquals("<head>c291cmNlcw==</head>", receivedBody);
+        assertEquals(String.valueOf(HEAD.length + sources.length + TAIL.length), receivedContentLength);
+    }
+
+    @Test
+    public void sendChunked_bodyWrittenWhileSent_postsWholeMessage() throws Exception {
+        CxWSResponseRunID response = upload(serverUrl()).sendChunked(new SoapScanUpload.Body() {
+            @Override
+            public void writeTo(OutputStream outputStream) throws IOException {
+                outputStream.write("c291cmNlcw==".getBytes(StandardCharsets.UTF_8));
+                outputStream.close();
+            }
+        });
+
+        assertEquals("run-42", response.getRunId());
+        assertEquals("<head>c291cmNlcw==</head>", receivedBody);
+    }
+
+    @Test(expected = ChunkedUploadNotSupportedException.class)
+    public void sendChunked_lengthRequired_throwsChunkedUploadNotSupported() throws Exception {
+        responseCode = 411;
+
+        upload(serverUrl()).sendChunked(new SoapScanUpload.Body() {
+            @Override
+            public void writeTo(OutputStream outputStream) throws IOException {
+                outputStream.write("c291cmNlcw==".getBytes(StandardCharsets.UTF_8));
+            }
+        });
+    }
+
+    @Test
+    public void uploadCallable_serialized_postsZipFileOfNode() throws Exception {
+        File base64ZipFile = File.createTempFile("base64ZippedSource", ".bin");
+        try {
+            FileUtils.writeStringToFile(base64ZipFile, "c291cmNlcw==", "UTF-8");
+            // As sent to a remote node
+            SoapScanUploadCallable callable = SerializationUtils.clone(new SoapScanUploadCallable(upload(serverUrl()), false,
+                    new ConsoleListener()));
+
+            CxWSResponseRunID response = callable.invoke(base64ZipFile, null).toCxWSResponseRunID();
+
+            assertEquals("run-42", response.getRunId());
+            assertTrue(response.isIsSuccesfull());
+            assertEquals("<head>c291cmNlcw==</head>", receivedBody);
+        } finally {
+            FileUtils.deleteQuietly(base64ZipFile);
+        }
+    }
+
+    @Test
+    public void streamingCallable_serialized_postsWorkspaceZippedWhileSent() throws Exception {
+        File workspace = Files.createTempDirectory("workspace").toFile();
+        try {
+            FileUtils.writeStringToFile(new File(workspace, "src/Main.java"), "class Main {}", "UTF-8");
+            FileUtils.writeStringToFile(new File(workspace, "README.md"), "readme", "UTF-8");
+            ConsoleListener.CONSOLE.reset();
+            // As sent to a remote node
+            SoapScanStreamingCallable callable = SerializationUtils.clone(new SoapScanStreamingCallable(upload(serverUrl()),
+                    new SastZipperCallable("!**/*.md"), false, new ConsoleListener()));
+
+            CxWSResponseRunID response = callable.invoke(workspace, null).toCxWSResponseRunID();
+
+            assertEquals("run-42", response.getRunId());
+            assertTrue(receivedBody.startsWith("<head>"));
+            assertTrue(receivedBody.endsWith("</head>"));
+            String base64Zip = receivedBody.substring(HEAD.length, receivedBody.length() - TAIL.length);
+            ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(Base64.decodeBase64(base64Zip)));
+            ZipEntry entry = zip.getNextEntry();
+            assertEquals("src/Main.java", entry.getName());
+            assertEquals("class Main {}", IOUtils.toString(zip, "UTF-8"));
+            assertNull(zip.getNextEntry());
+            assertTrue(ConsoleListener.CONSOLE.toString("UTF-8").contains("Zipping complete with 1 files"));
+        } finally {
+            FileUtils.deleteDirectory(workspace);
+        }
+    }
+
+    @Test
+    public void send_connectionDropped_reportsBytesSent() throws Exception {
+        final ServerSocket droppingServer = new ServerSocket(0);
+        Thread acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Socket socket = droppingServer.accept();
+                    InputStream in = socket.getInputStream();
+                    byte[] buffer = new byte[64 * 1024];
+                    int read = 0;
+                    while (read < 1024 * 1024) {
+                        read += in.read(buffer);
+                    }
+                    // Reset the connection instead of closing it gracefully
+                    socket.setSoLinger(true, 0);
+                    socket.close();
+                } catch (IOException ignored) {
+                }
+            }
+        });
+        acceptor.start();
+
+        long sourcesLength = 256L * 1024 * 1024;
+        try {
+            upload(new URL("http://127.0.0.1:" + droppingServer.getLocalPort() + "/"))
+                    .send(new NullInputStream(sourcesLength), sourcesLength);
+            fail("Expected the upload to be interrupted");
+        } catch (UploadInterruptedException e) {
+            assertTrue(e.getBytesSent() >= 1024 * 1024);
+            assertTrue(e.getBytesSent() < e.getLength());
+            assertEquals(HEAD.length + sourcesLength + TAIL.length, e.getLength());
+        } finally {
+            droppingServer.close();
+            acceptor.join();
+        }
+    }
+
+    private URL serverUrl() throws IOException {
+        return new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/");
+    }
+
+    private static SoapScanUpload upload(URL url) {
+        return new SoapScanUpload(url, "Scan", HEAD, TAIL, new RunIdParser());
+    }
+
+    private static class RunIdParser implements XmlResponseParser {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public CxWSResponseRunID parse(InputStream inputStream) {
+            CxWSResponseRunID cxWSResponseRunID = new CxWSResponseRunID();
+            try {
+                cxWSResponseRunID.setRunId(IOUtils.toString(inputStream, "UTF-8"));
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            cxWSResponseRunID.setIsSuccesfull(true);
+            return cxWSResponseRunID;
+        }
+    }
+}
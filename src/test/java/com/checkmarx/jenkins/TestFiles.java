@@ -0,0 +1,33 @@
+package com.checkmarx.jenkins;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Writes the files of the test workspaces, creating their parent directories.
+ */
+class TestFiles {
+
+    private TestFiles() {
+    }
+
+    static File writeFile(File baseDir, String name, String content) throws IOException {
+        File file = new File(baseDir, name);
+        FileUtils.writeStringToFile(file, content, "UTF-8");
+        return file;
+    }
+
+    /**
+     * @return a file of random bytes, the same ones for the same seed
+     */
+    static File writeRandomFile(File baseDir, String name, int size, long seed) throws IOException {
+        byte[] content = new byte[size];
+        new Random(seed).nextBytes(content);
+        File file = new File(baseDir, name);
+        FileUtils.writeByteArrayToFile(file, content);
+        return file;
+    }
+}
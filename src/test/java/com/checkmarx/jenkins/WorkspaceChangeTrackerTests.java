@@ -0,0 +1,164 @@
+package com.checkmarx.jenkins;
+
+import com.checkmarx.jenkins.filesystem.zip.WorkspaceChangeTracker;
+import com.checkmarx.jenkins.filesystem.zip.WorkspaceManifestTracker;
+import com.checkmarx.jenkins.filesystem.zip.Zipper;
+import com.checkmarx.jenkins.filesystem.zip.dto.ZippingDetails;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class WorkspaceChangeTrackerTests {
+
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    private File workspace;
+    private final WorkspaceChangeTracker changeTracker = WorkspaceChangeTracker.forJvm();
+
+    @Before
+    public void createWorkspace() throws IOException {
+        workspace = Files.createTempDirectory("workspaceChangeTrackerTests").toFile();
+        writeFile("src/Main.java", "class Main {}");
+        writeFile("src/util/Helper.java", "class Helper {}");
+        writeFile("lib/app.js", "var app;");
+        writeFile("build/Main.class", "binary");
+    }
+
+    @After
+    public void deleteWorkspace() throws IOException {
+        changeTracker.unwatch(workspace);
+        FileUtils.deleteDirectory(workspace);
+    }
+
+    @Test
+    public void zip_changedPaths_wholeWorkspaceZippedWithoutListingDirectories() throws IOException {
+        WorkspaceManifestTracker fullTracker = new WorkspaceManifestTracker(null);
+        new Zipper(2).zip(workspace, "", new ByteArrayOutputStream(), 0, fullTracker);
+
+        writeFile("src/Main.java", "class Main { int changed; }");
+        writeFile("src/gen/Generated.java", "class Generated {}");
+        assertTrue(new File(workspace, "build/Main.class").delete());
+        // Not reported as changed, found only by listing its directory
+        writeFile("lib/unreported.js", "var unreported;");
+
+        WorkspaceManifestTracker tracker = new WorkspaceManifestTracker(fullTracker.getCurrentManifest());
+        Zipper zipper = new Zipper(2);
+        zipper.setChangedPaths(Arrays.asList(path("src/Main.java"), path("src/gen"), path("build/Main.class")));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ZippingDetails details = zipper.zip(workspace, "", output, 0, tracker);
+
+        Map<String, byte[]> entries = unzip(output.toByteArray());
+        assertEquals(4, details.getNumOfZippedFiles());
+        assertEquals(new HashSet<>(Arrays.asList("src/Main.java", "src/util/Helper.java", "lib/app.js", "src/gen/Generated.java")),
+                entries.keySet());
+        assertEquals("class Main { int changed; }", new String(entries.get("src/Main.java"), "UTF-8"));
+        assertEquals(4, tracker.getCurrentManifest().size());
+    }
+
+    @Test
+    public void snapshot_committedWhileWatched_changesSinceCommit() throws Exception {
+        changeTracker.watch(workspace, "", null);
+        awaitReady();
+        // Nothing committed while watched yet, the workspace is walked
+        assertNull(changeTracker.snapshot(workspace, ""));
+        changeTracker.commit(workspace);
+
+        writeFile("src/Main.java", "class Main { int changed; }");
+        writeFile("src/gen/Generated.java", "class Generated {}");
+
+        Set<String> changedPaths = awaitChanges(path("src/Main.java"), path("src/gen"));
+        assertTrue(changedPaths.toString(), changedPaths.size() <= 3);
+    }
+
+    @Test
+    public void watch_committedManifest_workspaceComparedWithManifest() throws Exception {
+        File manifest = new File(workspace.getParentFile(), workspace.getName() + "-manifest.bin");
+        try {
+            WorkspaceManifestTracker fullTracker = new WorkspaceManifestTracker(null);
+            new Zipper(1).zip(workspace, "", new ByteArrayOutputStream(), 0, fullTracker);
+            fullTracker.getCurrentManifest().write(manifest);
+
+            writeFile("src/Main.java", "class Main { int changed; }");
+            writeFile("src/New.java", "class New {}");
+            assertTrue(new File(workspace, "build/Main.class").delete());
+
+            changeTracker.watch(workspace, "", manifest);
+            awaitReady();
+
+            assertEquals(new HashSet<>(Arrays.asList(path("src/Main.java"), path("src/New.java"), path("build/Main.class"))),
+                    changeTracker.snapshot(workspace, ""));
+        } finally {
+            FileUtils.deleteQuietly(manifest);
+        }
+    }
+
+    @Test
+    public void snapshot_otherFilterPattern_workspaceWalked() throws Exception {
+        changeTracker.watch(workspace, "", null);
+        awaitReady();
+        changeTracker.snapshot(workspace, "");
+        changeTracker.commit(workspace);
+
+        assertNull(changeTracker.snapshot(workspace, "!**/*.class"));
+    }
+
+    private void awaitReady() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!changeTracker.isReady(workspace) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(changeTracker.isReady(workspace));
+    }
+
+    private Set<String> awaitChanges(String... expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        Set<String> changedPaths;
+        do {
+            Thread.sleep(50);
+            changedPaths = changeTracker.snapshot(workspace, "");
+        } while (changedPaths != null && !changedPaths.containsAll(Arrays.asList(expected)) && System.currentTimeMillis() < deadline);
+        assertTrue(String.valueOf(changedPaths), changedPaths != null && changedPaths.containsAll(Arrays.asList(expected)));
+        return changedPaths;
+    }
+
+    private void writeFile(String name, String content) throws IOException {
+        FileUtils.writeStringToFile(new File(workspace, name), content, "UTF-8");
+    }
+
+    private static String path(String path) {
+        return path.replace('/', File.separatorChar);
+    }
+
+    private static Map<String, byte[]> unzip(byte[] zip) throws IOException {
+        Map<String, byte[]> entries = new HashMap<>();
+        ZipInputStream zipInputStream = new ZipInputStream(new ByteArrayInputStream(zip));
+        try {
+            ZipEntry entry;
+            while ((entry = zipInputStream.getNextEntry()) != null) {
+                entries.put(entry.getName().replace('\\', '/'), IOUtils.toByteArray(zipInputStream));
+            }
+        } finally {
+            zipInputStream.close();
+        }
+        return entries;
+    }
+}
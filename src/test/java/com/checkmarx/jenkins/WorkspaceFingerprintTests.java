@@ -0,0 +1,80 @@
+package com.checkmarx.jenkins;
+
+import com.checkmarx.jenkins.filesystem.zip.CompiledPathFilter;
+import com.checkmarx.jenkins.filesystem.zip.WorkspaceFingerprint;
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class WorkspaceFingerprintTests {
+
+    private static final String FILTER_PATTERN = "!**/*.class, !**/target/**/*";
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File workspace;
+
+    @Before
+    public void createWorkspace() throws IOException {
+        workspace = temporaryFolder.newFolder("workspace");
+        TestFiles.writeFile(workspace, "src/Main.java", "class Main {}");
+        TestFiles.writeFile(workspace, "src/util/Helper.java", "class Helper {}");
+        TestFiles.writeFile(workspace, "src/util/Helper.class", "binary");
+        TestFiles.writeFile(workspace, "target/generated/Gen.java", "class Gen {}");
+        TestFiles.writeFile(workspace, "pom.xml", "<project/>");
+    }
+
+    @Test
+    public void compute_copiedWorkspace_sameFingerprint() throws IOException {
+        File copy = temporaryFolder.newFolder("copy");
+        FileUtils.copyDirectory(workspace, copy);
+
+        assertEquals(fingerprint(workspace), fingerprint(copy));
+    }
+
+    @Test
+    public void compute_excludedFilesChanged_sameFingerprint() throws IOException {
+        String before = fingerprint(workspace);
+        TestFiles.writeFile(workspace, "src/util/Helper.class", "other binary");
+        TestFiles.writeFile(workspace, "target/generated/Other.java", "class Other {}");
+
+        assertEquals(before, fingerprint(workspace));
+    }
+
+    @Test
+    public void compute_contentOrNameChanged_differentFingerprint() throws IOException {
+        String before = fingerprint(workspace);
+        TestFiles.writeFile(workspace, "src/util/Helper.java", "class Helper { }");
+        String contentChanged = fingerprint(workspace);
+        assertNotEquals(before, contentChanged);
+
+        assertTrue(new File(workspace, "src/util/Helper.java").renameTo(new File(workspace, "src/util/Helper2.java")));
+        assertNotEquals(contentChanged, fingerprint(workspace));
+    }
+
+    @Test
+    public void compute_previousHashes_unchangedFilesNotHashedAgain() {
+        WorkspaceFingerprint first = new WorkspaceFingerprint(CompiledPathFilter.forFilterPattern(FILTER_PATTERN), null);
+        String fingerprint = first.compute(workspace, 2);
+        assertEquals(3, first.getNumberOfHashedFiles());
+
+        WorkspaceFingerprint second = new WorkspaceFingerprint(CompiledPathFilter.forFilterPattern(FILTER_PATTERN), first.getFileHashes());
+        assertEquals(fingerprint, second.compute(workspace, 2));
+        assertEquals(3, second.getNumberOfFiles());
+        assertEquals(0, second.getNumberOfHashedFiles());
+    }
+
+    private static String fingerprint(File baseDir) {
+        return new WorkspaceFingerprint(CompiledPathFilter.forFilterPattern(FILTER_PATTERN), null).compute(baseDir, 4);
+    }
+}
@@ -0,0 +1,102 @@
+package com.checkmarx.jenkins;
+
+import com.checkmarx.jenkins.filesystem.zip.WorkspaceSharder;
+import com.checkmarx.jenkins.filesystem.zip.Zipper;
+import com.checkmarx.jenkins.filesystem.zip.dto.WorkspaceShard;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class WorkspaceSharderTests {
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File workspace;
+
+    @Before
+    public void createWorkspace() throws IOException {
+        workspace = temporaryFolder.newFolder("workspace");
+        TestFiles.writeRandomFile(workspace, "service-a/src/Main.bin", 100000, 1);
+        TestFiles.writeRandomFile(workspace, "service-a/src/util/Helper.bin", 100000, 2);
+        TestFiles.writeRandomFile(workspace, "service-b/Main.bin", 100000, 3);
+        TestFiles.writeRandomFile(workspace, "libs/common/Common.bin", 100000, 4);
+        TestFiles.writeRandomFile(workspace, "build.bin", 50000, 5);
+    }
+
+    @Test
+    public void plan_workspaceFits_singleRootShard() throws IOException {
+        List<WorkspaceShard> shards = WorkspaceSharder.plan(workspace, "", 10000000, false);
+
+        assertEquals(1, shards.size());
+        assertEquals("root", shards.get(0).getName());
+        assertEquals(5, shards.get(0).getNumberOfFiles());
+        assertTrue(shards.get(0).contains("service-a/src/util/Helper.bin"));
+    }
+
+    @Test
+    public void plan_workspaceTooLarge_shardsZipEveryFileOnce() throws IOException {
+        long maxShardSize = 300000;
+        List<WorkspaceShard> shards = WorkspaceSharder.plan(workspace, "", maxShardSize, false);
+
+        assertTrue(shards.size() > 1);
+        List<String> zippedFiles = new ArrayList<>();
+        for (WorkspaceShard shard : shards) {
+            ByteArrayOutputStream zip = new ByteArrayOutputStream();
+            new Zipper(1).zip(workspace, "", shard, zip, maxShardSize);
+            List<String> shardFiles = entriesOf(zip.toByteArray());
+            assertEquals(shard.getName(), shard.getNumberOfFiles(), shardFiles.size());
+            zippedFiles.addAll(shardFiles);
+        }
+        Collections.sort(zippedFiles);
+        assertEquals(Arrays.asList("build.bin", "libs/common/Common.bin", "service-a/src/Main.bin",
+                "service-a/src/util/Helper.bin", "service-b/Main.bin"), zippedFiles);
+    }
+
+    @Test
+    public void plan_filterPattern_excludedFilesNotSharded() throws IOException {
+        List<WorkspaceShard> shards = WorkspaceSharder.plan(workspace, "!service-a/**/*", 300000, false);
+
+        int files = 0;
+        for (WorkspaceShard shard : shards) {
+            files += shard.getNumberOfFiles();
+        }
+        assertEquals(3, files);
+    }
+
+    @Test
+    public void plan_directoryLargerThanShard_fails() {
+        try {
+            WorkspaceSharder.plan(workspace, "", 100000, false);
+            fail("Expected the planning to fail");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("alone would make a zip"));
+        }
+    }
+
+    private static List<String> entriesOf(byte[] zip) throws IOException {
+        List<String> entries = new ArrayList<>();
+        ZipInputStream zipInputStream = new ZipInputStream(new ByteArrayInputStream(zip));
+        ZipEntry entry;
+        while ((entry = zipInputStream.getNextEntry()) != null) {
+            entries.add(entry.getName().replace('\\', '/'));
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,95 @@
+package com.checkmarx.jenkins;
+
+import com.checkmarx.jenkins.filesystem.zip.ZipCache;
+import com.checkmarx.jenkins.filesystem.zip.dto.ZippingDetails;
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ZipCacheTests {
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File directory;
+
+    @Before
+    public void setUp() {
+        directory = temporaryFolder.getRoot();
+    }
+
+    @Test
+    public void get_archivePut_sameArchiveAndDetails() throws IOException {
+        ZipCache zipCache = new ZipCache(new File(directory, "cache"), 1024 * 1024);
+        File archive = archive("archive", 1000);
+        zipCache.put("key", archive, new ZippingDetails(3, 1000, Arrays.asList("Zipped 3 files")));
+        assertTrue(archive.delete());
+
+        File target = new File(directory, "target");
+        ZippingDetails zippingDetails = zipCache.get("key", target);
+
+        assertNotNull(zippingDetails);
+        assertEquals(3, zippingDetails.getNumOfZippedFiles());
+        assertEquals(1000, zippingDetails.getZipSize());
+        assertEquals("Zipped 3 files", zippingDetails.getZippingLog().get(1));
+        assertEquals(1000, target.length());
+        assertNull(zipCache.get("other", new File(directory, "other")));
+    }
+
+    @Test
+    public void put_quotaExceeded_leastRecentlyUsedEvicted() throws IOException {
+        ZipCache zipCache = new ZipCache(new File(directory, "cache"), 2500);
+        zipCache.put("first", archive("first", 1000), new ZippingDetails(1, 1000, Arrays.<String>asList()));
+        zipCache.put("second", archive("second", 1000), new ZippingDetails(1, 1000, Arrays.<String>asList()));
+        backdate("first", 20000);
+        backdate("second", 10000);
+        // Used after the second one, the second one is now the least recently used
+        assertNotNull(zipCache.get("first", new File(directory, "target")));
+
+        zipCache.put("third", archive("third", 1000), new ZippingDetails(1, 1000, Arrays.<String>asList()));
+
+        assertNotNull(zipCache.get("first", new File(directory, "target")));
+        assertNull(zipCache.get("second", new File(directory, "target")));
+        assertNotNull(zipCache.get("third", new File(directory, "target")));
+    }
+
+    @Test
+    public void put_disabled_nothingCached() throws IOException {
+        ZipCache zipCache = new ZipCache(new File(directory, "cache"), 0);
+        zipCache.put("key", archive("archive", 10), new ZippingDetails(1, 10, Arrays.<String>asList()));
+
+        assertFalse(new File(directory, "cache").exists());
+        assertNull(zipCache.get("key", new File(directory, "target")));
+    }
+
+    @Test
+    public void key_differentFilterPattern_differentKey() {
+        assertEquals(ZipCache.key("fingerprint", "!**/*.jar", "zip"), ZipCache.key("fingerprint", "!**/*.jar", "zip"));
+        assertNotEquals(ZipCache.key("fingerprint", "!**/*.jar", "zip"), ZipCache.key("fingerprint", "", "zip"));
+        assertNotEquals(ZipCache.key("fingerprint", "", "zip"), ZipCache.key("fingerprint", "", "base64 zip"));
+    }
+
+    private File archive(String name, int size) throws IOException {
+        File archive = new File(directory, name);
+        FileUtils.writeByteArrayToFile(archive, new byte[size]);
+        return archive;
+    }
+
+    private void backdate(String key, long millis) {
+        File details = new File(new File(directory, "cache"), key + ".details");
+        assertTrue(details.setLastModified(System.currentTimeMillis() - millis));
+    }
+}
@@ -0,0 +1,160 @@
+package com.checkmarx.jenkins;
+
+import com.checkmarx.jenkins.filesystem.zip.ReadThrottle;
+import com.checkmarx.jenkins.filesystem.zip.ZipGovernor;
+import com.checkmarx.jenkins.filesystem.zip.Zipper;
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ZipGovernorTests {
+
+    @Test
+    public void acquire_limitReached_waitersStartInArrivalOrder() throws Exception {
+        final ZipGovernor governor = new ZipGovernor(1, 0, 0);
+        governor.acquire(null);
+
+        final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+        List<Thread> waiters = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            final int number = i;
+            final CountDownLatch started = new CountDownLatch(1);
+            Thread waiter = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    started.countDown();
+                    try {
+                        governor.acquire(null);
+                        order.add(number);
+                        governor.release();
+                    } catch (IOException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            });
+            waiter.start();
+            started.await();
+            // Lets the waiter queue up before the next one arrives
+            Thread.sleep(100);
+            waiters.add(waiter);
+        }
+        assertTrue(order.isEmpty());
+
+        governor.release();
+        for (Thread waiter : waiters) {
+            waiter.join(5000);
+            assertFalse(waiter.isAlive());
+        }
+        assertEquals(3, order.size());
+        assertEquals(0, (int) order.get(0));
+        assertEquals(1, (int) order.get(1));
+        assertEquals(2, (int) order.get(2));
+    }
+
+    @Test
+    public void acquire_zipsWaiting_newZipDoesNotBarge() throws Exception {
+        final ZipGovernor governor = new ZipGovernor(1, 0, 0);
+        governor.acquire(null);
+
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        Thread waiter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    governor.acquire(null);
+                    order.add("waiting");
+                    governor.release();
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+        waiter.start();
+        // Lets the waiter queue up
+        Thread.sleep(100);
+
+        // Arrives right when the permit is released, before the waiter took it
+        governor.release();
+        governor.acquire(null);
+        order.add("new");
+        governor.release();
+
+        waiter.join(5000);
+        assertEquals(Arrays.asList("waiting", "new"), order);
+    }
+
+    @Test
+    public void threads_maxThreads_capsRequestedThreads() {
+        assertEquals(2, new ZipGovernor(0, 0, 2).threads(8));
+        assertEquals(1, new ZipGovernor(0, 0, 2).threads(1));
+        assertEquals(Math.min(2, Runtime.getRuntime().availableProcessors()), new ZipGovernor(0, 0, 2).threads(0));
+        assertEquals(8, new ZipGovernor(0, 0, 0).threads(8));
+        assertNull(new ZipGovernor(0, 0, 0).getReadThrottle());
+    }
+
+    @Test
+    public void forJvm_limitsChanged_governorReplaced() {
+        ZipGovernor governor = ZipGovernor.forJvm(1, 0, 2);
+        assertSame(governor, ZipGovernor.forJvm(1, 0, 2));
+
+        ZipGovernor changed = ZipGovernor.forJvm(1, 1024, 3);
+
+        assertNotSame(governor, changed);
+        assertEquals(3, changed.threads(8));
+        assertNotNull(changed.getReadThrottle());
+        assertSame(changed, ZipGovernor.forJvm(1, 1024, 3));
+    }
+
+    @Test
+    public void acquire_readThrottle_averageRateLimited() throws Exception {
+        ReadThrottle throttle = new ReadThrottle(1024 * 1024);
+        long start = System.nanoTime();
+        // One second of budget is available at once, the next half second has to be waited for
+        for (int i = 0; i < 6; i++) {
+            throttle.acquire(256 * 1024);
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("Elapsed " + elapsedMillis + " ms", elapsedMillis >= 400 && elapsedMillis < 2000);
+    }
+
+    @Test
+    public void zip_readThrottle_sameZip() throws Exception {
+        File workspace = Files.createTempDirectory("zipGovernorTests").toFile();
+        try {
+            byte[] content = new byte[300 * 1024];
+            new Random(1).nextBytes(content);
+            FileUtils.writeByteArrayToFile(new File(workspace, "a.bin"), content);
+            FileUtils.writeStringToFile(new File(workspace, "src/Main.java"), "class Main {}", "UTF-8");
+
+            ByteArrayOutputStream unthrottled = new ByteArrayOutputStream();
+            new Zipper(2).zip(workspace, "", unthrottled, 0);
+            Zipper throttledZipper = new Zipper(2);
+            throttledZipper.setReadThrottle(new ReadThrottle(10 * 1024 * 1024));
+            ByteArrayOutputStream throttled = new ByteArrayOutputStream();
+            throttledZipper.zip(workspace, "", throttled, 0);
+
+            assertTrue(Arrays.equals(unthrottled.toByteArray(), throttled.toByteArray()));
+        } finally {
+            FileUtils.deleteDirectory(workspace);
+        }
+    }
+}
@@ -0,0 +1,438 @@
+package com.checkmarx.jenkins;
+
+import com.checkmarx.jenkins.filesystem.zip.CompiledPathFilter;
+import com.checkmarx.jenkins.filesystem.zip.CompressionPolicy;
+import com.checkmarx.jenkins.filesystem.zip.ReadThrottle;
+import com.checkmarx.jenkins.filesystem.zip.SecondaryArchive;
+import com.checkmarx.jenkins.filesystem.zip.WorkspaceFile;
+import com.checkmarx.jenkins.filesystem.zip.WorkspaceManifest;
+import com.checkmarx.jenkins.filesystem.zip.WorkspaceManifestTracker;
+import com.checkmarx.jenkins.filesystem.zip.ZipSizeEstimator;
+import com.checkmarx.jenkins.filesystem.zip.Zipper;
+import com.checkmarx.jenkins.filesystem.zip.callable.SastAndOsaZipperCallable;
+import com.checkmarx.jenkins.filesystem.zip.callable.SastZipperCallable;
+import com.checkmarx.jenkins.filesystem.zip.dto.CxZipResult;
+import com.checkmarx.jenkins.filesystem.zip.dto.SastAndOsaZipResult;
+import com.checkmarx.jenkins.filesystem.zip.dto.ZippingDetails;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.SerializationUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ZipperTests {
+
+    private File workspace;
+
+    @Before
+    public void createWorkspace() throws IOException {
+        workspace = Files.createTempDirectory("zipperTests").toFile();
+        writeFile("src/Main.java", textContent(200, 1));
+        writeFile("src/util/Helper.java", textContent(5000, 2));
+        writeFile("src/empty.txt", new byte[0]);
+        writeFile("lib/large.js", textContent(3500000, 3));
+        writeFile("lib/random.bin", randomContent(2500000, 4));
+        writeFile("build/Main.class", textContent(100, 5));
+    }
+
+    @After
+    public void deleteWorkspace() throws IOException {
+        FileUtils.deleteDirectory(workspace);
+    }
+
+    @Test
+    public void zip_parallel_sameContentAsSingleThreaded() throws IOException {
+        byte[] singleThreaded = new Zipper(1).zip(workspace, "!**/*.class", 0);
+        byte[] parallel = new Zipper(4).zip(workspace, "!**/*.class", 0);
+
+        Map<String, byte[]> expected = unzip(singleThreaded);
+        assertEquals(5, expected.size());
+        assertEquals(expected.keySet(), unzip(parallel).keySet());
+        for (Map.Entry<String, byte[]> entry : unzip(parallel).entrySet()) {
+            assertArrayEquals(entry.getKey(), expected.get(entry.getKey()), entry.getValue());
+            assertArrayEquals(entry.getKey(), FileUtils.readFileToByteArray(new File(workspace, entry.getKey())), entry.getValue());
+        }
+    }
+
+    @Test
+    public void zip_filesLargerThanOneChunk_readExactlyAtChunkBoundaries() throws IOException {
+        int chunkSize = 1024 * 1024;
+        Map<String, byte[]> files = new HashMap<>();
+        files.put("chunks/exact.js", textContent(2 * chunkSize, 11));
+        files.put("chunks/oneMore.js", textContent(2 * chunkSize + 1, 12));
+        files.put("chunks/oneLess.js", textContent(chunkSize - 1, 13));
+        // Stored, its crc is computed with the same positional reads
+        files.put("chunks/random.bin", randomContent(3 * chunkSize + 12345, 14));
+        for (Map.Entry<String, byte[]> file : files.entrySet()) {
+            writeFile(file.getKey(), file.getValue());
+        }
+
+        // The workers reuse their buffers from one chunk and one file to the next
+        Map<String, byte[]> entries = unzip(new Zipper(3).zip(workspace, "chunks/**/*", 0));
+
+        assertEquals(files.keySet(), entries.keySet());
+        for (Map.Entry<String, byte[]> file : files.entrySet()) {
+            assertArrayEquals(file.getKey(), file.getValue(), entries.get(file.getKey()));
+        }
+    }
+
+    @Test
+    public void zip_parallel_deterministicOutput() throws IOException {
+        byte[] first = new Zipper(3).zip(workspace, "", 0);
+        byte[] second = new Zipper(8).zip(workspace, "", 0);
+
+        assertArrayEquals(first, second);
+    }
+
+    @Test
+    public void zip_parallel_zippingDetailsReported() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ZippingDetails details = new Zipper(4).zip(workspace, "**/*.java", output, 0);
+
+        assertEquals(2, details.getNumOfZippedFiles());
+        assertEquals(2, unzip(output.toByteArray()).size());
+    }
+
+    @Test
+    public void zip_parallel_maxZipSizeReached() throws IOException {
+        try {
+            new Zipper(4).zip(workspace, "", 100000);
+            fail("MaxZipSizeReached expected");
+        } catch (Zipper.MaxZipSizeReached e) {
+            assertEquals(100000, e.getMaxZipSize());
+        }
+    }
+
+    @Test
+    public void zip_maxZipSize_enforcedOnBytesWritten() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ZippingDetails details = new Zipper(4).zip(workspace, "", output, 0);
+        assertEquals(output.size(), details.getZipSize());
+
+        assertEquals(output.size(), new Zipper(4).zip(workspace, "", output.size()).length);
+        try {
+            new Zipper(4).zip(workspace, "", output.size() - 1);
+            fail("MaxZipSizeReached expected");
+        } catch (Zipper.MaxZipSizeReached e) {
+            assertEquals(output.size() - 1, e.getMaxZipSize());
+        }
+    }
+
+    @Test
+    public void estimate_sampledTypes_closeToZipSize() throws IOException {
+        long zipSize = new Zipper(4).zip(workspace, "", 0).length;
+
+        ZipSizeEstimator.ZipSizeEstimate estimate = ZipSizeEstimator.estimate(workspace, CompiledPathFilter.forFilterPattern(""));
+
+        assertEquals(6, estimate.getNumberOfFiles());
+        assertEquals(zipSize, estimate.getCompressedSize(), zipSize * 0.1);
+        assertEquals("lib", estimate.getDirectories().get(0).getName());
+    }
+
+    @Test
+    public void estimate_compressionPolicy_sampledWithItsLevels() throws IOException {
+        CompressionPolicy fastest = new CompressionPolicy(Deflater.BEST_SPEED, Deflater.BEST_SPEED, Deflater.BEST_SPEED);
+        Zipper zipper = new Zipper(4);
+        zipper.setCompressionPolicy(fastest);
+        long zipSize = zipper.zip(workspace, "", 0).length;
+
+        ZipSizeEstimator.ZipSizeEstimate estimate = ZipSizeEstimator.estimate(workspace, CompiledPathFilter.forFilterPattern(""),
+                false, fastest);
+
+        assertEquals(zipSize, estimate.getCompressedSize(), zipSize * 0.1);
+        assertTrue(estimate.getCompressedSize() > ZipSizeEstimator.estimate(workspace, CompiledPathFilter.forFilterPattern(""),
+                false, new CompressionPolicy(Deflater.BEST_COMPRESSION, Deflater.BEST_COMPRESSION, Deflater.BEST_COMPRESSION)).getCompressedSize());
+    }
+
+    @Test
+    public void zip_sizePreflight_predictedOverLimit_failsWithBreakdown() throws IOException {
+        Zipper zipper = new Zipper(4);
+        zipper.setSizePreflight(true);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try {
+            zipper.zip(workspace, "", output, 100000);
+            fail("MaxZipSizePredicted expected");
+        } catch (Zipper.MaxZipSizePredicted e) {
+            assertEquals(0, output.size());
+            assertTrue(e.getZippingDetails().getZippingLog().toString().contains("  lib: "));
+        }
+    }
+
+    @Test
+    public void sastZipperCallable_serialized_zipsWorkspaceOfNode() throws Exception {
+        // As sent to a remote node
+        SastZipperCallable callable = SerializationUtils.clone(new SastZipperCallable("", null, new ConsoleListener(), null));
+
+        CxZipResult result = callable.invoke(workspace, null);
+
+        try {
+            assertEquals(6, result.getZippingDetails().getNumOfZippedFiles());
+        } finally {
+            FileUtils.deleteQuietly(new File(result.getTempFile().getRemote()));
+        }
+    }
+
+    @Test
+    public void sastAndOsaZipperCallable_serialized_zipsWorkspaceOfNode() throws Exception {
+        // As sent to a remote node
+        SastAndOsaZipperCallable callable = SerializationUtils.clone(
+                new SastAndOsaZipperCallable("!**/*.class", "**/*.js", new ConsoleListener(), null));
+
+        SastAndOsaZipResult result = callable.invoke(workspace, null);
+
+        try {
+            assertEquals(5, result.getSastZipResult().getZippingDetails().getNumOfZippedFiles());
+            assertEquals(1, result.getOsaZipResult().getZippingDetails().getNumOfZippedFiles());
+        } finally {
+            FileUtils.deleteQuietly(new File(result.getSastZipResult().getTempFile().getRemote()));
+            FileUtils.deleteQuietly(new File(result.getOsaZipResult().getTempFile().getRemote()));
+        }
+    }
+
+    @Test
+    public void zip_manyFiles_boundedLogAndFileList() throws IOException {
+        for (int i = 0; i < 100; i++) {
+            writeFile("generated/File" + i + ".java", textContent(100, i));
+        }
+        File fileList = new File(workspace.getParentFile(), workspace.getName() + "-zipped-files.txt");
+        try {
+            Zipper zipper = new Zipper(4);
+            zipper.getLog().writeFileList(fileList);
+            ZippingDetails details = zipper.zip(workspace, "!**/*.class", new ByteArrayOutputStream(), 0);
+
+            assertEquals(105, details.getNumOfZippedFiles());
+            assertEquals(105, FileUtils.readLines(fileList, "UTF-8").size());
+            assertTrue(details.getZippingLog().get(0).startsWith("Zipped 105 files"));
+            assertTrue(details.getZippingLog().get(1).endsWith("excluded files: 1"));
+            assertTrue(details.getZippingLog().size() < 10);
+        } finally {
+            assertTrue(fileList.delete());
+        }
+    }
+
+    @Test
+    public void zip_incompressibleEntries_stored() throws IOException {
+        writeFile("img/logo.png", textContent(2000, 8));
+        writeFile("lib/random-small.dat", randomContent(100000, 9));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ZippingDetails details = new Zipper(4).zip(workspace, "!**/*.class", output, 0);
+
+        Map<String, Integer> methods = new HashMap<>();
+        ZipInputStream zipInputStream = new ZipInputStream(new ByteArrayInputStream(output.toByteArray()));
+        ZipEntry entry;
+        while ((entry = zipInputStream.getNextEntry()) != null) {
+            methods.put(entry.getName(), entry.getMethod());
+        }
+        zipInputStream.close();
+        assertEquals(ZipEntry.STORED, (int) methods.get("img/logo.png"));
+        assertEquals(ZipEntry.STORED, (int) methods.get("lib/random-small.dat"));
+        assertEquals(ZipEntry.STORED, (int) methods.get("lib/random.bin"));
+        assertEquals(ZipEntry.DEFLATED, (int) methods.get("lib/large.js"));
+        assertArrayEquals(randomContent(2500000, 4), unzip(output.toByteArray()).get("lib/random.bin"));
+        // The empty file as well, deflate would make it larger
+        assertTrue(details.getZippingLog().toString().contains("Stored without compression: 4 files"));
+    }
+
+    @Test
+    public void compressionPolicy_fileClasses_ownLevels() {
+        CompressionPolicy policy = new CompressionPolicy(9, 6, 1);
+
+        assertEquals(9, policy.deflateLevel("src/Main.java", 1000));
+        assertEquals(6, policy.deflateLevel("src/Big.java", 200000));
+        assertEquals(1, policy.deflateLevel("src/Huge.java", 2000000));
+        assertEquals(1, policy.deflateLevel("web/app.min.js", 1000));
+        assertEquals(1, policy.deflateLevel("package-lock.json", 1000));
+        assertTrue(policy.isCompressedFormat("lib/dependency.JAR"));
+        assertFalse(CompressionPolicy.isIncompressible(textContent(4096, 10), 0, 4096));
+        assertTrue(CompressionPolicy.isIncompressible(randomContent(4096, 11), 0, 4096));
+    }
+
+    @Test(expected = Zipper.NoFilesToZip.class)
+    public void zip_parallel_noFilesToZip() throws IOException {
+        new Zipper(4).zip(workspace, "**/*.cs", 0);
+    }
+
+    @Test
+    public void zip_excludeFolderPattern_folderContentNotZipped() throws IOException {
+        byte[] zip = new Zipper(2).zip(workspace, "!**/lib/**/*, !**/*.class", 0);
+
+        assertEquals(new HashSet<>(Arrays.asList("src/Main.java", "src/util/Helper.java", "src/empty.txt")), unzip(zip).keySet());
+    }
+
+    @Test
+    public void zip_includeAndExcludeArrays_filteredWhileWalking() throws IOException {
+        byte[] zip = new Zipper(2).zip(workspace, new String[]{"**/util/**"}, new String[]{"src/**/*.java"}, 0);
+
+        assertEquals(Collections.singleton("src/Main.java"), unzip(zip).keySet());
+    }
+
+    @Test(expected = Zipper.NoFilesToZip.class)
+    public void zip_missingBaseDir_noFilesToZip() throws IOException {
+        new Zipper(2).zip(new File(workspace, "missing"), "", 0);
+    }
+
+    @Test
+    public void zip_previousManifest_wholeWorkspaceZippedUnchangedFilesNotHashed() throws IOException {
+        WorkspaceManifestTracker fullTracker = new WorkspaceManifestTracker(null);
+        new Zipper(2).zip(workspace, "", new ByteArrayOutputStream(), 0, fullTracker);
+        assertEquals(6, fullTracker.getCurrentManifest().size());
+
+        writeFile("src/Main.java", textContent(300, 6));
+        writeFile("src/New.java", textContent(50, 7));
+        assertTrue(new File(workspace, "build/Main.class").delete());
+        File touched = new File(workspace, "src/util/Helper.java");
+        assertTrue(touched.setLastModified(touched.lastModified() - 60000));
+
+        WorkspaceManifestTracker tracker = new WorkspaceManifestTracker(fullTracker.getCurrentManifest());
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ZippingDetails details = new Zipper(2).zip(workspace, "", output, 0, tracker);
+
+        Map<String, byte[]> entries = unzip(output.toByteArray());
+        assertEquals(6, details.getNumOfZippedFiles());
+        assertEquals(6, entries.size());
+        assertFalse(entries.containsKey("build/Main.class"));
+        assertTrue(entries.containsKey("src/New.java"));
+        // Helper.java was hashed again because of its modification time, its content did not change
+        assertEquals(3, tracker.getNumberOfHashedFiles());
+        assertEquals(2, tracker.getNumberOfChangedFiles());
+    }
+
+    @Test
+    public void zip_secondaryArchive_sameArchivesAsSeparateZips() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ByteArrayOutputStream secondaryOutput = new ByteArrayOutputStream();
+        SecondaryArchive secondary = new SecondaryArchive("**/*.js,**/*.bin,**/*.class", secondaryOutput, 0);
+
+        ZippingDetails details = new Zipper(4).zip(workspace, "!**/*.class", output, 0, secondary);
+
+        assertEquals(5, details.getNumOfZippedFiles());
+        assertNull(secondary.getFailure());
+        assertEquals(3, secondary.getZippingDetails().getNumOfZippedFiles());
+        assertEquals(secondaryOutput.size(), secondary.getZippingDetails().getZipSize());
+        // The shared files were compressed once, the archives are identical to the ones zipped separately
+        assertArrayEquals(new Zipper(4).zip(workspace, "!**/*.class", 0), output.toByteArray());
+        assertArrayEquals(new Zipper(4).zip(workspace, "**/*.js,**/*.bin,**/*.class", 0), secondaryOutput.toByteArray());
+    }
+
+    @Test
+    public void zip_secondaryArchive_overLimit_mainArchiveCompleted() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        SecondaryArchive secondary = new SecondaryArchive("**/*.js", new ByteArrayOutputStream(), 100000);
+
+        new Zipper(4).zip(workspace, "", output, 0, secondary);
+
+        assertNull(secondary.getZippingDetails());
+        assertTrue(secondary.getFailure() instanceof Zipper.MaxZipSizeReached);
+        assertEquals(6, unzip(output.toByteArray()).size());
+    }
+
+    @Test
+    public void zip_largeFileUnreadable_windowOfChunksRecovered() throws IOException {
+        // Deleted once walked, its chunks fill the window of 2 threads before the first one is found unreadable
+        writeFile("a-big.bin", new byte[7 * 1024 * 1024]);
+        List<String> paths = new ArrayList<>(Collections.singletonList("a-big.bin"));
+        for (int i = 10; i < 30; i++) {
+            writeFile("b" + i + ".txt", textContent(1000, i));
+            paths.add("b" + i + ".txt");
+        }
+        WorkspaceManifestTracker deletingTracker = new WorkspaceManifestTracker(new WorkspaceManifest()) {
+            @Override
+            public void track(WorkspaceFile file) throws IOException {
+                super.track(file);
+                if (file.getRelativePath().equals("a-big.bin")) {
+                    assertTrue(file.getFile().delete());
+                }
+            }
+        };
+        final AtomicInteger reading = new AtomicInteger();
+        final AtomicInteger maxReading = new AtomicInteger();
+        Zipper zipper = new Zipper(2);
+        zipper.setReadThrottle(new ReadThrottle(Long.MAX_VALUE) {
+            @Override
+            public void acquire(long bytes) throws InterruptedIOException {
+                int concurrentReads = reading.incrementAndGet();
+                synchronized (maxReading) {
+                    maxReading.set(Math.max(maxReading.get(), concurrentReads));
+                }
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                } finally {
+                    reading.decrementAndGet();
+                }
+            }
+        });
+        // Visited in this order, after the files of the empty previous manifest
+        zipper.setChangedPaths(paths);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        ZippingDetails details = zipper.zip(workspace, "", output, 0, deletingTracker);
+
+        assertEquals(20, details.getNumOfZippedFiles());
+        assertTrue(details.getZippingLog().toString().contains("Skipping unreadable file: " + new File(workspace, "a-big.bin").getPath()));
+        // The chunks of the unreadable file no longer count, both threads read the small files
+        assertEquals(2, maxReading.get());
+    }
+
+    private void writeFile(String name, byte[] content) throws IOException {
+        FileUtils.writeByteArrayToFile(new File(workspace, name), content);
+    }
+
+    private static byte[] textContent(int size, long seed) {
+        String[] words = {"public ", "class ", "return ", "if (", ") {\n", "}\n", "value", "String ", "= ", ";\n"};
+        Random random = new Random(seed);
+        StringBuilder builder = new StringBuilder(size);
+        while (builder.length() < size) {
+            builder.append(words[random.nextInt(words.length)]);
+        }
+        return Arrays.copyOf(builder.toString().getBytes(), size);
+    }
+
+    private static byte[] randomContent(int size, long seed) {
+        byte[] content = new byte[size];
+        new Random(seed).nextBytes(content);
+        return content;
+    }
+
+    private static Map<String, byte[]> unzip(byte[] zip) throws IOException {
+        Map<String, byte[]> entries = new HashMap<>();
+        ZipInputStream zipInputStream = new ZipInputStream(new ByteArrayInputStream(zip));
+        try {
+            ZipEntry entry;
+            while ((entry = zipInputStream.getNextEntry()) != null) {
+                entries.put(entry.getName().replace('\\', '/'), IOUtils.toByteArray(zipInputStream));
+            }
+        } finally {
+            zipInputStream.close();
+        }
+        return entries;
+    }
+}